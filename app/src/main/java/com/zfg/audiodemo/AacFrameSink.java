@@ -0,0 +1,40 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 编码后AAC帧的去向，可以是ADTS流，也可以封装成MP4
+ */
+public interface AacFrameSink {
+
+    /**
+     * 编码器输出的配置信息（AudioSpecificConfig），在第一帧之前到达，
+     * 不需要的实现可以忽略；读取position到limit之间的内容，返回后不能再持有config
+     */
+    void onCodecConfig(ByteBuffer config) throws IOException;
+
+    /**
+     * 写入一帧AAC数据，按已写入的帧数计算时间戳
+     *
+     * @param payload 读取position到limit之间的内容，写完后position不变
+     * @return 写入的字节数
+     */
+    int writeFrame(ByteBuffer payload) throws IOException;
+
+    /**
+     * 写入一帧AAC数据
+     *
+     * @param payload 读取position到limit之间的内容，写完后position不变
+     * @param ptsUs   这一帧的时间戳
+     * @return 写入的字节数
+     */
+    int writeFrame(ByteBuffer payload, long ptsUs) throws IOException;
+
+    /**
+     * 写出缓存中剩余的数据和文件尾部，之后不能再写入
+     */
+    void finish() throws IOException;
+
+    long getBytesWritten();
+}
@@ -0,0 +1,183 @@
+package com.zfg.audiodemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 纯Java的ADTS文件读取，输出去掉ADTS头部的AAC裸数据，与MediaExtractor的行为一致。
+ * 有帧索引时seek是O(log n)的，没有时第一次seek会扫描文件建立索引
+ */
+public class AdtsExtractor implements AudioExtractor {
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final AdtsParser.AdtsHeader mHeader = new AdtsParser.AdtsHeader();
+    private final ByteBuffer mHeaderBuffer = ByteBuffer.allocate(AdtsParser.AdtsHeader.HEADER_SIZE);
+    private AdtsFrameIndex mIndex;
+
+    private final int mSampleRate;
+    private final int mChannelConfig;
+    private final int mProfile;
+
+    /**
+     * 当前帧在文件中的偏移量、序号以及之前的采样数
+     */
+    private long mOffset;
+    private int mFrameNumber;
+    private long mSampleCount;
+    private boolean mHasSample;
+
+    /**
+     * @param file  ADTS文件
+     * @param index 帧索引，可以为null
+     */
+    public AdtsExtractor(File file, AdtsFrameIndex index) throws IOException {
+        mFile = file;
+        mIndex = index;
+        mRandomAccessFile = new RandomAccessFile(file, "r");
+        mChannel = mRandomAccessFile.getChannel();
+        readHeader();
+        if (!mHasSample) {
+            mRandomAccessFile.close();
+            throw new IOException("Not an ADTS file: " + file);
+        }
+        mSampleRate = mHeader.getSampleRate();
+        mChannelConfig = mHeader.channelConfig;
+        mProfile = mHeader.profile;
+    }
+
+    private void readHeader() throws IOException {
+        mHeaderBuffer.clear();
+        while (mHeaderBuffer.hasRemaining()) {
+            if (mChannel.read(mHeaderBuffer, mOffset + mHeaderBuffer.position()) < 0) {
+                break;
+            }
+        }
+        mHasSample = !mHeaderBuffer.hasRemaining()
+                && AdtsParser.parseHeader(mHeaderBuffer.array(), 0, mHeader)
+                && mOffset + mHeader.frameLength <= mChannel.size();
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        if (!mHasSample) {
+            return -1;
+        }
+        int size = mHeader.frameLength - mHeader.headerLength;
+        buffer.clear();
+        buffer.position(offset);
+        buffer.limit(offset + size);
+        try {
+            long position = mOffset + mHeader.headerLength;
+            while (buffer.hasRemaining()) {
+                if (mChannel.read(buffer, position + buffer.position() - offset) < 0) {
+                    return -1;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        buffer.position(offset);
+        return size;
+    }
+
+    @Override
+    public long getSampleTime() {
+        if (!mHasSample) {
+            return -1;
+        }
+        if (null != mIndex && mFrameNumber < mIndex.size()) {
+            return mIndex.getPtsUs(mFrameNumber);
+        }
+        return mSampleCount * 1000000L / mSampleRate;
+    }
+
+    @Override
+    public boolean advance() {
+        if (!mHasSample) {
+            return false;
+        }
+        mOffset += mHeader.frameLength;
+        mSampleCount += mHeader.getSampleCount();
+        mFrameNumber++;
+        try {
+            readHeader();
+        } catch (IOException e) {
+            e.printStackTrace();
+            mHasSample = false;
+        }
+        return mHasSample;
+    }
+
+    @Override
+    public void seekTo(long timeUs) {
+        try {
+            if (null == mIndex) {
+                mIndex = AdtsFrameIndex.build(mFile);
+            }
+            int frame = mIndex.findFrame(timeUs);
+            if (frame < 0) {
+                return;
+            }
+            mOffset = mIndex.getOffset(frame);
+            mFrameNumber = frame;
+            //由时间戳反推采样数，时间戳是按采样数向下取整得到的
+            mSampleCount = (mIndex.getPtsUs(frame) * mSampleRate + 999999) / 1000000L;
+            readHeader();
+        } catch (IOException e) {
+            e.printStackTrace();
+            mHasSample = false;
+        }
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelConfig() {
+        return mChannelConfig;
+    }
+
+    /**
+     * 1：Main，2：LC
+     */
+    public int getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * 总时长，没有索引时返回-1
+     */
+    public long getDurationUs() {
+        if (null == mIndex || mIndex.size() == 0) {
+            return -1;
+        }
+        return mIndex.getPtsUs(mIndex.size() - 1)
+                + AdtsParser.SAMPLES_PER_RAW_BLOCK * 1000000L / mSampleRate;
+    }
+
+    /**
+     * AudioSpecificConfig，配置解码器时作为csd-0
+     */
+    public byte[] getAudioSpecificConfig() {
+        int sampleRateIndex = AdtsParser.getSampleRateIndex(mSampleRate);
+        return new byte[]{
+                (byte) ((mProfile << 3) | (sampleRateIndex >> 1)),
+                (byte) (((sampleRateIndex & 1) << 7) | (mChannelConfig << 3))
+        };
+    }
+
+    @Override
+    public void release() {
+        try {
+            mRandomAccessFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
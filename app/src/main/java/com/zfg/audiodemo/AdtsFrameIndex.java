@@ -0,0 +1,176 @@
+package com.zfg.audiodemo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * AAC文件的帧索引，记录每一帧在文件中的偏移量和时间戳
+ * 按时间戳二分查找，可以O(log n)定位到任意时间点，用于快速seek和断点续解
+ * <p>
+ * 索引文件格式：魔数"ADTI"、版本号、采样率，之后是若干条(偏移量, 时间戳)记录，
+ * 记录数由文件长度决定，编码过程中可以一直追加
+ */
+public class AdtsFrameIndex {
+
+    /**
+     * 索引文件后缀
+     */
+    public static final String INDEX_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x41445449;
+    private static final int VERSION = 1;
+
+    private long[] mOffsets;
+    private long[] mPtsUs;
+    private int mSize;
+    private final int mSampleRate;
+
+    public AdtsFrameIndex(int sampleRate) {
+        mSampleRate = sampleRate;
+        mOffsets = new long[256];
+        mPtsUs = new long[256];
+    }
+
+    /**
+     * 追加一帧，时间戳需要单调递增
+     */
+    public void add(long offset, long ptsUs) {
+        if (mSize == mOffsets.length) {
+            mOffsets = Arrays.copyOf(mOffsets, mSize * 2);
+            mPtsUs = Arrays.copyOf(mPtsUs, mSize * 2);
+        }
+        mOffsets[mSize] = offset;
+        mPtsUs[mSize] = ptsUs;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public long getOffset(int index) {
+        return mOffsets[index];
+    }
+
+    public long getPtsUs(int index) {
+        return mPtsUs[index];
+    }
+
+    /**
+     * 查找包含该时间点的帧
+     *
+     * @return 时间戳不大于timeUs的最后一帧，timeUs早于第一帧时返回0，索引为空时返回-1
+     */
+    public int findFrame(long timeUs) {
+        if (mSize == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = mSize - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mPtsUs[mid] <= timeUs) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 从索引文件读取
+     */
+    public static AdtsFrameIndex read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an ADTS index file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported ADTS index version " + version);
+            }
+            AdtsFrameIndex index = new AdtsFrameIndex(in.readInt());
+            while (true) {
+                long offset;
+                long ptsUs;
+                try {
+                    offset = in.readLong();
+                    ptsUs = in.readLong();
+                } catch (EOFException e) {
+                    //最后一条记录可能因为异常退出而不完整，直接丢弃
+                    break;
+                }
+                index.add(offset, ptsUs);
+            }
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 扫描AAC文件重建索引，用于没有索引文件的旧录音
+     */
+    public static AdtsFrameIndex build(File aacFile) throws IOException {
+        final AdtsFrameIndex[] index = new AdtsFrameIndex[1];
+        AdtsParser parser = new AdtsParser(new AdtsParser.IFrameListener() {
+            @Override
+            public void onFrame(AdtsParser.AdtsHeader header, byte[] data, int offset, int length,
+                                long streamOffset, long ptsUs) {
+                if (null == index[0]) {
+                    index[0] = new AdtsFrameIndex(header.getSampleRate());
+                }
+                index[0].add(streamOffset, ptsUs);
+            }
+        });
+        InputStream in = new FileInputStream(aacFile);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                parser.feed(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return null == index[0] ? new AdtsFrameIndex(0) : index[0];
+    }
+
+    /**
+     * 索引文件的流式写入，编码时每写一帧追加一条记录
+     */
+    public static class Writer {
+        private final DataOutputStream mOutputStream;
+
+        public Writer(File file, int sampleRate) throws IOException {
+            mOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            mOutputStream.writeInt(MAGIC);
+            mOutputStream.writeInt(VERSION);
+            mOutputStream.writeInt(sampleRate);
+        }
+
+        public void append(long offset, long ptsUs) throws IOException {
+            mOutputStream.writeLong(offset);
+            mOutputStream.writeLong(ptsUs);
+        }
+
+        public void close() throws IOException {
+            mOutputStream.close();
+        }
+    }
+}
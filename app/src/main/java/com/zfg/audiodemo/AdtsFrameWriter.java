@@ -0,0 +1,182 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ADTS帧写入器
+ * 复用同一块直接内存拼接7字节ADTS头部和AAC裸数据，再通过Channel写入文件，
+ * 稳态编码时不再为每一帧分配byte[]
+ */
+public class AdtsFrameWriter implements AacFrameSink {
+
+    /**
+     * ADTS头部长度（无CRC）
+     */
+    public static final int ADTS_HEADER_SIZE = 7;
+
+    /**
+     * AAC LC
+     */
+    private static final int PROFILE_LC = 2;
+
+    private final WritableByteChannel mChannel;
+    private final int mSampleRate;
+    private final int mFreqIdx;
+    private final int mChanCfg;
+    private ByteBuffer mPacketBuffer;
+    private AdtsFrameIndex.Writer mIndexWriter;
+    /**
+     * 已写入的字节数，即下一帧在文件中的偏移量
+     */
+    private long mBytesWritten;
+    private long mFrameCount;
+    private long mFirstPtsUs;
+
+    /**
+     * 44.1KHz双声道
+     *
+     * @param channel     输出通道
+     * @param payloadSize 预估的单帧最大长度，用于预分配缓存
+     */
+    public AdtsFrameWriter(WritableByteChannel channel, int payloadSize) {
+        this(channel, payloadSize, 44100, 2);
+    }
+
+    /**
+     * @param channel      输出通道
+     * @param payloadSize  预估的单帧最大长度，用于预分配缓存
+     * @param sampleRate   编码采样率，写入ADTS头部
+     * @param channelCount 声道数，写入ADTS头部
+     */
+    public AdtsFrameWriter(WritableByteChannel channel, int payloadSize, int sampleRate, int channelCount) {
+        int freqIdx = AdtsParser.getSampleRateIndex(sampleRate);
+        //channel_configuration只能表示1到6声道和8声道，没有7声道
+        if (freqIdx < 0 || channelCount < 1 || channelCount > 8 || channelCount == 7) {
+            throw new IllegalArgumentException("Unsupported ADTS format " + sampleRate + " Hz, " + channelCount + " channels");
+        }
+        mChannel = channel;
+        mPacketBuffer = ByteBuffer.allocateDirect(ADTS_HEADER_SIZE + payloadSize);
+        mSampleRate = sampleRate;
+        mFreqIdx = freqIdx;
+        //1到6声道的channel_configuration与声道数相同，8声道（7.1）为7
+        mChanCfg = channelCount == 8 ? 7 : channelCount;
+    }
+
+    /**
+     * 设置帧索引，之后每写入一帧都会追加一条索引记录
+     */
+    public void setIndexWriter(AdtsFrameIndex.Writer indexWriter) {
+        mIndexWriter = indexWriter;
+    }
+
+    /**
+     * ADTS头部已经包含了解码需要的信息
+     */
+    @Override
+    public void onCodecConfig(ByteBuffer config) {
+    }
+
+    /**
+     * 写入一帧AAC数据
+     *
+     * @param payload 编码器输出的数据，读取position到limit之间的内容，写完后position不变
+     * @return 写入的字节数（包含ADTS头部）
+     */
+    @Override
+    public int writeFrame(ByteBuffer payload) throws IOException {
+        //AAC LC每帧1024个采样
+        return writeFrame(payload, mFrameCount * AdtsParser.SAMPLES_PER_RAW_BLOCK * 1000000L / mSampleRate);
+    }
+
+    /**
+     * 写入一帧AAC数据，索引中记录编码器给出的时间戳
+     *
+     * @param payload 编码器输出的数据，读取position到limit之间的内容，写完后position不变
+     * @param ptsUs   这一帧的时间戳，索引中保存相对第一帧的值
+     * @return 写入的字节数（包含ADTS头部）
+     */
+    @Override
+    public int writeFrame(ByteBuffer payload, long ptsUs) throws IOException {
+        int payloadSize = payload.remaining();
+        int packetLen = payloadSize + ADTS_HEADER_SIZE;
+        if (packetLen > mPacketBuffer.capacity()) {
+            //超出预估大小时才扩容，正常情况下不会走到这里
+            mPacketBuffer = ByteBuffer.allocateDirect(packetLen);
+        }
+        ByteBuffer packet = mPacketBuffer;
+        packet.clear();
+        //添加ADTS头部
+        addADTStoPacket(packet, packetLen, PROFILE_LC, mFreqIdx, mChanCfg);
+        packet.position(ADTS_HEADER_SIZE);
+        int position = payload.position();
+        packet.put(payload);
+        payload.position(position);
+        packet.flip();
+        while (packet.hasRemaining()) {
+            mChannel.write(packet);
+        }
+        if (mFrameCount == 0) {
+            mFirstPtsUs = ptsUs;
+        }
+        if (null != mIndexWriter) {
+            mIndexWriter.append(mBytesWritten, ptsUs - mFirstPtsUs);
+        }
+        mBytesWritten += packetLen;
+        mFrameCount++;
+        return packetLen;
+    }
+
+    /**
+     * 每一帧都直接写入，没有需要补写的内容
+     */
+    @Override
+    public void finish() {
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * 第一帧的时间戳，时间戳对齐系统时钟时用来换算索引中的相对时间
+     */
+    public long getFirstPtsUs() {
+        return mFirstPtsUs;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 给编码出的aac裸流添加adts头字段，AAC LC、44.1KHz、双声道
+     *
+     * @param packet    头部写在前7个字节
+     * @param packetLen 包含头部的帧长度
+     */
+    static void addADTStoPacket(ByteBuffer packet, int packetLen) {
+        addADTStoPacket(packet, packetLen, PROFILE_LC, 4, 2);
+    }
+
+    /**
+     * 给编码出的aac裸流添加adts头字段
+     *
+     * @param packet    头部写在前7个字节
+     * @param packetLen 包含头部的帧长度
+     * @param profile   1：Main，2：LC
+     * @param freqIdx   采样率索引
+     * @param chanCfg   声道配置
+     */
+    static void addADTStoPacket(ByteBuffer packet, int packetLen, int profile, int freqIdx, int chanCfg) {
+        packet.put(0, (byte) 0xFF);
+        packet.put(1, (byte) 0xF9);
+        packet.put(2, (byte) (((profile - 1) << 6) + (freqIdx << 2) + (chanCfg >> 2)));
+        packet.put(3, (byte) (((chanCfg & 3) << 6) + (packetLen >> 11)));
+        packet.put(4, (byte) ((packetLen & 0x7FF) >> 3));
+        packet.put(5, (byte) (((packetLen & 7) << 5) + 0x1F));
+        packet.put(6, (byte) 0xFC);
+    }
+}
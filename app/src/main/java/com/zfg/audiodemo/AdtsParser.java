@@ -0,0 +1,211 @@
+package com.zfg.audiodemo;
+
+/**
+ * 增量式ADTS帧解析器
+ * 数据可以按任意大小分块喂入，每凑齐一个完整的帧就回调一次。
+ * 会校验同步字、layer、采样率索引和帧长度，遇到损坏的数据逐字节重新同步。
+ * 不依赖Android API，可以直接在JVM上测试
+ */
+public class AdtsParser {
+
+    /**
+     * ADTS帧长度字段为13位
+     */
+    public static final int MAX_FRAME_SIZE = 0x1FFF;
+
+    /**
+     * 每个AAC原始数据块包含的采样数
+     */
+    public static final int SAMPLES_PER_RAW_BLOCK = 1024;
+
+    /**
+     * 采样率索引对应的采样率
+     */
+    private static final int[] SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+
+    /**
+     * 支持的采样率个数，索引从0到SAMPLE_RATE_COUNT - 1
+     */
+    public static final int SAMPLE_RATE_COUNT = SAMPLE_RATES.length;
+
+    private final IFrameListener mListener;
+    private final byte[] mBuffer = new byte[MAX_FRAME_SIZE];
+    private final AdtsHeader mHeader = new AdtsHeader();
+    private int mBuffered;
+
+    /**
+     * mBuffer[0]在整个流中的偏移量
+     */
+    private long mBufferOffset;
+    private long mFrameCount;
+    private long mSampleCount;
+    private long mSkippedBytes;
+
+    public AdtsParser(IFrameListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 喂入数据
+     */
+    public void feed(byte[] data, int offset, int length) {
+        while (length > 0) {
+            int count = Math.min(length, mBuffer.length - mBuffered);
+            System.arraycopy(data, offset, mBuffer, mBuffered, count);
+            mBuffered += count;
+            offset += count;
+            length -= count;
+            parseBuffered();
+        }
+    }
+
+    private void parseBuffered() {
+        int position = 0;
+        while (mBuffered - position >= AdtsHeader.HEADER_SIZE) {
+            if (!parseHeader(mBuffer, position, mHeader)) {
+                //不是合法的帧头，跳过一个字节重新同步
+                position++;
+                mSkippedBytes++;
+                continue;
+            }
+            int frameLength = mHeader.frameLength;
+            if (mBuffered - position < frameLength) {
+                //帧还不完整，等待更多数据
+                break;
+            }
+            int sampleRate = SAMPLE_RATES[mHeader.sampleRateIndex];
+            long ptsUs = mSampleCount * 1000000L / sampleRate;
+            mListener.onFrame(mHeader, mBuffer, position, frameLength, mBufferOffset + position, ptsUs);
+            mSampleCount += mHeader.getSampleCount();
+            mFrameCount++;
+            position += frameLength;
+        }
+        if (position > 0) {
+            //把未处理的数据移到缓存开头
+            System.arraycopy(mBuffer, position, mBuffer, 0, mBuffered - position);
+            mBuffered -= position;
+            mBufferOffset += position;
+        }
+    }
+
+    /**
+     * 解析并校验帧头
+     *
+     * @return 是否是合法的ADTS帧头
+     */
+    public static boolean parseHeader(byte[] data, int offset, AdtsHeader header) {
+        //12位同步字0xFFF
+        if ((data[offset] & 0xFF) != 0xFF || (data[offset + 1] & 0xF0) != 0xF0) {
+            return false;
+        }
+        //layer固定为0
+        if ((data[offset + 1] & 0x06) != 0) {
+            return false;
+        }
+        boolean protectionAbsent = (data[offset + 1] & 0x01) != 0;
+        int sampleRateIndex = (data[offset + 2] & 0x3C) >> 2;
+        if (sampleRateIndex >= SAMPLE_RATES.length) {
+            return false;
+        }
+        int frameLength = ((data[offset + 3] & 0x03) << 11)
+                | ((data[offset + 4] & 0xFF) << 3)
+                | ((data[offset + 5] & 0xE0) >> 5);
+        int headerLength = protectionAbsent ? AdtsHeader.HEADER_SIZE : AdtsHeader.HEADER_SIZE + 2;
+        if (frameLength <= headerLength) {
+            return false;
+        }
+        header.profile = ((data[offset + 2] & 0xC0) >> 6) + 1;
+        header.sampleRateIndex = sampleRateIndex;
+        header.channelConfig = ((data[offset + 2] & 0x01) << 2) | ((data[offset + 3] & 0xC0) >> 6);
+        header.frameLength = frameLength;
+        header.headerLength = headerLength;
+        header.rawDataBlocks = (data[offset + 6] & 0x03) + 1;
+        return true;
+    }
+
+    /**
+     * 采样率索引对应的采样率
+     */
+    public static int getSampleRate(int sampleRateIndex) {
+        return SAMPLE_RATES[sampleRateIndex];
+    }
+
+    /**
+     * 采样率对应的索引，不支持的采样率返回-1
+     */
+    public static int getSampleRateIndex(int sampleRate) {
+        for (int i = 0; i < SAMPLE_RATES.length; i++) {
+            if (SAMPLE_RATES[i] == sampleRate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 已解析出的帧数
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 为重新同步而跳过的字节数
+     */
+    public long getSkippedBytes() {
+        return mSkippedBytes;
+    }
+
+    /**
+     * 缓存中尚未组成完整帧的字节数
+     */
+    public int getPendingBytes() {
+        return mBuffered;
+    }
+
+    /**
+     * ADTS帧头，解析时复用同一个对象
+     */
+    public static class AdtsHeader {
+        public static final int HEADER_SIZE = 7;
+
+        /**
+         * 1：Main，2：LC，3：SSR，4：LTP
+         */
+        public int profile;
+        public int sampleRateIndex;
+        public int channelConfig;
+        /**
+         * 包含帧头的帧长度
+         */
+        public int frameLength;
+        public int headerLength;
+        public int rawDataBlocks;
+
+        public int getSampleRate() {
+            return SAMPLE_RATES[sampleRateIndex];
+        }
+
+        public int getSampleCount() {
+            return rawDataBlocks * SAMPLES_PER_RAW_BLOCK;
+        }
+    }
+
+    /**
+     * 帧回调
+     */
+    public interface IFrameListener {
+
+        /**
+         * @param header       帧头，回调结束后会被复用
+         * @param data         帧数据所在的数组，回调结束后会被复用
+         * @param offset       帧在数组中的起始位置（包含帧头）
+         * @param length       帧长度（包含帧头）
+         * @param streamOffset 帧在整个流中的偏移量
+         * @param ptsUs        按采样数推算的时间戳
+         */
+        void onFrame(AdtsHeader header, byte[] data, int offset, int length, long streamOffset, long ptsUs);
+    }
+}
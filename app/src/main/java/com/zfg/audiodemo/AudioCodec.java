@@ -0,0 +1,59 @@
+package com.zfg.audiodemo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 编解码器接口
+ * 与MediaCodec同步模式的缓存队列一致：dequeue输入缓存 -> 填充 -> queue回去，dequeue输出缓存 -> 读取 -> release。
+ * 编码和解码流程只依赖这个接口，既可以跑在MediaCodec上，也可以在JVM上用纯Java实现测试和压测
+ */
+public interface AudioCodec {
+
+    /**
+     * 以下常量与MediaCodec中的取值一致
+     */
+    int BUFFER_FLAG_CODEC_CONFIG = 2;
+    int BUFFER_FLAG_END_OF_STREAM = 4;
+    int INFO_TRY_AGAIN_LATER = -1;
+    int INFO_OUTPUT_FORMAT_CHANGED = -2;
+
+    /**
+     * 配置并进入执行状态
+     */
+    void start();
+
+    /**
+     * @param timeoutUs 小于0表示一直等待，0表示不等待
+     * @return 输入缓存的index，没有可用缓存时返回INFO_TRY_AGAIN_LATER
+     */
+    int dequeueInputBuffer(long timeoutUs);
+
+    ByteBuffer getInputBuffer(int index);
+
+    void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags);
+
+    /**
+     * @return 输出缓存的index，或INFO_TRY_AGAIN_LATER、INFO_OUTPUT_FORMAT_CHANGED等负值
+     */
+    int dequeueOutputBuffer(CodecBufferInfo info, long timeoutUs);
+
+    ByteBuffer getOutputBuffer(int index);
+
+    void releaseOutputBuffer(int index);
+
+    /**
+     * 输出的采样率，INFO_OUTPUT_FORMAT_CHANGED之后有效
+     */
+    int getOutputSampleRate();
+
+    /**
+     * 输出的声道数，INFO_OUTPUT_FORMAT_CHANGED之后有效
+     */
+    int getOutputChannelCount();
+
+    void flush();
+
+    void stop();
+
+    void release();
+}
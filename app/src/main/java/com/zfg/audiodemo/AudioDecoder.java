@@ -1,16 +1,15 @@
 package com.zfg.audiodemo;
 
 import android.media.MediaCodec;
-import android.media.MediaExtractor;
 import android.media.MediaFormat;
+import android.os.Build;
 import android.os.Environment;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.zfg.audiodemo.AudioEncoder.ENCODER_FILE;
 import static com.zfg.audiodemo.MainActivity.FOLDER_NAME;
@@ -22,13 +21,38 @@ import static com.zfg.audiodemo.MainActivity.TAG;
 public class AudioDecoder {
 
     //用于分离出音频轨道
-    private MediaExtractor mMediaExtractor;
-    private MediaCodec mMediaCodec;
-    private MediaCodec.BufferInfo mBufferInfo;
+    private AudioExtractor mExtractor;
+    private AudioCodec mCodec;
     private File mTargetFile;
-    private File mPCMFile;
-    private FileOutputStream mFileOutputStream;
+    private PcmSink mPcmSink;
+    private DecodePipeline mDecodePipeline;
     private IDecodeDelegate mIDecodeDelegate;
+    private CodecPool mCodecPool;
+    /**
+     * 音频总时长，未知时为-1
+     */
+    private long mDurationUs = -1;
+    /**
+     * 从该时间点开始解码，用于断点续解
+     */
+    private long mStartTimeUs;
+
+    /**
+     * 初始化时按异步模式创建解码器
+     */
+    private boolean mAsync;
+    /**
+     * 异步解码的状态，在编解码器的回调线程中修改
+     */
+    private volatile boolean mInputSawEos;
+    private final AtomicBoolean mAsyncFinished = new AtomicBoolean();
+    private final CodecBufferInfo mAsyncBufferInfo = new CodecBufferInfo();
+
+    /**
+     * 输出PCM的格式，以解码器输出格式为准
+     */
+    private int mSampleRate;
+    private int mChannelCount;
 
     /**
      * AAC格式
@@ -36,157 +60,562 @@ public class AudioDecoder {
     private String MINE_TYPE_AAC = "audio/mp4a-latm";
 
     /**
-     * 解码后的pcm文件
+     * 解码后的文件
      */
     public static final String DECODER_FILE = "decoder_file";
 
     /**
-     * 初始化解码器
+     * 解码器输出格式确定之前WAV文件头中使用的格式
+     */
+    private static final int DEFAULT_SAMPLE_RATE = 44100;
+    private static final int DEFAULT_CHANNEL_COUNT = 1;
+
+    /**
+     * 初始化解码器，解码默认的录音文件
      */
     public void initDecoder(IDecodeDelegate iDecodeDelegate) {
+        File sourceFile = findEncodedFile();
+        if (null == sourceFile) {
+            mIDecodeDelegate = iDecodeDelegate;
+            Log.e(TAG, "The source file does not exist!");
+            return;
+        }
+        PcmSink pcmSink;
+        try {
+            //解码结果保存为WAV，格式在解码器输出格式确定后写入文件头
+            pcmSink = new WavWriter(getDecodedFile(), DEFAULT_SAMPLE_RATE, DEFAULT_CHANNEL_COUNT, 16);
+        } catch (IOException e) {
+            e.printStackTrace();
+            mIDecodeDelegate = iDecodeDelegate;
+            return;
+        }
+        initDecoder(sourceFile, pcmSink, iDecodeDelegate);
+    }
 
-        mIDecodeDelegate = iDecodeDelegate;
+    private static String getFolderPath() {
+        return new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + FOLDER_NAME)
+                .getAbsolutePath();
+    }
 
-        File fileFolder = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + FOLDER_NAME);
-        String fileFolderPath = fileFolder.getAbsolutePath();
-        mTargetFile = new File(fileFolderPath + "/" + ENCODER_FILE + ".aac");
+    /**
+     * initDecoder(IDecodeDelegate)解码结果保存的WAV文件
+     */
+    public static File getDecodedFile() {
+        return new File(getFolderPath() + "/" + DECODER_FILE + ".wav");
+    }
+
+    /**
+     * 录音可能保存为不同的封装格式，返回最近录制的一个
+     *
+     * @return 没有录音文件时返回null
+     */
+    public static File findEncodedFile() {
+        String fileFolderPath = getFolderPath();
+        File sourceFile = null;
+        for (OutputContainer container : OutputContainer.values()) {
+            File file = new File(fileFolderPath + "/" + ENCODER_FILE + container.getExtension());
+            if (file.exists() && (null == sourceFile || file.lastModified() > sourceFile.lastModified())) {
+                sourceFile = file;
+            }
+        }
+        return sourceFile;
+    }
+
+    /**
+     * 创建边解码边播放的播放器，不再先解码出完整的PCM文件
+     *
+     * @param sourceFile    要播放的音频文件
+     * @param outputFactory 解码器输出格式确定后创建音频输出
+     * @return 没有音轨或没有对应解码器时返回null
+     */
+    public StreamingPlayer createStreamingPlayer(File sourceFile, StreamingPlayer.IOutputFactory outputFactory) {
+        mTargetFile = sourceFile;
         if (!mTargetFile.exists()) {
             Log.e(TAG, "The source file does not exist!");
-            return;
+            return null;
         }
-        mPCMFile = new File(fileFolderPath + "/" + DECODER_FILE + ".pcm");
-        if (!mPCMFile.exists()) {
-            try {
-                mPCMFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
+        AudioCodec codec = null;
+        try {
+            MediaFormat mediaFormat = createExtractor();
+            if (null == mediaFormat) {
+                Log.e(TAG, "No audio track found in " + mTargetFile);
+                mExtractor.release();
+                return null;
             }
+            String mime = mediaFormat.getString(MediaFormat.KEY_MIME);
+            codec = createCodec(mime, mediaFormat);
+            return new StreamingPlayer(codec, mExtractor, outputFactory);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            //IllegalStateException包括MediaCodec.CodecException
+            Log.e(TAG, "Create media decode failed: " + e);
+            e.printStackTrace();
+            if (null != codec) {
+                codec.release();
+            }
+            if (null != mExtractor) {
+                mExtractor.release();
+            }
+            return null;
         }
+    }
+
+    /**
+     * 初始化解码器
+     *
+     * @param sourceFile      要解码的音频文件
+     * @param pcmFile         解码后的pcm文件
+     * @param iDecodeDelegate 回调
+     */
+    public void initDecoder(File sourceFile, File pcmFile, IDecodeDelegate iDecodeDelegate) {
+        if (!sourceFile.exists()) {
+            mIDecodeDelegate = iDecodeDelegate;
+            Log.e(TAG, "The source file does not exist!");
+            return;
+        }
+        PcmSink pcmSink;
         try {
-            mFileOutputStream = new FileOutputStream(mPCMFile.getAbsoluteFile());
-        } catch (FileNotFoundException e) {
+            pcmSink = new FilePcmSink(pcmFile);
+        } catch (IOException e) {
             e.printStackTrace();
+            mIDecodeDelegate = iDecodeDelegate;
+            return;
         }
-        mMediaExtractor = new MediaExtractor();
+        initDecoder(sourceFile, pcmSink, iDecodeDelegate);
+    }
+
+    /**
+     * 初始化解码器
+     *
+     * @param sourceFile      要解码的音频文件
+     * @param pcmSink         解码后的PCM数据去向，解码结束时会被关闭
+     * @param iDecodeDelegate 回调
+     */
+    public void initDecoder(File sourceFile, PcmSink pcmSink, IDecodeDelegate iDecodeDelegate) {
+
+        mIDecodeDelegate = iDecodeDelegate;
+        mPcmSink = pcmSink;
+
+        mTargetFile = sourceFile;
+        if (!mTargetFile.exists()) {
+            Log.e(TAG, "The source file does not exist!");
+            return;
+        }
+        AudioCodec codec = null;
         try {
-            //设置资源
-            mMediaExtractor.setDataSource(mTargetFile.getAbsolutePath());
             //获取含有音频的MediaFormat
-            MediaFormat mediaFormat = createMediaFormat();
-            mMediaCodec = MediaCodec.createDecoderByType(MINE_TYPE_AAC);
-            //解码时最后一个参数设置为0
-            mMediaCodec.configure(mediaFormat, null, null, 0);
-            if (mMediaCodec == null) {
-                Log.e(TAG, "Create media decode failed");
+            MediaFormat mediaFormat = createExtractor();
+            if (null == mediaFormat) {
+                //decode()时发现没有初始化成功，释放资源并回调失败
+                Log.e(TAG, "No audio track found in " + mTargetFile);
                 return;
             }
-            //进入Runnable状态
-            mMediaCodec.start();
-            mBufferInfo = new MediaCodec.BufferInfo();
-            Log.i(TAG, "Create media decode succeed");
-        } catch (IOException e) {
+            if (mediaFormat.containsKey(MediaFormat.KEY_DURATION)) {
+                mDurationUs = mediaFormat.getLong(MediaFormat.KEY_DURATION);
+            }
+            //按音轨的实际格式创建解码器，不再固定为AAC
+            String mime = mediaFormat.getString(MediaFormat.KEY_MIME);
+            //configure和start放到decode()/decodeAsync()中，异步模式需要在configure之前设置回调
+            codec = createCodec(mime, mediaFormat);
+            initDecoder(codec, mExtractor, pcmSink, iDecodeDelegate);
+            Log.i(TAG, "Create media decode succeed, mime = " + mime);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            //设备上没有该格式的解码器，或者解码器创建时出错（MediaCodec.CodecException）
+            Log.e(TAG, "Create media decode failed: " + e);
             e.printStackTrace();
+            failInit(codec);
         }
     }
 
-    private MediaFormat createMediaFormat() {
-        //获取文件的轨道数，做循环得到含有音频的mediaFormat
-        for (int i = 0; i < mMediaExtractor.getTrackCount(); i++) {
-            MediaFormat mediaFormat = mMediaExtractor.getTrackFormat(i);
-            //MediaFormat键值对应
-            String mime = mediaFormat.getString(MediaFormat.KEY_MIME);
-            if (mime.contains("audio/")) {
-                mMediaExtractor.selectTrack(i);
-                return mediaFormat;
+    /**
+     * 初始化出错：释放已经创建的解码器、数据源和输出，立即回调失败，之后的decode()/decodeAsync()不会再次回调
+     */
+    private void failInit(AudioCodec codec) {
+        if (null != codec) {
+            codec.release();
+        }
+        mCodec = null;
+        mDecodePipeline = null;
+        releaseOnInitFailure();
+        mExtractor = null;
+        mPcmSink = null;
+        notifyResult(false);
+        mIDecodeDelegate = null;
+    }
+
+    /**
+     * 使用指定的解码器和数据源初始化，可以传入纯Java实现在JVM上运行
+     *
+     * @param codec           尚未start的解码器
+     * @param extractor       数据源
+     * @param pcmSink         解码后的PCM数据去向，解码结束时会被关闭
+     * @param iDecodeDelegate 回调
+     */
+    public void initDecoder(AudioCodec codec, AudioExtractor extractor, PcmSink pcmSink, IDecodeDelegate iDecodeDelegate) {
+        mIDecodeDelegate = iDecodeDelegate;
+        mCodec = codec;
+        mExtractor = extractor;
+        mPcmSink = pcmSink;
+        mDecodePipeline = new DecodePipeline(codec, extractor, pcmSink);
+        mDecodePipeline.setOutputListener(new DecodePipeline.IOutputListener() {
+            @Override
+            public void onOutputFormatChanged(int sampleRate, int channelCount) {
+                updateOutputFormat(sampleRate, channelCount);
+            }
+
+            @Override
+            public void onOutputBuffer(long presentationTimeUs, int size) {
+                if (null != mIDecodeDelegate) {
+                    mIDecodeDelegate.decodeProgress(presentationTimeUs, mDurationUs);
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置解码器复用池，需要在初始化之前调用
+     * 设置后相同格式的文件复用已经配置好的解码器
+     */
+    public void setCodecPool(CodecPool codecPool) {
+        mCodecPool = codecPool;
+    }
+
+    /**
+     * 按异步模式创建解码器，需要在初始化之前调用，之后用decodeAsync()解码
+     * MediaCodec的同步和异步模式在configure时确定，复用池中两种模式的解码器分开保存；
+     * 没有设置时decodeAsync()只能用于不经过复用池的解码器
+     */
+    public void setAsync(boolean async) {
+        mAsync = async;
+    }
+
+    /**
+     * 创建解码器，设置了复用池时从池中取出
+     */
+    private AudioCodec createCodec(final String mime, final MediaFormat mediaFormat) throws IOException {
+        //带Handler的setCallback需要API 23
+        final boolean async = mAsync && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+        if (null == mCodecPool) {
+            return createMediaCodec(mime, mediaFormat, async);
+        }
+        String key = getPoolKey(mime, mediaFormat) + (async ? ":async" : "");
+        return mCodecPool.acquire(key, new CodecPool.ICodecFactory() {
+            @Override
+            public AudioCodec createCodec() throws IOException {
+                return createMediaCodec(mime, mediaFormat, async);
             }
+        });
+    }
+
+    private static MediaCodecAdapter createMediaCodec(String mime, MediaFormat mediaFormat, boolean async)
+            throws IOException {
+        MediaCodecAdapter codec = MediaCodecAdapter.createDecoder(mime, mediaFormat);
+        if (async) {
+            try {
+                codec.enableAsync();
+            } catch (RuntimeException e) {
+                //还没有交给调用方，在这里释放
+                codec.release();
+                throw e;
+            }
+        }
+        return codec;
+    }
+
+    /**
+     * 复用池中区分解码器配置的key，AAC的配置信息不同时不能共用解码器
+     */
+    private static String getPoolKey(String mime, MediaFormat mediaFormat) {
+        StringBuilder key = new StringBuilder("decoder:").append(mime);
+        if (mediaFormat.containsKey(MediaFormat.KEY_SAMPLE_RATE)) {
+            key.append(':').append(mediaFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE));
+        }
+        if (mediaFormat.containsKey(MediaFormat.KEY_CHANNEL_COUNT)) {
+            key.append(':').append(mediaFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+        }
+        ByteBuffer csd = mediaFormat.containsKey("csd-0") ? mediaFormat.getByteBuffer("csd-0") : null;
+        if (null != csd) {
+            for (int i = csd.position(); i < csd.limit(); i++) {
+                key.append(i == csd.position() ? ':' : '.').append(csd.get(i) & 0xFF);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * 创建数据源
+     * 自己录制的ADTS文件带有帧索引，直接用AdtsExtractor读取，seek不需要扫描文件；
+     * 其他文件交给MediaExtractor
+     *
+     * @return 音轨的格式，没有音轨时返回null
+     */
+    private MediaFormat createExtractor() throws IOException {
+        File indexFile = new File(mTargetFile.getAbsolutePath() + AdtsFrameIndex.INDEX_SUFFIX);
+        if (indexFile.exists()) {
+            AdtsExtractor adtsExtractor = new AdtsExtractor(mTargetFile, AdtsFrameIndex.read(indexFile));
+            mExtractor = adtsExtractor;
+            MediaFormat mediaFormat = MediaFormat.createAudioFormat(MINE_TYPE_AAC,
+                    adtsExtractor.getSampleRate(), adtsExtractor.getChannelConfig());
+            mediaFormat.setByteBuffer("csd-0", ByteBuffer.wrap(adtsExtractor.getAudioSpecificConfig()));
+            if (adtsExtractor.getDurationUs() > 0) {
+                mediaFormat.setLong(MediaFormat.KEY_DURATION, adtsExtractor.getDurationUs());
+            }
+            return mediaFormat;
+        }
+        MediaExtractorAdapter extractorAdapter = new MediaExtractorAdapter(mTargetFile.getAbsolutePath());
+        mExtractor = extractorAdapter;
+        return extractorAdapter.getTrackFormat();
+    }
+
+    /**
+     * 只读取一遍文件，并行解码其中所有的音频轨，每条音轨按自己的MIME类型创建解码器
+     * 阻塞调用线程，适合多语言、多分轨的文件
+     *
+     * @param sourceFile  要解码的音频文件
+     * @param sinkFactory 为每条音轨创建PCM输出
+     * @return 是否所有音轨都解码成功
+     */
+    public static boolean decodeTracks(File sourceFile, MultiTrackDecoder.ITrackSinkFactory sinkFactory)
+            throws IOException {
+        final MediaMultiTrackExtractor extractor = new MediaMultiTrackExtractor(sourceFile.getAbsolutePath());
+        MultiTrackDecoder decoder = new MultiTrackDecoder(extractor, new MultiTrackDecoder.IDecoderFactory() {
+            @Override
+            public AudioCodec createDecoder(int track, String mime) throws IOException {
+                return MediaCodecAdapter.createDecoder(mime, extractor.getTrackFormat(track));
+            }
+        }, sinkFactory);
+        int[] tracks = decoder.findAudioTracks();
+        if (tracks.length == 0) {
+            Log.e(TAG, "No audio track found in " + sourceFile);
+        }
+        boolean succeed = decoder.decode(tracks);
+        for (int track : tracks) {
+            Log.i(TAG, "Track " + track + " decoded " + decoder.getDecodedBytes(track) + " bytes, succeed = "
+                    + decoder.isTrackSucceeded(track));
         }
-        return null;
+        return succeed;
     }
 
     /**
-     * 开始解码
+     * 设置解码的起始时间，需要在decode()/decodeAsync()之前调用
+     */
+    public void setStartTimeUs(long startTimeUs) {
+        mStartTimeUs = startTimeUs;
+    }
+
+    /**
+     * 开始解码（同步模式，在调用线程中轮询输入输出缓存）
      */
     public void decode() {
+        if (null == mDecodePipeline) {
+            releaseOnInitFailure();
+            notifyResult(false);
+            return;
+        }
+        boolean succeed = true;
+        try {
+            startCodec();
+            mDecodePipeline.run();
+        } catch (IOException | IllegalStateException e) {
+            e.printStackTrace();
+            succeed = false;
+        }
+        notifyResult(releaseResources() && succeed);
+    }
 
-        boolean inputSawEos = false;
-        boolean outputSawEos = false;
-        long timeout = 5000;
-
-        while (!outputSawEos) {
-            if (!inputSawEos) {
-                //每5000毫秒查询一次
-                int inputIndex = mMediaCodec.dequeueInputBuffer(timeout);
-                //输入缓存index可用
-                if (inputIndex >= 0) {
-                    //获取可用的输入缓存
-                    ByteBuffer inputBuffer = mMediaCodec.getInputBuffer(inputIndex);
-                    //从MediaExtractor读取数据到输入缓存中，返回读取长度
-                    int bufferSize = mMediaExtractor.readSampleData(inputBuffer, 0);
-                    if (bufferSize <= 0) {//已经读取完
-                        //标志输入完毕
-                        inputSawEos = true;
-                        //做标识
-                        mMediaCodec.queueInputBuffer(inputIndex, 0, 0, timeout, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                    } else {
-                        long time = mMediaExtractor.getSampleTime();
-                        //将输入缓存放入MediaCodec中
-                        mMediaCodec.queueInputBuffer(inputIndex, 0, bufferSize, time, 0);
-                        //指向下一帧
-                        mMediaExtractor.advance();
-                    }
+    /**
+     * 开始解码（异步模式）
+     * 通过MediaCodec.setCallback在编解码器的回调线程上接收缓存可用的回调，不再轮询，
+     * 调用后立即返回，解码完成后通过IDecodeDelegate.decodeResult通知，只通知一次
+     */
+    public void decodeAsync() {
+        if (null == mDecodePipeline) {
+            releaseOnInitFailure();
+            notifyResult(false);
+            return;
+        }
+        //复用池中取出的解码器需要拿到里面的MediaCodecAdapter设置回调
+        AudioCodec codec = CodecPool.unwrap(mCodec);
+        //带Handler的setCallback需要API 23，低版本或非MediaCodec实现退回同步模式
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || !(codec instanceof MediaCodecAdapter)) {
+            decode();
+            return;
+        }
+        final MediaCodecAdapter codecAdapter = (MediaCodecAdapter) codec;
+        if (!codecAdapter.isAsync()) {
+            if (codec != mCodec || codecAdapter.isConfigured()) {
+                //复用池中同步模式的解码器不能再切换
+                decode();
+                return;
+            }
+            codecAdapter.enableAsync();
+        }
+        mAsyncFinished.set(false);
+        mInputSawEos = false;
+        codecAdapter.setCallback(new MediaCodec.Callback() {
+            @Override
+            public void onInputBufferAvailable(MediaCodec codec, int index) {
+                if (mInputSawEos || mAsyncFinished.get()) {
+                    return;
+                }
+                try {
+                    //有可用的输入缓存时才从数据源读取
+                    mInputSawEos = mDecodePipeline.queueInput(index);
+                } catch (IllegalStateException e) {
+                    //与同步模式一样按解码失败处理，异常不能抛到回调线程上
+                    e.printStackTrace();
+                    finishAsync(codecAdapter, false);
                 }
             }
-            //获取输出缓存，需要传入MediaCodec.BufferInfo 用于存储ByteBuffer信息
-            int outputIndex = mMediaCodec.dequeueOutputBuffer(mBufferInfo, timeout);
-            if (outputIndex >= 0) {
-                if ((mBufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
-                    mMediaCodec.releaseOutputBuffer(outputIndex, false);
-                    continue;
+
+            @Override
+            public void onOutputBufferAvailable(MediaCodec codec, int index, MediaCodec.BufferInfo info) {
+                if (mAsyncFinished.get()) {
+                    return;
                 }
-                //有输出数据
-                if (mBufferInfo.size > 0) {
-                    //获取输出缓存
-                    ByteBuffer outputBuffer = mMediaCodec.getOutputBuffer(outputIndex);
-                    //设置ByteBuffer的position位置
-                    outputBuffer.position(mBufferInfo.offset);
-                    //设置ByteBuffer访问的结点
-                    outputBuffer.limit(mBufferInfo.offset + mBufferInfo.size);
-                    byte[] targetData = new byte[mBufferInfo.size];
-                    //将数据填充到数组中
-                    outputBuffer.get(targetData);
-                    try {
-                        mFileOutputStream.write(targetData);
-                    } catch (IOException e) {
-                        e.printStackTrace();
+                mAsyncBufferInfo.set(info.offset, info.size, info.presentationTimeUs, info.flags);
+                try {
+                    if (mDecodePipeline.handleOutput(index, mAsyncBufferInfo)) {
+                        finishAsync(codecAdapter, true);
                     }
-                }
-                //释放输出缓存
-                mMediaCodec.releaseOutputBuffer(outputIndex, false);
-                //判断缓存是否完结
-                if ((mBufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                    outputSawEos = true;
+                } catch (IOException | IllegalStateException e) {
+                    e.printStackTrace();
+                    finishAsync(codecAdapter, false);
                 }
             }
-        }
-        //释放资源
+
+            @Override
+            public void onError(MediaCodec codec, MediaCodec.CodecException e) {
+                Log.e(TAG, "Decode error: " + e.toString());
+                finishAsync(codecAdapter, false);
+            }
+
+            @Override
+            public void onOutputFormatChanged(MediaCodec codec, MediaFormat format) {
+                Log.i(TAG, "Decode output format changed: " + format);
+                updateOutputFormat(codecAdapter.getOutputSampleRate(), codecAdapter.getOutputChannelCount());
+            }
+        });
         try {
-            mFileOutputStream.flush();
-            mFileOutputStream.close();
-            mMediaCodec.stop();
-            mMediaCodec.release();
-            mMediaExtractor.release();
-            if (null != mIDecodeDelegate) {
-                mIDecodeDelegate.decodeResult(true);
+            //复用的解码器flush之后需要重新start才会回调输入缓存
+            boolean reused = codecAdapter.isConfigured();
+            startCodec();
+            if (reused) {
+                codecAdapter.resume();
             }
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            finishAsync(codecAdapter, false);
+        }
+    }
+
+    private void startCodec() {
+        if (mStartTimeUs > 0) {
+            mExtractor.seekTo(mStartTimeUs);
+        }
+        //进入Runnable状态
+        mCodec.start();
+        updateOutputFormat(mCodec.getOutputSampleRate(), mCodec.getOutputChannelCount());
+    }
+
+    private void updateOutputFormat(int sampleRate, int channelCount) {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        if (mPcmSink instanceof WavWriter) {
+            //WAV文件头记录实际的输出格式
+            ((WavWriter) mPcmSink).setFormat(sampleRate, channelCount);
+        }
+    }
+
+    /**
+     * 已经写出的PCM字节数
+     */
+    public long getDecodedBytes() {
+        return null == mDecodePipeline ? 0 : mDecodePipeline.getDecodedBytes();
+    }
+
+    /**
+     * 已解码的音频时长（秒），按16位PCM计算
+     */
+    public double getDecodedSeconds() {
+        if (mSampleRate <= 0 || mChannelCount <= 0) {
+            return 0;
+        }
+        return getDecodedBytes() / (2.0 * mChannelCount * mSampleRate);
+    }
+
+    /**
+     * 释放资源
+     *
+     * @return 是否正常释放
+     */
+    private boolean releaseResources() {
+        boolean succeed = true;
+        try {
+            mPcmSink.flush();
+            mPcmSink.close();
         } catch (IOException e) {
             e.printStackTrace();
+            succeed = false;
+        }
+        try {
+            mCodec.stop();
+        } catch (IllegalStateException e) {
+            //出错的解码器stop会失败，仍然需要release
+            e.printStackTrace();
+            succeed = false;
+        }
+        mCodec.release();
+        mExtractor.release();
+        return succeed;
+    }
+
+    /**
+     * 初始化失败时释放已经打开的资源
+     */
+    private void releaseOnInitFailure() {
+        if (null != mPcmSink) {
+            try {
+                mPcmSink.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (null != mExtractor) {
+            mExtractor.release();
+        }
+    }
+
+    /**
+     * 结束异步解码，已经排队的回调和出错路径可能重复调用，只有第一次释放资源并通知结果
+     */
+    private void finishAsync(MediaCodecAdapter codecAdapter, boolean succeed) {
+        if (!mAsyncFinished.compareAndSet(false, true)) {
+            return;
+        }
+        //之后的回调不再转发给这次解码，解码器放回复用池后由下一个会话设置
+        codecAdapter.setCallback(null);
+        notifyResult(releaseResources() && succeed);
+    }
+
+    private void notifyResult(boolean isFinish) {
+        if (null != mIDecodeDelegate) {
+            mIDecodeDelegate.decodeResult(isFinish);
         }
     }
 
     /**
-     * 是否解码完成回调
+     * 解码进度及是否解码完成回调
      */
     interface IDecodeDelegate {
+
+        /**
+         * 每输出一个PCM缓存回调一次
+         *
+         * @param presentationTimeUs 当前缓存的时间戳
+         * @param durationUs         总时长，未知时为-1
+         */
+        void decodeProgress(long presentationTimeUs, long durationUs);
+
         void decodeResult(boolean isFinish);
     }
 }
@@ -1,6 +1,5 @@
 package com.zfg.audiodemo;
 
-import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
 import android.media.MediaFormat;
 import android.os.Environment;
@@ -9,7 +8,7 @@ import android.util.Log;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import static com.zfg.audiodemo.MainActivity.FOLDER_NAME;
 import static com.zfg.audiodemo.MainActivity.TAG;
@@ -18,11 +17,17 @@ import static com.zfg.audiodemo.MainActivity.TAG;
  * 音频编码器
  * 使用MediaCodec将PCM编码成AAC
  */
-public class AudioEncoder {
+public class AudioEncoder implements PcmEncoder {
 
-    private MediaCodec mMediaCodec;
-    private MediaCodec.BufferInfo mBufferInfo;
+    private AudioCodec mCodec;
     private FileOutputStream mFileOutputStream;
+    private FileChannel mFileChannel;
+    private AacFrameSink mFrameSink;
+    private AdtsFrameIndex.Writer mIndexWriter;
+    private EncodePipeline mEncodePipeline;
+    private SampleClock mSampleClock;
+    private OutputContainer mOutputContainer = OutputContainer.ADTS;
+    private CodecPool mCodecPool;
 
     /**
      * AAC格式
@@ -35,147 +40,308 @@ public class AudioEncoder {
     private int BIT_RATE = 128 * 1024;
 
     /**
-     * 采样率
+     * 默认采样率
      */
     private static final int SAMPLE_RATE_HZ = 44100;
 
     /**
-     * 声道数
+     * 默认声道数
      */
     private static final int CHANNEL_COUNT = 1;
 
     /**
-     * 缓存大小
+     * 默认缓存大小
      */
     private static final int MAX_BUFFER_SIZE = 10 * 1024;
 
+    /**
+     * 停止时等待编码器输出EOS的最长时间（微秒）
+     */
+    private static final long STOP_TIMEOUT_US = 500 * 1000;
+
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final int mMaxInputSize;
+
     /**
      * 编码后的aac文件
      */
     public static final String ENCODER_FILE = "encoder_file";
 
+    public AudioEncoder() {
+        this(SAMPLE_RATE_HZ, CHANNEL_COUNT, MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * @param sampleRate   采样率，需要是ADTS支持的采样率
+     * @param channelCount 声道数
+     * @param maxInputSize 单次送入编码器的最大字节数
+     */
+    public AudioEncoder(int sampleRate, int channelCount, int maxInputSize) {
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mMaxInputSize = Math.max(maxInputSize, MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * 设置时间戳时钟，需要在初始化之前调用；多个编码器共用一个时钟时时间戳是连续的。
+     * 不设置时按本编码器送入的采样数从0开始计时
+     */
+    public void setSampleClock(SampleClock sampleClock) {
+        mSampleClock = sampleClock;
+    }
+
+    public SampleClock getSampleClock() {
+        return mSampleClock;
+    }
+
+    /**
+     * 设置封装格式，需要在初始化之前调用，默认为ADTS
+     */
+    public void setOutputContainer(OutputContainer outputContainer) {
+        mOutputContainer = outputContainer;
+    }
+
+    public OutputContainer getOutputContainer() {
+        return mOutputContainer;
+    }
+
+    /**
+     * 设置编码器复用池，需要在初始化之前调用；设置后停止编码时编码器放回池中，不再释放
+     */
+    public void setCodecPool(CodecPool codecPool) {
+        mCodecPool = codecPool;
+    }
+
+    /**
+     * 按当前参数预先创建并启动一个编码器放进复用池，之后开始录音时不需要等待创建
+     */
+    public void prewarm() throws IOException {
+        if (null == mCodecPool) {
+            return;
+        }
+        final MediaFormat mediaFormat = createMediaFormat();
+        mCodecPool.prewarm(getPoolKey(), new CodecPool.ICodecFactory() {
+            @Override
+            public AudioCodec createCodec() throws IOException {
+                return MediaCodecAdapter.createEncoder(mediaFormat);
+            }
+        });
+    }
+
     /**
      * 初始化编码器
      */
     public void initEncoder() {
+        //创建文件夹
+        File fileFolder = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + FOLDER_NAME);
+        if (!fileFolder.exists()) {
+            fileFolder.mkdir();
+        }
+        String fileFolderPath = fileFolder.getAbsolutePath();
+        final File file = new File(fileFolderPath + "/" + ENCODER_FILE + mOutputContainer.getExtension());
         try {
-            //创建文件夹
-            File fileFolder = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + FOLDER_NAME);
-            if (!fileFolder.exists()) {
-                fileFolder.mkdir();
-            }
-            String fileFolderPath = fileFolder.getAbsolutePath();
-            final File file = new File(fileFolderPath + "/" + ENCODER_FILE + ".aac");
-            if (!file.exists()) {
-                try {
-                    file.createNewFile();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            mFileOutputStream = new FileOutputStream(file.getAbsoluteFile());
-
-            //设置编码参数
-            MediaFormat mediaFormat = MediaFormat.createAudioFormat(MINE_TYPE_AAC, SAMPLE_RATE_HZ, CHANNEL_COUNT);
-            mediaFormat.setInteger(MediaFormat.KEY_BIT_RATE, BIT_RATE);
-            mediaFormat.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
-            mediaFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, MAX_BUFFER_SIZE);
-            //根据类型实例化一个编码器
-            mMediaCodec = MediaCodec.createEncoderByType(MINE_TYPE_AAC);
-            //MediaCodec.CONFIGURE_FLAG_ENCODE 表示需要配置一个编码器，而不是解码器
-            mMediaCodec.configure(mediaFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
-            if (mMediaCodec == null) {
-                Log.e(TAG, "Create media encode failed");
-                return;
-            }
-            //start（）后进入执行状态，才能做后续的操作
-            mMediaCodec.start();
-            //解码后的数据，包含每一个buffer的元数据信息
-            mBufferInfo = new MediaCodec.BufferInfo();
+            initEncoder(file);
             Log.i(TAG, "Create media encode succeed");
         } catch (IOException e) {
+            Log.e(TAG, "Create media encode failed");
             e.printStackTrace();
         }
     }
 
     /**
-     * 编码
+     * 使用MediaCodec编码到指定文件
      *
-     * @param data
+     * @param aacFile 编码后的aac文件
      */
-    public void encodeData(byte[] data) {
-        //dequeueInputBuffer（time）需要传入一个时间值，-1表示一直等待，0表示不等待有可能会丢帧，其他表示等待多少毫秒
-        //获取输入缓存的index
-        int inputIndex = mMediaCodec.dequeueInputBuffer(-1);
-        if (inputIndex >= 0) {
-            ByteBuffer inputByteBuffer = mMediaCodec.getInputBuffer(inputIndex);
-            inputByteBuffer.clear();
-            //添加数据
-            inputByteBuffer.put(data);
-            //限制ByteBuffer的访问长度
-            inputByteBuffer.limit(data.length);
-            //把输入缓存塞回去给MediaCodec
-            mMediaCodec.queueInputBuffer(inputIndex, 0, data.length, 0, 0);
+    public void initEncoder(File aacFile) throws IOException {
+        final MediaFormat mediaFormat = createMediaFormat();
+        if (null == mCodecPool) {
+            //根据类型实例化一个编码器
+            initEncoder(MediaCodecAdapter.createEncoder(mediaFormat), aacFile);
+            return;
         }
+        //相同参数的编码器已经配置好，flush后直接复用
+        AudioCodec codec = mCodecPool.acquire(getPoolKey(), new CodecPool.ICodecFactory() {
+            @Override
+            public AudioCodec createCodec() throws IOException {
+                return MediaCodecAdapter.createEncoder(mediaFormat);
+            }
+        });
+        try {
+            initEncoder(codec, aacFile);
+        } catch (IOException e) {
+            //输出文件打开失败，编码器放回池中
+            codec.release();
+            throw e;
+        }
+    }
 
-        //获取输出缓存的index
-        int outputIndex = mMediaCodec.dequeueOutputBuffer(mBufferInfo, 0);
-        while (outputIndex >= 0) {
-            //获取缓存信息的长度
-            int byteBufSize = mBufferInfo.size;
-            //添加ADTS头部后的长度
-            int bytePacketSize = byteBufSize + 7;
-
-            ByteBuffer outByteBuffer = mMediaCodec.getOutputBuffer(outputIndex);
-            outByteBuffer.position(mBufferInfo.offset);
-            outByteBuffer.limit(mBufferInfo.offset + mBufferInfo.size);
+    /**
+     * 设置编码参数
+     */
+    private MediaFormat createMediaFormat() {
+        MediaFormat mediaFormat = MediaFormat.createAudioFormat(MINE_TYPE_AAC, mSampleRate, mChannelCount);
+        mediaFormat.setInteger(MediaFormat.KEY_BIT_RATE, BIT_RATE);
+        mediaFormat.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        mediaFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, mMaxInputSize);
+        return mediaFormat;
+    }
 
-            byte[] targetByte = new byte[bytePacketSize];
-            //添加ADTS头部
-            addADTStoPacket(targetByte, bytePacketSize);
-            //将编码得到的AAC数据 取出到byte[]中 偏移量offset=7
-            outByteBuffer.get(targetByte, 7, byteBufSize);
+    /**
+     * 复用池中区分编码器配置的key
+     */
+    private String getPoolKey() {
+        return "encoder:" + MINE_TYPE_AAC + ":" + mSampleRate + ":" + mChannelCount + ":" + BIT_RATE + ":"
+                + mMaxInputSize;
+    }
 
-            outByteBuffer.position(mBufferInfo.offset);
+    /**
+     * 使用指定的编码器初始化，可以传入纯Java实现在JVM上运行
+     *
+     * @param codec   尚未start的编码器，也可以是复用池中已经start的编码器
+     * @param aacFile 编码后的aac文件
+     */
+    public void initEncoder(AudioCodec codec, File aacFile) throws IOException {
+        switch (mOutputContainer) {
+            case M4A:
+                //MediaMuxer自己打开文件，结束时写出采样表
+                mFrameSink = new Mp4MuxerWriter(aacFile.getAbsoluteFile(), mSampleRate, mChannelCount);
+                break;
+            case FRAGMENTED_MP4:
+                mFileOutputStream = new FileOutputStream(aacFile.getAbsoluteFile());
+                mFileChannel = mFileOutputStream.getChannel();
+                try {
+                    mFrameSink = new FragmentedMp4Writer(mFileChannel, mSampleRate, mChannelCount);
+                } catch (IOException | RuntimeException e) {
+                    closeOutputFile();
+                    throw e;
+                }
+                break;
+            default:
+                mFileOutputStream = new FileOutputStream(aacFile.getAbsoluteFile());
+                mFileChannel = mFileOutputStream.getChannel();
+                try {
+                    //复用的ADTS帧缓存，按最大输入大小预分配，头部按实际的采样率和声道数生成
+                    AdtsFrameWriter adtsFrameWriter = new AdtsFrameWriter(mFileChannel, mMaxInputSize, mSampleRate,
+                            mChannelCount);
+                    //编码的同时生成帧索引，用于快速seek
+                    mIndexWriter = new AdtsFrameIndex.Writer(
+                            new File(aacFile.getAbsolutePath() + AdtsFrameIndex.INDEX_SUFFIX), mSampleRate);
+                    adtsFrameWriter.setIndexWriter(mIndexWriter);
+                    mFrameSink = adtsFrameWriter;
+                } catch (IOException | RuntimeException e) {
+                    //分段录音每段都会打开新文件，初始化失败时也要关闭已经打开的aac文件
+                    closeOutputFile();
+                    throw e;
+                }
+                break;
+        }
 
-            try {
-                mFileOutputStream.write(targetByte);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            //释放
-            mMediaCodec.releaseOutputBuffer(outputIndex, false);
-            outputIndex = mMediaCodec.dequeueOutputBuffer(mBufferInfo, 0);
+        mCodec = codec;
+        //start（）后进入执行状态，才能做后续的操作
+        mCodec.start();
+        mEncodePipeline = new EncodePipeline(mCodec, mFrameSink);
+        if (null == mSampleClock) {
+            //编码器输入固定为16位PCM
+            mSampleClock = new SampleClock(mSampleRate, mChannelCount * 2);
         }
+        mEncodePipeline.setSampleClock(mSampleClock);
     }
 
     /**
-     * 给编码出的aac裸流添加adts头字段
+     * 编码
      *
-     * @param packet    要空出前7个字节，否则会搞乱数据
-     * @param packetLen
+     * @param data
      */
-    private void addADTStoPacket(byte[] packet, int packetLen) {
-        int profile = 2;  //AAC LC
-        int freqIdx = 4;  //44.1KHz
-        int chanCfg = 2;  //CPE
-        packet[0] = (byte) 0xFF;
-        packet[1] = (byte) 0xF9;
-        packet[2] = (byte) (((profile - 1) << 6) + (freqIdx << 2) + (chanCfg >> 2));
-        packet[3] = (byte) (((chanCfg & 3) << 6) + (packetLen >> 11));
-        packet[4] = (byte) ((packetLen & 0x7FF) >> 3);
-        packet[5] = (byte) (((packetLen & 7) << 5) + 0x1F);
-        packet[6] = (byte) 0xFC;
+    public void encodeData(byte[] data) {
+        encodeData(data, data.length);
+    }
+
+    /**
+     * 编码
+     *
+     * @param data   PCM数据
+     * @param length 有效数据长度
+     */
+    public void encodeData(byte[] data, int length) {
+        encodeData(data, 0, length);
+    }
+
+    @Override
+    public void encodeData(byte[] data, int offset, int length) {
+        if (null == mEncodePipeline) {
+            return;
+        }
+        try {
+            mEncodePipeline.encode(data, offset, length);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return null == mFrameSink ? 0 : mFrameSink.getBytesWritten();
     }
 
     /**
      * 停止编码
      */
+    @Override
     public void stopEncode() {
-        if (mMediaCodec != null) {
-            mMediaCodec.stop();
-            mMediaCodec.release();
-            Log.i(TAG, "Stop encode");
+        long start = System.nanoTime();
+        int flushedFrames = 0;
+        if (mEncodePipeline != null) {
+            //先送入EOS取出编码器中剩余的帧，再停止编码器，结尾不会丢帧
+            try {
+                flushedFrames = mEncodePipeline.finish(STOP_TIMEOUT_US);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (!mEncodePipeline.isEndOfStream()) {
+                Log.w(TAG, "Encoder did not reach EOS within " + STOP_TIMEOUT_US + "us");
+            }
+            mEncodePipeline = null;
+        }
+        if (mFrameSink != null) {
+            //MP4在这里写出最后一个分片或采样表
+            try {
+                mFrameSink.finish();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (mCodec != null) {
+            //从复用池中取出的编码器在这里放回池中
+            mCodec.stop();
+            mCodec.release();
+            mCodec = null;
+        }
+        if (mIndexWriter != null) {
+            try {
+                mIndexWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mIndexWriter = null;
+        }
+        //分段录音会打开很多文件，需要及时关闭
+        closeOutputFile();
+        long stopUs = (System.nanoTime() - start) / 1000;
+        MetricsRegistry.getDefault().histogram("encode.stop_us").record(stopUs);
+        Log.i(TAG, "Stop encode, flushed " + flushedFrames + " frames in " + stopUs + "us");
+    }
+
+    private void closeOutputFile() {
+        if (mFileOutputStream != null) {
+            try {
+                mFileOutputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mFileOutputStream = null;
+            mFileChannel = null;
         }
     }
 }
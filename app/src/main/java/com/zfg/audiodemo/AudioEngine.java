@@ -0,0 +1,1069 @@
+package com.zfg.audiodemo;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.Environment;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.zfg.audiodemo.MainActivity.FOLDER_NAME;
+import static com.zfg.audiodemo.MainActivity.TAG;
+
+/**
+ * 录音、播放和解码引擎
+ * 由AudioEngineService持有，不随Activity销毁和重建；录音、编码和播放在AudioScheduler的实时线程中运行，解码在离线线程池中运行。
+ * 编解码器用完后flush放回CodecPool，下一次相同配置的会话直接复用，开始录音不再等待创建和配置MediaCodec。
+ * 所有操作立即返回Future，结果通过IEngineListener通知，回调在工作线程中
+ */
+public class AudioEngine {
+
+    /**
+     * 采样率，现在能够保证在所有设备上使用的采样率是44100Hz, 但是其他的采样率（22050, 16000, 11025）在一些设备上也可以使用。
+     * 实际录音时优先使用设备的原生采样率，见FormatNegotiator
+     */
+    private static final int SAMPLE_RATE_HZ = 44100;
+
+    /**
+     * 编码采样率，0表示与录音采样率相同，不同时录音数据会先重采样
+     */
+    private static final int ENCODE_SAMPLE_RATE_HZ = 0;
+
+    /**
+     * 录音声道数，CHANNEL_IN_MONO and CHANNEL_IN_STEREO. 其中CHANNEL_IN_MONO是可以保证在所有设备能够使用的。
+     */
+    private static final int CHANNEL_IN_CONFIG = AudioFormat.CHANNEL_IN_MONO;
+
+    /**
+     * 返回的音频数据的格式，ENCODING_PCM_8BIT, ENCODING_PCM_16BIT, and ENCODING_PCM_FLOAT.
+     */
+    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
+
+    /**
+     * 录音的声道数和采样位数，与CHANNEL_IN_CONFIG、AUDIO_FORMAT对应，写入WAV文件头
+     */
+    private static final int RECORD_CHANNEL_COUNT = 1;
+    private static final int RECORD_BITS_PER_SAMPLE = 16;
+
+    /**
+     * 保存的文件
+     */
+    private static final String RECODE_FILE = "recode_file";
+    /**
+     * 运行指标的导出文件
+     */
+    private static final String METRICS_FILE = "metrics.json";
+
+    /**
+     * 分段录音的目录、每个分段的时长和保留时长
+     */
+    private static final String SEGMENT_FOLDER = "segments";
+    private static final int SEGMENT_DURATION_MS = 10 * 1000;
+    private static final int SEGMENT_RETENTION_MINUTES = 30;
+
+    /**
+     * 播放时每次写入的时长和AudioTrack缓冲区的上限（毫秒）
+     */
+    private static final int PLAY_CHUNK_MS = 10;
+    private static final int PLAY_BUFFER_MS = 100;
+
+    /**
+     * 采集与编码之间环形缓冲区的块数，每块为AudioRecord的最小缓冲区大小
+     */
+    private static final int RING_CHUNK_COUNT = 16;
+    /**
+     * 编码线程等待新数据的最短时间，实际至少等待两块的时长，超时说明采集线程没有按时送来数据，计一次欠载
+     */
+    private static final int RING_WAIT_MS = 20;
+    /**
+     * 读取AudioRecord时间戳校准编码时钟的间隔（毫秒）
+     */
+    private static final int TIMESTAMP_INTERVAL_MS = 1000;
+
+    private final Context mContext;
+    private final AudioScheduler mScheduler;
+    private final CodecPool mCodecPool;
+    private volatile IEngineListener mListener;
+    private volatile IForegroundListener mForegroundListener;
+
+    private volatile boolean mRecording;
+    private volatile boolean mPlaying;
+    /**
+     * 点击停止录音的时间，用于统计停止的耗时
+     */
+    private volatile long mStopRequestNanos;
+    private volatile PlaybackEngine mPlaybackEngine;
+    private volatile StreamingPlayer mStreamingPlayer;
+    /**
+     * 当前录音的电平，界面线程读取画VU表
+     */
+    private volatile LevelMeter mLevelMeter;
+    //编码器
+    private PcmEncoder mAudioEncoder;
+    private Future<?> mDecodeTask;
+    /**
+     * 排队和正在进行的解码个数
+     */
+    private final AtomicInteger mPendingDecodes = new AtomicInteger();
+
+    //默认播放解码后的数据：已经解码出WAV时直接播放，否则边解码边播放录音文件；打开时播放解码前的录音WAV
+    private volatile boolean mPlayBeforeDecoder = false;
+    //持续录音时打开：按分段保存AAC，只保留最近SEGMENT_RETENTION_MINUTES分钟，搭配AAC_ONLY时磁盘占用不随时长增长
+    private volatile boolean mSegmentedRecord = false;
+    //录音保存的内容，默认同时保存PCM和AAC
+    private volatile CaptureMode mCaptureMode = CaptureMode.BOTH;
+    //AAC的封装格式，分段录音固定为ADTS
+    private volatile OutputContainer mOutputContainer = OutputContainer.ADTS;
+    //采集后先经过高通、噪声门和自动增益再保存和编码，会改变录音的电平，默认保存麦克风的原始数据
+    private volatile boolean mCaptureDsp = false;
+    //去掉说话间隙的静音，不写入PCM文件也不送编码器，被去掉的时间段记录在.vad文件中；
+    //打开后录音文件的时长不再等于实际录音时长，默认关闭
+    private volatile boolean mSkipSilence = false;
+
+    /**
+     * @param context 使用ApplicationContext，引擎的生命周期比Activity长
+     */
+    public AudioEngine(Context context) {
+        this(context, new AudioScheduler(new ProcessThreadPriority()), new CodecPool());
+    }
+
+    public AudioEngine(Context context, AudioScheduler scheduler, CodecPool codecPool) {
+        mContext = context;
+        mScheduler = scheduler;
+        mCodecPool = codecPool;
+    }
+
+    /**
+     * 设置结果回调，Activity重建后重新设置；传入null取消
+     */
+    public void setListener(IEngineListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 设置录音、播放开始和结束的回调，服务用来切换前台状态，不随界面重建替换
+     */
+    public void setForegroundListener(IForegroundListener listener) {
+        mForegroundListener = listener;
+    }
+
+    private void notifyForegroundStateChanged() {
+        IForegroundListener listener = mForegroundListener;
+        if (null != listener) {
+            listener.onForegroundStateChanged();
+        }
+    }
+
+    /**
+     * 在后台预先创建录音用的编码器，第一次开始录音也不需要等待MediaCodec创建和配置
+     */
+    public Future<?> prewarm() {
+        return mScheduler.submitOffline(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                //与startRecord中的编码器参数一致，复用池才能命中
+                PcmFormat captureFormat = negotiateCaptureFormat();
+                PcmFormat encodeFormat = FormatNegotiator.negotiateEncode(captureFormat, ENCODE_SAMPLE_RATE_HZ);
+                int maxInputSize = new PcmConverter(captureFormat, encodeFormat, getMinRecordBufferSize(captureFormat))
+                        .getMaxOutputBytes();
+                AudioEncoder encoder = new AudioEncoder(encodeFormat.getSampleRate(), encodeFormat.getChannelCount(),
+                        maxInputSize);
+                encoder.setCodecPool(mCodecPool);
+                try {
+                    encoder.prewarm();
+                } catch (IOException | IllegalStateException e) {
+                    e.printStackTrace();
+                }
+                Log.i(TAG, "Prewarm encoder " + encodeFormat + " in " + (System.nanoTime() - start) / 1000 + "us");
+            }
+        });
+    }
+
+    /**
+     * 开始录音，在实时线程中运行到stopRecord()，Future在文件全部关闭后完成
+     *
+     * @throws IllegalStateException      已经在录音
+     * @throws RejectedExecutionException 实时任务数达到上限或引擎已经释放
+     */
+    public synchronized Future<?> record() {
+        if (mRecording) {
+            throw new IllegalStateException("Already recording");
+        }
+        //提交之前置位，stopRecord()可以在采集线程启动之前调用
+        mStopRequestNanos = 0;
+        mRecording = true;
+        Future<?> future;
+        try {
+            future = mScheduler.submitRealtime("Record", new Runnable() {
+                @Override
+                public void run() {
+                    boolean succeed = false;
+                    try {
+                        succeed = startRecord();
+                    } finally {
+                        mRecording = false;
+                        notifyForegroundStateChanged();
+                        IEngineListener listener = mListener;
+                        if (null != listener) {
+                            listener.onRecordFinished(succeed);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mRecording = false;
+            throw e;
+        }
+        notifyForegroundStateChanged();
+        return future;
+    }
+
+    /**
+     * 开始播放，在实时线程中运行到播放结束或stopPlay()
+     *
+     * @throws IllegalStateException      已经在播放
+     * @throws RejectedExecutionException 实时任务数达到上限或引擎已经释放
+     */
+    public synchronized Future<?> play() {
+        if (mPlaying) {
+            throw new IllegalStateException("Already playing");
+        }
+        mPlaying = true;
+        Future<?> future;
+        try {
+            future = mScheduler.submitRealtime("Play", new Runnable() {
+                @Override
+                public void run() {
+                    boolean succeed = false;
+                    try {
+                        succeed = startPlay();
+                    } finally {
+                        mPlaying = false;
+                        notifyForegroundStateChanged();
+                        IEngineListener listener = mListener;
+                        if (null != listener) {
+                            listener.onPlayFinished(succeed);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mPlaying = false;
+            throw e;
+        }
+        notifyForegroundStateChanged();
+        return future;
+    }
+
+    /**
+     * 把最近的录音文件解码成WAV，在离线线程池中排队运行
+     *
+     * @throws RejectedExecutionException 排队的离线任务已满或引擎已经释放
+     */
+    public synchronized Future<?> decode() {
+        mPendingDecodes.incrementAndGet();
+        try {
+            mDecodeTask = mScheduler.submitOffline(new Runnable() {
+                @Override
+                public void run() {
+                    final CountDownLatch finished = new CountDownLatch(1);
+                    AudioDecoder audioDecoder = new AudioDecoder();
+                    //相同格式的文件复用解码器，异步模式的解码器单独放在池中
+                    audioDecoder.setCodecPool(mCodecPool);
+                    audioDecoder.setAsync(true);
+                    audioDecoder.initDecoder(new AudioDecoder.IDecodeDelegate() {
+                        @Override
+                        public void decodeProgress(long presentationTimeUs, long durationUs) {
+                            //界面上暂时没有进度展示
+                        }
+
+                        @Override
+                        public void decodeResult(boolean isFinish) {
+                            if (!isFinish) {
+                                //不完整的解码结果不能用于播放
+                                AudioDecoder.getDecodedFile().delete();
+                            }
+                            mPendingDecodes.decrementAndGet();
+                            dumpMetrics();
+                            IEngineListener listener = mListener;
+                            if (null != listener) {
+                                listener.onDecodeFinished(isFinish);
+                            }
+                            finished.countDown();
+                        }
+                    });
+                    //由解码器的回调驱动，不再轮询输入输出缓存
+                    audioDecoder.decodeAsync();
+                    try {
+                        //解码结束后离线任务才结束，离线线程池的并发数仍然限制同时解码的个数
+                        finished.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mPendingDecodes.decrementAndGet();
+            throw e;
+        }
+        return mDecodeTask;
+    }
+
+    public boolean isRecording() {
+        return mRecording;
+    }
+
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+
+    /**
+     * 是否有正在进行的录音、播放或解码，空闲时服务才可以停止
+     */
+    public boolean isBusy() {
+        return mRecording || mPlaying || mPendingDecodes.get() > 0;
+    }
+
+    /**
+     * 停止所有任务，释放复用池中的编解码器，之后不能再使用
+     */
+    public void release() {
+        stopRecord();
+        stopPlay();
+        synchronized (this) {
+            if (null != mDecodeTask) {
+                //还在排队的解码不再运行
+                mDecodeTask.cancel(false);
+            }
+        }
+        mScheduler.shutdown();
+        mCodecPool.close();
+    }
+
+    /**
+     * 设置录音保存的内容，下一次开始录音时生效
+     */
+    public void setCaptureMode(CaptureMode mode) {
+        mCaptureMode = mode;
+    }
+
+    public CaptureMode getCaptureMode() {
+        return mCaptureMode;
+    }
+
+    /**
+     * 设置AAC的封装格式，下一次开始录音时生效
+     */
+    public void setOutputContainer(OutputContainer container) {
+        mOutputContainer = container;
+    }
+
+    public OutputContainer getOutputContainer() {
+        return mOutputContainer;
+    }
+
+    /**
+     * 设置播放解码前的录音WAV，还是播放解码后的数据（已经解码出WAV时直接播放，否则边解码边播放AAC），下一次开始播放时生效
+     */
+    public void setPlayBeforeDecoder(boolean playBeforeDecoder) {
+        mPlayBeforeDecoder = playBeforeDecoder;
+    }
+
+    public boolean isPlayBeforeDecoder() {
+        return mPlayBeforeDecoder;
+    }
+
+    /**
+     * 设置是否分段保存AAC，下一次开始录音时生效
+     */
+    public void setSegmentedRecord(boolean segmentedRecord) {
+        mSegmentedRecord = segmentedRecord;
+    }
+
+    public boolean isSegmentedRecord() {
+        return mSegmentedRecord;
+    }
+
+    /**
+     * 设置采集后是否经过高通、噪声门和自动增益，下一次开始录音时生效
+     */
+    public void setCaptureDsp(boolean captureDsp) {
+        mCaptureDsp = captureDsp;
+    }
+
+    public boolean isCaptureDsp() {
+        return mCaptureDsp;
+    }
+
+    /**
+     * 设置是否去掉说话间隙的静音，下一次开始录音时生效
+     */
+    public void setSkipSilence(boolean skipSilence) {
+        mSkipSilence = skipSilence;
+    }
+
+    public boolean isSkipSilence() {
+        return mSkipSilence;
+    }
+
+    /**
+     * 当前录音的电平，没有在录音时返回最近一次录音的结果，从未录音时返回null
+     */
+    public LevelMeter getLevelMeter() {
+        return mLevelMeter;
+    }
+
+    public AudioScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    public CodecPool getCodecPool() {
+        return mCodecPool;
+    }
+
+    /**
+     * 按设备原生采样率录音，避免系统重采样
+     */
+    private PcmFormat negotiateCaptureFormat() {
+        return FormatNegotiator.negotiateCapture(mContext,
+                new PcmFormat(SAMPLE_RATE_HZ, RECORD_CHANNEL_COUNT, RECORD_BITS_PER_SAMPLE));
+    }
+
+    private static int getMinRecordBufferSize(PcmFormat captureFormat) {
+        return AudioRecord.getMinBufferSize(captureFormat.getSampleRate(), CHANNEL_IN_CONFIG, AUDIO_FORMAT);
+    }
+
+    private void notifySourceMissing() {
+        IEngineListener listener = mListener;
+        if (null != listener) {
+            listener.onSourceMissing();
+        }
+    }
+
+    /**
+     * 开始录音，阻塞到停止录音
+     *
+     * @return 输出没有创建成功时返回false
+     */
+    private boolean startRecord() {
+        long startNanos = System.nanoTime();
+        //按设备原生采样率录音，避免系统重采样
+        PcmFormat captureFormat = negotiateCaptureFormat();
+        PcmFormat encodeFormat = FormatNegotiator.negotiateEncode(captureFormat, ENCODE_SAMPLE_RATE_HZ);
+        //创建AudioRecord对象所需的最小缓冲区大小
+        final int minBufferSize = getMinRecordBufferSize(captureFormat);
+        //创建AudioRecord对象
+        final AudioRecord audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, captureFormat.getSampleRate(), CHANNEL_IN_CONFIG
+                , AUDIO_FORMAT, minBufferSize);
+        //采集与编码之间的环形缓冲区，采集线程只负责读麦克风，写文件和编码放到编码线程
+        final PcmRingBuffer ringBuffer = new PcmRingBuffer(RING_CHUNK_COUNT, minBufferSize);
+        //缓冲区满时用来接住麦克风数据，保证采集线程不被阻塞
+        final byte[] dropBuffer = new byte[minBufferSize];
+        //采集阶段的运行指标
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        LatencyHistogram readLatency = metrics.histogram("record.read_us");
+        LatencyHistogram ringDepth = metrics.histogram("record.ring_depth");
+        MetricsRegistry.Counter bytesCaptured = metrics.counter("record.bytes");
+        MetricsRegistry.Counter droppedChunks = metrics.counter("record.dropped_chunks");
+        //开始录音，mRecording在提交任务时已经置位
+        audioRecord.startRecording();
+
+        //创建文件夹
+        File fileFolder = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + FOLDER_NAME);
+        if (!fileFolder.exists()) {
+            fileFolder.mkdir();
+        }
+
+        String fileFolderPath = fileFolder.getAbsolutePath();
+        final File file = new File(fileFolderPath + "/" + RECODE_FILE + ".wav");
+
+        //录音保存为WAV，文件头自带格式，写入过程中定期回写长度；不保存PCM时不打开文件
+        CaptureMode mode = mCaptureMode;
+        Log.i(TAG, "Start record, mode = " + mode + ", capture = " + captureFormat + ", encode = " + encodeFormat);
+        WavWriter wavWriter = null;
+        if (mode.writesPcm()) {
+            try {
+                wavWriter = new WavWriter(file, captureFormat.getSampleRate(), captureFormat.getChannelCount(),
+                        captureFormat.getBitsPerSample());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        //只保存PCM时不创建转换器和编码器
+        PcmConverter converter = null;
+        PcmEncoder encoder = null;
+        SampleClock sampleClock = null;
+        if (mode.encodesAac()) {
+            //录音格式与编码格式不同时先转换
+            converter = new PcmConverter(captureFormat, encodeFormat, minBufferSize);
+            //初始化编码器
+            //按累计采样数打时间戳，用AudioRecord的时间戳对齐到系统时钟
+            sampleClock = new SampleClock(encodeFormat.getSampleRate(), encodeFormat.getFrameSize(), true, metrics);
+            encoder = createRecordEncoder(fileFolder, encodeFormat, converter.getMaxOutputBytes(), sampleClock);
+        }
+        mAudioEncoder = encoder;
+
+        if ((null != wavWriter || !mode.writesPcm()) && (null != encoder || !mode.encodesAac())) {
+            final WavWriter pcmWriter = wavWriter;
+            final PcmConverter pcmConverter = converter;
+            final PcmEncoder pcmEncoder = encoder;
+            final SampleClock clock = sampleClock;
+            final int captureRate = captureFormat.getSampleRate();
+            //等待时间短于一块的时长时，编码线程正常的空闲等待也会超时
+            final long ringWaitMs = Math.max(RING_WAIT_MS,
+                    2L * minBufferSize * 1000 / ((long) captureFormat.getFrameSize() * captureRate));
+            final DspChain dspChain = mCaptureDsp ? createCaptureDsp(captureFormat) : null;
+            //边录边算电平和波形峰值，界面画VU表和波形时不需要回读PCM
+            final LevelMeter meter = new LevelMeter(captureFormat.getSampleRate(), captureFormat.getChannelCount());
+            mLevelMeter = meter;
+            PeakPyramid.Writer peakWriter = null;
+            try {
+                peakWriter = new PeakPyramid.Writer(new File(fileFolder, RECODE_FILE + PeakPyramid.SUFFIX),
+                        captureFormat.getSampleRate(), captureFormat.getChannelCount());
+            } catch (IOException e) {
+                //没有峰值文件只影响波形显示，不影响录音
+                e.printStackTrace();
+            }
+            final PeakPyramid.Writer pyramidWriter = peakWriter;
+            final VoiceActivityDetector vad = mSkipSilence ? new VoiceActivityDetector(captureFormat, minBufferSize) : null;
+            Runnable encodeTask = new Runnable() {
+                @Override
+                public void run() {
+                    drainRecordBuffer(ringBuffer, ringWaitMs, dspChain, meter, vad, pyramidWriter, pcmWriter,
+                            pcmConverter, pcmEncoder);
+                    if (null != clock) {
+                        Log.i(TAG, "Sample clock anchored = " + clock.isAnchored() + ", drift = "
+                                + clock.getDriftUs() + "us (" + clock.getDriftPpm() + "ppm)");
+                    }
+                }
+            };
+            //编码线程取数据的速度决定缓冲区会不会溢出，和采集线程一样放在实时线程中运行
+            Future<?> encodeFuture;
+            try {
+                encodeFuture = mScheduler.submitRealtime("Encode", encodeTask);
+            } catch (RejectedExecutionException e) {
+                //实时任务数达到上限，在当前线程关闭已经打开的文件和编码器，不再录音
+                Log.w(TAG, "Encode rejected: " + e.getMessage());
+                mRecording = false;
+                ringBuffer.close();
+                encodeTask.run();
+                audioRecord.stop();
+                audioRecord.release();
+                return false;
+            }
+            //从开始到可以采集的耗时，编码器从复用池取出时只有几毫秒
+            metrics.histogram("record.start_us").record((System.nanoTime() - startNanos) / 1000);
+
+            long nextTimestampNanos = 0;
+
+            while (mRecording) {
+                byte[] data = ringBuffer.acquireWrite();
+                if (null == data) {
+                    //编码或写文件跟不上，丢弃这一块，已计入overrun
+                    data = dropBuffer;
+                    droppedChunks.increment();
+                }
+                long start = System.nanoTime();
+                int read = audioRecord.read(data, 0, minBufferSize);
+                readLatency.record((System.nanoTime() - start) / 1000);
+                // 如果读取音频数据没有出现错误，就交给编码线程
+                if (read > 0) {
+                    bytesCaptured.add(read);
+                    //第一块数据交给编码线程之前先校准一次，时间戳的起点才能对齐到系统时钟
+                    if (null != clock && System.nanoTime() >= nextTimestampNanos) {
+                        syncSampleClock(audioRecord, clock, captureRate);
+                        nextTimestampNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMESTAMP_INTERVAL_MS);
+                    }
+                    if (data != dropBuffer) {
+                        ringBuffer.commitWrite(read);
+                        ringDepth.record(ringBuffer.size());
+                    }
+                }
+            }
+            //编码线程取完剩余数据后送入EOS并关闭文件
+            ringBuffer.close();
+            //在采集线程中停止和释放，不会和正在进行的read竞争
+            audioRecord.stop();
+            audioRecord.release();
+            //等文件全部关闭后才算结束，录音的Future完成时文件已经可以读取
+            try {
+                encodeFuture.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                //异常已经由AudioScheduler打印
+                return false;
+            }
+            return true;
+        } else {
+            //输出没有创建成功，不再录音
+            mRecording = false;
+            if (null != wavWriter) {
+                try {
+                    wavWriter.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (null != encoder) {
+                encoder.stopEncode();
+            }
+            audioRecord.stop();
+            audioRecord.release();
+            return false;
+        }
+    }
+
+    /**
+     * 创建录音的编码器，分段录音时每个分段一个编码器
+     *
+     * @param sampleClock 时间戳时钟
+     */
+    private PcmEncoder createRecordEncoder(File fileFolder, final PcmFormat encodeFormat, final int maxInputSize,
+                                          final SampleClock sampleClock) {
+        if (!mSegmentedRecord) {
+            AudioEncoder encoder = new AudioEncoder(encodeFormat.getSampleRate(), encodeFormat.getChannelCount(),
+                    maxInputSize);
+            encoder.setSampleClock(sampleClock);
+            encoder.setOutputContainer(mOutputContainer);
+            //编码器flush后放回复用池，下一次录音直接取出
+            encoder.setCodecPool(mCodecPool);
+            encoder.initEncoder();
+            return encoder;
+        }
+        try {
+            return new SegmentedRecorder(new File(fileFolder, SEGMENT_FOLDER), encodeFormat, SEGMENT_DURATION_MS,
+                    SEGMENT_RETENTION_MINUTES * 60 * 1000 / SEGMENT_DURATION_MS,
+                    new SegmentedRecorder.IEncoderFactory() {
+                        @Override
+                        public PcmEncoder createEncoder(File aacFile) throws IOException {
+                            AudioEncoder encoder = new AudioEncoder(encodeFormat.getSampleRate(),
+                                    encodeFormat.getChannelCount(), maxInputSize);
+                            //所有分段共用一个时钟，分段之间的时间戳是连续的
+                            encoder.setSampleClock(sampleClock);
+                            encoder.setCodecPool(mCodecPool);
+                            encoder.initEncoder(aacFile);
+                            return encoder;
+                        }
+                    });
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 采集处理链：去直流和低频噪声 -> 噪声门 -> 自动增益
+     */
+    private static DspChain createCaptureDsp(PcmFormat captureFormat) {
+        int sampleRate = captureFormat.getSampleRate();
+        int channels = captureFormat.getChannelCount();
+        return new DspChain(captureFormat, new HighPassFilter(sampleRate, channels),
+                new NoiseGate(sampleRate, channels), new AutomaticGainControl(sampleRate, channels));
+    }
+
+    /**
+     * 用AudioRecord的时间戳校准编码时钟，帧序号换算到编码采样率
+     *
+     * @param captureRate 采集采样率
+     */
+    private void syncSampleClock(AudioRecord audioRecord, SampleClock clock, int captureRate) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return;
+        }
+        AudioTimestamp timestamp = new AudioTimestamp();
+        if (audioRecord.getTimestamp(timestamp, AudioTimestamp.TIMEBASE_MONOTONIC) == AudioRecord.SUCCESS) {
+            clock.onTimestamp(timestamp.framePosition * clock.getSampleRate() / captureRate, timestamp.nanoTime);
+        }
+    }
+
+    /**
+     * 编码线程：从环形缓冲区取出PCM数据，处理后写入文件并编码成AAC
+     *
+     * @param ringWaitMs 等待新数据的最长时间
+     * @param dspChain   不处理时为null
+     * @param meter      录音电平
+     * @param vad        不去掉静音时为null
+     * @param peakWriter 峰值文件创建失败时为null
+     * @param wavWriter  不保存PCM时为null
+     * @param converter 不编码时为null
+     * @param encoder   不编码时为null
+     */
+    private void drainRecordBuffer(PcmRingBuffer ringBuffer, long ringWaitMs, DspChain dspChain, LevelMeter meter,
+                                   VoiceActivityDetector vad, final PeakPyramid.Writer peakWriter,
+                                   final WavWriter wavWriter, final PcmConverter converter,
+                                   final PcmEncoder encoder) {
+        //格式转换的输出缓存，只分配一次
+        final byte[] converted = null == converter || converter.isPassthrough()
+                ? null : new byte[converter.getMaxOutputBytes()];
+        //保存和编码的耗时，用来估算去掉静音节省的CPU时间
+        final long[] storeNanos = new long[1];
+        VoiceActivityDetector.ISpeechSink sink = new VoiceActivityDetector.ISpeechSink() {
+            @Override
+            public void onSpeech(byte[] data, int offset, int length) throws IOException {
+                long start = System.nanoTime();
+                //波形与保存的PCM文件使用同一个时间轴
+                if (null != peakWriter) {
+                    peakWriter.write(data, offset, length);
+                }
+                if (null != wavWriter) {
+                    wavWriter.write(data, offset, length);
+                }
+                //将PCM编码成AAC
+                if (null == encoder) {
+                    //只保存PCM
+                } else if (null == converted) {
+                    encoder.encodeData(data, offset, length);
+                } else {
+                    //转换器从头读取，pre-roll的缓存块偏移也是0
+                    int convertedLength = converter.convert(data, length, converted);
+                    if (convertedLength > 0) {
+                        encoder.encodeData(converted, 0, convertedLength);
+                    }
+                }
+                storeNanos[0] += System.nanoTime() - start;
+            }
+        };
+        //每秒写入磁盘的字节数，用来对比不同录音模式的写入量
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        RateMeter writeRate = new RateMeter(metrics.histogram("record.write_bytes_per_s"), TimeUnit.SECONDS.toNanos(1));
+        while (true) {
+            byte[] data = ringBuffer.acquireRead();
+            if (null == data) {
+                if (ringBuffer.isClosed() && ringBuffer.isEmpty()) {
+                    break;
+                }
+                ringBuffer.awaitReadable(ringWaitMs, TimeUnit.MILLISECONDS);
+                continue;
+            }
+            int length = ringBuffer.readLength();
+            if (null != dspChain) {
+                //在环形缓冲区的块上原地处理，不再拷贝
+                dspChain.process(data, 0, length);
+            }
+            //电平表显示麦克风的实时电平，包括被去掉的静音
+            meter.update(data, 0, length);
+            try {
+                if (null == vad) {
+                    sink.onSpeech(data, 0, length);
+                } else {
+                    vad.process(data, 0, length, sink);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            ringBuffer.releaseRead();
+            writeRate.update(getRecordBytesWritten(wavWriter, encoder), System.nanoTime());
+        }
+        if (null != converted) {
+            //重采样器中剩余的数据
+            int convertedLength = converter.flush(converted);
+            if (convertedLength > 0) {
+                encoder.encodeData(converted, 0, convertedLength);
+            }
+        }
+        if (null != dspChain) {
+            StringBuilder stages = new StringBuilder();
+            for (int i = 0; i < dspChain.getStageCount(); i++) {
+                stages.append(dspChain.getStage(i).getName()).append(" = ")
+                        .append(dspChain.getStageNanos(i) / 1000).append("us, ");
+            }
+            Log.i(TAG, "Capture dsp " + stages + "realtime x" + dspChain.getRealtimeFactor());
+        }
+        if (null != vad) {
+            vad.finish();
+            logSilenceSavings(vad, storeNanos[0], wavWriter, encoder);
+        }
+        long pcmBytes = null == wavWriter ? 0 : wavWriter.getDataBytes();
+        long aacBytes = null == encoder ? 0 : encoder.getBytesWritten();
+        if (null != peakWriter) {
+            try {
+                //追加波形的各层汇总
+                peakWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (null != wavWriter) {
+            try {
+                wavWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (null != encoder) {
+            encoder.stopEncode();
+        }
+        long stopUs = mStopRequestNanos > 0 ? (System.nanoTime() - mStopRequestNanos) / 1000 : -1;
+        if (stopUs >= 0) {
+            //从点击停止到文件全部关闭的耗时
+            metrics.histogram("record.stop_us").record(stopUs);
+        }
+        metrics.counter("record.pcm_bytes_written").add(pcmBytes);
+        metrics.counter("record.aac_bytes_written").add(aacBytes);
+        Log.i(TAG, "Record finished, overrun = " + ringBuffer.getOverrunCount()
+                + ", underrun = " + ringBuffer.getUnderrunCount()
+                + ", pcm = " + pcmBytes + "B, aac = " + aacBytes
+                + "B, write rate = " + writeRate.getAverageRate() + "B/s, stop = " + stopUs + "us, peak = "
+                + meter.getPeakHoldDb() + "dB, clipped = " + meter.getClippedSamples());
+        dumpMetrics();
+    }
+
+    /**
+     * 估算去掉静音节省的资源并保存被去掉的时间段
+     * 按保留部分每帧的保存和编码耗时、写入字节数推算被去掉部分的开销；
+     * 系统没有按应用统计的耗电接口，耗电的节省只能从CPU时间和写盘量间接看出
+     *
+     * @param storeNanos 保留部分保存和编码的总耗时
+     */
+    private void logSilenceSavings(VoiceActivityDetector vad, long storeNanos, WavWriter wavWriter,
+                                   PcmEncoder encoder) {
+        long kept = vad.getKeptFrames();
+        long skipped = vad.getSkippedFrames();
+        long savedCpuUs = kept == 0 ? 0 : storeNanos / 1000 * skipped / kept;
+        long savedBytes = kept == 0 ? 0 : getRecordBytesWritten(wavWriter, encoder) * skipped / kept;
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        metrics.counter("record.vad_saved_cpu_us").add(savedCpuUs);
+        metrics.counter("record.vad_saved_bytes").add(savedBytes);
+        Log.i(TAG, "Silence skipped " + Math.round(vad.getSkippedRatio() * 100) + "% in "
+                + vad.getSkippedSpanCount() + " spans, saved cpu ~" + savedCpuUs + "us, disk ~" + savedBytes
+                + "B, vad cost = " + vad.getProcessNanos() / 1000 + "us, noise floor = " + vad.getNoiseFloorDb() + "dB");
+        File fileFolder = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + FOLDER_NAME);
+        try {
+            vad.writeSkippedSpans(new File(fileFolder, RECODE_FILE + VoiceActivityDetector.SPANS_SUFFIX));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 录音写入磁盘的总字节数
+     */
+    private static long getRecordBytesWritten(WavWriter wavWriter, PcmEncoder encoder) {
+        long bytes = 0;
+        if (null != wavWriter) {
+            bytes += wavWriter.getDataBytes();
+        }
+        if (null != encoder) {
+            bytes += encoder.getBytesWritten();
+        }
+        return bytes;
+    }
+
+    /**
+     * 输出运行指标，同时写入文件，方便用户反馈卡顿时一起提供
+     */
+    private void dumpMetrics() {
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        Log.i(TAG, "Metrics: " + metrics.toJson());
+        File fileFolder = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + FOLDER_NAME);
+        try {
+            metrics.writeJson(new File(fileFolder, METRICS_FILE));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 停止录音
+     */
+    public void stopRecord() {
+        mStopRequestNanos = System.nanoTime();
+        //采集线程最多在一次read之后退出并释放AudioRecord，编码器由编码线程在处理完缓冲区中剩余的数据后停止
+        mRecording = false;
+    }
+
+    /**
+     * 开始播放，阻塞到播放结束或停止
+     *
+     * @return 文件不存在或打开失败时返回false
+     */
+    private boolean startPlay() {
+
+        //PCM文件路径
+        File fileFolder = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + FOLDER_NAME);
+        String fileFolderPath = fileFolder.getAbsolutePath();
+
+        if (!mPlayBeforeDecoder) {
+            File decodedFile = findDecodedFile();
+            if (null != decodedFile) {
+                //已经解码出完整的WAV，直接播放，不用再解码一遍
+                return playWavFile(decodedFile);
+            }
+            //边解码边播放录音文件，不再等待解码出完整的PCM文件
+            return startStreamingPlay();
+        }
+        //播放解码前的PCM数据
+        String path = fileFolderPath + "/" + RECODE_FILE + ".wav";
+
+        File file = new File(path);
+        if (!file.exists()) {
+            notifySourceMissing();
+            return false;
+        }
+        return playWavFile(file);
+    }
+
+    /**
+     * 解码结果比最近的录音文件新、并且没有正在进行的解码时返回解码出的WAV文件
+     *
+     * @return 没有可用的解码结果时返回null
+     */
+    private File findDecodedFile() {
+        if (mPendingDecodes.get() > 0) {
+            return null;
+        }
+        File decodedFile = AudioDecoder.getDecodedFile();
+        File encodedFile = AudioDecoder.findEncodedFile();
+        if (null == encodedFile || !decodedFile.exists() || decodedFile.lastModified() < encodedFile.lastModified()) {
+            return null;
+        }
+        return decodedFile;
+    }
+
+    /**
+     * 通过PlaybackEngine播放WAV文件，阻塞到播放结束或停止
+     */
+    private boolean playWavFile(File file) {
+        //从WAV文件头读取格式，不再假定44.1KHz单声道
+        WavReader wavReader;
+        try {
+            wavReader = WavReader.open(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            Log.e(TAG, "startPlay Exception = " + e.toString());
+            return false;
+        }
+        PcmFormat format = new PcmFormat(wavReader.getSampleRate(), wavReader.getChannelCount(),
+                wavReader.getBitsPerSample());
+        //每次写入10ms，AudioTrack缓冲区的上限为100ms，实际使用的大小由PlaybackEngine按欠载情况调整
+        int chunkSize = format.getSampleRate() * PLAY_CHUNK_MS / 1000 * format.getFrameSize();
+        int bufferSize = format.getSampleRate() * PLAY_BUFFER_MS / 1000 * format.getFrameSize();
+
+        PcmFileSource pcmSource = null;
+        boolean succeed = false;
+        try {
+            //内存映射WAV的data块，由读取线程预先读进环形缓冲区
+            pcmSource = wavReader.openSource();
+            Log.i(TAG, "startPlay mapped = " + pcmSource.isMapped());
+            PlaybackEngine engine = new PlaybackEngine(pcmSource, format,
+                    AudioTrackOutput.create(format, bufferSize), chunkSize);
+            mPlaybackEngine = engine;
+            engine.play();
+            Log.i(TAG, "Play finished, prefill = " + engine.getPrefillUs()
+                    + "us, first sample = " + engine.getTimeToFirstSampleUs()
+                    + "us, underrun = " + engine.getUnderrunCount()
+                    + ", queue stall = " + engine.getQueueStallCount()
+                    + ", buffer = " + engine.getBufferSizeInFrames() + " frames");
+            succeed = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            Log.e(TAG, "startPlay Exception = " + e.toString());
+        } finally {
+            if (null != pcmSource) {
+                pcmSource.close();
+            }
+            mPlaybackEngine = null;
+            dumpMetrics();
+        }
+        return succeed;
+    }
+
+    /**
+     * 边解码边播放最近的录音文件
+     */
+    private boolean startStreamingPlay() {
+        File file = AudioDecoder.findEncodedFile();
+        StreamingPlayer player = null;
+        if (null != file) {
+            AudioDecoder audioDecoder = new AudioDecoder();
+            //上一次播放的解码器还在复用池中，不需要重新创建
+            audioDecoder.setCodecPool(mCodecPool);
+            player = audioDecoder.createStreamingPlayer(file, new StreamingPlayer.IOutputFactory() {
+                @Override
+                public AudioOutput createOutput(PcmFormat format, int bufferSizeInBytes) {
+                    return AudioTrackOutput.create(format, bufferSizeInBytes);
+                }
+            });
+        }
+        if (null == player) {
+            notifySourceMissing();
+            return false;
+        }
+        boolean succeed = false;
+        try {
+            mStreamingPlayer = player;
+            player.play();
+            Log.i(TAG, "Streaming play finished, first audio = " + player.getTimeToFirstAudioUs() + "us");
+            succeed = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            Log.e(TAG, "startStreamingPlay Exception = " + e.toString());
+        } finally {
+            mStreamingPlayer = null;
+            dumpMetrics();
+        }
+        return succeed;
+    }
+
+    /**
+     * 停止播放
+     */
+    public void stopPlay() {
+        PlaybackEngine engine = mPlaybackEngine;
+        if (engine != null) {
+            engine.stop();
+            Log.i(TAG, "stopPlay");
+        }
+        StreamingPlayer player = mStreamingPlayer;
+        if (player != null) {
+            player.stop();
+            Log.i(TAG, "stopPlay streaming");
+        }
+    }
+
+    /**
+     * 引擎的结果回调，在工作线程中调用
+     */
+    public interface IEngineListener {
+
+        /**
+         * 录音结束，文件已经全部关闭
+         *
+         * @param succeed 输出没有创建成功时为false
+         */
+        void onRecordFinished(boolean succeed);
+
+        /**
+         * 播放结束或被停止
+         */
+        void onPlayFinished(boolean succeed);
+
+        /**
+         * 要播放的文件不存在，之后还会回调onPlayFinished(false)
+         */
+        void onSourceMissing();
+
+        void onDecodeFinished(boolean succeed);
+    }
+
+    /**
+     * 录音或播放开始、结束的回调，可能在任意线程中调用，当前状态通过isRecording()和isPlaying()取得
+     */
+    public interface IForegroundListener {
+        void onForegroundStateChanged();
+    }
+}
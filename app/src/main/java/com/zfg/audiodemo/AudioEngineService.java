@@ -0,0 +1,158 @@
+package com.zfg.audiodemo;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import static com.zfg.audiodemo.MainActivity.TAG;
+
+/**
+ * 持有AudioEngine的服务
+ * Activity通过bindService取得引擎，同时用startService保持服务运行，屏幕旋转等Activity重建时
+ * 引擎、复用池中的编解码器和正在进行的录音都不受影响。Activity退出且引擎空闲时停止服务；
+ * 退出时还有任务的，没有界面绑定时等最后一个任务结束后自己停止，不会一直占用编解码器。
+ * 录音和播放期间作为前台服务运行并显示通知，界面退到后台时进程不会被回收
+ */
+public class AudioEngineService extends Service {
+
+    private static final int NOTIFICATION_ID = 1;
+    private static final String NOTIFICATION_CHANNEL_ID = "audio_engine";
+
+    private AudioEngine mEngine;
+    private final IBinder mBinder = new EngineBinder();
+    private boolean mForeground;
+    private final AudioEngine.IForegroundListener mForegroundListener = new AudioEngine.IForegroundListener() {
+        @Override
+        public void onForegroundStateChanged() {
+            updateForeground();
+        }
+    };
+    /**
+     * 没有界面绑定时使用，任务全部结束后停止服务
+     */
+    private final AudioEngine.IEngineListener mIdleListener = new AudioEngine.IEngineListener() {
+        @Override
+        public void onRecordFinished(boolean succeed) {
+            stopSelfIfIdle();
+        }
+
+        @Override
+        public void onPlayFinished(boolean succeed) {
+            stopSelfIfIdle();
+        }
+
+        @Override
+        public void onSourceMissing() {
+        }
+
+        @Override
+        public void onDecodeFinished(boolean succeed) {
+            stopSelfIfIdle();
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mEngine = new AudioEngine(getApplicationContext());
+        mEngine.setForegroundListener(mForegroundListener);
+        //服务启动后立即在后台准备编码器
+        mEngine.prewarm();
+        Log.i(TAG, "Audio engine created");
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        //进程被杀后不需要自动重建，下次打开界面时会重新启动
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
+    @Override
+    public boolean onUnbind(Intent intent) {
+        //界面在onDestroy中已经取消了自己的回调
+        mEngine.setListener(mIdleListener);
+        //返回true，重新绑定时回调onRebind
+        return true;
+    }
+
+    @Override
+    public void onRebind(Intent intent) {
+        //界面连接后会设置自己的回调
+    }
+
+    private void stopSelfIfIdle() {
+        if (!mEngine.isBusy()) {
+            Log.i(TAG, "Audio engine idle, stop service");
+            leaveForeground();
+            stopSelf();
+        }
+    }
+
+    /**
+     * 有录音或播放时进入前台并更新通知内容，都结束后退出前台，回调可能来自不同线程，这里重新读取引擎状态
+     */
+    private synchronized void updateForeground() {
+        boolean recording = mEngine.isRecording();
+        if (recording || mEngine.isPlaying()) {
+            startForeground(NOTIFICATION_ID, buildNotification(recording));
+            mForeground = true;
+        } else {
+            leaveForeground();
+        }
+    }
+
+    private synchronized void leaveForeground() {
+        if (mForeground) {
+            stopForeground(true);
+            mForeground = false;
+        }
+    }
+
+    private Notification buildNotification(boolean recording) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID,
+                    getString(R.string.notification_channel), NotificationManager.IMPORTANCE_LOW);
+            ((NotificationManager) getSystemService(NOTIFICATION_SERVICE)).createNotificationChannel(channel);
+        }
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        return new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(getString(recording ? R.string.notification_recording : R.string.notification_playing))
+                .setContentIntent(contentIntent)
+                .setOngoing(true)
+                .build();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mEngine.setForegroundListener(null);
+        leaveForeground();
+        mEngine.release();
+        Log.i(TAG, "Audio engine released");
+    }
+
+    /**
+     * 同一进程内绑定，直接返回引擎
+     */
+    public class EngineBinder extends Binder {
+        public AudioEngine getEngine() {
+            return mEngine;
+        }
+    }
+}
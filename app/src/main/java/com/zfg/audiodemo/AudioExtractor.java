@@ -0,0 +1,14 @@
+package com.zfg.audiodemo;
+
+/**
+ * 音频数据源接口，对应MediaExtractor中已选中的一条音轨
+ */
+public interface AudioExtractor extends SampleSource {
+
+    /**
+     * 跳到不晚于timeUs的最近一帧
+     */
+    void seekTo(long timeUs);
+
+    void release();
+}
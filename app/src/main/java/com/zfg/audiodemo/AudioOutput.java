@@ -0,0 +1,70 @@
+package com.zfg.audiodemo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 音频输出接口
+ * 与AudioTrack的流模式一致，播放流程只依赖这个接口，可以在JVM上用假的输出测试预填充和缓冲区调整
+ */
+public interface AudioOutput {
+
+    /**
+     * 开始播放，之前写入的数据会立即开始输出
+     */
+    void play();
+
+    /**
+     * 阻塞写入，缓冲区满时等待
+     *
+     * @return 写入的字节数，出错时返回负值
+     */
+    int write(byte[] data, int offset, int size);
+
+    /**
+     * 阻塞写入，从position开始读取，写入后position前进，可以直接传入内存映射区的视图而不用先拷贝
+     *
+     * @return 写入的字节数，出错时返回负值
+     */
+    int write(ByteBuffer data, int size);
+
+    /**
+     * 已经播放的帧数
+     */
+    int getPlaybackHeadPosition();
+
+    /**
+     * @return 欠载次数，不支持时返回-1
+     */
+    int getUnderrunCount();
+
+    /**
+     * @return 当前实际使用的缓冲区大小，不支持时返回-1
+     */
+    int getBufferSizeInFrames();
+
+    /**
+     * @return 缓冲区能调整到的最大帧数，不支持调整时返回-1
+     */
+    int getBufferCapacityInFrames();
+
+    /**
+     * 调整缓冲区大小，越小延迟越低，越大越不容易欠载
+     *
+     * @return 实际生效的大小，不支持时返回-1
+     */
+    int setBufferSizeInFrames(int frames);
+
+    /**
+     * 暂停播放，已经写入的数据保留在缓冲区中
+     */
+    void pause();
+
+    /**
+     * 丢弃缓冲区中还没有播放的数据，需要在暂停或停止后调用
+     */
+    void flush();
+
+    void stop();
+
+    void release();
+}
@@ -0,0 +1,249 @@
+package com.zfg.audiodemo;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 音频任务调度
+ * 录音和播放是长时间运行的实时任务，每个任务一个独立的高优先级线程，不排队也不和其他任务共用线程；
+ * 解码、转码等离线任务放进单独的有界线程池，线程为后台优先级，队列满时直接拒绝，
+ * 批量解码再多也不会占用实时任务的线程或让它们排队。所有任务都可以取消
+ */
+public class AudioScheduler {
+
+    public static final int DEFAULT_MAX_REALTIME = 4;
+    public static final int DEFAULT_OFFLINE_THREADS = 2;
+    public static final int DEFAULT_OFFLINE_QUEUE = 8;
+    private static final int KEEP_ALIVE_TIME = 60;
+
+    private final IThreadPriority mPriority;
+    private final int mMaxRealtime;
+    private final AtomicInteger mRealtimeActive = new AtomicInteger();
+    private final AtomicInteger mRealtimeCount = new AtomicInteger();
+    private final ThreadPoolExecutor mOfflineExecutor;
+    private volatile boolean mShutdown;
+
+    private final LatencyHistogram mQueueDepth;
+    private final LatencyHistogram mQueueWait;
+    private final MetricsRegistry.Counter mRealtimeStarted;
+    private final MetricsRegistry.Counter mOfflineStarted;
+    private final MetricsRegistry.Counter mRejected;
+    private final MetricsRegistry.Counter mCancelled;
+
+    /**
+     * @param priority 设置线程优先级，Android上使用ProcessThreadPriority
+     */
+    public AudioScheduler(IThreadPriority priority) {
+        this(priority, DEFAULT_MAX_REALTIME, DEFAULT_OFFLINE_THREADS, DEFAULT_OFFLINE_QUEUE,
+                MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param priority       设置线程优先级
+     * @param maxRealtime    同时运行的实时任务上限
+     * @param offlineThreads 离线任务的线程数
+     * @param offlineQueue   离线任务最多排队的个数
+     * @param metrics        运行指标
+     */
+    public AudioScheduler(IThreadPriority priority, int maxRealtime, int offlineThreads, int offlineQueue,
+                          MetricsRegistry metrics) {
+        if (maxRealtime <= 0 || offlineThreads <= 0 || offlineQueue <= 0) {
+            throw new IllegalArgumentException("Invalid scheduler config, realtime " + maxRealtime
+                    + ", offline " + offlineThreads + ", queue " + offlineQueue);
+        }
+        mPriority = priority;
+        mMaxRealtime = maxRealtime;
+        mQueueDepth = metrics.histogram("scheduler.offline_queue_depth");
+        mQueueWait = metrics.histogram("scheduler.offline_wait_us");
+        mRealtimeStarted = metrics.counter("scheduler.realtime_started");
+        mOfflineStarted = metrics.counter("scheduler.offline_started");
+        mRejected = metrics.counter("scheduler.rejected");
+        mCancelled = metrics.counter("scheduler.cancelled");
+        mOfflineExecutor = new ThreadPoolExecutor(
+                offlineThreads,
+                offlineThreads,
+                KEEP_ALIVE_TIME,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(offlineQueue),
+                new OfflineThread(),
+                new ThreadPoolExecutor.AbortPolicy());
+        mOfflineExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 在独立的实时线程中运行，立即开始
+     *
+     * @param name 线程名，用于调试
+     * @return 取消时中断线程，任务需要响应中断或自己的停止标志
+     * @throws RejectedExecutionException 已经关闭或实时任务数达到上限
+     */
+    public Future<?> submitRealtime(String name, Runnable task) {
+        if (mShutdown) {
+            mRejected.increment();
+            throw new RejectedExecutionException("Scheduler is shut down");
+        }
+        if (mRealtimeActive.incrementAndGet() > mMaxRealtime) {
+            mRealtimeActive.decrementAndGet();
+            mRejected.increment();
+            throw new RejectedExecutionException("Too many realtime tasks, max " + mMaxRealtime);
+        }
+        final AudioTask audioTask = new AudioTask(task, false);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mPriority.applyRealtime();
+                    audioTask.run();
+                } finally {
+                    mRealtimeActive.decrementAndGet();
+                }
+            }
+        });
+        thread.setName("Audio-" + name + "-" + mRealtimeCount.incrementAndGet());
+        mRealtimeStarted.increment();
+        thread.start();
+        return audioTask;
+    }
+
+    /**
+     * 放进离线线程池排队运行
+     *
+     * @throws RejectedExecutionException 已经关闭或队列已满
+     */
+    public Future<?> submitOffline(Runnable task) {
+        AudioTask audioTask = new AudioTask(task, true);
+        try {
+            mOfflineExecutor.execute(audioTask);
+        } catch (RejectedExecutionException e) {
+            mRejected.increment();
+            throw e;
+        }
+        mQueueDepth.record(mOfflineExecutor.getQueue().size());
+        return audioTask;
+    }
+
+    /**
+     * 调度使用的线程优先级，自己创建线程的离线任务（如BatchDecoder）用它保持与离线线程池相同的优先级
+     */
+    public IThreadPriority getThreadPriority() {
+        return mPriority;
+    }
+
+    /**
+     * 正在运行的实时任务数
+     */
+    public int getRealtimeActiveCount() {
+        return mRealtimeActive.get();
+    }
+
+    /**
+     * 排队中的离线任务数，不包括正在运行的
+     */
+    public int getOfflineQueueDepth() {
+        return mOfflineExecutor.getQueue().size();
+    }
+
+    /**
+     * 不再接受新任务，排队中的离线任务继续运行
+     */
+    public void shutdown() {
+        mShutdown = true;
+        mOfflineExecutor.shutdown();
+    }
+
+    /**
+     * 等待离线任务全部结束
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mOfflineExecutor.awaitTermination(timeout, unit);
+    }
+
+    private class OfflineThread implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    mPriority.applyBackground();
+                    r.run();
+                }
+            });
+            thread.setName("AudioOffline-" + mCount.incrementAndGet());
+            return thread;
+        }
+    }
+
+    /**
+     * 记录排队时间；取消时从离线队列中移除，不再占用队列的位置
+     */
+    private class AudioTask extends FutureTask<Void> {
+        private final long mSubmitNanos = System.nanoTime();
+        private final boolean mOffline;
+
+        AudioTask(Runnable task, boolean offline) {
+            super(task, null);
+            mOffline = offline;
+        }
+
+        @Override
+        public void run() {
+            if (mOffline && !isDone()) {
+                mQueueWait.record((System.nanoTime() - mSubmitNanos) / 1000);
+                mOfflineStarted.increment();
+            }
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                //FutureTask会吞掉任务抛出的异常，这里打印出来
+                e.getCause().printStackTrace();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                mCancelled.increment();
+                if (mOffline) {
+                    mOfflineExecutor.remove(this);
+                }
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * 设置当前线程的优先级
+     */
+    public interface IThreadPriority {
+
+        /**
+         * 录音、播放等实时任务
+         */
+        void applyRealtime();
+
+        /**
+         * 解码等离线任务
+         */
+        void applyBackground();
+    }
+}
@@ -0,0 +1,137 @@
+package com.zfg.audiodemo;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 基于AudioTrack流模式的AudioOutput实现
+ * Android 8.0以上申请低延迟（fast track）模式，7.0以上才能统计欠载和调整缓冲区大小
+ */
+public class AudioTrackOutput implements AudioOutput {
+
+    private final AudioTrack mAudioTrack;
+    private final int mBufferSizeInBytes;
+    private final int mFrameSize;
+
+    /**
+     * @param format            PCM格式，支持8位和16位
+     * @param bufferSizeInBytes 缓冲区大小，会向上取到getMinBufferSize
+     */
+    public static AudioTrackOutput create(PcmFormat format, int bufferSizeInBytes) {
+        int channelConfig = format.getChannelCount() == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        int encoding = format.getBitsPerSample() == 8 ? AudioFormat.ENCODING_PCM_8BIT : AudioFormat.ENCODING_PCM_16BIT;
+        int minBufferSize = AudioTrack.getMinBufferSize(format.getSampleRate(), channelConfig, encoding);
+        int bufferSize = Math.max(bufferSizeInBytes, minBufferSize);
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .build();
+        AudioFormat audioFormat = new AudioFormat.Builder().setSampleRate(format.getSampleRate())
+                .setEncoding(encoding)
+                .setChannelMask(channelConfig)
+                .build();
+        AudioTrack audioTrack;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            //低延迟模式，采样率与设备原生采样率一致时才能走fast track
+            audioTrack = new AudioTrack.Builder()
+                    .setAudioAttributes(attributes)
+                    .setAudioFormat(audioFormat)
+                    .setBufferSizeInBytes(bufferSize)
+                    .setTransferMode(AudioTrack.MODE_STREAM)
+                    .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                    .build();
+        } else {
+            audioTrack = new AudioTrack(attributes, audioFormat, bufferSize, AudioTrack.MODE_STREAM,
+                    AudioManager.AUDIO_SESSION_ID_GENERATE);
+        }
+        return new AudioTrackOutput(audioTrack, bufferSize, format.getFrameSize());
+    }
+
+    public AudioTrackOutput(AudioTrack audioTrack, int bufferSizeInBytes, int frameSize) {
+        mAudioTrack = audioTrack;
+        mBufferSizeInBytes = bufferSizeInBytes;
+        mFrameSize = frameSize;
+    }
+
+    public AudioTrack getAudioTrack() {
+        return mAudioTrack;
+    }
+
+    @Override
+    public void play() {
+        mAudioTrack.play();
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int size) {
+        return mAudioTrack.write(data, offset, size);
+    }
+
+    @Override
+    public int write(ByteBuffer data, int size) {
+        return mAudioTrack.write(data, size, AudioTrack.WRITE_BLOCKING);
+    }
+
+    @Override
+    public int getPlaybackHeadPosition() {
+        return mAudioTrack.getPlaybackHeadPosition();
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return mAudioTrack.getUnderrunCount();
+        }
+        return -1;
+    }
+
+    @Override
+    public int getBufferSizeInFrames() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return mAudioTrack.getBufferSizeInFrames();
+        }
+        //6.0以下缓冲区大小就是创建时指定的大小
+        return mBufferSizeInBytes / mFrameSize;
+    }
+
+    @Override
+    public int getBufferCapacityInFrames() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return mAudioTrack.getBufferCapacityInFrames();
+        }
+        return -1;
+    }
+
+    @Override
+    public int setBufferSizeInFrames(int frames) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return mAudioTrack.setBufferSizeInFrames(frames);
+        }
+        return -1;
+    }
+
+    @Override
+    public void pause() {
+        mAudioTrack.pause();
+    }
+
+    @Override
+    public void flush() {
+        mAudioTrack.flush();
+    }
+
+    @Override
+    public void stop() {
+        mAudioTrack.stop();
+    }
+
+    @Override
+    public void release() {
+        mAudioTrack.release();
+    }
+}
@@ -0,0 +1,97 @@
+package com.zfg.audiodemo;
+
+/**
+ * 自动增益控制：把语音的RMS电平拉到目标电平
+ * 电平升高时按起始时间常数快速降低增益，降低时按释放时间常数缓慢提高增益；
+ * 低于底噪的块不更新增益，避免停顿时把噪声放大。增益同时受块内峰值限制，结果不会削波
+ */
+public class AutomaticGainControl implements DspStage {
+
+    public static final float DEFAULT_TARGET_DB = -18;
+    public static final float DEFAULT_MAX_GAIN_DB = 24;
+    public static final float DEFAULT_NOISE_FLOOR_DB = -55;
+    public static final int DEFAULT_ATTACK_MS = 20;
+    public static final int DEFAULT_RELEASE_MS = 800;
+
+    /**
+     * 峰值限制留出的余量
+     */
+    private static final float PEAK_LIMIT = 0.98f * DspChain.FULL_SCALE;
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private final float mTarget;
+    private final float mMaxGain;
+    private final float mNoiseFloor;
+    private final float mAttackMs;
+    private final float mReleaseMs;
+
+    private float mGain = 1;
+
+    public AutomaticGainControl(int sampleRate, int channels) {
+        this(sampleRate, channels, DEFAULT_TARGET_DB, DEFAULT_MAX_GAIN_DB, DEFAULT_NOISE_FLOOR_DB, DEFAULT_ATTACK_MS,
+                DEFAULT_RELEASE_MS);
+    }
+
+    /**
+     * @param sampleRate   采样率
+     * @param channels     声道数
+     * @param targetDb     目标RMS电平（dBFS）
+     * @param maxGainDb    最大增益（dB）
+     * @param noiseFloorDb 低于这个电平不更新增益（dBFS）
+     * @param attackMs     降低增益的时间常数
+     * @param releaseMs    提高增益的时间常数
+     */
+    public AutomaticGainControl(int sampleRate, int channels, float targetDb, float maxGainDb, float noiseFloorDb,
+                                int attackMs, int releaseMs) {
+        if (sampleRate <= 0 || channels <= 0 || maxGainDb < 0 || attackMs <= 0 || releaseMs <= 0) {
+            throw new IllegalArgumentException("Invalid AGC config");
+        }
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mTarget = GainStage.dbToLinear(targetDb) * DspChain.FULL_SCALE;
+        mMaxGain = GainStage.dbToLinear(maxGainDb);
+        mNoiseFloor = GainStage.dbToLinear(noiseFloorDb) * DspChain.FULL_SCALE;
+        mAttackMs = attackMs;
+        mReleaseMs = releaseMs;
+    }
+
+    @Override
+    public String getName() {
+        return "agc";
+    }
+
+    @Override
+    public void process(float[] samples, int offset, int frames) {
+        int length = frames * mChannels;
+        float level = DspChain.rms(samples, offset, length);
+        float gain = mGain;
+        if (level > mNoiseFloor) {
+            float desired = Math.min(mMaxGain, mTarget / level);
+            //时间常数按块时长换算成这一块的平滑系数
+            float blockMs = frames * 1000f / mSampleRate;
+            float timeConstant = desired < gain ? mAttackMs : mReleaseMs;
+            float coefficient = 1 - (float) Math.exp(-blockMs / timeConstant);
+            gain += (desired - gain) * coefficient;
+        }
+        float peak = DspChain.peak(samples, offset, length);
+        if (peak * gain > PEAK_LIMIT) {
+            gain = PEAK_LIMIT / peak;
+        }
+        //增益降低时整块直接使用新增益，峰值才不会超出范围；提高时线性过渡
+        GainStage.applyRamp(samples, offset, frames, mChannels, Math.min(mGain, gain), gain);
+        mGain = gain;
+    }
+
+    /**
+     * 当前的线性增益
+     */
+    public float getGain() {
+        return mGain;
+    }
+
+    @Override
+    public void reset() {
+        mGain = 1;
+    }
+}
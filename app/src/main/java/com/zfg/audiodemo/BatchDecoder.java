@@ -0,0 +1,325 @@
+package com.zfg.audiodemo;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量解码
+ * 同时运行N个解码器把一组音频文件解码成PCM，N不超过设备支持的解码器实例数和CPU核数。
+ * 提交端通过信号量做背压，任何时刻最多只有N个文件在解码，不会一次性创建大量解码器。
+ * 解码线程与AudioScheduler的离线任务一样使用后台优先级，批量解码不会和录音、播放的实时线程抢CPU
+ */
+public class BatchDecoder {
+
+    /**
+     * 无法查询解码器实例数时使用的并发数
+     */
+    private static final int DEFAULT_MAX_INSTANCES = 2;
+    private static final int KEEP_ALIVE_TIME = 60;
+
+    private final int mParallelism;
+    private final IFileDecoder mFileDecoder;
+    private final AudioScheduler.IThreadPriority mPriority;
+
+    /**
+     * @param requestedParallelism 期望的并发数，实际并发数会受设备能力限制
+     */
+    public BatchDecoder(int requestedParallelism) {
+        this(requestedParallelism, new ProcessThreadPriority());
+    }
+
+    /**
+     * @param requestedParallelism 期望的并发数，实际并发数会受设备能力限制
+     * @param priority             设置解码线程的优先级，与引擎共用时传入AudioScheduler.getThreadPriority()
+     */
+    public BatchDecoder(int requestedParallelism, AudioScheduler.IThreadPriority priority) {
+        this(Math.min(requestedParallelism,
+                Math.min(getMaxDecoderInstances(MediaFormat.MIMETYPE_AUDIO_AAC),
+                        Runtime.getRuntime().availableProcessors())),
+                new MediaFileDecoder(), priority);
+    }
+
+    BatchDecoder(int parallelism, IFileDecoder fileDecoder, AudioScheduler.IThreadPriority priority) {
+        mParallelism = Math.max(1, parallelism);
+        mFileDecoder = fileDecoder;
+        mPriority = priority;
+    }
+
+    /**
+     * 实际的并发数
+     */
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * 查询设备上该格式的解码器最多支持同时创建多少个实例
+     */
+    public static int getMaxDecoderInstances(String mime) {
+        //getMaxSupportedInstances需要API 23
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return DEFAULT_MAX_INSTANCES;
+        }
+        MediaCodecInfo[] codecInfos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+        for (MediaCodecInfo codecInfo : codecInfos) {
+            if (codecInfo.isEncoder()) {
+                continue;
+            }
+            for (String type : codecInfo.getSupportedTypes()) {
+                //createDecoderByType会选择列表中的第一个解码器
+                if (type.equalsIgnoreCase(mime)) {
+                    return Math.max(1, codecInfo.getCapabilitiesForType(type).getMaxSupportedInstances());
+                }
+            }
+        }
+        return DEFAULT_MAX_INSTANCES;
+    }
+
+    /**
+     * 批量解码，阻塞直到所有文件处理完，需要在工作线程中调用
+     * 调用线程被中断时不再开始新的文件，等正在解码的文件结束后返回，统计中只包含已经完成的文件
+     *
+     * @param sources  要解码的文件
+     * @param targets  对应的PCM输出文件
+     * @param delegate 回调，可以为null
+     * @return 汇总统计
+     */
+    public BatchStats decode(List<File> sources, List<File> targets, final IBatchDelegate delegate) {
+        if (sources.size() != targets.size()) {
+            throw new IllegalArgumentException("sources and targets must have the same size");
+        }
+        final List<FileResult> results = Collections.synchronizedList(new ArrayList<FileResult>());
+        final Semaphore permits = new Semaphore(mParallelism);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                mParallelism,
+                mParallelism,
+                KEEP_ALIVE_TIME,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(mParallelism),
+                new DecodeThread(mPriority),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        long startTime = System.nanoTime();
+        boolean interrupted = false;
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                //背压：没有空闲的解码器时阻塞在这里
+                permits.acquire();
+                final File source = sources.get(i);
+                final File target = targets.get(i);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            FileResult result;
+                            try {
+                                result = mFileDecoder.decodeFile(source, target);
+                            } catch (RuntimeException e) {
+                                //解码器异常只影响当前文件
+                                e.printStackTrace();
+                                result = new FileResult(source, target, false, 0, 0, 0);
+                            }
+                            results.add(result);
+                            if (null != delegate) {
+                                delegate.onFileDecoded(result);
+                            }
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                });
+            }
+            //等待所有任务结束
+            permits.acquire(mParallelism);
+        } catch (InterruptedException e) {
+            interrupted = true;
+            //排队中的文件不再解码，正在解码的文件不中断，让它们正常完成
+            executor.shutdown();
+            executor.getQueue().clear();
+        } finally {
+            executor.shutdown();
+        }
+        if (interrupted) {
+            //正在解码的文件结束后再汇总，onFileDecoded不会在onBatchFinished之后回调
+            awaitTerminationUninterruptibly(executor);
+            Thread.currentThread().interrupt();
+        }
+
+        BatchStats stats = new BatchStats(new ArrayList<>(results),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        if (null != delegate) {
+            delegate.onBatchFinished(stats);
+        }
+        return stats;
+    }
+
+    private static void awaitTerminationUninterruptibly(ThreadPoolExecutor executor) {
+        while (true) {
+            try {
+                if (executor.awaitTermination(KEEP_ALIVE_TIME, TimeUnit.SECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                //调用方已经被中断，等待结束后再恢复中断状态
+            }
+        }
+    }
+
+    /**
+     * 解码线程启动时先降到后台优先级
+     */
+    private static class DecodeThread implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+        private final AudioScheduler.IThreadPriority mPriority;
+
+        DecodeThread(AudioScheduler.IThreadPriority priority) {
+            mPriority = priority;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    mPriority.applyBackground();
+                    r.run();
+                }
+            });
+            thread.setName("BatchDecodeThread-" + mCount.incrementAndGet());
+            return thread;
+        }
+    }
+
+    /**
+     * 单个文件的解码
+     */
+    interface IFileDecoder {
+        FileResult decodeFile(File source, File target);
+    }
+
+    /**
+     * 使用AudioDecoder同步解码单个文件
+     */
+    private static class MediaFileDecoder implements IFileDecoder {
+
+        @Override
+        public FileResult decodeFile(File source, File target) {
+            final boolean[] finished = new boolean[1];
+            long startTime = System.nanoTime();
+            AudioDecoder audioDecoder = new AudioDecoder();
+            audioDecoder.initDecoder(source, target, new AudioDecoder.IDecodeDelegate() {
+                @Override
+                public void decodeProgress(long presentationTimeUs, long durationUs) {
+                }
+
+                @Override
+                public void decodeResult(boolean isFinish) {
+                    finished[0] = isFinish;
+                }
+            });
+            //同步解码，回调在当前线程执行
+            audioDecoder.decode();
+            return new FileResult(source, target, finished[0], audioDecoder.getDecodedBytes(),
+                    audioDecoder.getDecodedSeconds(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        }
+    }
+
+    /**
+     * 单个文件的解码结果
+     */
+    public static class FileResult {
+        public final File source;
+        public final File target;
+        public final boolean succeed;
+        public final long decodedBytes;
+        public final double audioSeconds;
+        public final long elapsedMs;
+
+        public FileResult(File source, File target, boolean succeed, long decodedBytes,
+                          double audioSeconds, long elapsedMs) {
+            this.source = source;
+            this.target = target;
+            this.succeed = succeed;
+            this.decodedBytes = decodedBytes;
+            this.audioSeconds = audioSeconds;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    /**
+     * 批量解码的汇总统计
+     */
+    public static class BatchStats {
+        public final List<FileResult> results;
+        public final long wallTimeMs;
+        public final int succeededCount;
+        public final int failedCount;
+        public final long decodedBytes;
+        public final double audioSeconds;
+
+        public BatchStats(List<FileResult> results, long wallTimeMs) {
+            this.results = Collections.unmodifiableList(results);
+            this.wallTimeMs = wallTimeMs;
+            int succeeded = 0;
+            long bytes = 0;
+            double seconds = 0;
+            for (FileResult result : results) {
+                if (result.succeed) {
+                    succeeded++;
+                }
+                bytes += result.decodedBytes;
+                seconds += result.audioSeconds;
+            }
+            succeededCount = succeeded;
+            failedCount = results.size() - succeeded;
+            decodedBytes = bytes;
+            audioSeconds = seconds;
+        }
+
+        /**
+         * 每秒处理的文件数
+         */
+        public double getFilesPerSecond() {
+            return wallTimeMs <= 0 ? 0 : results.size() * 1000.0 / wallTimeMs;
+        }
+
+        /**
+         * 每秒墙钟时间解码出的音频秒数，即相对实时的倍速
+         */
+        public double getRealtimeFactor() {
+            return wallTimeMs <= 0 ? 0 : audioSeconds * 1000.0 / wallTimeMs;
+        }
+
+        @Override
+        public String toString() {
+            return "BatchStats{files=" + results.size()
+                    + ", succeeded=" + succeededCount
+                    + ", failed=" + failedCount
+                    + ", wallTimeMs=" + wallTimeMs
+                    + ", filesPerSecond=" + getFilesPerSecond()
+                    + ", realtimeFactor=" + getRealtimeFactor() + "}";
+        }
+    }
+
+    /**
+     * 批量解码回调，在解码线程中调用
+     */
+    public interface IBatchDelegate {
+        void onFileDecoded(FileResult result);
+
+        void onBatchFinished(BatchStats stats);
+    }
+}
@@ -0,0 +1,43 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 把PCM数据直接交给回调处理，例如送入AudioTrack播放或做实时分析
+ */
+public class CallbackPcmSink implements PcmSink {
+
+    private final IPcmCallback mCallback;
+
+    public CallbackPcmSink(IPcmCallback callback) {
+        mCallback = callback;
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        mCallback.onPcmData(data);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        mCallback.onPcmEnd();
+    }
+
+    /**
+     * PCM数据回调，在解码线程中调用
+     */
+    public interface IPcmCallback {
+
+        /**
+         * @param data 只在回调期间有效
+         */
+        void onPcmData(ByteBuffer data) throws IOException;
+
+        void onPcmEnd();
+    }
+}
@@ -0,0 +1,35 @@
+package com.zfg.audiodemo;
+
+/**
+ * 录音保存的内容，不需要的那一路不会打开文件，也不会拷贝或转换数据
+ */
+public enum CaptureMode {
+    /**
+     * 只编码成AAC，磁盘写入量约为PCM的1/6
+     */
+    AAC_ONLY(false, true),
+    /**
+     * 只保存PCM（WAV），不创建编码器
+     */
+    PCM_ONLY(true, false),
+    /**
+     * 同时保存PCM和AAC
+     */
+    BOTH(true, true);
+
+    private final boolean mWritesPcm;
+    private final boolean mEncodesAac;
+
+    CaptureMode(boolean writesPcm, boolean encodesAac) {
+        mWritesPcm = writesPcm;
+        mEncodesAac = encodesAac;
+    }
+
+    public boolean writesPcm() {
+        return mWritesPcm;
+    }
+
+    public boolean encodesAac() {
+        return mEncodesAac;
+    }
+}
@@ -0,0 +1,90 @@
+package com.zfg.audiodemo;
+
+/**
+ * 交错存储的PCM声道转换，不分配内存
+ * 单声道转多声道时复制到每个声道，多声道转单声道时取平均，其他情况按声道序号对应，多出的输出声道复制最后一个输入声道
+ */
+public class ChannelMixer {
+
+    private ChannelMixer() {
+    }
+
+    /**
+     * @param in          输入
+     * @param inOffset    输入起始位置（采样）
+     * @param inChannels  输入声道数
+     * @param out         输出，不能与输入是同一个数组
+     * @param outOffset   输出起始位置（采样）
+     * @param outChannels 输出声道数
+     * @param frames      帧数
+     */
+    public static void mix(short[] in, int inOffset, int inChannels,
+                           short[] out, int outOffset, int outChannels, int frames) {
+        if (inChannels == outChannels) {
+            System.arraycopy(in, inOffset, out, outOffset, frames * inChannels);
+            return;
+        }
+        int inIndex = inOffset;
+        int outIndex = outOffset;
+        if (outChannels == 1) {
+            for (int i = 0; i < frames; i++) {
+                int sum = 0;
+                for (int c = 0; c < inChannels; c++) {
+                    sum += in[inIndex++];
+                }
+                out[outIndex++] = (short) (sum / inChannels);
+            }
+        } else if (inChannels == 1) {
+            for (int i = 0; i < frames; i++) {
+                short sample = in[inIndex++];
+                for (int c = 0; c < outChannels; c++) {
+                    out[outIndex++] = sample;
+                }
+            }
+        } else {
+            for (int i = 0; i < frames; i++) {
+                for (int c = 0; c < outChannels; c++) {
+                    out[outIndex++] = in[inIndex + Math.min(c, inChannels - 1)];
+                }
+                inIndex += inChannels;
+            }
+        }
+    }
+
+    /**
+     * 浮点版本，参数含义同上
+     */
+    public static void mix(float[] in, int inOffset, int inChannels,
+                           float[] out, int outOffset, int outChannels, int frames) {
+        if (inChannels == outChannels) {
+            System.arraycopy(in, inOffset, out, outOffset, frames * inChannels);
+            return;
+        }
+        int inIndex = inOffset;
+        int outIndex = outOffset;
+        if (outChannels == 1) {
+            float scale = 1.0f / inChannels;
+            for (int i = 0; i < frames; i++) {
+                float sum = 0;
+                for (int c = 0; c < inChannels; c++) {
+                    sum += in[inIndex++];
+                }
+                out[outIndex++] = sum * scale;
+            }
+        } else if (inChannels == 1) {
+            for (int i = 0; i < frames; i++) {
+                float sample = in[inIndex++];
+                for (int c = 0; c < outChannels; c++) {
+                    out[outIndex++] = sample;
+                }
+            }
+        } else {
+            for (int i = 0; i < frames; i++) {
+                for (int c = 0; c < outChannels; c++) {
+                    out[outIndex++] = in[inIndex + Math.min(c, inChannels - 1)];
+                }
+                inIndex += inChannels;
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.zfg.audiodemo;
+
+/**
+ * 缓存的元数据信息，对应MediaCodec.BufferInfo，不依赖Android API
+ */
+public class CodecBufferInfo {
+    public int offset;
+    public int size;
+    public long presentationTimeUs;
+    public int flags;
+
+    public void set(int offset, int size, long presentationTimeUs, int flags) {
+        this.offset = offset;
+        this.size = size;
+        this.presentationTimeUs = presentationTimeUs;
+        this.flags = flags;
+    }
+}
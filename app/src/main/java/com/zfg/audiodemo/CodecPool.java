@@ -0,0 +1,328 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * 已配置编解码器的复用池
+ * 创建MediaCodec和configure/start需要几十到几百毫秒，会话结束时不再stop/release，而是flush后放回池中，
+ * 下一次相同配置的会话直接取出使用。配置用调用方生成的key区分，相同key的编解码器可以互相替换。
+ * 池中取出的编解码器在stop()或release()时自动放回，编码和解码流程不需要修改。
+ * flush之后编码器不会再输出配置信息，也不会再通知输出格式变化，复用时由池补发一次
+ */
+public class CodecPool {
+
+    public static final int DEFAULT_MAX_IDLE = 4;
+
+    /**
+     * 补发配置信息时使用的输出缓存index，不会与编解码器真实的index冲突
+     */
+    static final int REPLAY_CONFIG_INDEX = Integer.MAX_VALUE;
+
+    private final int mMaxIdle;
+    /**
+     * 空闲的编解码器，最近放回的在队尾
+     */
+    private final ArrayDeque<PooledCodec> mIdle = new ArrayDeque<>();
+    private boolean mClosed;
+
+    private final LatencyHistogram mAcquireLatency;
+    private final MetricsRegistry.Counter mHits;
+    private final MetricsRegistry.Counter mMisses;
+    private final MetricsRegistry.Counter mEvictions;
+    private final MetricsRegistry.Counter mDiscards;
+
+    public CodecPool() {
+        this(DEFAULT_MAX_IDLE, MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param maxIdle 最多保留的空闲编解码器个数，超过时释放最久未使用的
+     * @param metrics 运行指标
+     */
+    public CodecPool(int maxIdle, MetricsRegistry metrics) {
+        if (maxIdle <= 0) {
+            throw new IllegalArgumentException("Invalid max idle " + maxIdle);
+        }
+        mMaxIdle = maxIdle;
+        mAcquireLatency = metrics.histogram("codec.acquire_us");
+        mHits = metrics.counter("codec.pool_hits");
+        mMisses = metrics.counter("codec.pool_misses");
+        mEvictions = metrics.counter("codec.pool_evictions");
+        mDiscards = metrics.counter("codec.pool_discards");
+    }
+
+    /**
+     * 取出一个配置为key的编解码器，池中没有时用factory创建
+     * 复用的编解码器已经在执行状态，start()不会再次配置；新创建的由调用方start
+     *
+     * @param key     配置的唯一标识，例如MIME、采样率、声道数、码率
+     * @param factory 创建尚未start的编解码器
+     */
+    public AudioCodec acquire(String key, ICodecFactory factory) throws IOException {
+        long start = System.nanoTime();
+        PooledCodec codec = takeIdle(key);
+        if (null == codec) {
+            mMisses.increment();
+            codec = new PooledCodec(key, factory.createCodec());
+        } else {
+            mHits.increment();
+            codec.beginReuse();
+        }
+        mAcquireLatency.record((System.nanoTime() - start) / 1000);
+        return codec;
+    }
+
+    /**
+     * 预先创建并启动一个编解码器放进池中，之后的第一次acquire也不需要等待创建
+     * 池中已经有相同key的空闲编解码器时不再创建
+     */
+    public void prewarm(String key, ICodecFactory factory) throws IOException {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            for (PooledCodec codec : mIdle) {
+                if (codec.mKey.equals(key)) {
+                    return;
+                }
+            }
+        }
+        PooledCodec codec = new PooledCodec(key, factory.createCodec());
+        codec.start();
+        codec.release();
+    }
+
+    private synchronized PooledCodec takeIdle(String key) {
+        //优先使用最近放回的
+        Iterator<PooledCodec> iterator = mIdle.descendingIterator();
+        while (iterator.hasNext()) {
+            PooledCodec codec = iterator.next();
+            if (codec.mKey.equals(key)) {
+                iterator.remove();
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 会话结束时放回，flush失败或池已关闭时直接释放
+     */
+    private void recycle(PooledCodec codec) {
+        boolean reusable = codec.mStarted;
+        if (reusable) {
+            try {
+                //EOS之后需要flush才能重新输入
+                codec.mCodec.flush();
+            } catch (IllegalStateException e) {
+                //编解码器出错，不能再使用
+                e.printStackTrace();
+                reusable = false;
+            }
+        }
+        PooledCodec evicted = null;
+        synchronized (this) {
+            if (reusable && !mClosed) {
+                mIdle.addLast(codec);
+                if (mIdle.size() > mMaxIdle) {
+                    evicted = mIdle.removeFirst();
+                    mEvictions.increment();
+                }
+                codec = null;
+            } else {
+                mDiscards.increment();
+            }
+        }
+        if (null != codec) {
+            destroy(codec);
+        }
+        if (null != evicted) {
+            destroy(evicted);
+        }
+    }
+
+    private static void destroy(PooledCodec codec) {
+        try {
+            if (codec.mStarted) {
+                codec.mCodec.stop();
+            }
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+        codec.mCodec.release();
+    }
+
+    /**
+     * 取出池中编解码器包装的实际实现，异步解码需要直接设置MediaCodec的回调
+     *
+     * @return 不是从池中取出的编解码器原样返回
+     */
+    public static AudioCodec unwrap(AudioCodec codec) {
+        return codec instanceof PooledCodec ? ((PooledCodec) codec).mCodec : codec;
+    }
+
+    /**
+     * 空闲的编解码器个数
+     */
+    public synchronized int getIdleCount() {
+        return mIdle.size();
+    }
+
+    /**
+     * 释放所有空闲的编解码器，之后放回的编解码器也直接释放
+     */
+    public void close() {
+        PooledCodec[] idle;
+        synchronized (this) {
+            mClosed = true;
+            idle = mIdle.toArray(new PooledCodec[mIdle.size()]);
+            mIdle.clear();
+        }
+        for (PooledCodec codec : idle) {
+            destroy(codec);
+        }
+    }
+
+    /**
+     * 池中取出的编解码器，stop()/release()时放回池中
+     */
+    private class PooledCodec implements AudioCodec {
+        private final String mKey;
+        private final AudioCodec mCodec;
+        private boolean mStarted;
+        private boolean mInUse = true;
+
+        /**
+         * 上一次会话中编码器输出的配置信息，复用时补发
+         */
+        private byte[] mConfig;
+        private boolean mFormatSeen;
+        private boolean mReplayFormat;
+        private boolean mReplayConfig;
+
+        PooledCodec(String key, AudioCodec codec) {
+            mKey = key;
+            mCodec = codec;
+        }
+
+        void beginReuse() {
+            mInUse = true;
+            mReplayFormat = mFormatSeen;
+            mReplayConfig = null != mConfig;
+        }
+
+        @Override
+        public void start() {
+            if (!mStarted) {
+                mCodec.start();
+                mStarted = true;
+            }
+        }
+
+        @Override
+        public int dequeueInputBuffer(long timeoutUs) {
+            return mCodec.dequeueInputBuffer(timeoutUs);
+        }
+
+        @Override
+        public ByteBuffer getInputBuffer(int index) {
+            return mCodec.getInputBuffer(index);
+        }
+
+        @Override
+        public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+            mCodec.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+        }
+
+        @Override
+        public int dequeueOutputBuffer(CodecBufferInfo info, long timeoutUs) {
+            if (mReplayFormat) {
+                mReplayFormat = false;
+                return INFO_OUTPUT_FORMAT_CHANGED;
+            }
+            if (mReplayConfig) {
+                mReplayConfig = false;
+                info.set(0, mConfig.length, 0, BUFFER_FLAG_CODEC_CONFIG);
+                return REPLAY_CONFIG_INDEX;
+            }
+            int index = mCodec.dequeueOutputBuffer(info, timeoutUs);
+            if (index == INFO_OUTPUT_FORMAT_CHANGED) {
+                mFormatSeen = true;
+            } else if (index >= 0 && (info.flags & BUFFER_FLAG_CODEC_CONFIG) != 0 && info.size > 0) {
+                //保存一份配置信息，复用时MP4封装还需要它
+                ByteBuffer config = mCodec.getOutputBuffer(index).duplicate();
+                config.position(info.offset);
+                config.limit(info.offset + info.size);
+                mConfig = new byte[info.size];
+                config.get(mConfig);
+            }
+            return index;
+        }
+
+        @Override
+        public ByteBuffer getOutputBuffer(int index) {
+            if (index == REPLAY_CONFIG_INDEX) {
+                return ByteBuffer.wrap(mConfig);
+            }
+            return mCodec.getOutputBuffer(index);
+        }
+
+        @Override
+        public void releaseOutputBuffer(int index) {
+            if (index != REPLAY_CONFIG_INDEX) {
+                mCodec.releaseOutputBuffer(index);
+            }
+        }
+
+        @Override
+        public int getOutputSampleRate() {
+            return mCodec.getOutputSampleRate();
+        }
+
+        @Override
+        public int getOutputChannelCount() {
+            return mCodec.getOutputChannelCount();
+        }
+
+        @Override
+        public void flush() {
+            mReplayFormat = false;
+            mReplayConfig = false;
+            mCodec.flush();
+        }
+
+        /**
+         * 不停止编解码器，放回池中
+         */
+        @Override
+        public void stop() {
+            release();
+        }
+
+        /**
+         * 放回池中，重复调用无效
+         */
+        @Override
+        public void release() {
+            synchronized (this) {
+                if (!mInUse) {
+                    return;
+                }
+                mInUse = false;
+            }
+            mReplayFormat = false;
+            mReplayConfig = false;
+            recycle(this);
+        }
+    }
+
+    /**
+     * 创建尚未start的编解码器
+     */
+    public interface ICodecFactory {
+        AudioCodec createCodec() throws IOException;
+    }
+}
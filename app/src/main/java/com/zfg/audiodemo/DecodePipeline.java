@@ -0,0 +1,183 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 从SampleSource读取、经AudioCodec解码、写入PcmSink的处理流程
+ * 不依赖Android API，可以在JVM上测试和压测；同步模式调用run()，
+ * 异步模式由MediaCodec的回调驱动queueInput()和handleOutput()
+ */
+public class DecodePipeline {
+
+    /**
+     * 同步模式下等待缓存的时间（微秒）
+     */
+    private static final long TIMEOUT_US = 5000;
+
+    private final AudioCodec mCodec;
+    private final SampleSource mExtractor;
+    private final PcmSink mPcmSink;
+    private final CodecBufferInfo mBufferInfo = new CodecBufferInfo();
+    private IOutputListener mOutputListener;
+
+    private long mInputFrames;
+    private long mDecodedBytes;
+
+    /**
+     * 从数据源读取一帧的耗时，读取慢时解码器会缺数据
+     */
+    private final LatencyHistogram mReadLatency;
+    /**
+     * 在超时时间内没有拿到空闲输入缓存的次数
+     */
+    private final MetricsRegistry.Counter mInputStalls;
+    /**
+     * 在超时时间内没有拿到输出的次数
+     */
+    private final MetricsRegistry.Counter mOutputStalls;
+    private final LatencyHistogram mOutputWait;
+    private final MetricsRegistry.Counter mFramesIn;
+    private final MetricsRegistry.Counter mBytesOut;
+
+    /**
+     * @param codec     已经start的解码器
+     * @param extractor 数据源
+     * @param pcmSink   PCM输出
+     */
+    public DecodePipeline(AudioCodec codec, SampleSource extractor, PcmSink pcmSink) {
+        this(codec, extractor, pcmSink, MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param codec     已经start的解码器
+     * @param extractor 数据源
+     * @param pcmSink   PCM输出
+     * @param metrics   运行指标
+     */
+    public DecodePipeline(AudioCodec codec, SampleSource extractor, PcmSink pcmSink, MetricsRegistry metrics) {
+        mCodec = codec;
+        mExtractor = extractor;
+        mPcmSink = pcmSink;
+        mReadLatency = metrics.histogram("decode.read_us");
+        mInputStalls = metrics.counter("decode.input_stalls");
+        mOutputStalls = metrics.counter("decode.output_stalls");
+        mOutputWait = metrics.histogram("decode.output_wait_us");
+        mFramesIn = metrics.counter("decode.frames_in");
+        mBytesOut = metrics.counter("decode.bytes");
+    }
+
+    public void setOutputListener(IOutputListener outputListener) {
+        mOutputListener = outputListener;
+    }
+
+    /**
+     * 同步解码，直到输出EOS
+     */
+    public void run() throws IOException {
+        boolean inputSawEos = false;
+        boolean outputSawEos = false;
+
+        while (!outputSawEos) {
+            if (!inputSawEos) {
+                //每5000微秒查询一次
+                int inputIndex = mCodec.dequeueInputBuffer(TIMEOUT_US);
+                //输入缓存index可用
+                if (inputIndex >= 0) {
+                    inputSawEos = queueInput(inputIndex);
+                } else {
+                    mInputStalls.increment();
+                }
+            }
+            //获取输出缓存，需要传入CodecBufferInfo 用于存储ByteBuffer信息
+            long start = System.nanoTime();
+            int outputIndex = mCodec.dequeueOutputBuffer(mBufferInfo, TIMEOUT_US);
+            mOutputWait.record((System.nanoTime() - start) / 1000);
+            if (outputIndex == AudioCodec.INFO_TRY_AGAIN_LATER) {
+                mOutputStalls.increment();
+            } else if (outputIndex >= 0) {
+                outputSawEos = handleOutput(outputIndex, mBufferInfo);
+            } else if (outputIndex == AudioCodec.INFO_OUTPUT_FORMAT_CHANGED && null != mOutputListener) {
+                mOutputListener.onOutputFormatChanged(mCodec.getOutputSampleRate(), mCodec.getOutputChannelCount());
+            }
+        }
+    }
+
+    /**
+     * 从数据源读取一帧数据放入输入缓存
+     *
+     * @return 是否已经读取完
+     */
+    public boolean queueInput(int inputIndex) {
+        //获取可用的输入缓存
+        ByteBuffer inputBuffer = mCodec.getInputBuffer(inputIndex);
+        //从数据源读取数据到输入缓存中，返回读取长度
+        long start = System.nanoTime();
+        int bufferSize = mExtractor.readSampleData(inputBuffer, 0);
+        mReadLatency.record((System.nanoTime() - start) / 1000);
+        if (bufferSize <= 0) {//已经读取完
+            //做标识
+            mCodec.queueInputBuffer(inputIndex, 0, 0, 0, AudioCodec.BUFFER_FLAG_END_OF_STREAM);
+            return true;
+        }
+        long time = mExtractor.getSampleTime();
+        //将输入缓存放入解码器中
+        mCodec.queueInputBuffer(inputIndex, 0, bufferSize, time, 0);
+        mInputFrames++;
+        mFramesIn.increment();
+        //指向下一帧
+        mExtractor.advance();
+        return false;
+    }
+
+    /**
+     * 处理一个输出缓存：写入PcmSink并回调
+     *
+     * @return 是否已经输出完
+     */
+    public boolean handleOutput(int outputIndex, CodecBufferInfo bufferInfo) throws IOException {
+        try {
+            if ((bufferInfo.flags & AudioCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && bufferInfo.size > 0) {
+                //获取输出缓存
+                ByteBuffer outputBuffer = mCodec.getOutputBuffer(outputIndex);
+                //设置ByteBuffer的position位置
+                outputBuffer.position(bufferInfo.offset);
+                //设置ByteBuffer访问的结点
+                outputBuffer.limit(bufferInfo.offset + bufferInfo.size);
+                //直接把解码器的输出缓存交给sink，不再拷贝到byte[]
+                mPcmSink.write(outputBuffer);
+                mDecodedBytes += bufferInfo.size;
+                mBytesOut.add(bufferInfo.size);
+                if (null != mOutputListener) {
+                    mOutputListener.onOutputBuffer(bufferInfo.presentationTimeUs, bufferInfo.size);
+                }
+            }
+        } finally {
+            //释放输出缓存
+            mCodec.releaseOutputBuffer(outputIndex);
+        }
+        //判断缓存是否完结
+        return (bufferInfo.flags & AudioCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+    }
+
+    public long getInputFrames() {
+        return mInputFrames;
+    }
+
+    /**
+     * 已经写出的PCM字节数
+     */
+    public long getDecodedBytes() {
+        return mDecodedBytes;
+    }
+
+    /**
+     * 解码输出回调，在解码线程中调用
+     */
+    public interface IOutputListener {
+
+        void onOutputFormatChanged(int sampleRate, int channelCount);
+
+        void onOutputBuffer(long presentationTimeUs, int size);
+    }
+}
@@ -0,0 +1,209 @@
+package com.zfg.audiodemo;
+
+/**
+ * 采集与编码之间的处理链
+ * 16位PCM先转成float放进预先分配的块，依次经过每个DspStage原地处理，再转回16位并限幅。
+ * 每个环节单独计时，记录到运行指标中，可以看出哪个环节占用了CPU以及整条链路比实时快多少倍
+ */
+public class DspChain {
+
+    /**
+     * 16位PCM的满刻度
+     */
+    static final float FULL_SCALE = 32768f;
+
+    /**
+     * 默认每次处理的最大帧数，约为48KHz下40ms
+     */
+    public static final int DEFAULT_BLOCK_FRAMES = 2048;
+
+    private final DspStage[] mStages;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mBlockFrames;
+    private final float[] mBlock;
+
+    private final long[] mStageNanos;
+    private long mProcessedFrames;
+    private long mProcessNanos;
+
+    private final LatencyHistogram[] mStageLatency;
+    private final LatencyHistogram mChainLatency;
+    private final MetricsRegistry.Counter mFramesIn;
+
+    public DspChain(PcmFormat format, DspStage... stages) {
+        this(format, DEFAULT_BLOCK_FRAMES, MetricsRegistry.getDefault(), stages);
+    }
+
+    /**
+     * @param format      16位PCM格式
+     * @param blockFrames 每次处理的最大帧数，更长的数据分块处理
+     * @param metrics     运行指标
+     * @param stages      按顺序执行的处理环节
+     */
+    public DspChain(PcmFormat format, int blockFrames, MetricsRegistry metrics, DspStage... stages) {
+        if (format.getBitsPerSample() != 16) {
+            throw new IllegalArgumentException("Only 16 bit PCM is supported: " + format);
+        }
+        mStages = stages.clone();
+        mSampleRate = format.getSampleRate();
+        mChannels = format.getChannelCount();
+        mBlockFrames = blockFrames;
+        mBlock = new float[blockFrames * mChannels];
+        mStageNanos = new long[stages.length];
+        mStageLatency = new LatencyHistogram[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            mStageLatency[i] = metrics.histogram("dsp." + stages[i].getName() + "_ns");
+        }
+        mChainLatency = metrics.histogram("dsp.chain_ns");
+        mFramesIn = metrics.counter("dsp.frames");
+    }
+
+    /**
+     * 原地处理小端16位PCM，与AudioRecord.read的输出一致
+     *
+     * @param length 字节数，不足一帧的部分不处理
+     * @return 处理的字节数
+     */
+    public int process(byte[] data, int offset, int length) {
+        int frameSize = mChannels * 2;
+        int frames = length / frameSize;
+        int done = 0;
+        while (done < frames) {
+            int count = Math.min(frames - done, mBlockFrames);
+            int start = offset + done * frameSize;
+            int samples = count * mChannels;
+            for (int i = 0, j = start; i < samples; i++, j += 2) {
+                mBlock[i] = (short) ((data[j] & 0xFF) | (data[j + 1] << 8));
+            }
+            runStages(mBlock, 0, count);
+            for (int i = 0, j = start; i < samples; i++, j += 2) {
+                int sample = toShort(mBlock[i]);
+                data[j] = (byte) sample;
+                data[j + 1] = (byte) (sample >> 8);
+            }
+            done += count;
+        }
+        return frames * frameSize;
+    }
+
+    /**
+     * 原地处理16位采样
+     */
+    public void process(short[] samples, int offset, int frames) {
+        int done = 0;
+        while (done < frames) {
+            int count = Math.min(frames - done, mBlockFrames);
+            int start = offset + done * mChannels;
+            int length = count * mChannels;
+            for (int i = 0; i < length; i++) {
+                mBlock[i] = samples[start + i];
+            }
+            runStages(mBlock, 0, count);
+            for (int i = 0; i < length; i++) {
+                samples[start + i] = (short) toShort(mBlock[i]);
+            }
+            done += count;
+        }
+    }
+
+    /**
+     * 原地处理float采样，取值范围与16位PCM一致，不做限幅
+     */
+    public void process(float[] samples, int offset, int frames) {
+        int done = 0;
+        while (done < frames) {
+            int count = Math.min(frames - done, mBlockFrames);
+            runStages(samples, offset + done * mChannels, count);
+            done += count;
+        }
+    }
+
+    private void runStages(float[] samples, int offset, int frames) {
+        long chainStart = System.nanoTime();
+        long start = chainStart;
+        for (int i = 0; i < mStages.length; i++) {
+            mStages[i].process(samples, offset, frames);
+            long end = System.nanoTime();
+            mStageNanos[i] += end - start;
+            mStageLatency[i].record(end - start);
+            start = end;
+        }
+        mProcessNanos += start - chainStart;
+        mChainLatency.record(start - chainStart);
+        mProcessedFrames += frames;
+        mFramesIn.add(frames);
+    }
+
+    private static int toShort(float sample) {
+        if (sample >= 32767) {
+            return 32767;
+        }
+        if (sample <= -32768) {
+            return -32768;
+        }
+        return Math.round(sample);
+    }
+
+    /**
+     * 清除所有环节的状态
+     */
+    public void reset() {
+        for (DspStage stage : mStages) {
+            stage.reset();
+        }
+    }
+
+    public int getStageCount() {
+        return mStages.length;
+    }
+
+    public DspStage getStage(int index) {
+        return mStages[index];
+    }
+
+    /**
+     * 某个环节累计占用的时间（纳秒）
+     */
+    public long getStageNanos(int index) {
+        return mStageNanos[index];
+    }
+
+    /**
+     * 已处理的音频时长与处理耗时之比，没有处理过时返回0
+     */
+    public double getRealtimeFactor() {
+        if (mProcessNanos <= 0) {
+            return 0;
+        }
+        return mProcessedFrames * 1e9 / mSampleRate / mProcessNanos;
+    }
+
+    /**
+     * 一段采样的均方根
+     */
+    static float rms(float[] samples, int offset, int length) {
+        if (length <= 0) {
+            return 0;
+        }
+        float sum = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            float sample = samples[i];
+            sum += sample * sample;
+        }
+        return (float) Math.sqrt(sum / length);
+    }
+
+    /**
+     * 一段采样绝对值的最大值
+     */
+    static float peak(float[] samples, int offset, int length) {
+        float max = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            max = Math.max(max, Math.abs(samples[i]));
+        }
+        return max;
+    }
+}
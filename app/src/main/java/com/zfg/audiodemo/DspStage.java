@@ -0,0 +1,28 @@
+package com.zfg.audiodemo;
+
+/**
+ * 采集链路上的一个处理环节
+ * 在预先分配好的float块上原地处理，采样按声道交错存储，取值范围与16位PCM一致（-32768~32767）。
+ * 块与块之间的状态由实现自己保存，处理过程中不能分配内存
+ */
+public interface DspStage {
+
+    /**
+     * 运行指标中使用的名字
+     */
+    String getName();
+
+    /**
+     * 原地处理一块数据
+     *
+     * @param samples 交错存储的采样
+     * @param offset  第一个采样的位置
+     * @param frames  帧数
+     */
+    void process(float[] samples, int offset, int frames);
+
+    /**
+     * 清除块之间保存的状态，重新开始录音时调用
+     */
+    void reset();
+}
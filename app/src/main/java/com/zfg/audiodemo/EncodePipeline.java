@@ -0,0 +1,202 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PCM编码成AAC的处理流程
+ * 只依赖AudioCodec和AacFrameSink，不依赖Android API，可以在JVM上测试和压测
+ */
+public class EncodePipeline {
+
+    private final AudioCodec mCodec;
+    private final AacFrameSink mFrameWriter;
+    /**
+     * 结束时每次等待缓存的时间（微秒）
+     */
+    private static final long FINISH_POLL_US = 10000;
+
+    private final CodecBufferInfo mBufferInfo = new CodecBufferInfo();
+    private long mFramesWritten;
+    private boolean mInputEos;
+    private boolean mOutputEos;
+    private SampleClock mSampleClock;
+
+    private final LatencyHistogram mDequeueWait;
+    private final MetricsRegistry.Counter mFramesOut;
+    private final MetricsRegistry.Counter mBytesOut;
+    /**
+     * 送入EOS到取出最后一帧的耗时，以及这段时间写出的帧数
+     */
+    private final LatencyHistogram mFinishLatency;
+    private final MetricsRegistry.Counter mFlushedFrames;
+    private final MetricsRegistry.Counter mFinishTimeouts;
+
+    /**
+     * @param codec       已经start的编码器
+     * @param frameWriter 编码后数据的输出
+     */
+    public EncodePipeline(AudioCodec codec, AacFrameSink frameWriter) {
+        this(codec, frameWriter, MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param codec       已经start的编码器
+     * @param frameWriter 编码后数据的输出
+     * @param metrics     运行指标
+     */
+    public EncodePipeline(AudioCodec codec, AacFrameSink frameWriter, MetricsRegistry metrics) {
+        mCodec = codec;
+        mFrameWriter = frameWriter;
+        mDequeueWait = metrics.histogram("encode.dequeue_input_us");
+        mFramesOut = metrics.counter("encode.frames");
+        mBytesOut = metrics.counter("encode.bytes");
+        mFinishLatency = metrics.histogram("encode.finish_us");
+        mFlushedFrames = metrics.counter("encode.flushed_frames");
+        mFinishTimeouts = metrics.counter("encode.finish_timeouts");
+    }
+
+    /**
+     * 设置时间戳时钟，之后每块输入按累计采样数打时间戳，输出帧按编码器给出的时间戳写索引；
+     * 不设置时时间戳都为0
+     */
+    public void setSampleClock(SampleClock sampleClock) {
+        mSampleClock = sampleClock;
+    }
+
+    public SampleClock getSampleClock() {
+        return mSampleClock;
+    }
+
+    /**
+     * 送入一块PCM数据，并取出已经编码好的帧
+     *
+     * @param data   PCM数据
+     * @param length 有效数据长度
+     */
+    public void encode(byte[] data, int length) throws IOException {
+        encode(data, 0, length);
+    }
+
+    /**
+     * 送入一块PCM数据，并取出已经编码好的帧
+     *
+     * @param data   PCM数据
+     * @param offset 起始位置
+     * @param length 有效数据长度
+     */
+    public void encode(byte[] data, int offset, int length) throws IOException {
+        //dequeueInputBuffer（time）需要传入一个时间值，-1表示一直等待，0表示不等待有可能会丢帧，其他表示等待多少微秒
+        //获取输入缓存的index
+        long start = System.nanoTime();
+        int inputIndex = mCodec.dequeueInputBuffer(-1);
+        mDequeueWait.record((System.nanoTime() - start) / 1000);
+        if (inputIndex >= 0) {
+            ByteBuffer inputByteBuffer = mCodec.getInputBuffer(inputIndex);
+            inputByteBuffer.clear();
+            //添加数据
+            inputByteBuffer.put(data, offset, length);
+            //限制ByteBuffer的访问长度
+            inputByteBuffer.limit(length);
+            //把输入缓存塞回去给编码器
+            long ptsUs = null == mSampleClock ? 0 : mSampleClock.advance(length);
+            mCodec.queueInputBuffer(inputIndex, 0, length, ptsUs, 0);
+        }
+        drain(0);
+    }
+
+    /**
+     * 取出已经编码好的帧并写出
+     *
+     * @param timeoutUs 等待输出的时间
+     * @return 本次写出的帧数
+     */
+    public int drain(long timeoutUs) throws IOException {
+        int frames = 0;
+        while (true) {
+            //获取输出缓存的index
+            int outputIndex = mCodec.dequeueOutputBuffer(mBufferInfo, timeoutUs);
+            if (outputIndex == AudioCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                continue;
+            }
+            if (outputIndex < 0) {
+                break;
+            }
+            //编码器的配置信息不是音频帧，交给输出自己决定是否需要（ADTS流中不需要，MP4写入esds）
+            if ((mBufferInfo.flags & AudioCodec.BUFFER_FLAG_CODEC_CONFIG) != 0 && mBufferInfo.size > 0) {
+                ByteBuffer config = mCodec.getOutputBuffer(outputIndex);
+                config.position(mBufferInfo.offset);
+                config.limit(mBufferInfo.offset + mBufferInfo.size);
+                try {
+                    mFrameWriter.onCodecConfig(config);
+                } finally {
+                    mCodec.releaseOutputBuffer(outputIndex);
+                }
+            } else if (mBufferInfo.size > 0) {
+                ByteBuffer outByteBuffer = mCodec.getOutputBuffer(outputIndex);
+                outByteBuffer.position(mBufferInfo.offset);
+                outByteBuffer.limit(mBufferInfo.offset + mBufferInfo.size);
+                try {
+                    //直接写出编码器的输出缓存，不再为每一帧分配byte[]
+                    mBytesOut.add(null == mSampleClock ? mFrameWriter.writeFrame(outByteBuffer)
+                            : mFrameWriter.writeFrame(outByteBuffer, mBufferInfo.presentationTimeUs));
+                } finally {
+                    //释放
+                    mCodec.releaseOutputBuffer(outputIndex);
+                }
+                frames++;
+                mFramesWritten++;
+                mFramesOut.increment();
+            } else {
+                mCodec.releaseOutputBuffer(outputIndex);
+            }
+            if ((mBufferInfo.flags & AudioCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                mOutputEos = true;
+                break;
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * 送入EOS并取出编码器中剩余的帧，直到输出EOS或超过期限
+     * 编码器出问题时最多等待timeoutUs，不会让停止录音卡住
+     *
+     * @param timeoutUs 最长等待时间（微秒）
+     * @return 本次写出的帧数
+     */
+    public int finish(long timeoutUs) throws IOException {
+        long start = System.nanoTime();
+        long deadline = start + timeoutUs * 1000L;
+        int frames = 0;
+        while (!mOutputEos && System.nanoTime() < deadline) {
+            if (!mInputEos) {
+                //输入缓存都被占用时先取输出，编码器才能腾出输入缓存
+                int inputIndex = mCodec.dequeueInputBuffer(FINISH_POLL_US);
+                if (inputIndex >= 0) {
+                    long ptsUs = null == mSampleClock ? 0 : mSampleClock.getPtsUs();
+                    mCodec.queueInputBuffer(inputIndex, 0, 0, ptsUs, AudioCodec.BUFFER_FLAG_END_OF_STREAM);
+                    mInputEos = true;
+                }
+            }
+            frames += drain(mInputEos ? FINISH_POLL_US : 0);
+        }
+        mFinishLatency.record((System.nanoTime() - start) / 1000);
+        mFlushedFrames.add(frames);
+        if (!mOutputEos) {
+            mFinishTimeouts.increment();
+        }
+        return frames;
+    }
+
+    /**
+     * 是否已经取出了EOS，即编码器中的数据已经全部写出
+     */
+    public boolean isEndOfStream() {
+        return mOutputEos;
+    }
+
+    public long getFramesWritten() {
+        return mFramesWritten;
+    }
+}
@@ -0,0 +1,123 @@
+package com.zfg.audiodemo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 写入文件的PCM输出
+ * 小块数据先合并到一块直接内存里，攒满后与下一块数据一起通过FileChannel聚集写出；
+ * 大块数据不做拷贝，直接写出解码器的ByteBuffer
+ */
+public class FilePcmSink implements PcmSink {
+
+    /**
+     * 合并缓存的默认大小
+     */
+    public static final int DEFAULT_COALESCE_SIZE = 64 * 1024;
+
+    private final FileChannel mChannel;
+    private final ByteBuffer mCoalesceBuffer;
+    /**
+     * 聚集写使用的数组，预先分配避免每次写入都创建
+     */
+    private final ByteBuffer[] mGather = new ByteBuffer[2];
+    private long mBytesWritten;
+    private long mWriteCount;
+
+    public FilePcmSink(File file) throws IOException {
+        this(file, DEFAULT_COALESCE_SIZE);
+    }
+
+    public FilePcmSink(File file, int coalesceSize) throws IOException {
+        this(new FileOutputStream(file).getChannel(), coalesceSize);
+    }
+
+    /**
+     * 从通道的当前位置开始追加写入，关闭时会关闭通道
+     */
+    public FilePcmSink(FileChannel channel, int coalesceSize) {
+        mChannel = channel;
+        mCoalesceBuffer = ByteBuffer.allocateDirect(coalesceSize);
+    }
+
+    /**
+     * 写入byte[]中的数据，先拷贝到合并缓存，不需要包装成ByteBuffer
+     */
+    public void write(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, mCoalesceBuffer.remaining());
+            mCoalesceBuffer.put(data, offset, count);
+            offset += count;
+            length -= count;
+            if (!mCoalesceBuffer.hasRemaining()) {
+                flushCoalesced();
+            }
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        int size = data.remaining();
+        if (size <= mCoalesceBuffer.remaining()) {
+            mCoalesceBuffer.put(data);
+            if (!mCoalesceBuffer.hasRemaining()) {
+                flushCoalesced();
+            }
+            return;
+        }
+        //放不下了，把已合并的数据和这一块一起写出
+        mCoalesceBuffer.flip();
+        mGather[0] = mCoalesceBuffer;
+        mGather[1] = data;
+        mBytesWritten += mCoalesceBuffer.remaining() + size;
+        while (data.hasRemaining()) {
+            mChannel.write(mGather);
+        }
+        mWriteCount++;
+        mGather[1] = null;
+        mCoalesceBuffer.clear();
+    }
+
+    private void flushCoalesced() throws IOException {
+        mCoalesceBuffer.flip();
+        if (mCoalesceBuffer.hasRemaining()) {
+            mBytesWritten += mCoalesceBuffer.remaining();
+            while (mCoalesceBuffer.hasRemaining()) {
+                mChannel.write(mCoalesceBuffer);
+            }
+            mWriteCount++;
+        }
+        mCoalesceBuffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushCoalesced();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushCoalesced();
+        } finally {
+            mChannel.close();
+        }
+    }
+
+    /**
+     * 已经写到文件的字节数
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * 实际发起的写操作次数
+     */
+    public long getWriteCount() {
+        return mWriteCount;
+    }
+}
@@ -0,0 +1,109 @@
+package com.zfg.audiodemo;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioRecord;
+import android.util.Log;
+
+import static com.zfg.audiodemo.MainActivity.TAG;
+
+/**
+ * 录音和编码格式协商
+ * 优先使用设备的原生采样率录音，避免系统在HAL和应用之间再做一次重采样；
+ * 编码格式需要是AAC/ADTS支持的采样率，与录音格式不同时由PcmConverter转换
+ */
+public class FormatNegotiator {
+
+    /**
+     * 所有设备都支持的采样率
+     */
+    public static final int FALLBACK_SAMPLE_RATE = 44100;
+
+    private FormatNegotiator() {
+    }
+
+    /**
+     * 设备的原生采样率，取不到时返回FALLBACK_SAMPLE_RATE
+     */
+    public static int getNativeSampleRate(Context context) {
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        if (null != audioManager) {
+            String rate = audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE);
+            if (null != rate) {
+                try {
+                    return Integer.parseInt(rate);
+                } catch (NumberFormatException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return FALLBACK_SAMPLE_RATE;
+    }
+
+    /**
+     * 协商录音格式
+     *
+     * @param requested 期望的格式，声道数和采样位数按期望的来，采样率优先用原生采样率
+     */
+    public static PcmFormat negotiateCapture(Context context, PcmFormat requested) {
+        final int channelConfig = requested.getChannelCount() == 1
+                ? AudioFormat.CHANNEL_IN_MONO : AudioFormat.CHANNEL_IN_STEREO;
+        final int encoding = requested.getBitsPerSample() == 8
+                ? AudioFormat.ENCODING_PCM_8BIT : AudioFormat.ENCODING_PCM_16BIT;
+        int sampleRate = chooseSampleRate(new int[]{getNativeSampleRate(context), requested.getSampleRate(),
+                48000, FALLBACK_SAMPLE_RATE}, new ISampleRateSupport() {
+            @Override
+            public boolean isSupported(int sampleRate) {
+                return AudioRecord.getMinBufferSize(sampleRate, channelConfig, encoding) > 0;
+            }
+        });
+        PcmFormat format = requested.withSampleRate(sampleRate);
+        Log.i(TAG, "Capture format " + format + ", requested " + requested);
+        return format;
+    }
+
+    /**
+     * 按顺序选出第一个支持的采样率，都不支持时返回最后一个
+     */
+    static int chooseSampleRate(int[] candidates, ISampleRateSupport support) {
+        for (int candidate : candidates) {
+            if (candidate > 0 && support.isSupported(candidate)) {
+                return candidate;
+            }
+        }
+        return candidates[candidates.length - 1];
+    }
+
+    /**
+     * 编码格式：录音采样率是ADTS支持的采样率时直接使用，否则换成最接近的支持的采样率
+     *
+     * @param capture          录音格式
+     * @param encodeSampleRate 指定的编码采样率，0表示跟随录音格式
+     */
+    public static PcmFormat negotiateEncode(PcmFormat capture, int encodeSampleRate) {
+        int sampleRate = encodeSampleRate > 0 ? encodeSampleRate : capture.getSampleRate();
+        if (AdtsParser.getSampleRateIndex(sampleRate) < 0) {
+            sampleRate = nearestAdtsSampleRate(sampleRate);
+        }
+        return capture.withSampleRate(sampleRate);
+    }
+
+    static int nearestAdtsSampleRate(int sampleRate) {
+        int best = FALLBACK_SAMPLE_RATE;
+        for (int i = 0; i < AdtsParser.SAMPLE_RATE_COUNT; i++) {
+            int candidate = AdtsParser.getSampleRate(i);
+            if (Math.abs(candidate - sampleRate) < Math.abs(best - sampleRate)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 判断采样率是否可用
+     */
+    interface ISampleRateSupport {
+        boolean isSupported(int sampleRate);
+    }
+}
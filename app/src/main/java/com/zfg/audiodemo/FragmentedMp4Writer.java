@@ -0,0 +1,542 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 分片MP4（fMP4）写入器，纯Java实现
+ * 文件开头是不含采样表的ftyp+moov，之后每攒够一个分片的时长就写出一组moof+mdat，
+ * 内存中只保留当前分片的数据；写入过程中已经写出的分片就可以被播放和拖动，
+ * 结束时在文件尾部追加mfra，记录每个分片的时间和位置用于快速seek
+ */
+public class FragmentedMp4Writer implements AacFrameSink {
+
+    /**
+     * 默认的分片时长（毫秒）
+     */
+    public static final int DEFAULT_FRAGMENT_MS = 1000;
+
+    private static final int TRACK_ID = 1;
+    /**
+     * AAC LC每帧的采样数，没有时间戳时用来推算时长
+     */
+    private static final int SAMPLES_PER_FRAME = AdtsParser.SAMPLES_PER_RAW_BLOCK;
+    /**
+     * moov中的时间刻度，音轨使用采样率作为刻度
+     */
+    private static final int MOVIE_TIMESCALE = 1000;
+    private static final int BOX_HEADER_SIZE = 8;
+    private static final int TRUN_ENTRY_SIZE = 8;
+    /**
+     * moof中除trun采样表以外的长度：moof、mfhd、traf、tfhd、tfdt、trun头部
+     */
+    private static final int MOOF_FIXED_SIZE = 8 + 16 + 8 + 16 + 20 + 20;
+    /**
+     * tfhd：default-base-is-moof，数据偏移从moof开始计算
+     */
+    private static final int TFHD_DEFAULT_BASE_IS_MOOF = 0x020000;
+    /**
+     * trun：data-offset、sample-duration、sample-size
+     */
+    private static final int TRUN_FLAGS = 0x000001 | 0x000100 | 0x000200;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final WritableByteChannel mChannel;
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final long mFragmentDuration;
+
+    private byte[] mAudioSpecificConfig;
+    private boolean mHeaderWritten;
+    private boolean mFinished;
+
+    /**
+     * 当前分片的数据和每一帧的大小、解码时间（以采样率为刻度），跨分片复用
+     */
+    private ByteBuffer mSampleData;
+    private int[] mSampleSizes;
+    private long[] mSampleTimes;
+    private int mSampleCount;
+    /**
+     * moof的拼接缓存，按采样数增长
+     */
+    private ByteBuffer mBoxBuffer;
+
+    private long mFirstPtsUs = -1;
+    private long mLastDuration = SAMPLES_PER_FRAME;
+    private long mFrameCount;
+    private long mBytesWritten;
+    private int mSequenceNumber;
+
+    /**
+     * 已写出分片的起始时间和moof位置，写入mfra
+     */
+    private long[] mFragmentTimes = new long[16];
+    private long[] mFragmentOffsets = new long[16];
+    private int mFragmentCount;
+
+    private final LatencyHistogram mFragmentWriteLatency;
+    private final LatencyHistogram mFragmentBytes;
+    private final MetricsRegistry.Counter mFragments;
+
+    /**
+     * @param channel      输出通道
+     * @param sampleRate   编码采样率
+     * @param channelCount 声道数
+     */
+    public FragmentedMp4Writer(WritableByteChannel channel, int sampleRate, int channelCount) {
+        this(channel, sampleRate, channelCount, DEFAULT_FRAGMENT_MS, MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param channel      输出通道
+     * @param sampleRate   编码采样率
+     * @param channelCount 声道数
+     * @param fragmentMs   分片时长（毫秒），越短写入越及时，文件头部开销越大
+     * @param metrics      运行指标
+     */
+    public FragmentedMp4Writer(WritableByteChannel channel, int sampleRate, int channelCount, int fragmentMs,
+                               MetricsRegistry metrics) {
+        if (fragmentMs <= 0) {
+            throw new IllegalArgumentException("Invalid fragment duration " + fragmentMs);
+        }
+        mChannel = channel;
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mAudioSpecificConfig = buildAudioSpecificConfig(sampleRate, channelCount);
+        mFragmentDuration = (long) fragmentMs * sampleRate / 1000;
+        //按每秒约50帧、每帧不超过2KB预估，超出时再扩容
+        int frames = (int) Math.max(16, mFragmentDuration / SAMPLES_PER_FRAME + 2);
+        mSampleData = ByteBuffer.allocate(frames * 2048);
+        mSampleSizes = new int[frames];
+        mSampleTimes = new long[frames];
+        mBoxBuffer = ByteBuffer.allocate(MOOF_FIXED_SIZE + frames * TRUN_ENTRY_SIZE + BOX_HEADER_SIZE);
+        mFragmentWriteLatency = metrics.histogram("mux.fragment_write_us");
+        mFragmentBytes = metrics.histogram("mux.fragment_bytes");
+        mFragments = metrics.counter("mux.fragments");
+    }
+
+    /**
+     * 生成2字节的AudioSpecificConfig：AAC LC、采样率索引、声道配置
+     */
+    public static byte[] buildAudioSpecificConfig(int sampleRate, int channelCount) {
+        int freqIdx = AdtsParser.getSampleRateIndex(sampleRate);
+        if (freqIdx < 0 || channelCount < 1 || channelCount > 8 || channelCount == 7) {
+            throw new IllegalArgumentException("Unsupported AAC format " + sampleRate + " Hz, " + channelCount + " channels");
+        }
+        int chanCfg = channelCount == 8 ? 7 : channelCount;
+        int objectType = 2;
+        return new byte[]{
+                (byte) ((objectType << 3) | (freqIdx >> 1)),
+                (byte) (((freqIdx & 1) << 7) | (chanCfg << 3))
+        };
+    }
+
+    /**
+     * 编码器给出的配置优先于按格式生成的配置，需要在第一个分片写出之前到达
+     */
+    @Override
+    public void onCodecConfig(ByteBuffer config) {
+        if (mHeaderWritten || !config.hasRemaining()) {
+            return;
+        }
+        byte[] asc = new byte[config.remaining()];
+        config.duplicate().get(asc);
+        mAudioSpecificConfig = asc;
+    }
+
+    @Override
+    public int writeFrame(ByteBuffer payload) throws IOException {
+        long ptsUs = (mFirstPtsUs < 0 ? 0 : mFirstPtsUs)
+                + mFrameCount * SAMPLES_PER_FRAME * 1000000L / mSampleRate;
+        return writeFrame(payload, ptsUs);
+    }
+
+    /**
+     * 帧先放进当前分片的缓存，攒够分片时长后连同moof一起写出
+     *
+     * @return 本次写入文件的字节数，没有写出分片时为0
+     */
+    @Override
+    public int writeFrame(ByteBuffer payload, long ptsUs) throws IOException {
+        if (mFinished) {
+            throw new IllegalStateException("Writer already finished");
+        }
+        if (mFirstPtsUs < 0) {
+            mFirstPtsUs = ptsUs;
+        }
+        long time = Math.max(0, (ptsUs - mFirstPtsUs) * mSampleRate / 1000000L);
+        if (mSampleCount > 0 && time < mSampleTimes[mSampleCount - 1]) {
+            //时间戳倒退时接着上一帧，保证解码时间单调递增
+            time = mSampleTimes[mSampleCount - 1] + mLastDuration;
+        }
+        long written = 0;
+        if (mSampleCount > 0 && time - mSampleTimes[0] >= mFragmentDuration) {
+            written = writeFragment(time);
+        }
+        int size = payload.remaining();
+        ensureCapacity(size);
+        mSampleData.put(payload.duplicate());
+        mSampleSizes[mSampleCount] = size;
+        mSampleTimes[mSampleCount] = time;
+        mSampleCount++;
+        mFrameCount++;
+        return (int) written;
+    }
+
+    /**
+     * 写出当前分片和mfra，不关闭输出通道
+     */
+    @Override
+    public void finish() throws IOException {
+        if (mFinished) {
+            return;
+        }
+        if (mSampleCount > 0) {
+            writeFragment(mSampleTimes[mSampleCount - 1] + mLastDuration);
+        } else if (!mHeaderWritten) {
+            writeHeader();
+        }
+        writeFragmentIndex();
+        mFinished = true;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public int getFragmentCount() {
+        return mFragmentCount;
+    }
+
+    /**
+     * 当前分片中还没有写出的帧数
+     */
+    public int getPendingFrames() {
+        return mSampleCount;
+    }
+
+    private void ensureCapacity(int size) {
+        if (mSampleCount == mSampleSizes.length) {
+            int frames = mSampleSizes.length * 2;
+            int[] sizes = new int[frames];
+            long[] times = new long[frames];
+            System.arraycopy(mSampleSizes, 0, sizes, 0, mSampleCount);
+            System.arraycopy(mSampleTimes, 0, times, 0, mSampleCount);
+            mSampleSizes = sizes;
+            mSampleTimes = times;
+            mBoxBuffer = ByteBuffer.allocate(MOOF_FIXED_SIZE + frames * TRUN_ENTRY_SIZE + BOX_HEADER_SIZE);
+        }
+        if (mSampleData.remaining() < size) {
+            ByteBuffer data = ByteBuffer.allocate(Math.max(mSampleData.capacity() * 2, mSampleData.position() + size));
+            mSampleData.flip();
+            data.put(mSampleData);
+            mSampleData = data;
+        }
+    }
+
+    /**
+     * 写出当前分片
+     *
+     * @param endTime 分片之后下一帧的解码时间，用来计算最后一帧的时长
+     * @return 写入的字节数
+     */
+    private long writeFragment(long endTime) throws IOException {
+        long start = System.nanoTime();
+        long written = 0;
+        if (!mHeaderWritten) {
+            written += writeHeader();
+        }
+        long moofOffset = mBytesWritten;
+        int count = mSampleCount;
+        int moofSize = MOOF_FIXED_SIZE + count * TRUN_ENTRY_SIZE;
+        int dataSize = mSampleData.position();
+
+        ByteBuffer box = mBoxBuffer;
+        box.clear();
+        int moof = beginBox(box, "moof");
+        int mfhd = beginFullBox(box, "mfhd", 0, 0);
+        box.putInt(++mSequenceNumber);
+        endBox(box, mfhd);
+        int traf = beginBox(box, "traf");
+        int tfhd = beginFullBox(box, "tfhd", 0, TFHD_DEFAULT_BASE_IS_MOOF);
+        box.putInt(TRACK_ID);
+        endBox(box, tfhd);
+        int tfdt = beginFullBox(box, "tfdt", 1, 0);
+        box.putLong(mSampleTimes[0]);
+        endBox(box, tfdt);
+        int trun = beginFullBox(box, "trun", 0, TRUN_FLAGS);
+        box.putInt(count);
+        //数据从mdat头部之后开始
+        box.putInt(moofSize + BOX_HEADER_SIZE);
+        for (int i = 0; i < count; i++) {
+            long next = i + 1 < count ? mSampleTimes[i + 1] : endTime;
+            long duration = next - mSampleTimes[i];
+            box.putInt((int) duration);
+            box.putInt(mSampleSizes[i]);
+            if (duration > 0) {
+                mLastDuration = duration;
+            }
+        }
+        endBox(box, trun);
+        endBox(box, traf);
+        endBox(box, moof);
+        box.putInt(BOX_HEADER_SIZE + dataSize);
+        box.put(fourCc("mdat"));
+        box.flip();
+        written += writeFully(box);
+        mSampleData.flip();
+        written += writeFully(mSampleData);
+        mSampleData.clear();
+
+        addFragment(mSampleTimes[0], moofOffset);
+        mSampleCount = 0;
+        mFragments.increment();
+        mFragmentBytes.record(moofSize + BOX_HEADER_SIZE + dataSize);
+        mFragmentWriteLatency.record((System.nanoTime() - start) / 1000);
+        return written;
+    }
+
+    private void addFragment(long time, long offset) {
+        if (mFragmentCount == mFragmentTimes.length) {
+            long[] times = new long[mFragmentCount * 2];
+            long[] offsets = new long[mFragmentCount * 2];
+            System.arraycopy(mFragmentTimes, 0, times, 0, mFragmentCount);
+            System.arraycopy(mFragmentOffsets, 0, offsets, 0, mFragmentCount);
+            mFragmentTimes = times;
+            mFragmentOffsets = offsets;
+        }
+        mFragmentTimes[mFragmentCount] = time;
+        mFragmentOffsets[mFragmentCount] = offset;
+        mFragmentCount++;
+    }
+
+    /**
+     * ftyp和只描述音轨格式的moov，采样表为空，采样信息都在分片中
+     */
+    private long writeHeader() throws IOException {
+        ByteBuffer box = ByteBuffer.allocate(1024);
+        int ftyp = beginBox(box, "ftyp");
+        box.put(fourCc("iso6"));
+        box.putInt(0);
+        box.put(fourCc("iso6"));
+        box.put(fourCc("mp41"));
+        box.put(fourCc("M4A "));
+        endBox(box, ftyp);
+
+        int moov = beginBox(box, "moov");
+        int mvhd = beginFullBox(box, "mvhd", 0, 0);
+        box.putInt(0);
+        box.putInt(0);
+        box.putInt(MOVIE_TIMESCALE);
+        //时长未知，由分片决定
+        box.putInt(0);
+        box.putInt(0x00010000);
+        box.putShort((short) 0x0100);
+        box.put(new byte[10]);
+        putMatrix(box);
+        box.put(new byte[24]);
+        box.putInt(TRACK_ID + 1);
+        endBox(box, mvhd);
+
+        int trak = beginBox(box, "trak");
+        int tkhd = beginFullBox(box, "tkhd", 0, 0x000007);
+        box.putInt(0);
+        box.putInt(0);
+        box.putInt(TRACK_ID);
+        box.putInt(0);
+        box.putInt(0);
+        box.put(new byte[8]);
+        box.putShort((short) 0);
+        box.putShort((short) 0);
+        box.putShort((short) 0x0100);
+        box.putShort((short) 0);
+        putMatrix(box);
+        box.putInt(0);
+        box.putInt(0);
+        endBox(box, tkhd);
+
+        int mdia = beginBox(box, "mdia");
+        int mdhd = beginFullBox(box, "mdhd", 0, 0);
+        box.putInt(0);
+        box.putInt(0);
+        box.putInt(mSampleRate);
+        box.putInt(0);
+        //语言und
+        box.putShort((short) 0x55C4);
+        box.putShort((short) 0);
+        endBox(box, mdhd);
+        int hdlr = beginFullBox(box, "hdlr", 0, 0);
+        box.putInt(0);
+        box.put(fourCc("soun"));
+        box.put(new byte[12]);
+        box.put("SoundHandler".getBytes(ASCII));
+        box.put((byte) 0);
+        endBox(box, hdlr);
+
+        int minf = beginBox(box, "minf");
+        int smhd = beginFullBox(box, "smhd", 0, 0);
+        box.putInt(0);
+        endBox(box, smhd);
+        int dinf = beginBox(box, "dinf");
+        int dref = beginFullBox(box, "dref", 0, 0);
+        box.putInt(1);
+        //数据就在本文件中
+        int url = beginFullBox(box, "url ", 0, 1);
+        endBox(box, url);
+        endBox(box, dref);
+        endBox(box, dinf);
+
+        int stbl = beginBox(box, "stbl");
+        int stsd = beginFullBox(box, "stsd", 0, 0);
+        box.putInt(1);
+        putSampleEntry(box);
+        endBox(box, stsd);
+        for (String type : new String[]{"stts", "stsc", "stco"}) {
+            int table = beginFullBox(box, type, 0, 0);
+            box.putInt(0);
+            endBox(box, table);
+        }
+        int stsz = beginFullBox(box, "stsz", 0, 0);
+        box.putInt(0);
+        box.putInt(0);
+        endBox(box, stsz);
+        endBox(box, stbl);
+        endBox(box, minf);
+        endBox(box, mdia);
+        endBox(box, trak);
+
+        int mvex = beginBox(box, "mvex");
+        int trex = beginFullBox(box, "trex", 0, 0);
+        box.putInt(TRACK_ID);
+        box.putInt(1);
+        box.putInt(SAMPLES_PER_FRAME);
+        box.putInt(0);
+        box.putInt(0);
+        endBox(box, trex);
+        endBox(box, mvex);
+        endBox(box, moov);
+
+        box.flip();
+        mHeaderWritten = true;
+        return writeFully(box);
+    }
+
+    /**
+     * mp4a采样描述和esds
+     */
+    private void putSampleEntry(ByteBuffer box) {
+        int mp4a = beginBox(box, "mp4a");
+        box.put(new byte[6]);
+        box.putShort((short) 1);
+        box.put(new byte[8]);
+        box.putShort((short) mChannelCount);
+        box.putShort((short) 16);
+        box.putShort((short) 0);
+        box.putShort((short) 0);
+        //16.16定点数，超出范围时以mdhd中的刻度为准
+        box.putInt(mSampleRate < 0x10000 ? mSampleRate << 16 : 0);
+
+        byte[] asc = mAudioSpecificConfig;
+        int esds = beginFullBox(box, "esds", 0, 0);
+        //ES_Descriptor
+        box.put((byte) 0x03);
+        box.put((byte) (3 + 2 + 13 + 2 + asc.length + 3));
+        box.putShort((short) TRACK_ID);
+        box.put((byte) 0);
+        //DecoderConfigDescriptor：MPEG-4音频，音频流
+        box.put((byte) 0x04);
+        box.put((byte) (13 + 2 + asc.length));
+        box.put((byte) 0x40);
+        box.put((byte) 0x15);
+        box.put(new byte[3]);
+        box.putInt(0);
+        box.putInt(0);
+        //DecoderSpecificInfo
+        box.put((byte) 0x05);
+        box.put((byte) asc.length);
+        box.put(asc);
+        //SLConfigDescriptor
+        box.put((byte) 0x06);
+        box.put((byte) 0x01);
+        box.put((byte) 0x02);
+        endBox(box, esds);
+        endBox(box, mp4a);
+    }
+
+    /**
+     * mfra：每个分片一条tfra记录，mfro放在文件最后，播放器从尾部就能找到索引
+     */
+    private void writeFragmentIndex() throws IOException {
+        ByteBuffer box = ByteBuffer.allocate(8 + 24 + mFragmentCount * 19 + 16);
+        int mfra = beginBox(box, "mfra");
+        int tfra = beginFullBox(box, "tfra", 1, 0);
+        box.putInt(TRACK_ID);
+        //traf、trun、sample序号都用1字节
+        box.putInt(0);
+        box.putInt(mFragmentCount);
+        for (int i = 0; i < mFragmentCount; i++) {
+            box.putLong(mFragmentTimes[i]);
+            box.putLong(mFragmentOffsets[i]);
+            box.put((byte) 1);
+            box.put((byte) 1);
+            box.put((byte) 1);
+        }
+        endBox(box, tfra);
+        int mfro = beginFullBox(box, "mfro", 0, 0);
+        box.putInt(box.position() - mfra + 4);
+        endBox(box, mfro);
+        endBox(box, mfra);
+        box.flip();
+        writeFully(box);
+    }
+
+    private long writeFully(ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            mChannel.write(buffer);
+        }
+        mBytesWritten += length;
+        return length;
+    }
+
+    private static void putMatrix(ByteBuffer box) {
+        int[] matrix = {0x00010000, 0, 0, 0, 0x00010000, 0, 0, 0, 0x40000000};
+        for (int value : matrix) {
+            box.putInt(value);
+        }
+    }
+
+    private static byte[] fourCc(String type) {
+        return type.getBytes(ASCII);
+    }
+
+    /**
+     * 写入box头部，长度在endBox()时回填
+     *
+     * @return box的起始位置
+     */
+    private static int beginBox(ByteBuffer box, String type) {
+        int start = box.position();
+        box.putInt(0);
+        box.put(fourCc(type));
+        return start;
+    }
+
+    private static int beginFullBox(ByteBuffer box, String type, int version, int flags) {
+        int start = beginBox(box, type);
+        box.putInt((version << 24) | flags);
+        return start;
+    }
+
+    private static void endBox(ByteBuffer box, int start) {
+        box.putInt(start, box.position() - start);
+    }
+}
@@ -0,0 +1,82 @@
+package com.zfg.audiodemo;
+
+/**
+ * 固定增益，可以在其他线程中调整
+ * 增益变化时在一块之内线性过渡，避免突变产生咔哒声；不变时是一个纯乘法循环，JIT可以向量化
+ */
+public class GainStage implements DspStage {
+
+    private final int mChannels;
+    private volatile float mTargetGain;
+    private float mGain;
+
+    /**
+     * @param channels 声道数
+     * @param gainDb   初始增益（dB）
+     */
+    public GainStage(int channels, float gainDb) {
+        mChannels = channels;
+        mTargetGain = dbToLinear(gainDb);
+        mGain = mTargetGain;
+    }
+
+    /**
+     * 调整增益，下一块开始生效
+     */
+    public void setGainDb(float gainDb) {
+        mTargetGain = dbToLinear(gainDb);
+    }
+
+    /**
+     * 当前的线性增益
+     */
+    public float getGain() {
+        return mGain;
+    }
+
+    @Override
+    public String getName() {
+        return "gain";
+    }
+
+    @Override
+    public void process(float[] samples, int offset, int frames) {
+        float target = mTargetGain;
+        if (target == mGain) {
+            int end = offset + frames * mChannels;
+            for (int i = offset; i < end; i++) {
+                samples[i] *= target;
+            }
+            return;
+        }
+        applyRamp(samples, offset, frames, mChannels, mGain, target);
+        mGain = target;
+    }
+
+    @Override
+    public void reset() {
+        mGain = mTargetGain;
+    }
+
+    /**
+     * 增益在一块之内从from线性过渡到to
+     */
+    static void applyRamp(float[] samples, int offset, int frames, int channels, float from, float to) {
+        if (frames <= 0) {
+            return;
+        }
+        float step = (to - from) / frames;
+        float gain = from;
+        int index = offset;
+        for (int frame = 0; frame < frames; frame++) {
+            gain += step;
+            for (int channel = 0; channel < channels; channel++) {
+                samples[index++] *= gain;
+            }
+        }
+    }
+
+    static float dbToLinear(float db) {
+        return (float) Math.pow(10, db / 20);
+    }
+}
@@ -0,0 +1,86 @@
+package com.zfg.audiodemo;
+
+import java.util.Arrays;
+
+/**
+ * 一阶高通滤波器，去掉麦克风的直流偏移和低频噪声
+ * y[n] = a * (y[n-1] + x[n] - x[n-1])，每个声道单独保存上一个输入和输出
+ */
+public class HighPassFilter implements DspStage {
+
+    /**
+     * 默认截止频率，低于人声的基频
+     */
+    public static final float DEFAULT_CUTOFF_HZ = 80;
+
+    private final int mChannels;
+    private final float mCoefficient;
+    private final float[] mLastInput;
+    private final float[] mLastOutput;
+
+    public HighPassFilter(int sampleRate, int channels) {
+        this(sampleRate, channels, DEFAULT_CUTOFF_HZ);
+    }
+
+    /**
+     * @param sampleRate 采样率
+     * @param channels   声道数
+     * @param cutoffHz   -3dB截止频率
+     */
+    public HighPassFilter(int sampleRate, int channels, float cutoffHz) {
+        if (sampleRate <= 0 || channels <= 0 || cutoffHz <= 0 || cutoffHz >= sampleRate / 2f) {
+            throw new IllegalArgumentException("Invalid high pass config " + cutoffHz + "Hz at " + sampleRate
+                    + "Hz, channels " + channels);
+        }
+        mChannels = channels;
+        double rc = 1 / (2 * Math.PI * cutoffHz);
+        double dt = 1.0 / sampleRate;
+        mCoefficient = (float) (rc / (rc + dt));
+        mLastInput = new float[channels];
+        mLastOutput = new float[channels];
+    }
+
+    @Override
+    public String getName() {
+        return "high_pass";
+    }
+
+    @Override
+    public void process(float[] samples, int offset, int frames) {
+        float a = mCoefficient;
+        if (mChannels == 1) {
+            //单声道走没有步长的循环，状态放在局部变量里
+            float x1 = mLastInput[0];
+            float y1 = mLastOutput[0];
+            int end = offset + frames;
+            for (int i = offset; i < end; i++) {
+                float x = samples[i];
+                y1 = a * (y1 + x - x1);
+                x1 = x;
+                samples[i] = y1;
+            }
+            mLastInput[0] = x1;
+            mLastOutput[0] = y1;
+            return;
+        }
+        int end = offset + frames * mChannels;
+        for (int channel = 0; channel < mChannels; channel++) {
+            float x1 = mLastInput[channel];
+            float y1 = mLastOutput[channel];
+            for (int i = offset + channel; i < end; i += mChannels) {
+                float x = samples[i];
+                y1 = a * (y1 + x - x1);
+                x1 = x;
+                samples[i] = y1;
+            }
+            mLastInput[channel] = x1;
+            mLastOutput[channel] = y1;
+        }
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(mLastInput, 0);
+        Arrays.fill(mLastOutput, 0);
+    }
+}
@@ -0,0 +1,150 @@
+package com.zfg.audiodemo;
+
+/**
+ * 录音电平表
+ * 采集线程每处理一块16位PCM更新一次RMS和峰值，界面线程随时读取最新值画VU表，不需要回读录音文件。
+ * 峰值保持一段时间后按固定速度回落，与常见的峰值表一致
+ */
+public class LevelMeter {
+
+    /**
+     * 静音时的电平
+     */
+    public static final float MIN_DB = -96;
+
+    /**
+     * 峰值保持的时间和之后每秒回落的分贝数
+     */
+    public static final int DEFAULT_HOLD_MS = 1000;
+    public static final float DEFAULT_DECAY_DB_PER_SECOND = 20;
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mHoldFrames;
+    private final float mDecayDbPerSecond;
+
+    private volatile float mRmsDb = MIN_DB;
+    private volatile float mPeakDb = MIN_DB;
+    private volatile float mPeakHoldDb = MIN_DB;
+    private volatile long mClippedSamples;
+    private volatile long mFrames;
+    private int mHeldFrames;
+
+    public LevelMeter(int sampleRate, int channels) {
+        this(sampleRate, channels, DEFAULT_HOLD_MS, DEFAULT_DECAY_DB_PER_SECOND);
+    }
+
+    /**
+     * @param sampleRate        采样率
+     * @param channels          声道数
+     * @param holdMs            峰值保持时间
+     * @param decayDbPerSecond  保持结束后每秒回落的分贝数
+     */
+    public LevelMeter(int sampleRate, int channels, int holdMs, float decayDbPerSecond) {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("Invalid level meter config " + sampleRate + "Hz, channels " + channels);
+        }
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mHoldFrames = (int) ((long) holdMs * sampleRate / 1000);
+        mDecayDbPerSecond = decayDbPerSecond;
+    }
+
+    /**
+     * 用一块小端16位PCM更新电平，所有声道一起计算，只在采集线程中调用
+     *
+     * @param length 字节数，不足一帧的部分不计算
+     */
+    public void update(byte[] data, int offset, int length) {
+        int frames = length / (2 * mChannels);
+        if (frames <= 0) {
+            return;
+        }
+        int samples = frames * mChannels;
+        long sum = 0;
+        int peak = 0;
+        int clipped = 0;
+        for (int i = 0, j = offset; i < samples; i++, j += 2) {
+            int sample = (short) ((data[j] & 0xFF) | (data[j + 1] << 8));
+            sum += sample * sample;
+            int magnitude = sample < 0 ? -sample : sample;
+            if (magnitude > peak) {
+                peak = magnitude;
+            }
+            if (magnitude >= 32767) {
+                clipped++;
+            }
+        }
+        float rmsDb = toDb(Math.sqrt((double) sum / samples));
+        float peakDb = toDb(peak);
+        float holdDb = mPeakHoldDb;
+        if (peakDb >= holdDb) {
+            holdDb = peakDb;
+            mHeldFrames = 0;
+        } else {
+            mHeldFrames += frames;
+            if (mHeldFrames > mHoldFrames) {
+                holdDb = Math.max(peakDb, holdDb - mDecayDbPerSecond * frames / mSampleRate);
+            }
+        }
+        mRmsDb = rmsDb;
+        mPeakDb = peakDb;
+        mPeakHoldDb = holdDb;
+        mClippedSamples += clipped;
+        mFrames += frames;
+    }
+
+    private static float toDb(double magnitude) {
+        if (magnitude <= 0) {
+            return MIN_DB;
+        }
+        return (float) Math.max(MIN_DB, 20 * Math.log10(magnitude / DspChain.FULL_SCALE));
+    }
+
+    /**
+     * 最近一块的RMS电平（dBFS）
+     */
+    public float getRmsDb() {
+        return mRmsDb;
+    }
+
+    /**
+     * 最近一块的峰值电平（dBFS）
+     */
+    public float getPeakDb() {
+        return mPeakDb;
+    }
+
+    /**
+     * 保持后回落的峰值（dBFS）
+     */
+    public float getPeakHoldDb() {
+        return mPeakHoldDb;
+    }
+
+    /**
+     * 到达满刻度的采样数，大于0说明录音削波
+     */
+    public long getClippedSamples() {
+        return mClippedSamples;
+    }
+
+    /**
+     * 已经计算的帧数
+     */
+    public long getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * 重新开始录音时清除电平
+     */
+    public void reset() {
+        mRmsDb = MIN_DB;
+        mPeakDb = MIN_DB;
+        mPeakHoldDb = MIN_DB;
+        mClippedSamples = 0;
+        mFrames = 0;
+        mHeldFrames = 0;
+    }
+}
@@ -1,45 +1,34 @@
 package com.zfg.audiodemo;
 
 import android.Manifest;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.media.AudioAttributes;
-import android.media.AudioFormat;
-import android.media.AudioManager;
-import android.media.AudioRecord;
-import android.media.AudioTrack;
-import android.media.MediaRecorder;
 import android.os.Build;
-import android.os.Environment;
+import android.os.IBinder;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.Toast;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 
-import static com.zfg.audiodemo.AudioDecoder.DECODER_FILE;
 
 /**
  * @author zfg
  */
 public class MainActivity extends AppCompatActivity implements View.OnClickListener
-        , AudioDecoder.IDecodeDelegate {
+        , AudioEngine.IEngineListener {
 
     public static final String TAG = "Audio";
 
@@ -59,47 +48,58 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     private List<String> mPermissionList = new ArrayList<>();
 
     /**
-     * 采样率，现在能够保证在所有设备上使用的采样率是44100Hz, 但是其他的采样率（22050, 16000, 11025）在一些设备上也可以使用。
-     */
-    private static final int SAMPLE_RATE_HZ = 44100;
-
-    /**
-     * 录音声道数，CHANNEL_IN_MONO and CHANNEL_IN_STEREO. 其中CHANNEL_IN_MONO是可以保证在所有设备能够使用的。
-     */
-    private static final int CHANNEL_IN_CONFIG = AudioFormat.CHANNEL_IN_MONO;
-
-    /**
-     * 播放声道数，CHANNEL_OUT_MONO and CHANNEL_OUT_STEREO
-     */
-    private static final int CHANNEL_OUT_CONFIG = AudioFormat.CHANNEL_OUT_MONO;
-
-    /**
-     * 返回的音频数据的格式，ENCODING_PCM_8BIT, ENCODING_PCM_16BIT, and ENCODING_PCM_FLOAT.
-     */
-    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
-
-    /**
-     * 保存的文件
+     * 保存的文件夹
      */
     public static final String FOLDER_NAME = "AudioDemo";
-    private static final String RECODE_FILE = "recode_file";
 
     private Button btn_record;
     private Button btn_play;
     private Button btn_decoder;
 
-    private boolean isRecording;
-    private AudioRecord audioRecord;
-    private AudioTrack audioTrack;
+    /**
+     * 录音、播放和解码引擎，由AudioEngineService持有，绑定成功之前为null
+     */
+    private AudioEngine audioEngine;
+    //服务绑定之前设置的录音和播放选项，绑定后交给引擎；为null时使用引擎当前的设置
+    private CaptureMode captureMode;
+    private OutputContainer outputContainer;
+    private Boolean playBeforeDecoder;
+    private Boolean segmentedRecord;
+    private Boolean captureDsp;
+    private Boolean skipSilence;
+    private final ServiceConnection engineConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            audioEngine = ((AudioEngineService.EngineBinder) service).getEngine();
+            audioEngine.setListener(MainActivity.this);
+            if (null != captureMode) {
+                audioEngine.setCaptureMode(captureMode);
+            }
+            if (null != outputContainer) {
+                audioEngine.setOutputContainer(outputContainer);
+            }
+            if (null != playBeforeDecoder) {
+                audioEngine.setPlayBeforeDecoder(playBeforeDecoder);
+            }
+            if (null != segmentedRecord) {
+                audioEngine.setSegmentedRecord(segmentedRecord);
+            }
+            if (null != captureDsp) {
+                audioEngine.setCaptureDsp(captureDsp);
+            }
+            if (null != skipSilence) {
+                audioEngine.setSkipSilence(skipSilence);
+            }
+            //Activity重建时引擎可能正在录音或播放
+            btn_record.setText(getString(audioEngine.isRecording() ? R.string.stop_record : R.string.start_record));
+            btn_play.setText(getString(audioEngine.isPlaying() ? R.string.stop_play : R.string.start_play));
+        }
 
-    private ExecutorService executorService = null;
-    private static final int CORE_POOL_SIZE = 2;
-    private static final int MAXIMUM_POOL_SIZE = 2;
-    private static final int KEEP_ALIVE_TIME = 60;
-    //编码器
-    private AudioEncoder audioEncoder;
-    //默认播放解码前的数据，否则播放解码后的数据
-    private boolean playBeforeDecoder = false;
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            audioEngine = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -117,25 +117,103 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
         checkPermissions();
 
-        if (null == executorService) {
-            executorService = new ThreadPoolExecutor(
-                    CORE_POOL_SIZE,
-                    MAXIMUM_POOL_SIZE,
-                    KEEP_ALIVE_TIME,
-                    TimeUnit.SECONDS,
-                    new LinkedBlockingQueue<Runnable>(),
-                    new WorkThread(),
-                    new ThreadPoolExecutor.AbortPolicy());
+        //先启动再绑定，解绑后服务继续运行，引擎和其中的编解码器不随Activity销毁
+        Intent intent = new Intent(this, AudioEngineService.class);
+        startService(intent);
+        bindService(intent, engineConnection, BIND_AUTO_CREATE);
+
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        AudioEngine engine = audioEngine;
+        if (null != engine) {
+            engine.setListener(null);
+        }
+        unbindService(engineConnection);
+        audioEngine = null;
+        if (isFinishing() && (null == engine || !engine.isBusy())) {
+            //退出界面且没有正在进行的任务，释放引擎
+            stopService(new Intent(this, AudioEngineService.class));
         }
+    }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
     }
 
-    private class WorkThread implements ThreadFactory {
-        @Override
-        public Thread newThread(Runnable r) {
-            Thread thread = new Thread(r);
-            thread.setName("WorkThread");
-            return thread;
+    /**
+     * 每次打开菜单时按当前的设置显示选中状态，服务绑定之前显示界面保存的设置
+     */
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        switch (getCaptureMode()) {
+            case PCM_ONLY:
+                menu.findItem(R.id.menu_capture_pcm_only).setChecked(true);
+                break;
+            case AAC_ONLY:
+                menu.findItem(R.id.menu_capture_aac_only).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.menu_capture_both).setChecked(true);
+                break;
+        }
+        switch (getOutputContainer()) {
+            case M4A:
+                menu.findItem(R.id.menu_container_m4a).setChecked(true);
+                break;
+            case FRAGMENTED_MP4:
+                menu.findItem(R.id.menu_container_fmp4).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.menu_container_adts).setChecked(true);
+                break;
+        }
+        menu.findItem(R.id.menu_segmented_record).setChecked(isSegmentedRecord());
+        menu.findItem(R.id.menu_capture_dsp).setChecked(isCaptureDsp());
+        menu.findItem(R.id.menu_skip_silence).setChecked(isSkipSilence());
+        menu.findItem(R.id.menu_play_before_decoder).setChecked(isPlayBeforeDecoder());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.menu_capture_both:
+                setCaptureMode(CaptureMode.BOTH);
+                return true;
+            case R.id.menu_capture_pcm_only:
+                setCaptureMode(CaptureMode.PCM_ONLY);
+                return true;
+            case R.id.menu_capture_aac_only:
+                setCaptureMode(CaptureMode.AAC_ONLY);
+                return true;
+            case R.id.menu_container_adts:
+                setOutputContainer(OutputContainer.ADTS);
+                return true;
+            case R.id.menu_container_m4a:
+                setOutputContainer(OutputContainer.M4A);
+                return true;
+            case R.id.menu_container_fmp4:
+                setOutputContainer(OutputContainer.FRAGMENTED_MP4);
+                return true;
+            case R.id.menu_segmented_record:
+                setSegmentedRecord(!item.isChecked());
+                return true;
+            case R.id.menu_capture_dsp:
+                setCaptureDsp(!item.isChecked());
+                return true;
+            case R.id.menu_skip_silence:
+                setSkipSilence(!item.isChecked());
+                return true;
+            case R.id.menu_play_before_decoder:
+                setPlayBeforeDecoder(!item.isChecked());
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
         }
     }
 
@@ -168,29 +246,48 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
     @Override
     public void onClick(View v) {
+        AudioEngine engine = audioEngine;
+        if (null == engine) {
+            //服务还没有绑定
+            return;
+        }
         switch (v.getId()) {
             case R.id.btn_record:
                 if (btn_record.getText().toString().equals(getString(R.string.start_record))) {
                     btn_record.setText(getString(R.string.stop_record));
-                    if (null != executorService) {
-                        executorService.execute(recordRunnable);
+                    try {
+                        engine.record();
+                    } catch (RejectedExecutionException | IllegalStateException e) {
+                        Log.w(TAG, "Record rejected: " + e.getMessage());
+                        Toast.makeText(MainActivity.this, e.getMessage(), Toast.LENGTH_SHORT).show();
+                        btn_record.setText(getString(R.string.start_record));
                     }
                 } else {
                     btn_record.setText(getString(R.string.start_record));
-                    stopRecord();
+                    engine.stopRecord();
                 }
                 break;
             case R.id.btn_play:
                 if (btn_play.getText().toString().equals(getString(R.string.start_play))) {
                     btn_play.setText(getString(R.string.stop_play));
-                    if (null != executorService) {
-                        executorService.execute(playRunnable);
+                    try {
+                        engine.play();
+                    } catch (RejectedExecutionException | IllegalStateException e) {
+                        Log.w(TAG, "Play rejected: " + e.getMessage());
+                        Toast.makeText(MainActivity.this, e.getMessage(), Toast.LENGTH_SHORT).show();
+                        btn_play.setText(getString(R.string.start_play));
                     }
+                } else {
+                    engine.stopPlay();
                 }
                 break;
             case R.id.btn_decoder:
-                if (null != executorService) {
-                    executorService.execute(decoderRunnable);
+                try {
+                    engine.decode();
+                } catch (RejectedExecutionException e) {
+                    //排队的解码太多，不影响录音和播放
+                    Log.w(TAG, "Decode rejected, queue depth = " + engine.getScheduler().getOfflineQueueDepth());
+                    Toast.makeText(MainActivity.this, e.getMessage(), Toast.LENGTH_SHORT).show();
                 }
                 break;
             default:
@@ -198,40 +295,42 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         }
     }
 
-    private Runnable recordRunnable = new Runnable() {
-
-        @Override
-        public void run() {
-
-            startRecord();
-        }
-    };
-
-    private Runnable playRunnable = new Runnable() {
-
-        @Override
-        public void run() {
-
-            startPlay();
-        }
-    };
+    @Override
+    public void onRecordFinished(boolean succeed) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                btn_record.setText(getString(R.string.start_record));
+            }
+        });
+    }
 
-    private Runnable decoderRunnable = new Runnable() {
-        @Override
-        public void run() {
+    @Override
+    public void onPlayFinished(boolean succeed) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                btn_play.setText(getString(R.string.start_play));
+            }
+        });
+    }
 
-            AudioDecoder audioDecoder = new AudioDecoder();
-            audioDecoder.initDecoder(MainActivity.this);
-            audioDecoder.decode();
-        }
-    };
+    @Override
+    public void onSourceMissing() {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(MainActivity.this, getString(R.string.file_not_exist), Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
 
     @Override
-    public void decodeResult(final boolean isFinish) {
+    public void onDecodeFinished(final boolean succeed) {
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                if (isFinish) {
+                if (succeed) {
                     Toast.makeText(MainActivity.this, getResources().getString(R.string.decoder_finish), Toast.LENGTH_SHORT).show();
                 }
             }
@@ -239,176 +338,111 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     }
 
     /**
-     * 开始录音
+     * 设置录音保存的内容，下一次开始录音时生效
      */
-    private void startRecord() {
-
-        //创建AudioRecord对象所需的最小缓冲区大小
-        final int minBufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE_HZ, CHANNEL_IN_CONFIG, AUDIO_FORMAT);
-        //创建AudioRecord对象
-        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, SAMPLE_RATE_HZ, CHANNEL_IN_CONFIG
-                , AUDIO_FORMAT, minBufferSize);
-        //初始化一个buffer
-        final byte[] data = new byte[minBufferSize];
-        //开始录音
-        isRecording = true;
-        audioRecord.startRecording();
-
-        //创建文件夹
-        File fileFolder = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + FOLDER_NAME);
-        if (!fileFolder.exists()) {
-            fileFolder.mkdir();
+    public void setCaptureMode(CaptureMode mode) {
+        captureMode = mode;
+        if (null != audioEngine) {
+            audioEngine.setCaptureMode(mode);
         }
+    }
 
-        String fileFolderPath = fileFolder.getAbsolutePath();
-        final File file = new File(fileFolderPath + "/" + RECODE_FILE + ".pcm");
-        if (!file.exists()) {
-            try {
-                file.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    public CaptureMode getCaptureMode() {
+        if (null != audioEngine) {
+            return audioEngine.getCaptureMode();
         }
+        return null == captureMode ? CaptureMode.BOTH : captureMode;
+    }
 
-        FileOutputStream os = null;
-        try {
-            os = new FileOutputStream(file);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+    /**
+     * 设置AAC的封装格式，下一次开始录音时生效
+     */
+    public void setOutputContainer(OutputContainer container) {
+        outputContainer = container;
+        if (null != audioEngine) {
+            audioEngine.setOutputContainer(container);
         }
+    }
 
-        //初始化编码器
-        audioEncoder = new AudioEncoder();
-        audioEncoder.initEncoder();
+    public OutputContainer getOutputContainer() {
+        if (null != audioEngine) {
+            return audioEngine.getOutputContainer();
+        }
+        return null == outputContainer ? OutputContainer.ADTS : outputContainer;
+    }
 
-        if (null != os) {
-            while (isRecording) {
-                int read = audioRecord.read(data, 0, minBufferSize);
-                // 如果读取音频数据没有出现错误，就将数据写入到文件
-                if (AudioRecord.ERROR_INVALID_OPERATION != read) {
-                    try {
-                        os.write(data);
-                        //将PCM编码成AAC
-                        audioEncoder.encodeData(data);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-            try {
-                os.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    /**
+     * 设置播放解码前的录音WAV，还是播放解码后的数据（已经解码出WAV时直接播放，否则边解码边播放AAC），下一次开始播放时生效
+     */
+    public void setPlayBeforeDecoder(boolean playBeforeDecoder) {
+        this.playBeforeDecoder = playBeforeDecoder;
+        if (null != audioEngine) {
+            audioEngine.setPlayBeforeDecoder(playBeforeDecoder);
         }
+    }
 
+    public boolean isPlayBeforeDecoder() {
+        if (null != audioEngine) {
+            return audioEngine.isPlayBeforeDecoder();
+        }
+        return null != playBeforeDecoder && playBeforeDecoder;
     }
 
     /**
-     * 停止录音
+     * 设置是否分段保存AAC，下一次开始录音时生效
      */
-    private void stopRecord() {
-        isRecording = false;
-        if (null != audioRecord) {
-            audioRecord.stop();
-            audioRecord.release();
-            audioRecord = null;
+    public void setSegmentedRecord(boolean segmentedRecord) {
+        this.segmentedRecord = segmentedRecord;
+        if (null != audioEngine) {
+            audioEngine.setSegmentedRecord(segmentedRecord);
         }
+    }
 
-        if (null != audioEncoder) {
-            audioEncoder.stopEncode();
+    public boolean isSegmentedRecord() {
+        if (null != audioEngine) {
+            return audioEngine.isSegmentedRecord();
         }
+        return null != segmentedRecord && segmentedRecord;
     }
 
     /**
-     * 开始播放
+     * 设置采集后是否经过高通、噪声门和自动增益，下一次开始录音时生效
      */
-    private void startPlay() {
-
-        //PCM文件路径
-        File fileFolder = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + "AudioDemo");
-        String fileFolderPath = fileFolder.getAbsolutePath();
-
-        String path;
-        if (playBeforeDecoder) {
-            //播放解码前的PCM数据
-            path = fileFolderPath + "/" + RECODE_FILE + ".pcm";
-        } else {
-            //播放解码后的PCM数据
-            path = fileFolderPath + "/" + DECODER_FILE + ".pcm";
+    public void setCaptureDsp(boolean captureDsp) {
+        this.captureDsp = captureDsp;
+        if (null != audioEngine) {
+            audioEngine.setCaptureDsp(captureDsp);
         }
+    }
 
-        File file = new File(path);
-        if (!file.exists()) {
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    btn_play.setText(getString(R.string.start_play));
-                    Toast.makeText(MainActivity.this, getString(R.string.file_not_exist), Toast.LENGTH_SHORT).show();
-                }
-            });
-            return;
+    public boolean isCaptureDsp() {
+        if (null != audioEngine) {
+            return audioEngine.isCaptureDsp();
         }
+        return null != captureDsp && captureDsp;
+    }
 
-        //创建AudioTrack对象所需的估计最小缓冲区大小
-        final int minBufferSize = AudioTrack.getMinBufferSize(SAMPLE_RATE_HZ, CHANNEL_OUT_CONFIG, AUDIO_FORMAT);
-
-        /**
-         * MODE_STREAM：通过write一次次把音频数据写到AudioTrack中的内部缓冲区，可能会引起延时
-         * MODE_STATIC：在play之前先把所有数据通过一次write调用传递到AudioTrack中的内部缓冲区，适合内存占用小，延时要求比较高的文件
-         */
-        int mode = AudioTrack.MODE_STREAM;
-        //创建AudioTrack对象
-        audioTrack = new AudioTrack(new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_MEDIA)
-                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                .build(),
-                new AudioFormat.Builder().setSampleRate(SAMPLE_RATE_HZ)
-                        .setEncoding(AUDIO_FORMAT)
-                        .setChannelMask(CHANNEL_OUT_CONFIG)
-                        .build(),
-                minBufferSize, mode, AudioManager.AUDIO_SESSION_ID_GENERATE);
-        //开始播放
-        audioTrack.play();
-
-        FileInputStream fileInputStream;
-        try {
-            fileInputStream = new FileInputStream(file);
-            byte[] tempBuffer = new byte[minBufferSize];
-            while (fileInputStream.available() > 0) {
-                int readCount = fileInputStream.read(tempBuffer);
-                if (readCount == AudioTrack.ERROR_INVALID_OPERATION ||
-                        readCount == AudioTrack.ERROR_BAD_VALUE) {
-                    continue;
-                }
-                if (readCount != 0 && readCount != -1) {
-                    audioTrack.write(tempBuffer, 0, readCount);
-                }
-            }
-            stopPlay();
-        } catch (IOException e) {
-            e.printStackTrace();
-            stopPlay();
-            Log.e(TAG, "startPlay Exception = " + e.toString());
+    /**
+     * 设置是否去掉说话间隙的静音，下一次开始录音时生效
+     */
+    public void setSkipSilence(boolean skipSilence) {
+        this.skipSilence = skipSilence;
+        if (null != audioEngine) {
+            audioEngine.setSkipSilence(skipSilence);
         }
     }
 
+    public boolean isSkipSilence() {
+        if (null != audioEngine) {
+            return audioEngine.isSkipSilence();
+        }
+        return null != skipSilence && skipSilence;
+    }
+
     /**
-     * 停止播放
+     * 当前录音的电平，没有在录音时返回最近一次录音的结果，从未录音或服务还没有绑定时返回null
      */
-    private void stopPlay() {
-        if (audioTrack != null) {
-            audioTrack.stop();
-            audioTrack.release();
-            audioTrack = null;
-            Log.i(TAG, "stopPlay");
-
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    btn_play.setText(getString(R.string.start_play));
-                }
-            });
-        }
+    public LevelMeter getLevelMeter() {
+        return null == audioEngine ? null : audioEngine.getLevelMeter();
     }
 }
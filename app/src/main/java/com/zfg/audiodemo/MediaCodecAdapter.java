@@ -0,0 +1,223 @@
+package com.zfg.audiodemo;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 基于MediaCodec的AudioCodec实现
+ */
+public class MediaCodecAdapter implements AudioCodec {
+
+    private final MediaCodec mMediaCodec;
+    private final MediaFormat mMediaFormat;
+    private final int mConfigureFlags;
+    private final MediaCodec.BufferInfo mBufferInfo = new MediaCodec.BufferInfo();
+    private int mOutputSampleRate;
+    private int mOutputChannelCount;
+    private boolean mConfigured;
+
+    /**
+     * 异步模式下接收回调的线程，与编解码器同生命周期，放回复用池后下一个会话继续使用
+     */
+    private HandlerThread mCallbackThread;
+    private volatile MediaCodec.Callback mCallback;
+
+    public MediaCodecAdapter(MediaCodec mediaCodec, MediaFormat mediaFormat, int configureFlags) {
+        mMediaCodec = mediaCodec;
+        mMediaFormat = mediaFormat;
+        mConfigureFlags = configureFlags;
+    }
+
+    /**
+     * 根据类型创建编码器
+     */
+    public static MediaCodecAdapter createEncoder(MediaFormat mediaFormat) throws IOException {
+        MediaCodec mediaCodec = MediaCodec.createEncoderByType(mediaFormat.getString(MediaFormat.KEY_MIME));
+        //MediaCodec.CONFIGURE_FLAG_ENCODE 表示需要配置一个编码器，而不是解码器
+        return new MediaCodecAdapter(mediaCodec, mediaFormat, MediaCodec.CONFIGURE_FLAG_ENCODE);
+    }
+
+    /**
+     * 根据类型创建解码器
+     */
+    public static MediaCodecAdapter createDecoder(String mime, MediaFormat mediaFormat) throws IOException {
+        MediaCodec mediaCodec = MediaCodec.createDecoderByType(mime);
+        //解码时最后一个参数设置为0
+        return new MediaCodecAdapter(mediaCodec, mediaFormat, 0);
+    }
+
+    /**
+     * 异步模式等需要直接操作MediaCodec的场景
+     */
+    public MediaCodec getMediaCodec() {
+        return mMediaCodec;
+    }
+
+    /**
+     * 切换到异步模式，需要在start()之前调用，带Handler的setCallback需要API 23
+     * MediaCodec的回调只能在configure之前设置一次，这里设置一个转发的回调，每个会话通过setCallback()替换接收方，
+     * 复用池中的编解码器也可以用于异步解码
+     */
+    public void enableAsync() {
+        if (mConfigured) {
+            throw new IllegalStateException("Codec already configured in sync mode");
+        }
+        if (null != mCallbackThread) {
+            return;
+        }
+        mCallbackThread = new HandlerThread("CodecCallback");
+        mCallbackThread.start();
+        mMediaCodec.setCallback(new MediaCodec.Callback() {
+            @Override
+            public void onInputBufferAvailable(MediaCodec codec, int index) {
+                MediaCodec.Callback callback = mCallback;
+                if (null != callback) {
+                    callback.onInputBufferAvailable(codec, index);
+                }
+            }
+
+            @Override
+            public void onOutputBufferAvailable(MediaCodec codec, int index, MediaCodec.BufferInfo info) {
+                MediaCodec.Callback callback = mCallback;
+                if (null != callback) {
+                    callback.onOutputBufferAvailable(codec, index, info);
+                }
+            }
+
+            @Override
+            public void onError(MediaCodec codec, MediaCodec.CodecException e) {
+                MediaCodec.Callback callback = mCallback;
+                if (null != callback) {
+                    callback.onError(codec, e);
+                }
+            }
+
+            @Override
+            public void onOutputFormatChanged(MediaCodec codec, MediaFormat format) {
+                //没有接收方时也记录，复用时startCodec()可以取到最新的输出格式
+                updateOutputFormat(format);
+                MediaCodec.Callback callback = mCallback;
+                if (null != callback) {
+                    callback.onOutputFormatChanged(codec, format);
+                }
+            }
+        }, new Handler(mCallbackThread.getLooper()));
+    }
+
+    public boolean isAsync() {
+        return null != mCallbackThread;
+    }
+
+    /**
+     * 是否已经configure和start过，复用池中取出的编解码器为true
+     */
+    public boolean isConfigured() {
+        return mConfigured;
+    }
+
+    /**
+     * 设置异步模式的接收方，传入null后之前排队的回调不再转发
+     */
+    public void setCallback(MediaCodec.Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * 异步模式下flush之后需要重新start才会回调可用的输入缓存
+     */
+    public void resume() {
+        mMediaCodec.start();
+    }
+
+    @Override
+    public void start() {
+        mMediaCodec.configure(mMediaFormat, null, null, mConfigureFlags);
+        //start（）后进入执行状态，才能做后续的操作
+        mMediaCodec.start();
+        mConfigured = true;
+        updateOutputFormat(mMediaFormat);
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        return mMediaCodec.dequeueInputBuffer(timeoutUs);
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return mMediaCodec.getInputBuffer(index);
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        mMediaCodec.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+    }
+
+    @Override
+    public int dequeueOutputBuffer(CodecBufferInfo info, long timeoutUs) {
+        int index = mMediaCodec.dequeueOutputBuffer(mBufferInfo, timeoutUs);
+        if (index >= 0) {
+            info.set(mBufferInfo.offset, mBufferInfo.size, mBufferInfo.presentationTimeUs, mBufferInfo.flags);
+        } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+            updateOutputFormat(mMediaCodec.getOutputFormat());
+        }
+        return index;
+    }
+
+    /**
+     * 更新输出格式，异步模式下由onOutputFormatChanged回调调用
+     */
+    public void updateOutputFormat(MediaFormat format) {
+        if (format.containsKey(MediaFormat.KEY_SAMPLE_RATE)) {
+            mOutputSampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        }
+        if (format.containsKey(MediaFormat.KEY_CHANNEL_COUNT)) {
+            mOutputChannelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        }
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return mMediaCodec.getOutputBuffer(index);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index) {
+        mMediaCodec.releaseOutputBuffer(index, false);
+    }
+
+    @Override
+    public int getOutputSampleRate() {
+        return mOutputSampleRate;
+    }
+
+    @Override
+    public int getOutputChannelCount() {
+        return mOutputChannelCount;
+    }
+
+    @Override
+    public void flush() {
+        mMediaCodec.flush();
+    }
+
+    @Override
+    public void stop() {
+        mMediaCodec.stop();
+    }
+
+    @Override
+    public void release() {
+        mCallback = null;
+        mMediaCodec.release();
+        if (null != mCallbackThread) {
+            mCallbackThread.quitSafely();
+            mCallbackThread = null;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.zfg.audiodemo;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 基于MediaExtractor的AudioExtractor实现，选中文件中的第一条音轨
+ */
+public class MediaExtractorAdapter implements AudioExtractor {
+
+    //用于分离出音频轨道
+    private final MediaExtractor mMediaExtractor = new MediaExtractor();
+    private MediaFormat mTrackFormat;
+
+    public MediaExtractorAdapter(String path) throws IOException {
+        //设置资源
+        mMediaExtractor.setDataSource(path);
+        //获取文件的轨道数，做循环得到含有音频的mediaFormat
+        for (int i = 0; i < mMediaExtractor.getTrackCount(); i++) {
+            MediaFormat mediaFormat = mMediaExtractor.getTrackFormat(i);
+            //MediaFormat键值对应
+            String mime = mediaFormat.getString(MediaFormat.KEY_MIME);
+            if (null != mime && mime.startsWith("audio/")) {
+                mMediaExtractor.selectTrack(i);
+                mTrackFormat = mediaFormat;
+                break;
+            }
+        }
+    }
+
+    /**
+     * 选中音轨的格式，没有音轨时返回null
+     */
+    public MediaFormat getTrackFormat() {
+        return mTrackFormat;
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        return mMediaExtractor.readSampleData(buffer, offset);
+    }
+
+    @Override
+    public long getSampleTime() {
+        return mMediaExtractor.getSampleTime();
+    }
+
+    @Override
+    public boolean advance() {
+        return mMediaExtractor.advance();
+    }
+
+    @Override
+    public void seekTo(long timeUs) {
+        mMediaExtractor.seekTo(timeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+    }
+
+    @Override
+    public void release() {
+        mMediaExtractor.release();
+    }
+}
@@ -0,0 +1,71 @@
+package com.zfg.audiodemo;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 基于MediaExtractor的MultiTrackExtractor实现，一次读取文件即可得到所有选中音轨的帧
+ */
+public class MediaMultiTrackExtractor implements MultiTrackExtractor {
+
+    private final MediaExtractor mMediaExtractor = new MediaExtractor();
+
+    public MediaMultiTrackExtractor(String path) throws IOException {
+        mMediaExtractor.setDataSource(path);
+    }
+
+    @Override
+    public int getTrackCount() {
+        return mMediaExtractor.getTrackCount();
+    }
+
+    /**
+     * 音轨的完整格式，用于配置解码器
+     */
+    public MediaFormat getTrackFormat(int track) {
+        return mMediaExtractor.getTrackFormat(track);
+    }
+
+    @Override
+    public String getTrackMime(int track) {
+        return getTrackFormat(track).getString(MediaFormat.KEY_MIME);
+    }
+
+    @Override
+    public void selectTrack(int track) {
+        mMediaExtractor.selectTrack(track);
+    }
+
+    @Override
+    public int getSampleTrackIndex() {
+        return mMediaExtractor.getSampleTrackIndex();
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        return mMediaExtractor.readSampleData(buffer, offset);
+    }
+
+    @Override
+    public long getSampleTime() {
+        return mMediaExtractor.getSampleTime();
+    }
+
+    @Override
+    public boolean advance() {
+        return mMediaExtractor.advance();
+    }
+
+    @Override
+    public void seekTo(long timeUs) {
+        mMediaExtractor.seekTo(timeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+    }
+
+    @Override
+    public void release() {
+        mMediaExtractor.release();
+    }
+}
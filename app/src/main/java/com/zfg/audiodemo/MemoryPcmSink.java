@@ -0,0 +1,51 @@
+package com.zfg.audiodemo;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 保存在内存中的PCM输出，适合短音频或测试
+ */
+public class MemoryPcmSink implements PcmSink {
+
+    private byte[] mData;
+    private int mSize;
+
+    public MemoryPcmSink() {
+        this(64 * 1024);
+    }
+
+    public MemoryPcmSink(int initialCapacity) {
+        mData = new byte[initialCapacity];
+    }
+
+    @Override
+    public void write(ByteBuffer data) {
+        int size = data.remaining();
+        if (mSize + size > mData.length) {
+            mData = Arrays.copyOf(mData, Math.max(mData.length * 2, mSize + size));
+        }
+        data.get(mData, mSize, size);
+        mSize += size;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(mData, mSize);
+    }
+
+    public void reset() {
+        mSize = 0;
+    }
+}
@@ -0,0 +1,149 @@
+package com.zfg.audiodemo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 录音、编码、解码流程的运行指标
+ * 调用方在初始化时取出Counter/LatencyHistogram并持有引用，热路径上只有原子操作，不加锁也不分配内存。
+ * 指标名按"阶段.名称"命名，耗时类以_us结尾，单位为微秒
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final ConcurrentMap<String, Counter> mCounters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> mHistograms = new ConcurrentHashMap<>();
+
+    /**
+     * 全局共享的实例
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取计数器，不存在时创建
+     */
+    public Counter counter(String name) {
+        Counter counter = mCounters.get(name);
+        if (null == counter) {
+            Counter created = new Counter();
+            counter = mCounters.putIfAbsent(name, created);
+            if (null == counter) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * 获取直方图，不存在时创建
+     */
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = mHistograms.get(name);
+        if (null == histogram) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = mHistograms.putIfAbsent(name, created);
+            if (null == histogram) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * 清零所有指标，已经取出的引用仍然有效
+     */
+    public void reset() {
+        for (Counter counter : mCounters.values()) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : mHistograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * 导出为JSON，按指标名排序
+     */
+    public String toJson() {
+        StringBuilder builder = new StringBuilder(1024);
+        builder.append("{\"counters\":{");
+        boolean first = true;
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(mCounters).entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            appendName(builder, entry.getKey());
+            builder.append(entry.getValue().get());
+        }
+        builder.append("},\"histograms\":{");
+        first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(mHistograms).entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            appendName(builder, entry.getKey());
+            entry.getValue().snapshot().appendJson(builder);
+        }
+        builder.append("}}");
+        return builder.toString();
+    }
+
+    /**
+     * 把JSON快照写入文件
+     */
+    public void writeJson(File file) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(toJson().getBytes(Charset.forName("UTF-8")));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void appendName(StringBuilder builder, String name) {
+        builder.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        builder.append("\":");
+    }
+
+    /**
+     * 单调递增的计数器
+     */
+    public static class Counter {
+        private final AtomicLong mValue = new AtomicLong();
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            mValue.addAndGet(delta);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+
+        void reset() {
+            mValue.set(0);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.zfg.audiodemo;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 通过MediaMuxer把AAC帧封装成M4A
+ * 结束时由MediaMuxer写出完整的采样表，播放器打开文件就能得到时长并直接seek；
+ * 音轨在第一帧到达时才添加，优先使用编码器输出的配置信息
+ */
+public class Mp4MuxerWriter implements AacFrameSink {
+
+    private final MediaMuxer mMediaMuxer;
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final MediaCodec.BufferInfo mBufferInfo = new MediaCodec.BufferInfo();
+
+    private ByteBuffer mCodecConfig;
+    private int mTrackIndex = -1;
+    private boolean mFinished;
+    private long mFrameCount;
+    private long mLastPtsUs = -1;
+    private long mBytesWritten;
+
+    /**
+     * @param file         输出的m4a文件
+     * @param sampleRate   编码采样率
+     * @param channelCount 声道数
+     */
+    public Mp4MuxerWriter(File file, int sampleRate, int channelCount) throws IOException {
+        mMediaMuxer = new MediaMuxer(file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+    }
+
+    @Override
+    public void onCodecConfig(ByteBuffer config) {
+        if (mTrackIndex >= 0 || !config.hasRemaining()) {
+            return;
+        }
+        mCodecConfig = ByteBuffer.allocate(config.remaining());
+        mCodecConfig.put(config.duplicate());
+        mCodecConfig.flip();
+    }
+
+    @Override
+    public int writeFrame(ByteBuffer payload) throws IOException {
+        //AAC LC每帧1024个采样
+        return writeFrame(payload, mFrameCount * AdtsParser.SAMPLES_PER_RAW_BLOCK * 1000000L / mSampleRate);
+    }
+
+    @Override
+    public int writeFrame(ByteBuffer payload, long ptsUs) throws IOException {
+        if (mFinished) {
+            throw new IllegalStateException("Muxer already finished");
+        }
+        if (mTrackIndex < 0) {
+            startMuxer();
+        }
+        //MediaMuxer要求时间戳单调递增
+        if (ptsUs <= mLastPtsUs) {
+            ptsUs = mLastPtsUs + 1;
+        }
+        mLastPtsUs = ptsUs;
+        int size = payload.remaining();
+        mBufferInfo.set(payload.position(), size, ptsUs, 0);
+        mMediaMuxer.writeSampleData(mTrackIndex, payload.duplicate(), mBufferInfo);
+        mFrameCount++;
+        mBytesWritten += size;
+        return size;
+    }
+
+    private void startMuxer() {
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, mSampleRate, mChannelCount);
+        if (null == mCodecConfig) {
+            mCodecConfig = ByteBuffer.wrap(FragmentedMp4Writer.buildAudioSpecificConfig(mSampleRate, mChannelCount));
+        }
+        format.setByteBuffer("csd-0", mCodecConfig);
+        mTrackIndex = mMediaMuxer.addTrack(format);
+        mMediaMuxer.start();
+    }
+
+    /**
+     * 停止并释放MediaMuxer，此时写出moov
+     */
+    @Override
+    public void finish() {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        try {
+            if (mTrackIndex >= 0) {
+                mMediaMuxer.stop();
+            }
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        } finally {
+            mMediaMuxer.release();
+        }
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+}
@@ -0,0 +1,411 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多音轨并行解码
+ * 调用线程作为唯一的读取线程，按文件顺序读出所有选中音轨的帧，分发到每条音轨各自的环形缓冲区；
+ * 每条音轨一个解码线程，按音轨的MIME类型创建解码器，结果写入该音轨自己的PcmSink。
+ * 文件只读取一遍，多语言、多分轨的文件一次就能全部解码
+ */
+public class MultiTrackDecoder {
+
+    /**
+     * 默认的单帧最大字节数
+     */
+    public static final int DEFAULT_MAX_SAMPLE_SIZE = 64 * 1024;
+
+    /**
+     * 默认每条音轨预读的帧数
+     */
+    public static final int DEFAULT_QUEUE_DEPTH = 16;
+
+    /**
+     * 等待数据或空闲块的时间（毫秒）
+     */
+    private static final int WAIT_MS = 20;
+
+    /**
+     * 每块开头保存帧的时间戳
+     */
+    private static final int TIME_SIZE = 8;
+
+    private final MultiTrackExtractor mExtractor;
+    private final IDecoderFactory mDecoderFactory;
+    private final ITrackSinkFactory mSinkFactory;
+    private final int mMaxSampleSize;
+    private final int mQueueDepth;
+    private final MetricsRegistry mMetrics;
+
+    private final LatencyHistogram mReadLatency;
+    /**
+     * 某条音轨的缓冲区满、读取线程需要等待的次数
+     */
+    private final MetricsRegistry.Counter mReadStalls;
+    private final MetricsRegistry.Counter mSamplesRead;
+
+    /**
+     * 按音轨序号索引，未解码的音轨为null
+     */
+    private Track[] mTracks = new Track[0];
+
+    private long mStartTimeUs;
+
+    /**
+     * @param extractor      数据源，解码结束后会被释放
+     * @param decoderFactory 按MIME类型创建解码器
+     * @param sinkFactory    为每条音轨创建PCM输出
+     */
+    public MultiTrackDecoder(MultiTrackExtractor extractor, IDecoderFactory decoderFactory,
+                             ITrackSinkFactory sinkFactory) {
+        this(extractor, decoderFactory, sinkFactory, DEFAULT_MAX_SAMPLE_SIZE, DEFAULT_QUEUE_DEPTH,
+                MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param extractor      数据源，解码结束后会被释放
+     * @param decoderFactory 按MIME类型创建解码器
+     * @param sinkFactory    为每条音轨创建PCM输出
+     * @param maxSampleSize  单帧最大字节数
+     * @param queueDepth     每条音轨预读的帧数
+     * @param metrics        运行指标
+     */
+    public MultiTrackDecoder(MultiTrackExtractor extractor, IDecoderFactory decoderFactory,
+                             ITrackSinkFactory sinkFactory, int maxSampleSize, int queueDepth,
+                             MetricsRegistry metrics) {
+        mExtractor = extractor;
+        mDecoderFactory = decoderFactory;
+        mSinkFactory = sinkFactory;
+        mMaxSampleSize = maxSampleSize;
+        mQueueDepth = queueDepth;
+        mMetrics = metrics;
+        mReadLatency = metrics.histogram("decode.demux_read_us");
+        mReadStalls = metrics.counter("decode.demux_stalls");
+        mSamplesRead = metrics.counter("decode.demux_samples");
+    }
+
+    /**
+     * 所有音轨从不晚于timeUs的最近一帧开始解码，需要在decode()之前调用
+     * 音轨共用一个读取位置，只能在这里统一seek，不能单独seek某条音轨
+     */
+    public void seekTo(long timeUs) {
+        mStartTimeUs = timeUs;
+    }
+
+    /**
+     * 数据源中所有音频轨的序号
+     */
+    public int[] findAudioTracks() {
+        int count = 0;
+        int[] tracks = new int[mExtractor.getTrackCount()];
+        for (int i = 0; i < tracks.length; i++) {
+            String mime = mExtractor.getTrackMime(i);
+            if (null != mime && mime.startsWith("audio/")) {
+                tracks[count++] = i;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(tracks, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * 解码所有音频轨
+     *
+     * @return 是否所有音轨都解码成功
+     */
+    public boolean decode() {
+        return decode(findAudioTracks());
+    }
+
+    /**
+     * 并行解码指定的音轨，阻塞到所有音轨解码结束，之后释放数据源
+     * 某条音轨创建解码器失败或解码出错时，其他音轨继续解码，该音轨的帧被丢弃
+     *
+     * @param tracks 音轨序号
+     * @return 是否所有音轨都解码成功
+     */
+    public boolean decode(int[] tracks) {
+        mTracks = new Track[mExtractor.getTrackCount()];
+        boolean succeed = tracks.length > 0;
+        int started = 0;
+        Thread[] threads = new Thread[tracks.length];
+        try {
+            for (int i = 0; i < tracks.length; i++) {
+                Track track = prepareTrack(tracks[i]);
+                if (null == track) {
+                    succeed = false;
+                    continue;
+                }
+                mTracks[tracks[i]] = track;
+                mExtractor.selectTrack(tracks[i]);
+                threads[i] = new Thread(track, "TrackDecoder-" + tracks[i]);
+                threads[i].start();
+                started++;
+            }
+            if (started > 0) {
+                if (mStartTimeUs > 0) {
+                    //选中音轨之后再seek，所有音轨一起跳到新位置
+                    mExtractor.seekTo(mStartTimeUs);
+                }
+                demux();
+            }
+        } finally {
+            for (Track track : mTracks) {
+                if (null != track) {
+                    track.mQueue.close();
+                }
+            }
+            for (Thread thread : threads) {
+                if (null == thread) {
+                    continue;
+                }
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            mExtractor.release();
+        }
+        for (Track track : mTracks) {
+            if (null != track && !track.mSucceed) {
+                succeed = false;
+            }
+        }
+        return succeed;
+    }
+
+    /**
+     * 创建音轨的解码器和输出，失败时返回null
+     */
+    private Track prepareTrack(int index) {
+        String mime = mExtractor.getTrackMime(index);
+        if (null == mime) {
+            return null;
+        }
+        AudioCodec codec;
+        try {
+            codec = mDecoderFactory.createDecoder(index, mime);
+        } catch (IOException | IllegalArgumentException e) {
+            //设备上没有这个格式的解码器
+            e.printStackTrace();
+            return null;
+        }
+        if (null == codec) {
+            return null;
+        }
+        PcmSink sink;
+        try {
+            sink = mSinkFactory.createSink(index, mime);
+        } catch (IOException e) {
+            e.printStackTrace();
+            codec.release();
+            return null;
+        }
+        return new Track(codec, sink);
+    }
+
+    /**
+     * 读取线程：逐帧读取并放进所属音轨的缓冲区，缓冲区满时等待，不丢弃数据
+     */
+    private void demux() {
+        ByteBuffer scratch = ByteBuffer.allocateDirect(mMaxSampleSize);
+        while (true) {
+            int index = mExtractor.getSampleTrackIndex();
+            if (index < 0) {
+                break;
+            }
+            Track track = index < mTracks.length ? mTracks[index] : null;
+            if (null == track || track.mAbandoned) {
+                mExtractor.advance();
+                continue;
+            }
+            PcmRingBuffer queue = track.mQueue;
+            if (queue.isFull()) {
+                mReadStalls.increment();
+                while (queue.isFull() && !track.mAbandoned) {
+                    queue.awaitWritable(WAIT_MS, TimeUnit.MILLISECONDS);
+                }
+                if (track.mAbandoned) {
+                    mExtractor.advance();
+                    continue;
+                }
+            }
+            long start = System.nanoTime();
+            int size;
+            try {
+                scratch.clear();
+                size = mExtractor.readSampleData(scratch, 0);
+            } catch (IllegalArgumentException e) {
+                //帧超过了maxSampleSize，放弃这条音轨
+                e.printStackTrace();
+                track.mReadFailed = true;
+                track.mAbandoned = true;
+                queue.close();
+                mExtractor.advance();
+                continue;
+            }
+            if (size < 0) {
+                break;
+            }
+            long time = mExtractor.getSampleTime();
+            byte[] chunk = queue.acquireWrite();
+            putLong(chunk, time);
+            scratch.position(0);
+            scratch.limit(size);
+            scratch.get(chunk, TIME_SIZE, size);
+            queue.commitWrite(TIME_SIZE + size);
+            mReadLatency.record((System.nanoTime() - start) / 1000);
+            mSamplesRead.increment();
+            mExtractor.advance();
+        }
+    }
+
+    private static void putLong(byte[] data, long value) {
+        for (int i = TIME_SIZE - 1; i >= 0; i--) {
+            data[i] = (byte) value;
+            value >>= 8;
+        }
+    }
+
+    private static long getLong(byte[] data) {
+        long value = 0;
+        for (int i = 0; i < TIME_SIZE; i++) {
+            value = (value << 8) | (data[i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * 音轨是否解码成功，没有解码的音轨返回false
+     */
+    public boolean isTrackSucceeded(int track) {
+        return track < mTracks.length && null != mTracks[track] && mTracks[track].mSucceed;
+    }
+
+    /**
+     * 音轨已经写出的PCM字节数
+     */
+    public long getDecodedBytes(int track) {
+        return track < mTracks.length && null != mTracks[track] ? mTracks[track].mDecodedBytes : 0;
+    }
+
+    /**
+     * 一条音轨：读取线程写入的缓冲区，以及从缓冲区读取的解码线程。
+     * 对解码流程来说就是一个只包含该音轨的SampleSource，seek由MultiTrackDecoder统一处理
+     */
+    private class Track implements SampleSource, Runnable {
+        private final AudioCodec mCodec;
+        private final PcmSink mSink;
+        private final PcmRingBuffer mQueue;
+        private byte[] mCurrent;
+
+        /**
+         * 解码线程已经退出，读取线程不再等待这条音轨
+         */
+        private volatile boolean mAbandoned;
+        /**
+         * 读取线程读取这条音轨的帧失败，已经解码出的数据不完整
+         */
+        private volatile boolean mReadFailed;
+        private volatile boolean mSucceed;
+        private volatile long mDecodedBytes;
+
+        Track(AudioCodec codec, PcmSink sink) {
+            mCodec = codec;
+            mSink = sink;
+            mQueue = new PcmRingBuffer(mQueueDepth, TIME_SIZE + mMaxSampleSize);
+        }
+
+        @Override
+        public void run() {
+            DecodePipeline pipeline = null;
+            boolean succeed = true;
+            try {
+                mCodec.start();
+                pipeline = new DecodePipeline(mCodec, this, mSink, mMetrics);
+                pipeline.run();
+            } catch (IOException | IllegalStateException e) {
+                e.printStackTrace();
+                succeed = false;
+            } finally {
+                mAbandoned = true;
+                try {
+                    mSink.flush();
+                    mSink.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    succeed = false;
+                }
+                mCodec.stop();
+                mCodec.release();
+            }
+            if (null != pipeline) {
+                mDecodedBytes = pipeline.getDecodedBytes();
+            }
+            mSucceed = succeed && !mReadFailed;
+        }
+
+        @Override
+        public int readSampleData(ByteBuffer buffer, int offset) {
+            while (null == mCurrent) {
+                mCurrent = mQueue.acquireRead();
+                if (null != mCurrent) {
+                    break;
+                }
+                if (mQueue.isClosed() && mQueue.isEmpty()) {
+                    return -1;
+                }
+                mQueue.awaitReadable(WAIT_MS, TimeUnit.MILLISECONDS);
+            }
+            int size = mQueue.readLength() - TIME_SIZE;
+            buffer.clear();
+            buffer.position(offset);
+            buffer.put(mCurrent, TIME_SIZE, size);
+            return size;
+        }
+
+        @Override
+        public long getSampleTime() {
+            return null == mCurrent ? -1 : getLong(mCurrent);
+        }
+
+        @Override
+        public boolean advance() {
+            if (null != mCurrent) {
+                mCurrent = null;
+                mQueue.releaseRead();
+            }
+            return !(mQueue.isClosed() && mQueue.isEmpty());
+        }
+    }
+
+    /**
+     * 按音轨创建解码器
+     */
+    public interface IDecoderFactory {
+
+        /**
+         * @param track 音轨序号
+         * @param mime  音轨的MIME类型
+         * @return 尚未start的解码器，不支持该格式时返回null或抛出异常
+         */
+        AudioCodec createDecoder(int track, String mime) throws IOException;
+    }
+
+    /**
+     * 按音轨创建PCM输出
+     */
+    public interface ITrackSinkFactory {
+
+        /**
+         * @param track 音轨序号
+         * @param mime  音轨的MIME类型
+         * @return PCM输出，解码结束时会被关闭
+         */
+        PcmSink createSink(int track, String mime) throws IOException;
+    }
+}
@@ -0,0 +1,52 @@
+package com.zfg.audiodemo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 多音轨数据源接口，对应选中了多条音轨的MediaExtractor，按文件中的顺序交替返回各音轨的帧
+ */
+public interface MultiTrackExtractor {
+
+    int getTrackCount();
+
+    /**
+     * 音轨的MIME类型，无法识别时返回null
+     */
+    String getTrackMime(int track);
+
+    /**
+     * 选中音轨，之后读取时会返回该音轨的帧
+     */
+    void selectTrack(int track);
+
+    /**
+     * 当前帧所属的音轨，没有更多数据时返回-1
+     */
+    int getSampleTrackIndex();
+
+    /**
+     * 读取当前帧到buffer的offset处，buffer放不下时抛出IllegalArgumentException
+     *
+     * @return 帧长度，没有更多数据时返回-1
+     */
+    int readSampleData(ByteBuffer buffer, int offset);
+
+    /**
+     * 当前帧的时间戳，没有更多数据时返回-1
+     */
+    long getSampleTime();
+
+    /**
+     * 指向下一帧
+     *
+     * @return 是否还有数据
+     */
+    boolean advance();
+
+    /**
+     * 所有选中的音轨跳到不晚于timeUs的最近一帧
+     */
+    void seekTo(long timeUs);
+
+    void release();
+}
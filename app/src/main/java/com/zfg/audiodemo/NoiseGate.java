@@ -0,0 +1,100 @@
+package com.zfg.audiodemo;
+
+/**
+ * 噪声门：电平低于阈值并且持续超过保持时间后衰减到底噪增益，电平回到阈值以上时打开
+ * 电平按整块的RMS计算，增益在块内线性过渡，打开和关闭的速度分别由起始时间和释放时间决定
+ */
+public class NoiseGate implements DspStage {
+
+    public static final float DEFAULT_THRESHOLD_DB = -50;
+    public static final float DEFAULT_RANGE_DB = -30;
+    public static final int DEFAULT_ATTACK_MS = 5;
+    public static final int DEFAULT_HOLD_MS = 100;
+    public static final int DEFAULT_RELEASE_MS = 150;
+
+    private final int mChannels;
+    private final float mThreshold;
+    private final float mFloorGain;
+    /**
+     * 每帧增益变化的最大值
+     */
+    private final float mAttackStep;
+    private final float mReleaseStep;
+    private final int mHoldFrames;
+
+    private float mGain = 1;
+    private int mQuietFrames;
+
+    public NoiseGate(int sampleRate, int channels) {
+        this(sampleRate, channels, DEFAULT_THRESHOLD_DB, DEFAULT_RANGE_DB, DEFAULT_ATTACK_MS, DEFAULT_HOLD_MS,
+                DEFAULT_RELEASE_MS);
+    }
+
+    /**
+     * @param sampleRate  采样率
+     * @param channels    声道数
+     * @param thresholdDb 打开的阈值（dBFS）
+     * @param rangeDb     关闭时的增益（dB），负值
+     * @param attackMs    从关闭到完全打开的时间
+     * @param holdMs      电平低于阈值后保持打开的时间
+     * @param releaseMs   从打开到完全关闭的时间
+     */
+    public NoiseGate(int sampleRate, int channels, float thresholdDb, float rangeDb, int attackMs, int holdMs,
+                     int releaseMs) {
+        if (sampleRate <= 0 || channels <= 0 || rangeDb > 0 || attackMs <= 0 || holdMs < 0 || releaseMs <= 0) {
+            throw new IllegalArgumentException("Invalid noise gate config");
+        }
+        mChannels = channels;
+        mThreshold = GainStage.dbToLinear(thresholdDb) * DspChain.FULL_SCALE;
+        mFloorGain = GainStage.dbToLinear(rangeDb);
+        mAttackStep = (1 - mFloorGain) * 1000 / ((float) attackMs * sampleRate);
+        mReleaseStep = (1 - mFloorGain) * 1000 / ((float) releaseMs * sampleRate);
+        mHoldFrames = (int) ((long) holdMs * sampleRate / 1000);
+    }
+
+    @Override
+    public String getName() {
+        return "noise_gate";
+    }
+
+    @Override
+    public void process(float[] samples, int offset, int frames) {
+        float level = DspChain.rms(samples, offset, frames * mChannels);
+        float gain = mGain;
+        if (level >= mThreshold) {
+            mQuietFrames = 0;
+            gain = Math.min(1, gain + mAttackStep * frames);
+        } else {
+            mQuietFrames += frames;
+            if (mQuietFrames > mHoldFrames) {
+                gain = Math.max(mFloorGain, gain - mReleaseStep * frames);
+            }
+        }
+        if (gain == 1 && mGain == 1) {
+            //完全打开时不处理
+            return;
+        }
+        GainStage.applyRamp(samples, offset, frames, mChannels, mGain, gain);
+        mGain = gain;
+    }
+
+    /**
+     * 当前增益，1表示完全打开
+     */
+    public float getGain() {
+        return mGain;
+    }
+
+    /**
+     * 是否已经开始衰减
+     */
+    public boolean isClosed() {
+        return mGain < 1;
+    }
+
+    @Override
+    public void reset() {
+        mGain = 1;
+        mQuietFrames = 0;
+    }
+}
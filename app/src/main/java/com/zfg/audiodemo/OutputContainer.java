@@ -0,0 +1,32 @@
+package com.zfg.audiodemo;
+
+/**
+ * 编码后AAC数据的封装格式
+ */
+public enum OutputContainer {
+    /**
+     * ADTS裸流，边写边可读，但seek需要扫描或借助帧索引
+     */
+    ADTS(".aac"),
+    /**
+     * MediaMuxer封装的M4A，结束时写出采样表，时长和seek开箱即用
+     */
+    M4A(".m4a"),
+    /**
+     * 分片MP4，每个分片写出后即可播放，结束时追加分片索引
+     */
+    FRAGMENTED_MP4(".mp4");
+
+    private final String mExtension;
+
+    OutputContainer(String extension) {
+        mExtension = extension;
+    }
+
+    /**
+     * 文件扩展名，包含点号
+     */
+    public String getExtension() {
+        return mExtension;
+    }
+}
@@ -0,0 +1,248 @@
+package com.zfg.audiodemo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 纯Java的直通编解码器，输出与输入完全相同
+ * 实现了与MediaCodec一致的缓存队列状态机（输入/输出缓存的所有权交接、EOS传递、
+ * 首次输出前的INFO_OUTPUT_FORMAT_CHANGED），用于在JVM上测试和压测编解码流程
+ */
+public class PassthroughCodec implements AudioCodec {
+
+    private final ByteBuffer[] mInputBuffers;
+    private final int[] mInputOffsets;
+    private final int[] mInputSizes;
+    private final long[] mInputTimes;
+    private final int[] mInputFlags;
+
+    private final ByteBuffer[] mOutputBuffers;
+    private final int[] mOutputSizes;
+    private final long[] mOutputTimes;
+    private final int[] mOutputFlags;
+
+    private final IntQueue mFreeInputs;
+    private final IntQueue mQueuedInputs;
+    private final IntQueue mFreeOutputs;
+    private final IntQueue mReadyOutputs;
+
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private boolean mStarted;
+    private boolean mFormatReported;
+
+    public PassthroughCodec(int bufferCount, int bufferSize, int sampleRate, int channelCount) {
+        mInputBuffers = new ByteBuffer[bufferCount];
+        mOutputBuffers = new ByteBuffer[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            mInputBuffers[i] = ByteBuffer.allocateDirect(bufferSize);
+            mOutputBuffers[i] = ByteBuffer.allocateDirect(bufferSize);
+        }
+        mInputOffsets = new int[bufferCount];
+        mInputSizes = new int[bufferCount];
+        mInputTimes = new long[bufferCount];
+        mInputFlags = new int[bufferCount];
+        mOutputSizes = new int[bufferCount];
+        mOutputTimes = new long[bufferCount];
+        mOutputFlags = new int[bufferCount];
+        mFreeInputs = new IntQueue(bufferCount);
+        mQueuedInputs = new IntQueue(bufferCount);
+        mFreeOutputs = new IntQueue(bufferCount);
+        mReadyOutputs = new IntQueue(bufferCount);
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+    }
+
+    @Override
+    public synchronized void start() {
+        mStarted = true;
+        mFormatReported = false;
+        resetQueues();
+    }
+
+    private void resetQueues() {
+        mFreeInputs.clear();
+        mQueuedInputs.clear();
+        mFreeOutputs.clear();
+        mReadyOutputs.clear();
+        for (int i = 0; i < mInputBuffers.length; i++) {
+            mFreeInputs.add(i);
+            mFreeOutputs.add(i);
+        }
+    }
+
+    @Override
+    public synchronized int dequeueInputBuffer(long timeoutUs) {
+        checkStarted();
+        process();
+        if (mFreeInputs.isEmpty() && !await(timeoutUs, mFreeInputs)) {
+            return INFO_TRY_AGAIN_LATER;
+        }
+        return mFreeInputs.poll();
+    }
+
+    @Override
+    public synchronized ByteBuffer getInputBuffer(int index) {
+        ByteBuffer buffer = mInputBuffers[index];
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    public synchronized void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        checkStarted();
+        mInputOffsets[index] = offset;
+        mInputSizes[index] = size;
+        mInputTimes[index] = presentationTimeUs;
+        mInputFlags[index] = flags;
+        mQueuedInputs.add(index);
+        process();
+        notifyAll();
+    }
+
+    @Override
+    public synchronized int dequeueOutputBuffer(CodecBufferInfo info, long timeoutUs) {
+        checkStarted();
+        if (!mFormatReported) {
+            mFormatReported = true;
+            return INFO_OUTPUT_FORMAT_CHANGED;
+        }
+        process();
+        if (mReadyOutputs.isEmpty() && !await(timeoutUs, mReadyOutputs)) {
+            return INFO_TRY_AGAIN_LATER;
+        }
+        int index = mReadyOutputs.poll();
+        info.set(0, mOutputSizes[index], mOutputTimes[index], mOutputFlags[index]);
+        return index;
+    }
+
+    @Override
+    public synchronized ByteBuffer getOutputBuffer(int index) {
+        ByteBuffer buffer = mOutputBuffers[index];
+        buffer.limit(mOutputSizes[index]);
+        buffer.position(0);
+        return buffer;
+    }
+
+    @Override
+    public synchronized void releaseOutputBuffer(int index) {
+        mFreeOutputs.add(index);
+        process();
+        notifyAll();
+    }
+
+    /**
+     * 把已提交的输入拷贝到空闲的输出缓存
+     */
+    private void process() {
+        while (!mQueuedInputs.isEmpty() && !mFreeOutputs.isEmpty()) {
+            int input = mQueuedInputs.poll();
+            int output = mFreeOutputs.poll();
+            ByteBuffer source = mInputBuffers[input];
+            source.limit(mInputOffsets[input] + mInputSizes[input]);
+            source.position(mInputOffsets[input]);
+            ByteBuffer target = mOutputBuffers[output];
+            target.clear();
+            target.put(source);
+            mOutputSizes[output] = mInputSizes[input];
+            mOutputTimes[output] = mInputTimes[input];
+            mOutputFlags[output] = mInputFlags[input];
+            mReadyOutputs.add(output);
+            mFreeInputs.add(input);
+        }
+    }
+
+    /**
+     * 等待队列中出现元素，需要其他线程归还缓存
+     */
+    private boolean await(long timeoutUs, IntQueue queue) {
+        if (timeoutUs == 0) {
+            return false;
+        }
+        long deadline = System.nanoTime() + timeoutUs * 1000L;
+        try {
+            while (queue.isEmpty()) {
+                if (timeoutUs < 0) {
+                    wait();
+                } else {
+                    long remainingMs = (deadline - System.nanoTime()) / 1000000L;
+                    if (remainingMs <= 0) {
+                        return false;
+                    }
+                    wait(remainingMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int getOutputSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getOutputChannelCount() {
+        return mChannelCount;
+    }
+
+    @Override
+    public synchronized void flush() {
+        checkStarted();
+        //与MediaCodec一致，flush后客户端持有的缓存全部失效
+        resetQueues();
+    }
+
+    @Override
+    public synchronized void stop() {
+        mStarted = false;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void release() {
+        stop();
+    }
+
+    private void checkStarted() {
+        if (!mStarted) {
+            throw new IllegalStateException("Codec is not started");
+        }
+    }
+
+    /**
+     * 定长的int循环队列，避免装箱
+     */
+    private static class IntQueue {
+        private final int[] mItems;
+        private int mHead;
+        private int mSize;
+
+        IntQueue(int capacity) {
+            mItems = new int[capacity];
+        }
+
+        void add(int value) {
+            mItems[(mHead + mSize) % mItems.length] = value;
+            mSize++;
+        }
+
+        int poll() {
+            int value = mItems[mHead];
+            mHead = (mHead + 1) % mItems.length;
+            mSize--;
+            return value;
+        }
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        void clear() {
+            mHead = 0;
+            mSize = 0;
+        }
+    }
+}
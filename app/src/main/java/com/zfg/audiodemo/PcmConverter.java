@@ -0,0 +1,110 @@
+package com.zfg.audiodemo;
+
+/**
+ * 16位PCM的格式转换：先转换声道数再重采样
+ * 输入输出都是小端字节数组，与AudioRecord.read和编码器的输入一致；格式相同时直接拷贝
+ */
+public class PcmConverter {
+
+    private final PcmFormat mInputFormat;
+    private final PcmFormat mOutputFormat;
+    private final int mMaxInputFrames;
+    private final PolyphaseResampler mResampler;
+    private final short[] mInput;
+    private final short[] mMixed;
+    private final short[] mOutput;
+
+    /**
+     * @param inputFormat    输入格式
+     * @param outputFormat   输出格式
+     * @param maxInputBytes  单次输入的最大字节数
+     */
+    public PcmConverter(PcmFormat inputFormat, PcmFormat outputFormat, int maxInputBytes) {
+        if (inputFormat.getBitsPerSample() != 16 || outputFormat.getBitsPerSample() != 16) {
+            throw new IllegalArgumentException("Only 16 bit PCM is supported: " + inputFormat + " -> " + outputFormat);
+        }
+        mInputFormat = inputFormat;
+        mOutputFormat = outputFormat;
+        mMaxInputFrames = maxInputBytes / inputFormat.getFrameSize();
+        int channels = outputFormat.getChannelCount();
+        mInput = new short[mMaxInputFrames * inputFormat.getChannelCount()];
+        mMixed = new short[mMaxInputFrames * channels];
+        if (inputFormat.getSampleRate() != outputFormat.getSampleRate()) {
+            mResampler = new PolyphaseResampler(inputFormat.getSampleRate(), outputFormat.getSampleRate(), channels);
+            mOutput = new short[mResampler.getMaxOutputFrames(mMaxInputFrames) * channels];
+        } else {
+            mResampler = null;
+            mOutput = mMixed;
+        }
+    }
+
+    /**
+     * 是否不需要转换
+     */
+    public boolean isPassthrough() {
+        return mInputFormat.equals(mOutputFormat);
+    }
+
+    public PcmFormat getOutputFormat() {
+        return mOutputFormat;
+    }
+
+    /**
+     * 单次转换最多输出的字节数
+     */
+    public int getMaxOutputBytes() {
+        return mOutput.length * 2;
+    }
+
+    /**
+     * 转换一块数据
+     *
+     * @param in     输入
+     * @param length 输入字节数，不超过构造时的maxInputBytes
+     * @param out    输出，长度不小于getMaxOutputBytes()
+     * @return 输出的字节数
+     */
+    public int convert(byte[] in, int length, byte[] out) {
+        if (isPassthrough()) {
+            System.arraycopy(in, 0, out, 0, length);
+            return length;
+        }
+        int frames = Math.min(length / mInputFormat.getFrameSize(), mMaxInputFrames);
+        int inChannels = mInputFormat.getChannelCount();
+        int outChannels = mOutputFormat.getChannelCount();
+        toShort(in, frames * inChannels, mInput);
+        ChannelMixer.mix(mInput, 0, inChannels, mMixed, 0, outChannels, frames);
+        if (null != mResampler) {
+            frames = mResampler.process(mMixed, 0, frames, mOutput, 0);
+        }
+        return toBytes(mOutput, frames * outChannels, out);
+    }
+
+    /**
+     * 输出重采样器中剩余的数据，录音结束时调用
+     *
+     * @return 输出的字节数
+     */
+    public int flush(byte[] out) {
+        if (null == mResampler) {
+            return 0;
+        }
+        int frames = mResampler.flush(mOutput, 0);
+        return toBytes(mOutput, frames * mOutputFormat.getChannelCount(), out);
+    }
+
+    private static void toShort(byte[] in, int samples, short[] out) {
+        for (int i = 0, j = 0; i < samples; i++, j += 2) {
+            out[i] = (short) ((in[j] & 0xFF) | (in[j + 1] << 8));
+        }
+    }
+
+    private static int toBytes(short[] in, int samples, byte[] out) {
+        for (int i = 0, j = 0; i < samples; i++, j += 2) {
+            short sample = in[i];
+            out[j] = (byte) sample;
+            out[j + 1] = (byte) (sample >> 8);
+        }
+        return samples * 2;
+    }
+}
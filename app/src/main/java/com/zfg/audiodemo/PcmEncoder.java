@@ -0,0 +1,26 @@
+package com.zfg.audiodemo;
+
+/**
+ * 录音时PCM数据的编码去向，单个编码器和分段录音都实现这个接口
+ */
+public interface PcmEncoder {
+
+    /**
+     * 编码
+     *
+     * @param data   PCM数据
+     * @param offset 起始位置
+     * @param length 有效数据长度
+     */
+    void encodeData(byte[] data, int offset, int length);
+
+    /**
+     * 编码后已经写出的字节数，只在编码线程调用
+     */
+    long getBytesWritten();
+
+    /**
+     * 停止编码并关闭输出
+     */
+    void stopEncode();
+}
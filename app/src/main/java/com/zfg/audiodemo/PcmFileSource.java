@@ -0,0 +1,189 @@
+package com.zfg.audiodemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * PCM文件播放数据源
+ * 优先把文件内存映射，直接返回映射区的切片交给AudioTrack.write(ByteBuffer, ...)，
+ * 省掉每块数据的拷贝和read系统调用；映射失败或文件过大时退回到FileChannel按块读取。
+ * 支持随机seek和循环播放区间
+ */
+public class PcmFileSource {
+
+    /**
+     * 单次映射的最大长度，MappedByteBuffer以int为下标
+     */
+    private static final long MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    /**
+     * PCM数据在文件中的起始位置和长度
+     */
+    private final long mDataOffset;
+    private final long mDataLength;
+    /**
+     * 每帧字节数，seek和循环点按帧对齐
+     */
+    private final int mFrameSize;
+
+    /**
+     * 映射区，为null时使用按块读取
+     */
+    private MappedByteBuffer mMappedBuffer;
+    /**
+     * 按块读取时复用的缓存
+     */
+    private ByteBuffer mReadBuffer;
+
+    /**
+     * 相对PCM数据起点的读取位置
+     */
+    private long mPosition;
+    private long mLoopStart = -1;
+    private long mLoopEnd = -1;
+
+    /**
+     * 打开整个文件作为PCM数据
+     */
+    public static PcmFileSource open(File file, int frameSize) throws IOException {
+        return new PcmFileSource(file, 0, file.length(), frameSize, true);
+    }
+
+    /**
+     * @param file       文件
+     * @param dataOffset PCM数据在文件中的起始位置
+     * @param dataLength PCM数据长度
+     * @param frameSize  每帧字节数（声道数 * 每个采样的字节数）
+     * @param allowMap   是否尝试内存映射
+     */
+    public PcmFileSource(File file, long dataOffset, long dataLength, int frameSize, boolean allowMap) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+        mDataOffset = dataOffset;
+        mDataLength = Math.min(dataLength, mChannel.size() - dataOffset) / frameSize * frameSize;
+        mFrameSize = frameSize;
+        if (allowMap && mDataLength > 0 && mDataLength <= MAX_MAPPED_SIZE) {
+            try {
+                mMappedBuffer = mChannel.map(FileChannel.MapMode.READ_ONLY, mDataOffset, mDataLength);
+            } catch (IOException | OutOfMemoryError e) {
+                //地址空间不足时映射会失败，退回到按块读取
+                mMappedBuffer = null;
+            }
+        }
+    }
+
+    /**
+     * 是否使用了内存映射
+     */
+    public boolean isMapped() {
+        return null != mMappedBuffer;
+    }
+
+    /**
+     * 映射区的独立视图，与read()返回的数据块共享内存，但position和limit互不影响
+     * read()返回的数据块的position就是数据在视图中的偏移量
+     *
+     * @return 没有使用内存映射时返回null
+     */
+    public ByteBuffer duplicateMapped() {
+        return null == mMappedBuffer ? null : mMappedBuffer.duplicate();
+    }
+
+    /**
+     * 读取下一块数据
+     * 返回的ByteBuffer会被复用，调用方需要在下一次read之前消费掉position到limit之间的数据
+     *
+     * @param maxBytes 最多读取的字节数
+     * @return 数据块，已经播放完时返回null
+     */
+    public ByteBuffer read(int maxBytes) throws IOException {
+        long end = mLoopEnd >= 0 ? mLoopEnd : mDataLength;
+        if (mPosition >= end) {
+            if (mLoopStart < 0) {
+                return null;
+            }
+            //回到循环起点
+            mPosition = mLoopStart;
+        }
+        int size = (int) Math.min(maxBytes / mFrameSize * mFrameSize, end - mPosition);
+        if (size <= 0) {
+            return null;
+        }
+        ByteBuffer chunk;
+        if (null != mMappedBuffer) {
+            chunk = mMappedBuffer;
+            //先清空limit，避免position超过旧的limit
+            chunk.limit(chunk.capacity());
+            chunk.position((int) mPosition);
+            chunk.limit((int) mPosition + size);
+        } else {
+            if (null == mReadBuffer || mReadBuffer.capacity() < size) {
+                mReadBuffer = ByteBuffer.allocateDirect(size);
+            }
+            chunk = mReadBuffer;
+            chunk.clear();
+            chunk.limit(size);
+            while (chunk.hasRemaining()) {
+                if (mChannel.read(chunk, mDataOffset + mPosition + chunk.position()) < 0) {
+                    break;
+                }
+            }
+            chunk.flip();
+            size = chunk.remaining();
+        }
+        mPosition += size;
+        return chunk;
+    }
+
+    /**
+     * 跳到指定位置，按帧对齐
+     *
+     * @param bytePosition 相对PCM数据起点的字节位置
+     */
+    public void seek(long bytePosition) {
+        mPosition = alignFrame(Math.max(0, Math.min(bytePosition, mDataLength)));
+    }
+
+    /**
+     * 设置循环播放区间，播放到end后回到start
+     */
+    public void setLoop(long start, long end) {
+        if (start < 0 || end <= start || end > mDataLength) {
+            throw new IllegalArgumentException("Invalid loop points " + start + " - " + end);
+        }
+        mLoopStart = alignFrame(start);
+        mLoopEnd = alignFrame(end);
+    }
+
+    public void clearLoop() {
+        mLoopStart = -1;
+        mLoopEnd = -1;
+    }
+
+    public long position() {
+        return mPosition;
+    }
+
+    public long length() {
+        return mDataLength;
+    }
+
+    private long alignFrame(long position) {
+        return position / mFrameSize * mFrameSize;
+    }
+
+    public void close() {
+        mMappedBuffer = null;
+        try {
+            mFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.zfg.audiodemo;
+
+/**
+ * PCM数据格式：采样率、声道数、采样位数
+ */
+public class PcmFormat {
+
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final int mBitsPerSample;
+
+    public PcmFormat(int sampleRate, int channelCount, int bitsPerSample) {
+        if (sampleRate <= 0 || channelCount <= 0 || bitsPerSample <= 0 || bitsPerSample % 8 != 0) {
+            throw new IllegalArgumentException("Invalid PCM format " + sampleRate + " Hz, "
+                    + channelCount + " channels, " + bitsPerSample + " bits");
+        }
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mBitsPerSample = bitsPerSample;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getBitsPerSample() {
+        return mBitsPerSample;
+    }
+
+    /**
+     * 每帧字节数
+     */
+    public int getFrameSize() {
+        return mChannelCount * mBitsPerSample / 8;
+    }
+
+    /**
+     * 每秒字节数
+     */
+    public int getByteRate() {
+        return mSampleRate * getFrameSize();
+    }
+
+    /**
+     * 返回采样率不同、其他参数相同的格式
+     */
+    public PcmFormat withSampleRate(int sampleRate) {
+        return new PcmFormat(sampleRate, mChannelCount, mBitsPerSample);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PcmFormat)) {
+            return false;
+        }
+        PcmFormat format = (PcmFormat) o;
+        return mSampleRate == format.mSampleRate
+                && mChannelCount == format.mChannelCount
+                && mBitsPerSample == format.mBitsPerSample;
+    }
+
+    @Override
+    public int hashCode() {
+        return (mSampleRate * 31 + mChannelCount) * 31 + mBitsPerSample;
+    }
+
+    @Override
+    public String toString() {
+        return mSampleRate + "Hz/" + mChannelCount + "ch/" + mBitsPerSample + "bit";
+    }
+}
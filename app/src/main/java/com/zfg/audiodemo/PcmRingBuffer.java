@@ -0,0 +1,216 @@
+package com.zfg.audiodemo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单生产者/单消费者的无锁环形缓冲区
+ * 所有PCM块在构造时预先分配，采集线程写入、编码线程读取，两端都不加锁也不分配内存
+ * <p>
+ * 生产者：acquireWrite() -> 填充数据 -> commitWrite(length)
+ * 消费者：acquireRead() -> 读取数据 -> releaseRead()
+ */
+public class PcmRingBuffer {
+
+    private final byte[][] mChunks;
+    private final int[] mLengths;
+    private final int mMask;
+
+    /**
+     * 下一个要读取的序号，只由消费者修改
+     */
+    private final AtomicLong mHead = new AtomicLong();
+    /**
+     * 下一个要写入的序号，只由生产者修改
+     */
+    private final AtomicLong mTail = new AtomicLong();
+
+    /**
+     * 缓冲区已满、生产者的数据被丢弃的次数
+     */
+    private final AtomicLong mOverrunCount = new AtomicLong();
+    /**
+     * 生产者已经开始写入、还没有关闭时，消费者等满超时仍然没有数据的次数
+     */
+    private final AtomicLong mUnderrunCount = new AtomicLong();
+
+    private volatile boolean mClosed;
+    private volatile Thread mConsumerThread;
+    private volatile Thread mProducerThread;
+
+    /**
+     * @param chunkCount 块数，会向上取整为2的幂
+     * @param chunkSize  每块的字节数
+     */
+    public PcmRingBuffer(int chunkCount, int chunkSize) {
+        if (chunkCount <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkCount and chunkSize must be positive");
+        }
+        int capacity = Integer.highestOneBit(chunkCount);
+        if (capacity < chunkCount) {
+            capacity <<= 1;
+        }
+        mMask = capacity - 1;
+        mChunks = new byte[capacity][chunkSize];
+        mLengths = new int[capacity];
+    }
+
+    /**
+     * 获取下一个可写入的块，仅生产者调用
+     *
+     * @return 可写入的块，缓冲区已满时返回null并计一次溢出
+     */
+    public byte[] acquireWrite() {
+        long tail = mTail.get();
+        if (tail - mHead.get() > mMask) {
+            mOverrunCount.incrementAndGet();
+            return null;
+        }
+        return mChunks[(int) tail & mMask];
+    }
+
+    /**
+     * 提交acquireWrite()得到的块，仅生产者调用
+     *
+     * @param length 块中的有效字节数
+     */
+    public void commitWrite(int length) {
+        long tail = mTail.get();
+        mLengths[(int) tail & mMask] = length;
+        //这里使用volatile写，保证与awaitReadable()中登记消费者线程的顺序，不会漏掉唤醒
+        mTail.set(tail + 1);
+        Thread consumer = mConsumerThread;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * 获取下一个可读取的块，仅消费者调用
+     *
+     * 消费者都是先取、取不到再awaitReadable()等待，缓冲区为空只说明消费者比生产者快，不计入欠载
+     *
+     * @return 可读取的块，缓冲区为空时返回null
+     */
+    public byte[] acquireRead() {
+        long head = mHead.get();
+        if (head >= mTail.get()) {
+            return null;
+        }
+        return mChunks[(int) head & mMask];
+    }
+
+    /**
+     * 当前可读块的有效字节数，需在acquireRead()成功后调用
+     */
+    public int readLength() {
+        return mLengths[(int) mHead.get() & mMask];
+    }
+
+    /**
+     * 归还acquireRead()得到的块，仅消费者调用
+     */
+    public void releaseRead() {
+        //volatile写，保证与awaitWritable()中登记生产者线程的顺序
+        mHead.set(mHead.get() + 1);
+        Thread producer = mProducerThread;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * 消费者等待数据到来，生产者提交时会被唤醒
+     * 等满timeout仍然没有数据时计一次欠载，timeout应大于生产者写入一块的间隔，否则空闲等待也会被计入
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     */
+    public void awaitReadable(long timeout, TimeUnit unit) {
+        if (!isEmpty() || mClosed) {
+            return;
+        }
+        long timeoutNanos = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + timeoutNanos;
+        mConsumerThread = Thread.currentThread();
+        //再检查一次，避免在注册前错过唤醒
+        if (isEmpty() && !mClosed) {
+            LockSupport.parkNanos(this, timeoutNanos);
+            //生产者还没开始写入时是启动等待，已经关闭时是正常结束，都不算欠载
+            if (isEmpty() && !mClosed && mTail.get() > 0 && System.nanoTime() - deadline >= 0) {
+                mUnderrunCount.incrementAndGet();
+            }
+        }
+        mConsumerThread = null;
+    }
+
+    /**
+     * 生产者等待空闲块，消费者归还块时会被唤醒
+     * 用于播放等不能丢数据的场景，生产者先等待再acquireWrite()，不会计入溢出
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     */
+    public void awaitWritable(long timeout, TimeUnit unit) {
+        if (!isFull() || mClosed) {
+            return;
+        }
+        mProducerThread = Thread.currentThread();
+        //再检查一次，避免在注册前错过唤醒
+        if (isFull() && !mClosed) {
+            LockSupport.parkNanos(this, unit.toNanos(timeout));
+        }
+        mProducerThread = null;
+    }
+
+    /**
+     * 生产者不再写入数据，消费者读完剩余数据后即可退出
+     */
+    public void close() {
+        mClosed = true;
+        Thread consumer = mConsumerThread;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        Thread producer = mProducerThread;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    public boolean isEmpty() {
+        return mHead.get() >= mTail.get();
+    }
+
+    public boolean isFull() {
+        return mTail.get() - mHead.get() > mMask;
+    }
+
+    /**
+     * 当前缓存的块数
+     */
+    public int size() {
+        return (int) (mTail.get() - mHead.get());
+    }
+
+    public int capacity() {
+        return mMask + 1;
+    }
+
+    public int chunkSize() {
+        return mChunks[0].length;
+    }
+
+    public long getOverrunCount() {
+        return mOverrunCount.get();
+    }
+
+    public long getUnderrunCount() {
+        return mUnderrunCount.get();
+    }
+}
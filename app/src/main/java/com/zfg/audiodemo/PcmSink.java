@@ -0,0 +1,19 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 解码输出的PCM数据去向
+ */
+public interface PcmSink {
+
+    /**
+     * 写入position到limit之间的数据，返回后不能再持有data
+     */
+    void write(ByteBuffer data) throws IOException;
+
+    void flush() throws IOException;
+
+    void close() throws IOException;
+}
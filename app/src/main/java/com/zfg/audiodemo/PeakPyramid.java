@@ -0,0 +1,452 @@
+package com.zfg.audiodemo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 录音波形的多分辨率峰值金字塔，保存在录音旁边的文件中
+ * 第0层每个桶记录bucketFrames帧的最小值和最大值（所有声道合并），往上每层的桶覆盖下一层factor个桶。
+ * 画波形时按每列的帧数选一层，只读取可见范围内的桶，耗时只和屏幕宽度有关，不需要读取PCM
+ * <p>
+ * 文件格式（大端）：魔数"PEAK"、版本号、采样率、声道数、第0层每桶帧数、相邻层的倍数、总帧数、层数，
+ * 之后是MAX_LEVELS项(偏移量, 桶数)；每个桶是(最小值, 最大值)两个short。
+ * 录音过程中第0层一直追加并定期回写文件头，结束时再追加上面各层
+ */
+public class PeakPyramid implements Closeable {
+
+    /**
+     * 峰值文件后缀
+     */
+    public static final String SUFFIX = ".peaks";
+
+    /**
+     * 第0层每桶帧数，48KHz下约5ms
+     */
+    public static final int DEFAULT_BUCKET_FRAMES = 256;
+
+    /**
+     * 相邻层之间桶大小的倍数
+     */
+    public static final int DEFAULT_FACTOR = 8;
+
+    /**
+     * 层数上限，默认参数下最上层的一个桶超过7天
+     */
+    static final int MAX_LEVELS = 10;
+
+    private static final int MAGIC = 0x5045414B;
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 6 * 4 + 8 + 4 + MAX_LEVELS * 12;
+    private static final int BUCKET_SIZE = 4;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final int mBucketFrames;
+    private final int mFactor;
+    private final long mTotalFrames;
+    private final int mLevelCount;
+    private final long[] mOffsets = new long[MAX_LEVELS];
+    private final int[] mCounts = new int[MAX_LEVELS];
+    private ByteBuffer mReadBuffer = ByteBuffer.allocate(0);
+
+    private PeakPyramid(RandomAccessFile file, ByteBuffer header) throws IOException {
+        mFile = file;
+        mChannel = file.getChannel();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a peak file");
+        }
+        mSampleRate = header.getInt();
+        mChannelCount = header.getInt();
+        mBucketFrames = header.getInt();
+        mFactor = header.getInt();
+        mTotalFrames = header.getLong();
+        mLevelCount = header.getInt();
+        if (mBucketFrames <= 0 || mFactor < 2 || mLevelCount < 0 || mLevelCount > MAX_LEVELS) {
+            throw new IOException("Invalid peak file header");
+        }
+        for (int i = 0; i < MAX_LEVELS; i++) {
+            mOffsets[i] = header.getLong();
+            mCounts[i] = header.getInt();
+        }
+    }
+
+    /**
+     * 打开峰值文件，录音过程中也可以打开，此时只有第0层，数据截止到最近一次回写文件头
+     */
+    public static PeakPyramid open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            FileChannel channel = randomAccessFile.getChannel();
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated peak file");
+                }
+            }
+            header.flip();
+            return new PeakPyramid(randomAccessFile, header);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public long getTotalFrames() {
+        return mTotalFrames;
+    }
+
+    public int getLevelCount() {
+        return mLevelCount;
+    }
+
+    /**
+     * 某一层每个桶覆盖的帧数
+     */
+    public long getBucketFrames(int level) {
+        long frames = mBucketFrames;
+        for (int i = 0; i < level; i++) {
+            frames *= mFactor;
+        }
+        return frames;
+    }
+
+    public int getBucketCount(int level) {
+        return mCounts[level];
+    }
+
+    /**
+     * 读取[startFrame, endFrame)范围的波形，均分成columns列
+     * 选每桶帧数不超过每列帧数的最粗一层，读取的桶数少于columns * factor
+     *
+     * @param min 每列的最小值
+     * @param max 每列的最大值，没有数据的列最小值和最大值都是0
+     * @return 读取的层
+     */
+    public int read(long startFrame, long endFrame, int columns, short[] min, short[] max) throws IOException {
+        if (columns <= 0 || endFrame <= startFrame) {
+            throw new IllegalArgumentException("Invalid range " + startFrame + " - " + endFrame + ", " + columns);
+        }
+        double framesPerColumn = (double) (endFrame - startFrame) / columns;
+        int level = 0;
+        while (level + 1 < mLevelCount && getBucketFrames(level + 1) <= framesPerColumn) {
+            level++;
+        }
+        long bucketFrames = getBucketFrames(level);
+        int count = mLevelCount == 0 ? 0 : mCounts[level];
+        long first = Math.min(startFrame / bucketFrames, count);
+        long last = Math.min((endFrame + bucketFrames - 1) / bucketFrames, count);
+        int buckets = (int) (last - first);
+        ByteBuffer buffer = readBuckets(mOffsets[level] + first * BUCKET_SIZE, buckets);
+        for (int column = 0; column < columns; column++) {
+            long from = startFrame + (long) (column * framesPerColumn);
+            long to = Math.max(from + 1, startFrame + (long) ((column + 1) * framesPerColumn));
+            //每列至少包含一个桶，放大到桶以下时相邻几列显示同一个桶
+            long fromBucket = from / bucketFrames - first;
+            long toBucket = Math.max(fromBucket + 1, (to + bucketFrames - 1) / bucketFrames - first);
+            toBucket = Math.min(toBucket, buckets);
+            short columnMin = 0;
+            short columnMax = 0;
+            boolean empty = true;
+            for (long bucket = Math.max(0, fromBucket); bucket < toBucket; bucket++) {
+                short bucketMin = buffer.getShort((int) bucket * BUCKET_SIZE);
+                short bucketMax = buffer.getShort((int) bucket * BUCKET_SIZE + 2);
+                if (empty || bucketMin < columnMin) {
+                    columnMin = bucketMin;
+                }
+                if (empty || bucketMax > columnMax) {
+                    columnMax = bucketMax;
+                }
+                empty = false;
+            }
+            min[column] = columnMin;
+            max[column] = columnMax;
+        }
+        return level;
+    }
+
+    private ByteBuffer readBuckets(long position, int buckets) throws IOException {
+        int size = buckets * BUCKET_SIZE;
+        if (mReadBuffer.capacity() < size) {
+            mReadBuffer = ByteBuffer.allocate(size);
+        }
+        ByteBuffer buffer = mReadBuffer;
+        buffer.clear();
+        buffer.limit(size);
+        while (buffer.hasRemaining()) {
+            int read = mChannel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Truncated peak file");
+            }
+        }
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * 录音时增量写入峰值文件，只在一个线程中调用
+     */
+    public static class Writer implements Closeable {
+
+        /**
+         * 回写文件头的间隔（按音频时长计算）
+         */
+        private static final int PATCH_INTERVAL_MS = 1000;
+        private static final int WRITE_BUFFER_SIZE = 4096;
+
+        private final RandomAccessFile mFile;
+        private final FileChannel mChannel;
+        private final int mSampleRate;
+        private final int mChannelCount;
+        private final int mBucketFrames;
+        private final int mFactor;
+        private final long mPatchIntervalFrames;
+        private final ByteBuffer mHeader = ByteBuffer.allocate(HEADER_SIZE);
+        private final ByteBuffer mWriteBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+        private long mTotalFrames;
+        private long mPatchedFrames;
+        private boolean mClosed;
+
+        /**
+         * 第0层正在累积的桶
+         */
+        private int mMin = Short.MAX_VALUE;
+        private int mMax = Short.MIN_VALUE;
+        private int mFrames;
+
+        /**
+         * 每层已经写出的桶数
+         */
+        private final int[] mCounts = new int[MAX_LEVELS];
+        /**
+         * 每层在文件中的偏移量，第0层紧跟在文件头之后
+         */
+        private final long[] mOffsets = new long[MAX_LEVELS];
+        /**
+         * 第1层以上正在累积的桶，以及已经完成的桶(最小值, 最大值)交错存放
+         */
+        private final int[] mLevelMin = new int[MAX_LEVELS];
+        private final int[] mLevelMax = new int[MAX_LEVELS];
+        private final int[] mLevelChildren = new int[MAX_LEVELS];
+        private final short[][] mLevels = new short[MAX_LEVELS][];
+
+        public Writer(File file, int sampleRate, int channelCount) throws IOException {
+            this(file, sampleRate, channelCount, DEFAULT_BUCKET_FRAMES, DEFAULT_FACTOR);
+        }
+
+        /**
+         * @param file         输出文件，已存在时会被覆盖
+         * @param sampleRate   采样率
+         * @param channelCount 声道数
+         * @param bucketFrames 第0层每桶帧数
+         * @param factor       相邻层之间桶大小的倍数
+         */
+        public Writer(File file, int sampleRate, int channelCount, int bucketFrames, int factor) throws IOException {
+            if (sampleRate <= 0 || channelCount <= 0 || bucketFrames <= 0 || factor < 2) {
+                throw new IllegalArgumentException("Invalid peak config " + bucketFrames + " x " + factor);
+            }
+            mSampleRate = sampleRate;
+            mChannelCount = channelCount;
+            mBucketFrames = bucketFrames;
+            mFactor = factor;
+            mPatchIntervalFrames = (long) sampleRate * PATCH_INTERVAL_MS / 1000;
+            for (int level = 1; level < MAX_LEVELS; level++) {
+                mLevels[level] = new short[64];
+                resetLevel(level);
+            }
+            mFile = new RandomAccessFile(file, "rw");
+            mFile.setLength(0);
+            mChannel = mFile.getChannel();
+            mOffsets[0] = HEADER_SIZE;
+            writeHeader(1);
+            mChannel.position(HEADER_SIZE);
+        }
+
+        /**
+         * 写入一块小端16位PCM
+         *
+         * @param length 字节数，不足一帧的部分不计算
+         */
+        public void write(byte[] data, int offset, int length) throws IOException {
+            int frames = length / (2 * mChannelCount);
+            int position = offset;
+            int remaining = frames;
+            while (remaining > 0) {
+                int count = Math.min(remaining, mBucketFrames - mFrames);
+                int end = position + count * mChannelCount * 2;
+                int min = mMin;
+                int max = mMax;
+                for (int j = position; j < end; j += 2) {
+                    int sample = (short) ((data[j] & 0xFF) | (data[j + 1] << 8));
+                    if (sample < min) {
+                        min = sample;
+                    }
+                    if (sample > max) {
+                        max = sample;
+                    }
+                }
+                mMin = min;
+                mMax = max;
+                mFrames += count;
+                position = end;
+                remaining -= count;
+                if (mFrames == mBucketFrames) {
+                    emitBaseBucket();
+                }
+            }
+            mTotalFrames += frames;
+            if (mTotalFrames - mPatchedFrames >= mPatchIntervalFrames) {
+                flush();
+            }
+        }
+
+        private void emitBaseBucket() throws IOException {
+            if (mWriteBuffer.remaining() < BUCKET_SIZE) {
+                drainWriteBuffer();
+            }
+            mWriteBuffer.putShort((short) mMin);
+            mWriteBuffer.putShort((short) mMax);
+            mCounts[0]++;
+            addToLevel(1, mMin, mMax);
+            mMin = Short.MAX_VALUE;
+            mMax = Short.MIN_VALUE;
+            mFrames = 0;
+        }
+
+        /**
+         * 把下一层完成的一个桶合并到level层
+         */
+        private void addToLevel(int level, int min, int max) {
+            if (level >= MAX_LEVELS) {
+                return;
+            }
+            mLevelMin[level] = Math.min(mLevelMin[level], min);
+            mLevelMax[level] = Math.max(mLevelMax[level], max);
+            if (++mLevelChildren[level] == mFactor) {
+                emitLevelBucket(level);
+            }
+        }
+
+        private void emitLevelBucket(int level) {
+            short[] buckets = mLevels[level];
+            int index = mCounts[level] * 2;
+            if (index + 2 > buckets.length) {
+                buckets = Arrays.copyOf(buckets, buckets.length * 2);
+                mLevels[level] = buckets;
+            }
+            int min = mLevelMin[level];
+            int max = mLevelMax[level];
+            buckets[index] = (short) min;
+            buckets[index + 1] = (short) max;
+            mCounts[level]++;
+            resetLevel(level);
+            addToLevel(level + 1, min, max);
+        }
+
+        private void resetLevel(int level) {
+            mLevelMin[level] = Short.MAX_VALUE;
+            mLevelMax[level] = Short.MIN_VALUE;
+            mLevelChildren[level] = 0;
+        }
+
+        private void drainWriteBuffer() throws IOException {
+            mWriteBuffer.flip();
+            while (mWriteBuffer.hasRemaining()) {
+                mChannel.write(mWriteBuffer);
+            }
+            mWriteBuffer.clear();
+        }
+
+        /**
+         * 把第0层已经完成的桶写到文件，并回写文件头，此时读取方可以看到这些桶
+         */
+        public void flush() throws IOException {
+            drainWriteBuffer();
+            writeHeader(1);
+            mPatchedFrames = mTotalFrames;
+        }
+
+        /**
+         * 写出所有没有满的桶，追加第1层以上的数据并回写文件头
+         */
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            try {
+                if (mFrames > 0) {
+                    emitBaseBucket();
+                }
+                drainWriteBuffer();
+                //只保留到桶数不超过1的那一层
+                int levels = 1;
+                while (levels < MAX_LEVELS && mCounts[levels - 1] > 1) {
+                    if (mLevelChildren[levels] > 0) {
+                        emitLevelBucket(levels);
+                    }
+                    levels++;
+                }
+                long position = HEADER_SIZE + (long) mCounts[0] * BUCKET_SIZE;
+                for (int level = 1; level < levels; level++) {
+                    mOffsets[level] = position;
+                    ByteBuffer buffer = ByteBuffer.allocate(mCounts[level] * BUCKET_SIZE);
+                    buffer.asShortBuffer().put(mLevels[level], 0, mCounts[level] * 2);
+                    while (buffer.hasRemaining()) {
+                        position += mChannel.write(buffer, position);
+                    }
+                }
+                writeHeader(levels);
+            } finally {
+                mFile.close();
+            }
+        }
+
+        private void writeHeader(int levels) throws IOException {
+            ByteBuffer header = mHeader;
+            header.clear();
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(mSampleRate);
+            header.putInt(mChannelCount);
+            header.putInt(mBucketFrames);
+            header.putInt(mFactor);
+            header.putLong(mTotalFrames);
+            header.putInt(levels);
+            for (int level = 0; level < MAX_LEVELS; level++) {
+                boolean written = level < levels;
+                header.putLong(written ? mOffsets[level] : 0);
+                header.putInt(written ? mCounts[level] : 0);
+            }
+            header.flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += mChannel.write(header, position);
+            }
+        }
+
+        public long getTotalFrames() {
+            return mTotalFrames;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 低延迟播放引擎
+ * 读取线程把PCM文件读进预分配的环形缓冲区，播放线程只从缓冲区取数据写入AudioOutput，
+ * 磁盘I/O的抖动不会直接传到播放线程；play()之前先写满初始缓冲区，开始播放时第一个采样已经就绪。
+ * 数据源使用内存映射时缓冲区中只传递数据在映射区中的偏移量，播放线程直接把映射区写入输出，整个过程不拷贝PCM数据。
+ * 输出缓冲区从两块（双缓冲）起步，每次出现欠载增加一块，直到缓冲区容量上限
+ */
+public class PlaybackEngine {
+
+    /**
+     * 默认的环形缓冲区块数
+     */
+    public static final int DEFAULT_CHUNK_COUNT = 32;
+
+    /**
+     * 初始的输出缓冲区块数
+     */
+    private static final int INITIAL_BUFFER_CHUNKS = 2;
+
+    /**
+     * 等待数据或空闲块的时间（毫秒）
+     */
+    private static final int WAIT_MS = 20;
+
+    /**
+     * 播放位置超过这个时间不再前进时，认为缓冲区中的数据已经播完（毫秒）
+     */
+    private static final int DRAIN_IDLE_MS = 200;
+
+    /**
+     * 内存映射时每块只保存4字节的偏移量
+     */
+    private static final int OFFSET_SIZE = 4;
+
+    /**
+     * 读取线程预先触发缺页的步长
+     */
+    private static final int PAGE_SIZE = 4096;
+
+    private final PcmFileSource mSource;
+    private final AudioOutput mOutput;
+    /**
+     * 映射区的视图，只在播放线程中修改position和limit，没有使用内存映射时为null
+     */
+    private final ByteBuffer mMappedView;
+    private final PcmRingBuffer mRingBuffer;
+    private final int mChunkSize;
+    private final int mChunkFrames;
+    private final int mFrameSize;
+
+    /**
+     * 保存touchPages()读到的值，避免读取被优化掉，只在读取线程中使用
+     */
+    private int mPageProbe;
+
+    private volatile boolean mStopped;
+    private volatile boolean mPlaying;
+
+    private int mLastUnderrunCount;
+    private int mUnderrunCount;
+    private int mBufferGrowCount;
+    private int mBufferSizeInFrames;
+    private long mQueueStallCount;
+    private long mFramesWritten;
+    private long mPrefillUs = -1;
+    private long mTimeToFirstSampleUs = -1;
+    private long mStartNanos;
+
+    /**
+     * 从开始到play()的耗时，即预填充的时间
+     */
+    private final LatencyHistogram mPrefillLatency;
+    /**
+     * 从开始到播放位置前进的耗时
+     */
+    private final LatencyHistogram mFirstSampleLatency;
+    private final LatencyHistogram mReadLatency;
+    private final LatencyHistogram mWriteLatency;
+    private final MetricsRegistry.Counter mUnderruns;
+    private final MetricsRegistry.Counter mBufferGrows;
+    /**
+     * 播放线程等不到读取线程的数据的次数
+     */
+    private final MetricsRegistry.Counter mQueueStalls;
+    private final MetricsRegistry.Counter mBytesOut;
+
+    /**
+     * @param source    PCM数据源
+     * @param format    PCM格式
+     * @param output    尚未play的输出
+     * @param chunkSize 每次读取和写入的字节数，会按帧对齐
+     */
+    public PlaybackEngine(PcmFileSource source, PcmFormat format, AudioOutput output, int chunkSize) {
+        this(source, format, output, chunkSize, DEFAULT_CHUNK_COUNT, MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param source     PCM数据源
+     * @param format     PCM格式
+     * @param output     尚未play的输出
+     * @param chunkSize  每次读取和写入的字节数，会按帧对齐
+     * @param chunkCount 环形缓冲区的块数
+     * @param metrics    运行指标
+     */
+    public PlaybackEngine(PcmFileSource source, PcmFormat format, AudioOutput output, int chunkSize,
+                          int chunkCount, MetricsRegistry metrics) {
+        mFrameSize = format.getFrameSize();
+        if (chunkSize < mFrameSize) {
+            throw new IllegalArgumentException("chunkSize " + chunkSize + " is smaller than a frame");
+        }
+        mSource = source;
+        mOutput = output;
+        mChunkSize = chunkSize / mFrameSize * mFrameSize;
+        mChunkFrames = mChunkSize / mFrameSize;
+        mMappedView = source.duplicateMapped();
+        mRingBuffer = new PcmRingBuffer(chunkCount, null == mMappedView ? mChunkSize : OFFSET_SIZE);
+        mPrefillLatency = metrics.histogram("play.prefill_us");
+        mFirstSampleLatency = metrics.histogram("play.first_sample_us");
+        mReadLatency = metrics.histogram("play.read_us");
+        mWriteLatency = metrics.histogram("play.write_us");
+        mUnderruns = metrics.counter("play.underruns");
+        mBufferGrows = metrics.counter("play.buffer_grows");
+        mQueueStalls = metrics.counter("play.queue_stalls");
+        mBytesOut = metrics.counter("play.bytes");
+    }
+
+    /**
+     * 播放到结束或者被stop()，阻塞调用线程，结束后停止并释放输出
+     */
+    public void play() throws IOException {
+        mStartNanos = System.nanoTime();
+        Thread readThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readSource();
+            }
+        }, "PlaybackReader");
+        readThread.start();
+        try {
+            initBufferSize();
+            //先写满初始缓冲区再play，写入不会阻塞
+            int prefillChunks = Math.max(1, mBufferSizeInFrames / mChunkFrames);
+            for (int i = 0; i < prefillChunks; i++) {
+                if (!writeNextChunk()) {
+                    break;
+                }
+            }
+            if (mStopped) {
+                return;
+            }
+            mOutput.play();
+            mPlaying = true;
+            mPrefillUs = (System.nanoTime() - mStartNanos) / 1000;
+            mPrefillLatency.record(mPrefillUs);
+            while (writeNextChunk()) {
+                checkFirstSample();
+                tuneBufferSize();
+            }
+            checkFirstSample();
+            if (!mStopped) {
+                drainOutput();
+            }
+        } finally {
+            mStopped = true;
+            mRingBuffer.close();
+            try {
+                readThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mPlaying = false;
+            mOutput.stop();
+            mOutput.release();
+        }
+    }
+
+    /**
+     * 停止播放，可以在任意线程调用，play()会尽快返回
+     */
+    public void stop() {
+        mStopped = true;
+        mRingBuffer.close();
+        if (mPlaying) {
+            //让阻塞中的write尽快返回
+            mOutput.stop();
+        }
+    }
+
+    /**
+     * 读取线程：从文件读取PCM数据放进环形缓冲区，缓冲区满时等待而不是丢弃
+     */
+    private void readSource() {
+        try {
+            while (!mStopped) {
+                if (mRingBuffer.isFull()) {
+                    mRingBuffer.awaitWritable(WAIT_MS, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                long start = System.nanoTime();
+                ByteBuffer chunk = mSource.read(mChunkSize);
+                if (null == chunk) {
+                    break;
+                }
+                byte[] data = mRingBuffer.acquireWrite();
+                int length = chunk.remaining();
+                if (null != mMappedView) {
+                    //映射区的缺页在这里发生，不会卡住播放线程
+                    touchPages(chunk);
+                    putInt(data, chunk.position());
+                } else {
+                    //按块读取的缓存下一次read时会被覆盖，需要拷贝出来
+                    chunk.get(data, 0, length);
+                }
+                mReadLatency.record((System.nanoTime() - start) / 1000);
+                mRingBuffer.commitWrite(length);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            mRingBuffer.close();
+        }
+    }
+
+    /**
+     * 从环形缓冲区取一块写入输出
+     *
+     * @return 没有更多数据或者已经停止时返回false
+     */
+    private boolean writeNextChunk() throws IOException {
+        byte[] data = mRingBuffer.acquireRead();
+        boolean stalled = false;
+        while (null == data) {
+            if (mStopped || (mRingBuffer.isClosed() && mRingBuffer.isEmpty())) {
+                return false;
+            }
+            if (mPlaying && !stalled) {
+                //输出缓冲区里的数据可能撑不到下一块到来
+                stalled = true;
+                mQueueStallCount++;
+                mQueueStalls.increment();
+            }
+            mRingBuffer.awaitReadable(WAIT_MS, TimeUnit.MILLISECONDS);
+            data = mRingBuffer.acquireRead();
+        }
+        int length = mRingBuffer.readLength();
+        ByteBuffer view = null;
+        if (null != mMappedView) {
+            view = mMappedView;
+            int position = getInt(data);
+            view.limit(view.capacity());
+            view.position(position);
+            view.limit(position + length);
+        }
+        int offset = 0;
+        while (offset < length && !mStopped) {
+            long start = System.nanoTime();
+            int written = null == view ? mOutput.write(data, offset, length - offset)
+                    : mOutput.write(view, length - offset);
+            mWriteLatency.record((System.nanoTime() - start) / 1000);
+            if (written < 0) {
+                mRingBuffer.releaseRead();
+                throw new IOException("Audio output write error " + written);
+            }
+            offset += written;
+        }
+        mBytesOut.add(offset);
+        mFramesWritten += offset / mFrameSize;
+        mRingBuffer.releaseRead();
+        return !mStopped;
+    }
+
+    /**
+     * 每页读取一个字节，让映射区的数据在读取线程中载入内存
+     */
+    private void touchPages(ByteBuffer chunk) {
+        int probe = 0;
+        for (int i = chunk.position(); i < chunk.limit(); i += PAGE_SIZE) {
+            probe += chunk.get(i);
+        }
+        mPageProbe = probe;
+    }
+
+    private static void putInt(byte[] data, int value) {
+        data[0] = (byte) (value >> 24);
+        data[1] = (byte) (value >> 16);
+        data[2] = (byte) (value >> 8);
+        data[3] = (byte) value;
+    }
+
+    private static int getInt(byte[] data) {
+        return (data[0] & 0xFF) << 24 | (data[1] & 0xFF) << 16 | (data[2] & 0xFF) << 8 | (data[3] & 0xFF);
+    }
+
+    /**
+     * 等缓冲区中剩余的数据播完，避免release()截掉结尾
+     */
+    private void drainOutput() {
+        long lastPosition = -1;
+        long idleStart = System.nanoTime();
+        while (!mStopped) {
+            long position = mOutput.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+            if (position >= mFramesWritten) {
+                break;
+            }
+            if (position != lastPosition) {
+                lastPosition = position;
+                idleStart = System.nanoTime();
+            } else if (System.nanoTime() - idleStart > TimeUnit.MILLISECONDS.toNanos(DRAIN_IDLE_MS)) {
+                break;
+            }
+            try {
+                Thread.sleep(WAIT_MS / 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 支持调整时从双缓冲起步，之后由tuneBufferSize()按欠载情况增大
+     */
+    private void initBufferSize() {
+        int capacity = mOutput.getBufferCapacityInFrames();
+        if (capacity > 0) {
+            mOutput.setBufferSizeInFrames(Math.min(capacity, INITIAL_BUFFER_CHUNKS * mChunkFrames));
+        }
+        mBufferSizeInFrames = mOutput.getBufferSizeInFrames();
+        mLastUnderrunCount = Math.max(0, mOutput.getUnderrunCount());
+    }
+
+    /**
+     * 欠载次数增加时把缓冲区加大一块，以少量延迟换取不再断音
+     */
+    private void tuneBufferSize() {
+        int underrunCount = mOutput.getUnderrunCount();
+        if (underrunCount <= mLastUnderrunCount) {
+            return;
+        }
+        mUnderrunCount += underrunCount - mLastUnderrunCount;
+        mUnderruns.add(underrunCount - mLastUnderrunCount);
+        mLastUnderrunCount = underrunCount;
+        int capacity = mOutput.getBufferCapacityInFrames();
+        int current = mOutput.getBufferSizeInFrames();
+        if (capacity > 0 && current < capacity) {
+            mBufferSizeInFrames = mOutput.setBufferSizeInFrames(Math.min(capacity, current + mChunkFrames));
+            mBufferGrowCount++;
+            mBufferGrows.increment();
+        }
+    }
+
+    private void checkFirstSample() {
+        if (mTimeToFirstSampleUs < 0 && mOutput.getPlaybackHeadPosition() > 0) {
+            mTimeToFirstSampleUs = (System.nanoTime() - mStartNanos) / 1000;
+            mFirstSampleLatency.record(mTimeToFirstSampleUs);
+        }
+    }
+
+    /**
+     * @return 从play()到开始输出的耗时（微秒），还没有观察到时返回-1
+     */
+    public long getTimeToFirstSampleUs() {
+        return mTimeToFirstSampleUs;
+    }
+
+    /**
+     * @return 预填充的耗时（微秒），没有开始播放时返回-1
+     */
+    public long getPrefillUs() {
+        return mPrefillUs;
+    }
+
+    /**
+     * 输出的欠载次数，系统不支持统计时为0
+     */
+    public int getUnderrunCount() {
+        return mUnderrunCount;
+    }
+
+    public int getBufferGrowCount() {
+        return mBufferGrowCount;
+    }
+
+    public long getQueueStallCount() {
+        return mQueueStallCount;
+    }
+
+    /**
+     * 最后一次调整后的输出缓冲区大小，输出释放后仍然可以读取
+     */
+    public int getBufferSizeInFrames() {
+        return mBufferSizeInFrames;
+    }
+}
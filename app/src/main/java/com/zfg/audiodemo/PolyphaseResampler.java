@@ -0,0 +1,293 @@
+package com.zfg.audiodemo;
+
+import java.util.Arrays;
+
+/**
+ * 流式多相重采样
+ * 按 输出采样率/输入采样率 = L/M 的有理数比例，用Kaiser窗sinc低通滤波器拆成L组相位系数，
+ * 每个输出采样只计算一组相位的卷积。数据可以按任意大小分块送入，块与块之间保持滤波器状态；
+ * 构造时分配好所有缓存，处理过程中不再分配内存
+ */
+public class PolyphaseResampler {
+
+    /**
+     * 每组相位的系数个数，越多过渡带越窄
+     */
+    public static final int DEFAULT_TAPS = 64;
+
+    /**
+     * 相位数上限，限制系数表的大小
+     */
+    private static final int MAX_PHASES = 4096;
+
+    /**
+     * 通带截止频率相对于奈奎斯特频率的比例
+     */
+    private static final double ROLLOFF = 0.85;
+    private static final double KAISER_BETA = 8.0;
+
+    /**
+     * 每次内部处理的最大输入帧数
+     */
+    private static final int BLOCK_FRAMES = 1024;
+
+    private final int mInputRate;
+    private final int mOutputRate;
+    private final int mChannels;
+    private final int mTaps;
+    private final int mUp;
+    private final int mDown;
+    private final float[] mCoefficients;
+
+    /**
+     * 交错存储的输入历史，最前面是上一块剩下的数据
+     */
+    private final float[] mBuffer;
+    private int mBufferedFrames;
+    private int mPosition;
+    private int mPhase;
+    /**
+     * short输出时的中间结果
+     */
+    private final float[] mOutputScratch;
+
+    public PolyphaseResampler(int inputRate, int outputRate, int channels) {
+        this(inputRate, outputRate, channels, DEFAULT_TAPS);
+    }
+
+    /**
+     * @param inputRate  输入采样率
+     * @param outputRate 输出采样率
+     * @param channels   声道数
+     * @param taps       每组相位的系数个数，需要是偶数
+     */
+    public PolyphaseResampler(int inputRate, int outputRate, int channels, int taps) {
+        if (inputRate <= 0 || outputRate <= 0 || channels <= 0 || taps < 2 || (taps & 1) != 0) {
+            throw new IllegalArgumentException("Invalid resampler config " + inputRate + " -> " + outputRate
+                    + ", channels " + channels + ", taps " + taps);
+        }
+        int gcd = gcd(inputRate, outputRate);
+        mUp = outputRate / gcd;
+        mDown = inputRate / gcd;
+        if (mUp > MAX_PHASES) {
+            throw new IllegalArgumentException("Unsupported resampling ratio " + inputRate + " -> " + outputRate);
+        }
+        mInputRate = inputRate;
+        mOutputRate = outputRate;
+        mChannels = channels;
+        mTaps = taps;
+        mCoefficients = designFilter(mUp, mDown, taps);
+        mBuffer = new float[(taps + BLOCK_FRAMES) * channels];
+        mOutputScratch = new float[getMaxOutputFrames(BLOCK_FRAMES) * channels];
+        reset();
+    }
+
+    /**
+     * 设计原型低通滤波器并拆分成多相系数，每组相位按直流增益为1归一化
+     */
+    private static float[] designFilter(int up, int down, int taps) {
+        int length = up * taps;
+        double cutoff = ROLLOFF * 0.5 / Math.max(up, down);
+        double center = (length - 1) / 2.0;
+        double[] prototype = new double[length];
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int j = 0; j < length; j++) {
+            double x = j - center;
+            double sinc = x == 0 ? 1.0 : Math.sin(2 * Math.PI * cutoff * x) / (2 * Math.PI * cutoff * x);
+            double ratio = 2.0 * j / (length - 1) - 1;
+            double window = besselI0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - ratio * ratio))) / i0Beta;
+            prototype[j] = 2 * cutoff * sinc * window;
+        }
+        float[] coefficients = new float[length];
+        for (int phase = 0; phase < up; phase++) {
+            double sum = 0;
+            for (int k = 0; k < taps; k++) {
+                sum += prototype[phase + (taps - 1 - k) * up];
+            }
+            for (int k = 0; k < taps; k++) {
+                //倒序存放，卷积时输入和系数都按递增方向访问
+                coefficients[phase * taps + k] = (float) (prototype[phase + (taps - 1 - k) * up] / sum);
+            }
+        }
+        return coefficients;
+    }
+
+    /**
+     * 第一类零阶修正贝塞尔函数，级数展开
+     */
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double halfX = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * 清空滤波器状态，预先填入taps/2-1帧静音，抵消滤波器的群延迟，
+     * 第一个输出采样正好对应第一个输入采样
+     */
+    public void reset() {
+        Arrays.fill(mBuffer, 0);
+        mBufferedFrames = mTaps / 2 - 1;
+        mPosition = 0;
+        mPhase = 0;
+    }
+
+    /**
+     * 送入inFrames帧输入时最多产生的输出帧数，用于分配输出缓存
+     */
+    public int getMaxOutputFrames(int inFrames) {
+        return (int) (((long) inFrames + mTaps) * mUp / mDown) + 1;
+    }
+
+    /**
+     * 重采样浮点数据
+     *
+     * @return 输出的帧数
+     */
+    public int process(float[] in, int inOffset, int inFrames, float[] out, int outOffset) {
+        int produced = 0;
+        while (inFrames > 0) {
+            int count = Math.min(inFrames, BLOCK_FRAMES);
+            System.arraycopy(in, inOffset, mBuffer, mBufferedFrames * mChannels, count * mChannels);
+            mBufferedFrames += count;
+            inOffset += count * mChannels;
+            inFrames -= count;
+            produced += filter(out, outOffset + produced * mChannels);
+        }
+        return produced;
+    }
+
+    /**
+     * 重采样16位数据，超出范围的结果会被截断
+     *
+     * @return 输出的帧数
+     */
+    public int process(short[] in, int inOffset, int inFrames, short[] out, int outOffset) {
+        int produced = 0;
+        while (inFrames > 0) {
+            int count = Math.min(inFrames, BLOCK_FRAMES);
+            int index = mBufferedFrames * mChannels;
+            int end = inOffset + count * mChannels;
+            for (int i = inOffset; i < end; i++) {
+                mBuffer[index++] = in[i];
+            }
+            mBufferedFrames += count;
+            inOffset = end;
+            inFrames -= count;
+            int frames = filter(mOutputScratch, 0);
+            toShort(mOutputScratch, frames * mChannels, out, outOffset + produced * mChannels);
+            produced += frames;
+        }
+        return produced;
+    }
+
+    /**
+     * 送入结尾的静音，输出滤波器中剩余的数据，之后状态被重置
+     *
+     * @return 输出的帧数
+     */
+    public int flush(float[] out, int outOffset) {
+        appendSilence();
+        int frames = filter(out, outOffset);
+        reset();
+        return frames;
+    }
+
+    public int flush(short[] out, int outOffset) {
+        appendSilence();
+        int frames = filter(mOutputScratch, 0);
+        toShort(mOutputScratch, frames * mChannels, out, outOffset);
+        reset();
+        return frames;
+    }
+
+    private void appendSilence() {
+        int frames = mTaps / 2;
+        Arrays.fill(mBuffer, mBufferedFrames * mChannels, (mBufferedFrames + frames) * mChannels, 0);
+        mBufferedFrames += frames;
+    }
+
+    /**
+     * 对缓存中的数据做卷积，直到剩余数据不够一个滤波器长度，然后把剩余数据移到缓存开头
+     */
+    private int filter(float[] out, int outOffset) {
+        final float[] buffer = mBuffer;
+        final float[] coefficients = mCoefficients;
+        final int taps = mTaps;
+        final int channels = mChannels;
+        int position = mPosition;
+        int phase = mPhase;
+        int outIndex = outOffset;
+        while (position + taps <= mBufferedFrames) {
+            int coefficientBase = phase * taps;
+            int frameBase = position * channels;
+            for (int c = 0; c < channels; c++) {
+                float sum = 0;
+                int index = frameBase + c;
+                for (int k = 0; k < taps; k++) {
+                    sum += coefficients[coefficientBase + k] * buffer[index];
+                    index += channels;
+                }
+                out[outIndex++] = sum;
+            }
+            phase += mDown;
+            position += phase / mUp;
+            phase %= mUp;
+        }
+        int produced = (outIndex - outOffset) / channels;
+        //保留还没用完的输入
+        int remaining = mBufferedFrames - position;
+        if (remaining > 0) {
+            System.arraycopy(buffer, position * channels, buffer, 0, remaining * channels);
+            mBufferedFrames = remaining;
+            mPosition = 0;
+        } else {
+            //降采样时下一个窗口可能越过已有数据
+            mBufferedFrames = 0;
+            mPosition = -remaining;
+        }
+        mPhase = phase;
+        return produced;
+    }
+
+    private static void toShort(float[] in, int samples, short[] out, int outOffset) {
+        for (int i = 0; i < samples; i++) {
+            float value = in[i];
+            if (value > Short.MAX_VALUE) {
+                value = Short.MAX_VALUE;
+            } else if (value < Short.MIN_VALUE) {
+                value = Short.MIN_VALUE;
+            }
+            out[outOffset + i] = (short) Math.round(value);
+        }
+    }
+
+    public int getInputRate() {
+        return mInputRate;
+    }
+
+    public int getOutputRate() {
+        return mOutputRate;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+}
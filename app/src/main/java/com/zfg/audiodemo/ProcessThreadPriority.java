@@ -0,0 +1,19 @@
+package com.zfg.audiodemo;
+
+import android.os.Process;
+
+/**
+ * 使用Android的线程优先级：实时任务为URGENT_AUDIO，与系统的音频线程同一级别；离线任务为BACKGROUND
+ */
+public class ProcessThreadPriority implements AudioScheduler.IThreadPriority {
+
+    @Override
+    public void applyRealtime() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+    }
+
+    @Override
+    public void applyBackground() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    }
+}
@@ -0,0 +1,67 @@
+package com.zfg.audiodemo;
+
+/**
+ * 按固定时间窗口统计速率（如每秒写入的字节数），每个窗口的结果记入直方图
+ * 只在一个线程中调用
+ */
+public class RateMeter {
+
+    private final LatencyHistogram mHistogram;
+    private final long mWindowNanos;
+
+    private long mStartNanos = -1;
+    private long mStartTotal;
+    private long mWindowStartNanos;
+    private long mWindowStartTotal;
+    private long mTotal;
+    private long mLastNanos;
+
+    /**
+     * @param histogram   记录每个窗口的速率（每秒）
+     * @param windowNanos 窗口长度
+     */
+    public RateMeter(LatencyHistogram histogram, long windowNanos) {
+        if (windowNanos <= 0) {
+            throw new IllegalArgumentException("windowNanos must be positive");
+        }
+        mHistogram = histogram;
+        mWindowNanos = windowNanos;
+    }
+
+    /**
+     * @param total    到目前为止的累计值
+     * @param nowNanos 当前时间，System.nanoTime()
+     */
+    public void update(long total, long nowNanos) {
+        if (mStartNanos < 0) {
+            mStartNanos = nowNanos;
+            mStartTotal = total;
+            mWindowStartNanos = nowNanos;
+            mWindowStartTotal = total;
+        }
+        mTotal = total;
+        mLastNanos = nowNanos;
+        long elapsed = nowNanos - mWindowStartNanos;
+        if (elapsed >= mWindowNanos) {
+            mHistogram.record(ratePerSecond(total - mWindowStartTotal, elapsed));
+            mWindowStartNanos = nowNanos;
+            mWindowStartTotal = total;
+        }
+    }
+
+    /**
+     * 从第一次update()开始的平均速率（每秒），时间不足时返回0
+     */
+    public long getAverageRate() {
+        long elapsed = mLastNanos - mStartNanos;
+        if (mStartNanos < 0 || elapsed <= 0) {
+            return 0;
+        }
+        return ratePerSecond(mTotal - mStartTotal, elapsed);
+    }
+
+    private static long ratePerSecond(long delta, long elapsedNanos) {
+        //用double计算，累计值很大时不会溢出
+        return (long) (delta * 1e9 / elapsedNanos);
+    }
+}
@@ -0,0 +1,143 @@
+package com.zfg.audiodemo;
+
+/**
+ * 按累计采样数计算时间戳的时钟
+ * 第n帧的时间戳为 起点 + n / 采样率，只用整数计算，长时间录音也不会累积误差。
+ * 可以用AudioRecord.getTimestamp()得到的时间戳把起点对齐到System.nanoTime()的时基，方便音视频同步；
+ * 之后的时间戳只用来统计采样时钟相对系统时钟的漂移，不会让时间戳跳变。
+ * 送入数据和校准可以在不同线程调用
+ */
+public class SampleClock {
+
+    private final int mSampleRate;
+    private final int mFrameSize;
+    private final boolean mAnchorEnabled;
+
+    /**
+     * 已经送入的帧数
+     */
+    private long mFrames;
+    /**
+     * 第0帧的时间戳（微秒）
+     */
+    private long mOriginUs;
+    private boolean mAnchored;
+
+    private int mTimestampCount;
+    private long mFirstTimestampFrame;
+    private long mFirstErrorUs;
+    private long mDriftUs;
+    private double mDriftPpm;
+
+    private final LatencyHistogram mDriftHistogram;
+
+    /**
+     * 时间戳从0开始，不对齐系统时钟
+     *
+     * @param sampleRate 采样率
+     * @param frameSize  每帧字节数
+     */
+    public SampleClock(int sampleRate, int frameSize) {
+        this(sampleRate, frameSize, false, MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param sampleRate    采样率
+     * @param frameSize     每帧字节数
+     * @param anchorEnabled 是否用第一个时间戳把起点对齐到系统时钟，需要在送入数据之前校准才会生效
+     * @param metrics       运行指标
+     */
+    public SampleClock(int sampleRate, int frameSize, boolean anchorEnabled, MetricsRegistry metrics) {
+        if (sampleRate <= 0 || frameSize <= 0) {
+            throw new IllegalArgumentException("Invalid clock " + sampleRate + "Hz, frame " + frameSize);
+        }
+        mSampleRate = sampleRate;
+        mFrameSize = frameSize;
+        mAnchorEnabled = anchorEnabled;
+        mDriftHistogram = metrics.histogram("encode.clock_drift_us");
+    }
+
+    /**
+     * 送入一块PCM数据
+     *
+     * @param bytes 字节数
+     * @return 这块数据第一帧的时间戳（微秒）
+     */
+    public synchronized long advance(int bytes) {
+        long ptsUs = getPtsUs();
+        mFrames += bytes / mFrameSize;
+        return ptsUs;
+    }
+
+    /**
+     * 下一帧的时间戳（微秒）
+     */
+    public synchronized long getPtsUs() {
+        return mOriginUs + framesToUs(mFrames);
+    }
+
+    /**
+     * 已经送入的帧数
+     */
+    public synchronized long getFramePosition() {
+        return mFrames;
+    }
+
+    /**
+     * 用采集端的时间戳校准
+     *
+     * @param framePosition 时间戳对应的帧序号，从开始录音算起，与送入的数据同一采样率
+     * @param nanoTime      这一帧被采集的时间，System.nanoTime()时基
+     */
+    public synchronized void onTimestamp(long framePosition, long nanoTime) {
+        long errorUs = nanoTime / 1000 - (mOriginUs + framesToUs(framePosition));
+        if (mTimestampCount == 0) {
+            if (mAnchorEnabled && mFrames == 0) {
+                //还没有发出过时间戳，可以直接移动起点
+                mOriginUs += errorUs;
+                errorUs = 0;
+                mAnchored = true;
+            }
+            mFirstTimestampFrame = framePosition;
+            mFirstErrorUs = errorUs;
+        } else {
+            mDriftUs = errorUs - mFirstErrorUs;
+            long elapsedUs = framesToUs(framePosition - mFirstTimestampFrame);
+            if (elapsedUs > 0) {
+                mDriftPpm = mDriftUs * 1e6 / elapsedUs;
+            }
+            mDriftHistogram.record(Math.abs(mDriftUs));
+        }
+        mTimestampCount++;
+    }
+
+    public synchronized boolean isAnchored() {
+        return mAnchored;
+    }
+
+    /**
+     * 从第一个时间戳开始，系统时钟比采样时钟多走的时间（微秒），为负表示采样时钟偏快
+     */
+    public synchronized long getDriftUs() {
+        return mDriftUs;
+    }
+
+    /**
+     * 采样时钟相对系统时钟的漂移（百万分之一）
+     */
+    public synchronized double getDriftPpm() {
+        return mDriftPpm;
+    }
+
+    public synchronized int getTimestampCount() {
+        return mTimestampCount;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    private long framesToUs(long frames) {
+        return frames * 1000000L / mSampleRate;
+    }
+}
@@ -0,0 +1,28 @@
+package com.zfg.audiodemo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 按顺序读取一条音轨的编码帧，解码流程只需要这些操作，不要求数据源能seek
+ */
+public interface SampleSource {
+
+    /**
+     * 读取当前帧到buffer的offset处
+     *
+     * @return 帧长度，没有更多数据时返回-1
+     */
+    int readSampleData(ByteBuffer buffer, int offset);
+
+    /**
+     * 当前帧的时间戳，没有更多数据时返回-1
+     */
+    long getSampleTime();
+
+    /**
+     * 指向下一帧
+     *
+     * @return 是否还有数据
+     */
+    boolean advance();
+}
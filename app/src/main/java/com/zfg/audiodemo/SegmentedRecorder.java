@@ -0,0 +1,431 @@
+package com.zfg.audiodemo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分段循环录音
+ * PCM按固定时长切成一个个AAC分段，目录中的segments.m3u8（HLS播放列表）记录现有的分段。
+ * 只保留最近的若干个分段，超出时从最旧的开始删除，长时间录音时磁盘占用保持不变。
+ * 下一个分段的编码器在后台提前创建，旧分段的停止、关闭、更新播放列表和删除都在后台线程完成，
+ * 编码线程切换分段时不用等待
+ */
+public class SegmentedRecorder implements PcmEncoder {
+
+    /**
+     * 播放列表文件
+     */
+    public static final String MANIFEST_FILE = "segments.m3u8";
+
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_SUFFIX = ".aac";
+
+    /**
+     * AAC每帧的采样数，分段长度按整帧对齐
+     */
+    private static final int AAC_FRAME_SAMPLES = 1024;
+
+    /**
+     * 关闭时等待后台任务完成的时间（秒）
+     */
+    private static final int CLOSE_TIMEOUT_S = 10;
+
+    /**
+     * 分段编码器的创建方式，测试时可以换成纯Java实现
+     */
+    public interface IEncoderFactory {
+        /**
+         * 创建编码到aacFile的编码器，在后台线程调用
+         */
+        PcmEncoder createEncoder(File aacFile) throws IOException;
+    }
+
+    /**
+     * 一个已经完成的分段
+     */
+    public static class Segment {
+        private final long mSequence;
+        private final long mDurationUs;
+
+        Segment(long sequence, long durationUs) {
+            mSequence = sequence;
+            mDurationUs = durationUs;
+        }
+
+        public long getSequence() {
+            return mSequence;
+        }
+
+        public long getDurationUs() {
+            return mDurationUs;
+        }
+
+        public String getFileName() {
+            return segmentName(mSequence);
+        }
+    }
+
+    private final File mDirectory;
+    private final PcmFormat mFormat;
+    private final long mSegmentBytes;
+    private final int mMaxSegments;
+    private final IEncoderFactory mFactory;
+    private final ExecutorService mExecutor;
+
+    /**
+     * 已经完成的分段，只在后台线程修改
+     */
+    private final LinkedList<Segment> mSegments = new LinkedList<>();
+
+    /**
+     * 以下字段只在编码线程访问
+     */
+    private PcmEncoder mCurrentEncoder;
+    private long mCurrentSequence;
+    private long mCurrentBytes;
+    /**
+     * 已经结束的分段编码后的字节数
+     */
+    private long mFinishedBytesWritten;
+    private Future<PcmEncoder> mNextEncoder;
+    private boolean mClosed;
+
+    private final LatencyHistogram mOpenWait;
+    private final MetricsRegistry.Counter mSegmentCount;
+    private final MetricsRegistry.Counter mEvictions;
+
+    /**
+     * @param directory         分段所在目录，已有的分段会被保留并继续编号
+     * @param format            送入的PCM格式，也是编码格式
+     * @param segmentDurationMs 每个分段的时长
+     * @param maxSegments       最多保留的分段数
+     * @param factory           编码器的创建方式
+     */
+    public SegmentedRecorder(File directory, PcmFormat format, int segmentDurationMs, int maxSegments,
+                             IEncoderFactory factory) throws IOException {
+        this(directory, format, segmentDurationMs, maxSegments, factory, MetricsRegistry.getDefault());
+    }
+
+    public SegmentedRecorder(File directory, PcmFormat format, int segmentDurationMs, int maxSegments,
+                             IEncoderFactory factory, MetricsRegistry metrics) throws IOException {
+        if (segmentDurationMs <= 0 || maxSegments <= 0) {
+            throw new IllegalArgumentException("Invalid segment config " + segmentDurationMs + "ms x " + maxSegments);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        mDirectory = directory;
+        mFormat = format;
+        long aacFrames = Math.max(1, (long) format.getSampleRate() * segmentDurationMs / 1000 / AAC_FRAME_SAMPLES);
+        mSegmentBytes = aacFrames * AAC_FRAME_SAMPLES * format.getFrameSize();
+        mMaxSegments = maxSegments;
+        mFactory = factory;
+        mOpenWait = metrics.histogram("record.segment_open_wait_us");
+        mSegmentCount = metrics.counter("record.segments");
+        mEvictions = metrics.counter("record.segment_evictions");
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setName("SegmentThread");
+                return thread;
+            }
+        });
+
+        restoreSegments();
+        mCurrentSequence = mSegments.isEmpty() ? 0 : mSegments.getLast().getSequence() + 1;
+        mNextEncoder = submitCreate(mCurrentSequence);
+    }
+
+    /**
+     * 编码，跨越分段边界的数据会被拆开，分段长度严格一致
+     */
+    @Override
+    public void encodeData(byte[] data, int offset, int length) {
+        if (mClosed) {
+            return;
+        }
+        while (length > 0) {
+            if (null == mCurrentEncoder) {
+                mCurrentEncoder = awaitNextEncoder();
+                if (null == mCurrentEncoder) {
+                    //创建失败时丢弃这块数据，下次再重试
+                    mNextEncoder = submitCreate(mCurrentSequence);
+                    return;
+                }
+                //立即开始准备下一个分段的编码器
+                mNextEncoder = submitCreate(mCurrentSequence + 1);
+            }
+            int count = (int) Math.min(length, mSegmentBytes - mCurrentBytes);
+            mCurrentEncoder.encodeData(data, offset, count);
+            mCurrentBytes += count;
+            offset += count;
+            length -= count;
+            if (mCurrentBytes >= mSegmentBytes) {
+                finishCurrentSegment();
+            }
+        }
+    }
+
+    /**
+     * 结束当前分段，等待后台任务完成，播放列表写入结束标记
+     */
+    @Override
+    public void stopEncode() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        if (null != mCurrentEncoder) {
+            finishCurrentSegment();
+        }
+        //预先创建但没有用到的编码器
+        final Future<PcmEncoder> unused = mNextEncoder;
+        final long unusedSequence = mCurrentSequence;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    unused.get().stopEncode();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+                deleteSegmentFiles(unusedSequence);
+                writeManifest(true);
+            }
+        });
+        mExecutor.shutdown();
+        try {
+            mExecutor.awaitTermination(CLOSE_TIMEOUT_S, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 所有分段编码后写出的字节数，包括已经被删除的分段
+     */
+    @Override
+    public long getBytesWritten() {
+        return mFinishedBytesWritten + (null == mCurrentEncoder ? 0 : mCurrentEncoder.getBytesWritten());
+    }
+
+    /**
+     * 已经完成的分段，从旧到新
+     */
+    public List<Segment> getSegments() {
+        synchronized (mSegments) {
+            return new ArrayList<>(mSegments);
+        }
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * 每个分段的PCM字节数
+     */
+    public long getSegmentBytes() {
+        return mSegmentBytes;
+    }
+
+    private void finishCurrentSegment() {
+        final PcmEncoder encoder = mCurrentEncoder;
+        final Segment segment = new Segment(mCurrentSequence,
+                mCurrentBytes / mFormat.getFrameSize() * 1000000L / mFormat.getSampleRate());
+        mFinishedBytesWritten += encoder.getBytesWritten();
+        mCurrentEncoder = null;
+        mCurrentBytes = 0;
+        mCurrentSequence++;
+        mSegmentCount.increment();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                encoder.stopEncode();
+                synchronized (mSegments) {
+                    mSegments.add(segment);
+                }
+                evictSegments();
+                writeManifest(false);
+            }
+        });
+    }
+
+    private Future<PcmEncoder> submitCreate(final long sequence) {
+        return mExecutor.submit(new Callable<PcmEncoder>() {
+            @Override
+            public PcmEncoder call() throws Exception {
+                return mFactory.createEncoder(new File(mDirectory, segmentName(sequence)));
+            }
+        });
+    }
+
+    private PcmEncoder awaitNextEncoder() {
+        long start = System.nanoTime();
+        try {
+            return mNextEncoder.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            mOpenWait.record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    /**
+     * 从最旧的分段开始删除，直到不超过上限
+     */
+    private void evictSegments() {
+        while (true) {
+            Segment oldest;
+            synchronized (mSegments) {
+                if (mSegments.size() <= mMaxSegments) {
+                    return;
+                }
+                oldest = mSegments.removeFirst();
+            }
+            deleteSegmentFiles(oldest.getSequence());
+            mEvictions.increment();
+        }
+    }
+
+    private void deleteSegmentFiles(long sequence) {
+        File file = new File(mDirectory, segmentName(sequence));
+        file.delete();
+        new File(file.getAbsolutePath() + AdtsFrameIndex.INDEX_SUFFIX).delete();
+    }
+
+    /**
+     * 先写临时文件再改名，异常退出时播放列表也是完整的
+     */
+    private void writeManifest(boolean ended) {
+        List<Segment> segments = getSegments();
+        long targetDurationS = 1;
+        for (Segment segment : segments) {
+            targetDurationS = Math.max(targetDurationS, (segment.getDurationUs() + 999999) / 1000000);
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append("#EXTM3U\n");
+        builder.append("#EXT-X-VERSION:3\n");
+        builder.append("#EXT-X-TARGETDURATION:").append(targetDurationS).append('\n');
+        builder.append("#EXT-X-MEDIA-SEQUENCE:").append(segments.isEmpty() ? 0 : segments.get(0).getSequence())
+                .append('\n');
+        for (Segment segment : segments) {
+            builder.append(String.format(Locale.US, "#EXTINF:%.3f,\n", segment.getDurationUs() / 1000000.0));
+            builder.append(segment.getFileName()).append('\n');
+        }
+        if (ended) {
+            builder.append("#EXT-X-ENDLIST\n");
+        }
+        File manifest = new File(mDirectory, MANIFEST_FILE);
+        File temp = new File(mDirectory, MANIFEST_FILE + ".tmp");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+            try {
+                writer.write(builder.toString());
+            } finally {
+                writer.close();
+            }
+            if (!temp.renameTo(manifest)) {
+                throw new IOException("Cannot rename " + temp + " to " + manifest);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 读取已有的播放列表；上次异常退出时没有记进播放列表的分段扫描ADTS帧估算时长后补上
+     */
+    private void restoreSegments() throws IOException {
+        File manifest = new File(mDirectory, MANIFEST_FILE);
+        if (manifest.exists()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+            try {
+                long durationUs = -1;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.startsWith("#EXTINF:")) {
+                        int end = line.indexOf(',');
+                        String value = line.substring("#EXTINF:".length(), end < 0 ? line.length() : end);
+                        durationUs = Math.round(Double.parseDouble(value) * 1000000);
+                    } else if (!line.isEmpty() && !line.startsWith("#") && durationUs >= 0) {
+                        long sequence = parseSequence(line);
+                        if (sequence >= 0 && new File(mDirectory, line).exists()) {
+                            mSegments.add(new Segment(sequence, durationUs));
+                        }
+                        durationUs = -1;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid manifest " + manifest, e);
+            } finally {
+                reader.close();
+            }
+        }
+        long lastSequence = mSegments.isEmpty() ? -1 : mSegments.getLast().getSequence();
+        String[] names = mDirectory.list();
+        if (null != names) {
+            Arrays.sort(names);
+            for (String name : names) {
+                long sequence = parseSequence(name);
+                if (sequence <= lastSequence) {
+                    continue;
+                }
+                File file = new File(mDirectory, name);
+                AdtsFrameIndex index = AdtsFrameIndex.build(file);
+                if (index.size() == 0 || index.getSampleRate() <= 0) {
+                    deleteSegmentFiles(sequence);
+                    continue;
+                }
+                long durationUs = index.getPtsUs(index.size() - 1)
+                        + AAC_FRAME_SAMPLES * 1000000L / index.getSampleRate();
+                mSegments.add(new Segment(sequence, durationUs));
+                lastSequence = sequence;
+            }
+        }
+        evictSegments();
+        writeManifest(false);
+    }
+
+    static String segmentName(long sequence) {
+        return String.format(Locale.US, "%s%06d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @return 分段文件名中的序号，不是分段文件时返回-1
+     */
+    static long parseSequence(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.zfg.audiodemo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 边解码边播放
+ * 解码线程把解码器的输出直接切成小块放进抖动缓冲区（环形缓冲区），播放线程攒够前几块就开始播放，
+ * 不再先解码出完整的PCM文件再读回来，开始出声的时间与文件长度无关。
+ * seek时解码器flush后从新位置继续解码，缓冲区中旧位置的数据按seek序号丢弃
+ */
+public class StreamingPlayer {
+
+    /**
+     * 默认的抖动缓冲区块数
+     */
+    public static final int DEFAULT_JITTER_CHUNKS = 8;
+
+    /**
+     * 默认开始播放前需要攒够的块数
+     */
+    public static final int DEFAULT_PREFILL_CHUNKS = 2;
+
+    /**
+     * 默认每块的PCM字节数，与AAC解码器一次输出的双声道帧大小相当
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    /**
+     * 每块开头保存seek序号、时间戳和标志
+     */
+    private static final int HEADER_SIZE = 16;
+    private static final int FLAG_END_OF_STREAM = 1;
+
+    /**
+     * 等待数据或空闲块的时间（毫秒）
+     */
+    private static final int WAIT_MS = 20;
+
+    /**
+     * 解码线程等待缓存的时间（微秒）
+     */
+    private static final long DECODE_TIMEOUT_US = 5000;
+
+    /**
+     * 播放位置超过这个时间不再前进时，认为输出中的数据已经播完（毫秒）
+     */
+    private static final int DRAIN_IDLE_MS = 200;
+
+    private final AudioCodec mCodec;
+    private final AudioExtractor mExtractor;
+    private final IOutputFactory mOutputFactory;
+    private final PcmRingBuffer mRingBuffer;
+    private final int mChunkSize;
+    private final int mPrefillChunks;
+    private final DecodePipeline mDecodePipeline;
+    private final CodecBufferInfo mBufferInfo = new CodecBufferInfo();
+
+    private volatile boolean mStopped;
+    /**
+     * 请求的seek序号和目标时间，在seekTo()中修改
+     */
+    private volatile int mSeekGeneration;
+    private volatile long mSeekTargetUs;
+    private volatile long mSeekRequestNanos;
+    /**
+     * 解码线程当前输出的seek序号
+     */
+    private volatile int mDecodeGeneration;
+    private long mChunkPtsUs;
+
+    /**
+     * 解码器输出的格式
+     */
+    private volatile int mSampleRate;
+    private volatile int mChannelCount;
+
+    /**
+     * 以下由播放线程修改
+     */
+    private volatile AudioOutput mOutput;
+    private int mPlayGeneration;
+    private int mFrameSize;
+    private long mFramesWritten;
+    private volatile long mBasePtsUs = -1;
+    private volatile long mBaseHead;
+    private long mStartNanos;
+    private long mTimeToFirstAudioUs = -1;
+    private volatile IOException mDecodeError;
+
+    private final LatencyHistogram mFirstAudioLatency;
+    private final LatencyHistogram mSeekLatency;
+    private final LatencyHistogram mJitterDepth;
+    /**
+     * 播放中抖动缓冲区被取空的次数
+     */
+    private final MetricsRegistry.Counter mJitterStalls;
+    /**
+     * seek后丢弃的旧数据块数
+     */
+    private final MetricsRegistry.Counter mDiscardedChunks;
+    private final MetricsRegistry.Counter mBytesOut;
+
+    /**
+     * @param codec         尚未start的解码器
+     * @param extractor     数据源
+     * @param outputFactory 解码器输出格式确定后创建输出
+     */
+    public StreamingPlayer(AudioCodec codec, AudioExtractor extractor, IOutputFactory outputFactory) {
+        this(codec, extractor, outputFactory, DEFAULT_CHUNK_SIZE, DEFAULT_JITTER_CHUNKS, DEFAULT_PREFILL_CHUNKS,
+                MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param codec         尚未start的解码器
+     * @param extractor     数据源
+     * @param outputFactory 解码器输出格式确定后创建输出
+     * @param chunkSize     每块的PCM字节数
+     * @param jitterChunks  抖动缓冲区的块数
+     * @param prefillChunks 开始播放前需要攒够的块数
+     * @param metrics       运行指标
+     */
+    public StreamingPlayer(AudioCodec codec, AudioExtractor extractor, IOutputFactory outputFactory,
+                           int chunkSize, int jitterChunks, int prefillChunks, MetricsRegistry metrics) {
+        if (prefillChunks < 1 || prefillChunks > jitterChunks) {
+            throw new IllegalArgumentException("Invalid prefill " + prefillChunks + " of " + jitterChunks + " chunks");
+        }
+        mCodec = codec;
+        mExtractor = extractor;
+        mOutputFactory = outputFactory;
+        mChunkSize = chunkSize;
+        mPrefillChunks = prefillChunks;
+        mRingBuffer = new PcmRingBuffer(jitterChunks, HEADER_SIZE + chunkSize);
+        mDecodePipeline = new DecodePipeline(codec, extractor, new JitterSink(), metrics);
+        mFirstAudioLatency = metrics.histogram("stream.first_audio_us");
+        mSeekLatency = metrics.histogram("stream.seek_us");
+        mJitterDepth = metrics.histogram("stream.jitter_depth");
+        mJitterStalls = metrics.counter("stream.jitter_stalls");
+        mDiscardedChunks = metrics.counter("stream.discarded_chunks");
+        mBytesOut = metrics.counter("stream.bytes");
+    }
+
+    /**
+     * 播放到结束或者被stop()，阻塞调用线程，结束后释放解码器、数据源和输出
+     */
+    public void play() throws IOException {
+        mStartNanos = System.nanoTime();
+        Thread decodeThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                decode();
+            }
+        }, "StreamDecoder");
+        decodeThread.start();
+        try {
+            playback();
+        } finally {
+            mStopped = true;
+            mRingBuffer.close();
+            try {
+                decodeThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            AudioOutput output = mOutput;
+            if (null != output) {
+                output.stop();
+                output.release();
+            }
+            mCodec.stop();
+            mCodec.release();
+            mExtractor.release();
+        }
+        if (null != mDecodeError) {
+            throw mDecodeError;
+        }
+    }
+
+    /**
+     * 停止播放，可以在任意线程调用，play()会尽快返回
+     */
+    public void stop() {
+        mStopped = true;
+        mRingBuffer.close();
+        AudioOutput output = mOutput;
+        if (null != output) {
+            //让阻塞中的write尽快返回
+            output.stop();
+        }
+    }
+
+    /**
+     * 跳到不晚于timeUs的最近一帧继续播放，可以在任意线程调用
+     */
+    public synchronized void seekTo(long timeUs) {
+        mSeekTargetUs = timeUs;
+        mSeekRequestNanos = System.nanoTime();
+        mSeekGeneration++;
+    }
+
+    /**
+     * 解码线程：按seek序号解码，缓冲区满时等待；输出EOS后保持空闲，等待seek或停止
+     */
+    private void decode() {
+        int generation = 0;
+        boolean inputEos = false;
+        boolean outputEos = false;
+        try {
+            mCodec.start();
+            updateFormat();
+            while (!mStopped) {
+                int requested = mSeekGeneration;
+                if (requested != generation) {
+                    generation = requested;
+                    mDecodeGeneration = generation;
+                    //丢弃解码器中旧位置的数据
+                    mCodec.flush();
+                    mExtractor.seekTo(mSeekTargetUs);
+                    inputEos = false;
+                    outputEos = false;
+                    continue;
+                }
+                if (outputEos) {
+                    Thread.sleep(WAIT_MS);
+                    continue;
+                }
+                if (!inputEos) {
+                    int inputIndex = mCodec.dequeueInputBuffer(DECODE_TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        inputEos = mDecodePipeline.queueInput(inputIndex);
+                    }
+                }
+                int outputIndex = mCodec.dequeueOutputBuffer(mBufferInfo, DECODE_TIMEOUT_US);
+                if (outputIndex >= 0) {
+                    mChunkPtsUs = mBufferInfo.presentationTimeUs;
+                    outputEos = mDecodePipeline.handleOutput(outputIndex, mBufferInfo);
+                    if (outputEos) {
+                        writeEndOfStream();
+                    }
+                } else if (outputIndex == AudioCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    updateFormat();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            mDecodeError = e;
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            mDecodeError = new IOException("Decode failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            //播放线程取完剩余数据后退出
+            mRingBuffer.close();
+        }
+    }
+
+    private void updateFormat() {
+        mSampleRate = mCodec.getOutputSampleRate();
+        mChannelCount = mCodec.getOutputChannelCount();
+    }
+
+    /**
+     * 获取一个可写入的块，缓冲区满时等待；已经停止或者有新的seek时返回null
+     */
+    private byte[] acquireChunk() {
+        while (mRingBuffer.isFull()) {
+            if (mStopped || mSeekGeneration != mDecodeGeneration) {
+                return null;
+            }
+            mRingBuffer.awaitWritable(WAIT_MS, TimeUnit.MILLISECONDS);
+        }
+        if (mStopped || mSeekGeneration != mDecodeGeneration) {
+            return null;
+        }
+        return mRingBuffer.acquireWrite();
+    }
+
+    private void commitChunk(byte[] chunk, long ptsUs, int flags, int length) {
+        putInt(chunk, 0, mDecodeGeneration);
+        putLong(chunk, 4, ptsUs);
+        putInt(chunk, 12, flags);
+        mRingBuffer.commitWrite(HEADER_SIZE + length);
+        mJitterDepth.record(mRingBuffer.size());
+    }
+
+    private void writeEndOfStream() {
+        byte[] chunk = acquireChunk();
+        if (null != chunk) {
+            commitChunk(chunk, mChunkPtsUs, FLAG_END_OF_STREAM, 0);
+        }
+    }
+
+    /**
+     * 播放线程：攒够prefillChunks块后play()，seek时暂停并清空输出，攒够新位置的数据后继续
+     */
+    private void playback() throws IOException {
+        boolean playing = false;
+        boolean ended = false;
+        boolean stalled = false;
+        int prefilled = 0;
+        long lastHead = -1;
+        long idleStart = 0;
+        while (!mStopped) {
+            int requested = mSeekGeneration;
+            if (requested != mPlayGeneration) {
+                beginSeek(requested);
+                playing = false;
+                ended = false;
+                prefilled = 0;
+                continue;
+            }
+            if (ended) {
+                //等输出中剩余的数据播完，期间仍然可以seek
+                long head = getPlayedFrames();
+                if (null == mOutput || head >= mFramesWritten) {
+                    break;
+                }
+                if (head != lastHead) {
+                    lastHead = head;
+                    idleStart = System.nanoTime();
+                } else if (System.nanoTime() - idleStart > TimeUnit.MILLISECONDS.toNanos(DRAIN_IDLE_MS)) {
+                    break;
+                }
+                mRingBuffer.awaitReadable(WAIT_MS / 2, TimeUnit.MILLISECONDS);
+                continue;
+            }
+            byte[] chunk = mRingBuffer.acquireRead();
+            if (null == chunk) {
+                if (mRingBuffer.isClosed() && mRingBuffer.isEmpty()) {
+                    break;
+                }
+                if (playing && !stalled) {
+                    stalled = true;
+                    mJitterStalls.increment();
+                }
+                mRingBuffer.awaitReadable(WAIT_MS, TimeUnit.MILLISECONDS);
+                continue;
+            }
+            stalled = false;
+            int length = mRingBuffer.readLength() - HEADER_SIZE;
+            int generation = getInt(chunk, 0);
+            if (generation - mPlayGeneration > 0) {
+                //解码线程已经输出新位置的数据，先处理seek再读取这一块
+                continue;
+            }
+            if (generation != mPlayGeneration) {
+                mRingBuffer.releaseRead();
+                mDiscardedChunks.increment();
+                continue;
+            }
+            if ((getInt(chunk, 12) & FLAG_END_OF_STREAM) != 0) {
+                mRingBuffer.releaseRead();
+                if (!playing) {
+                    playing = startOutput();
+                }
+                ended = true;
+                lastHead = -1;
+                idleStart = System.nanoTime();
+                continue;
+            }
+            if (null == mOutput) {
+                createOutput();
+            }
+            if (mBasePtsUs < 0) {
+                mBasePtsUs = getLong(chunk, 4);
+            }
+            int offset = HEADER_SIZE;
+            int end = HEADER_SIZE + length;
+            while (offset < end && !mStopped && requested == mSeekGeneration) {
+                int written = mOutput.write(chunk, offset, end - offset);
+                if (written < 0) {
+                    mRingBuffer.releaseRead();
+                    throw new IOException("Audio output write error " + written);
+                }
+                offset += written;
+            }
+            mBytesOut.add(offset - HEADER_SIZE);
+            mFramesWritten += (offset - HEADER_SIZE) / mFrameSize;
+            mRingBuffer.releaseRead();
+            if (!playing && ++prefilled >= mPrefillChunks) {
+                playing = startOutput();
+            }
+        }
+    }
+
+    private void createOutput() {
+        mFrameSize = Math.max(1, mChannelCount) * 2;
+        PcmFormat format = new PcmFormat(mSampleRate, Math.max(1, mChannelCount), 16);
+        //预填充的数据在play()之前写入，输出缓冲区需要放得下，写入才不会阻塞
+        mOutput = mOutputFactory.createOutput(format, (mPrefillChunks + 2) * mChunkSize);
+        mBaseHead = 0;
+    }
+
+    /**
+     * @return 是否已经开始播放
+     */
+    private boolean startOutput() {
+        AudioOutput output = mOutput;
+        if (null == output) {
+            return false;
+        }
+        output.play();
+        long now = System.nanoTime();
+        if (mTimeToFirstAudioUs < 0) {
+            mTimeToFirstAudioUs = (now - mStartNanos) / 1000;
+            mFirstAudioLatency.record(mTimeToFirstAudioUs);
+        } else if (mSeekRequestNanos > 0) {
+            mSeekLatency.record((now - mSeekRequestNanos) / 1000);
+            mSeekRequestNanos = 0;
+        }
+        return true;
+    }
+
+    /**
+     * 暂停并清空输出，之后的播放位置从新位置第一块数据的时间戳算起
+     */
+    private void beginSeek(int generation) {
+        mPlayGeneration = generation;
+        AudioOutput output = mOutput;
+        if (null != output) {
+            output.pause();
+            output.flush();
+            mBaseHead = output.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+        }
+        mBasePtsUs = -1;
+        mFramesWritten = 0;
+    }
+
+    /**
+     * 从最近一次seek开始已经播放的帧数
+     */
+    private long getPlayedFrames() {
+        AudioOutput output = mOutput;
+        if (null == output) {
+            return 0;
+        }
+        return Math.max(0, (output.getPlaybackHeadPosition() & 0xFFFFFFFFL) - mBaseHead);
+    }
+
+    /**
+     * 当前播放位置（微秒），还没有开始播放时返回最近一次seek的目标时间
+     */
+    public long getPositionUs() {
+        long basePtsUs = mBasePtsUs;
+        int sampleRate = mSampleRate;
+        if (basePtsUs < 0 || sampleRate <= 0) {
+            return mSeekTargetUs;
+        }
+        return basePtsUs + getPlayedFrames() * 1000000L / sampleRate;
+    }
+
+    /**
+     * @return 从play()到开始出声的耗时（微秒），还没有开始播放时返回-1
+     */
+    public long getTimeToFirstAudioUs() {
+        return mTimeToFirstAudioUs;
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >> 24);
+        data[offset + 1] = (byte) (value >> 16);
+        data[offset + 2] = (byte) (value >> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    private static void putLong(byte[] data, int offset, long value) {
+        putInt(data, offset, (int) (value >> 32));
+        putInt(data, offset + 4, (int) value);
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        return ((long) getInt(data, offset) << 32) | (getInt(data, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 把解码器的输出切成块放进抖动缓冲区，在解码线程中调用
+     */
+    private class JitterSink implements PcmSink {
+
+        @Override
+        public void write(ByteBuffer data) {
+            int frameSize = Math.max(1, mChannelCount) * 2;
+            int maxLength = Math.max(frameSize, mChunkSize / frameSize * frameSize);
+            long ptsUs = mChunkPtsUs;
+            while (data.hasRemaining()) {
+                byte[] chunk = acquireChunk();
+                if (null == chunk) {
+                    //已经停止或者有新的seek，剩余的数据不再需要
+                    data.position(data.limit());
+                    return;
+                }
+                int length = Math.min(data.remaining(), maxLength);
+                data.get(chunk, HEADER_SIZE, length);
+                commitChunk(chunk, ptsUs, 0, length);
+                if (mSampleRate > 0) {
+                    ptsUs += length / frameSize * 1000000L / mSampleRate;
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 解码器输出格式确定后创建音频输出
+     */
+    public interface IOutputFactory {
+
+        /**
+         * @param format            解码输出的PCM格式，16位
+         * @param bufferSizeInBytes 输出缓冲区至少需要的字节数
+         * @return 尚未play的输出
+         */
+        AudioOutput createOutput(PcmFormat format, int bufferSizeInBytes);
+    }
+}
@@ -0,0 +1,408 @@
+package com.zfg.audiodemo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 基于能量和过零率的语音活动检测，去掉录音中的静音
+ * 每10ms计算一次能量和过零率：能量高出底噪一定幅度判为语音；能量稍低但过零率高（清辅音）也判为语音。
+ * 底噪取第一个窗口的能量（不超过INITIAL_FLOOR_DB，一开始就说话也不会被当成底噪），之后遇到更低的能量立即下降，
+ * 否则缓慢上升，说话的停顿会把它拉回真实的底噪。
+ * 语音结束后继续保留hangover时长，避免切掉词尾；静音时缓存最近pre-roll时长的数据，
+ * 语音开始时先输出，避免切掉起音。被丢弃的静音段按(起始帧, 帧数)记录下来，可以还原原始时间轴
+ */
+public class VoiceActivityDetector {
+
+    /**
+     * 静音段记录文件后缀
+     */
+    public static final String SPANS_SUFFIX = ".vad";
+
+    public static final int DEFAULT_HANGOVER_MS = 500;
+    public static final int DEFAULT_PRE_ROLL_MS = 300;
+
+    /**
+     * 分析窗口长度
+     */
+    private static final int ANALYSIS_MS = 10;
+    /**
+     * 能量高出底噪多少判为语音
+     */
+    private static final float SPEECH_MARGIN_DB = 12;
+    /**
+     * 高过零率时能量只需要高出底噪这么多
+     */
+    private static final float FRICATIVE_MARGIN_DB = 6;
+    /**
+     * 清辅音的过零率下限（每个采样的过零次数）
+     */
+    private static final float FRICATIVE_ZCR = 0.2f;
+    /**
+     * 低于这个电平一定是静音，底噪不会低于它
+     */
+    private static final float SILENCE_DB = -70;
+    /**
+     * 底噪初始值的上限
+     */
+    private static final float INITIAL_FLOOR_DB = -50;
+    /**
+     * 底噪每秒最多上升的分贝数，下降时立即跟随
+     */
+    private static final float FLOOR_RISE_DB_PER_SECOND = 3;
+
+    private static final int SPANS_MAGIC = 0x56414453;
+    private static final int SPANS_VERSION = 1;
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mFrameSize;
+    private final int mAnalysisFrames;
+    private final int mHangoverFrames;
+    private final int mPreRollFrames;
+    private final float mFloorRisePerWindow;
+
+    /**
+     * 静音时缓存的最近几块数据
+     */
+    private final byte[][] mPreRoll;
+    private final int[] mPreRollLengths;
+    private final long[] mPreRollPositions;
+    private int mPreRollHead;
+    private int mPreRollCount;
+    private int mPreRollBufferedFrames;
+
+    private float mNoiseFloorDb = Float.NaN;
+    private boolean mSpeaking;
+    private int mSilentFrames;
+    /**
+     * 当前块在原始时间轴上的起始帧
+     */
+    private long mPosition;
+
+    /**
+     * 正在累积的静音段起点，-1表示没有
+     */
+    private long mSpanStart = -1;
+    private long[] mSpans = new long[32];
+    private int mSpanCount;
+
+    private long mKeptFrames;
+    private long mSkippedFrames;
+    private long mProcessNanos;
+
+    private final LatencyHistogram mProcessLatency;
+    private final MetricsRegistry.Counter mKeptCounter;
+    private final MetricsRegistry.Counter mSkippedCounter;
+    private final MetricsRegistry.Counter mSpanCounter;
+
+    /**
+     * @param format        16位PCM格式
+     * @param maxChunkBytes 单次输入的最大字节数
+     */
+    public VoiceActivityDetector(PcmFormat format, int maxChunkBytes) {
+        this(format, maxChunkBytes, DEFAULT_HANGOVER_MS, DEFAULT_PRE_ROLL_MS, MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param format        16位PCM格式
+     * @param maxChunkBytes 单次输入的最大字节数
+     * @param hangoverMs    语音结束后继续保留的时长
+     * @param preRollMs     语音开始前补上的时长
+     * @param metrics       运行指标
+     */
+    public VoiceActivityDetector(PcmFormat format, int maxChunkBytes, int hangoverMs, int preRollMs,
+                                 MetricsRegistry metrics) {
+        if (format.getBitsPerSample() != 16) {
+            throw new IllegalArgumentException("Only 16 bit PCM is supported: " + format);
+        }
+        if (hangoverMs < 0 || preRollMs < 0 || maxChunkBytes < format.getFrameSize()) {
+            throw new IllegalArgumentException("Invalid VAD config, hangover " + hangoverMs + ", pre-roll " + preRollMs);
+        }
+        mSampleRate = format.getSampleRate();
+        mChannels = format.getChannelCount();
+        mFrameSize = format.getFrameSize();
+        mAnalysisFrames = Math.max(1, mSampleRate * ANALYSIS_MS / 1000);
+        mHangoverFrames = (int) ((long) hangoverMs * mSampleRate / 1000);
+        mPreRollFrames = (int) ((long) preRollMs * mSampleRate / 1000);
+        mFloorRisePerWindow = FLOOR_RISE_DB_PER_SECOND * ANALYSIS_MS / 1000;
+        //按最短的块也能放满pre-roll计算块数，多留一块给正在淘汰的最旧块
+        int maxChunkFrames = maxChunkBytes / mFrameSize;
+        int chunks = mPreRollFrames == 0 ? 0 : (mPreRollFrames + maxChunkFrames - 1) / maxChunkFrames + 1;
+        mPreRoll = new byte[chunks][maxChunkBytes];
+        mPreRollLengths = new int[chunks];
+        mPreRollPositions = new long[chunks];
+        mProcessLatency = metrics.histogram("vad.process_ns");
+        mKeptCounter = metrics.counter("vad.kept_frames");
+        mSkippedCounter = metrics.counter("vad.skipped_frames");
+        mSpanCounter = metrics.counter("vad.skipped_spans");
+    }
+
+    /**
+     * 处理一块小端16位PCM，需要保留的数据通过sink按原始顺序输出
+     * 从静音切换到语音时，先输出缓存的pre-roll数据，再输出这一块
+     *
+     * @param length 字节数，不超过构造时的maxChunkBytes，不足一帧的部分丢弃
+     * @return 这一块是否被判为语音（包括hangover）
+     */
+    public boolean process(byte[] data, int offset, int length, ISpeechSink sink) throws IOException {
+        long start = System.nanoTime();
+        int frames = length / mFrameSize;
+        length = frames * mFrameSize;
+        boolean speech = false;
+        for (int frame = 0; frame < frames; frame += mAnalysisFrames) {
+            int count = Math.min(mAnalysisFrames, frames - frame);
+            if (analyze(data, offset + frame * mFrameSize, count)) {
+                speech = true;
+            }
+        }
+        if (speech) {
+            mSilentFrames = 0;
+        } else {
+            mSilentFrames += frames;
+        }
+        boolean keep = speech || (mSpeaking && mSilentFrames <= mHangoverFrames);
+        long elapsed = System.nanoTime() - start;
+        mProcessNanos += elapsed;
+        mProcessLatency.record(elapsed);
+
+        if (keep) {
+            if (!mSpeaking) {
+                //起音之前的数据
+                drainPreRoll(sink);
+            }
+            closeSpan();
+            sink.onSpeech(data, offset, length);
+            mKeptFrames += frames;
+            mKeptCounter.add(frames);
+        } else {
+            bufferPreRoll(data, offset, length);
+        }
+        mSpeaking = keep;
+        mPosition += frames;
+        return keep;
+    }
+
+    /**
+     * 判断一个分析窗口是否为语音，并更新底噪
+     */
+    private boolean analyze(byte[] data, int offset, int frames) {
+        int samples = frames * mChannels;
+        long sum = 0;
+        for (int i = 0, j = offset; i < samples; i++, j += 2) {
+            int sample = (short) ((data[j] & 0xFF) | (data[j + 1] << 8));
+            sum += sample * sample;
+        }
+        //只看第一个声道的过零次数
+        int crossings = 0;
+        int step = mChannels * 2;
+        int previous = (short) ((data[offset] & 0xFF) | (data[offset + 1] << 8));
+        int end = offset + frames * step;
+        for (int j = offset + step; j < end; j += step) {
+            int sample = (short) ((data[j] & 0xFF) | (data[j + 1] << 8));
+            if ((sample ^ previous) < 0) {
+                crossings++;
+            }
+            previous = sample;
+        }
+        double meanSquare = (double) sum / samples;
+        float energyDb = meanSquare <= 0 ? -120
+                : (float) (10 * Math.log10(meanSquare / (DspChain.FULL_SCALE * DspChain.FULL_SCALE)));
+        float zcr = (float) crossings / frames;
+
+        float floor = Float.isNaN(mNoiseFloorDb)
+                ? Math.max(SILENCE_DB, Math.min(INITIAL_FLOOR_DB, energyDb)) : mNoiseFloorDb;
+        boolean speech = energyDb > floor + SPEECH_MARGIN_DB
+                || (energyDb > floor + FRICATIVE_MARGIN_DB && zcr > FRICATIVE_ZCR);
+        if (energyDb < floor) {
+            mNoiseFloorDb = Math.max(SILENCE_DB, energyDb);
+        } else {
+            mNoiseFloorDb = Math.min(energyDb, floor + mFloorRisePerWindow);
+        }
+        return speech && energyDb > SILENCE_DB;
+    }
+
+    private void bufferPreRoll(byte[] data, int offset, int length) {
+        int frames = length / mFrameSize;
+        if (mPreRoll.length == 0) {
+            skip(mPosition, frames);
+            return;
+        }
+        int capacity = mPreRoll.length;
+        //淘汰最旧的块，直到剩下的加上这一块仍然不少于pre-roll时长
+        while (mPreRollCount > 0 && (mPreRollCount == capacity
+                || mPreRollBufferedFrames - mPreRollLengths[mPreRollHead] / mFrameSize + frames >= mPreRollFrames)) {
+            int oldestFrames = mPreRollLengths[mPreRollHead] / mFrameSize;
+            skip(mPreRollPositions[mPreRollHead], oldestFrames);
+            mPreRollBufferedFrames -= oldestFrames;
+            mPreRollHead = (mPreRollHead + 1) % capacity;
+            mPreRollCount--;
+        }
+        int index = (mPreRollHead + mPreRollCount) % capacity;
+        System.arraycopy(data, offset, mPreRoll[index], 0, length);
+        mPreRollLengths[index] = length;
+        mPreRollPositions[index] = mPosition;
+        mPreRollCount++;
+        mPreRollBufferedFrames += frames;
+    }
+
+    private void drainPreRoll(ISpeechSink sink) throws IOException {
+        //被淘汰的部分和pre-roll之间没有空隙，先结束静音段
+        closeSpan();
+        while (mPreRollCount > 0) {
+            int length = mPreRollLengths[mPreRollHead];
+            sink.onSpeech(mPreRoll[mPreRollHead], 0, length);
+            mKeptFrames += length / mFrameSize;
+            mKeptCounter.add(length / mFrameSize);
+            mPreRollHead = (mPreRollHead + 1) % mPreRoll.length;
+            mPreRollCount--;
+        }
+        mPreRollBufferedFrames = 0;
+    }
+
+    /**
+     * 丢弃从position开始的frames帧，与上一段相连时合并
+     */
+    private void skip(long position, int frames) {
+        if (mSpanStart < 0) {
+            mSpanStart = position;
+        }
+        mSkippedFrames += frames;
+        mSkippedCounter.add(frames);
+    }
+
+    private void closeSpan() {
+        if (mSpanStart < 0) {
+            return;
+        }
+        long end = mPreRollCount > 0 ? mPreRollPositions[mPreRollHead] : mPosition;
+        if (mSpanCount * 2 + 2 > mSpans.length) {
+            mSpans = Arrays.copyOf(mSpans, mSpans.length * 2);
+        }
+        mSpans[mSpanCount * 2] = mSpanStart;
+        mSpans[mSpanCount * 2 + 1] = end - mSpanStart;
+        mSpanCount++;
+        mSpanCounter.increment();
+        mSpanStart = -1;
+    }
+
+    /**
+     * 录音结束时调用，缓存中还没有输出的静音也算作丢弃
+     */
+    public void finish() {
+        while (mPreRollCount > 0) {
+            int frames = mPreRollLengths[mPreRollHead] / mFrameSize;
+            skip(mPreRollPositions[mPreRollHead], frames);
+            mPreRollHead = (mPreRollHead + 1) % mPreRoll.length;
+            mPreRollCount--;
+        }
+        mPreRollBufferedFrames = 0;
+        closeSpan();
+    }
+
+    /**
+     * 被丢弃的静音段个数
+     */
+    public int getSkippedSpanCount() {
+        return mSpanCount;
+    }
+
+    /**
+     * 第index个静音段在原始时间轴上的起始帧
+     */
+    public long getSkippedSpanStart(int index) {
+        return mSpans[index * 2];
+    }
+
+    public long getSkippedSpanFrames(int index) {
+        return mSpans[index * 2 + 1];
+    }
+
+    public long getKeptFrames() {
+        return mKeptFrames;
+    }
+
+    public long getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    /**
+     * 被丢弃的帧数占全部输入的比例
+     */
+    public double getSkippedRatio() {
+        long total = mKeptFrames + mSkippedFrames;
+        return total == 0 ? 0 : (double) mSkippedFrames / total;
+    }
+
+    /**
+     * 检测本身累计占用的时间（纳秒）
+     */
+    public long getProcessNanos() {
+        return mProcessNanos;
+    }
+
+    /**
+     * 当前估计的底噪（dBFS），还没有输入时为SILENCE_DB
+     */
+    public float getNoiseFloorDb() {
+        return Float.isNaN(mNoiseFloorDb) ? SILENCE_DB : mNoiseFloorDb;
+    }
+
+    /**
+     * 保存被丢弃的静音段，格式：魔数"VADS"、版本号、采样率、段数，之后是(起始帧, 帧数)
+     */
+    public void writeSkippedSpans(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(SPANS_MAGIC);
+            out.writeInt(SPANS_VERSION);
+            out.writeInt(mSampleRate);
+            out.writeInt(mSpanCount);
+            for (int i = 0; i < mSpanCount * 2; i++) {
+                out.writeLong(mSpans[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 读取writeSkippedSpans保存的静音段
+     *
+     * @return (起始帧, 帧数)交错存放
+     */
+    public static long[] readSkippedSpans(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != SPANS_MAGIC || in.readInt() != SPANS_VERSION) {
+                throw new IOException("Not a VAD spans file");
+            }
+            in.readInt();
+            int count = in.readInt();
+            long[] spans = new long[count * 2];
+            for (int i = 0; i < spans.length; i++) {
+                spans[i] = in.readLong();
+            }
+            return spans;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 需要保留的数据去向
+     */
+    public interface ISpeechSink {
+
+        /**
+         * 返回后不能再持有data
+         */
+        void onSpeech(byte[] data, int offset, int length) throws IOException;
+    }
+}
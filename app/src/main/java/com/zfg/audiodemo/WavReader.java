@@ -0,0 +1,180 @@
+package com.zfg.audiodemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * WAV/RF64文件头解析
+ * 只读取文件头和块头，找到data块后交给PcmFileSource内存映射，不需要扫描数据。
+ * data长度为0或超出文件（写入过程中崩溃、没来得及回写）时按文件实际长度处理
+ */
+public class WavReader {
+
+    private static final long UNKNOWN_SIZE = 0xFFFFFFFFL;
+
+    private final File mFile;
+    private int mFormatTag;
+    private int mChannelCount;
+    private int mSampleRate;
+    private int mBitsPerSample;
+    private int mBlockAlign;
+    private long mDataOffset = -1;
+    private long mDataLength;
+    private boolean mRf64;
+
+    private WavReader(File file) {
+        mFile = file;
+    }
+
+    /**
+     * 解析并校验文件头
+     */
+    public static WavReader open(File file) throws IOException {
+        WavReader reader = new WavReader(file);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            reader.parse(randomAccessFile.getChannel());
+        } finally {
+            randomAccessFile.close();
+        }
+        return reader;
+    }
+
+    private void parse(FileChannel channel) throws IOException {
+        long fileLength = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        read(channel, buffer, 0, 12);
+        String riff = readId(buffer);
+        buffer.getInt();
+        if (!("RIFF".equals(riff) || "RF64".equals(riff)) || !"WAVE".equals(readId(buffer))) {
+            throw new IOException("Not a WAV file: " + mFile);
+        }
+        mRf64 = "RF64".equals(riff);
+        long ds64DataSize = -1;
+        boolean hasFormat = false;
+        long position = 12;
+        while (position + 8 <= fileLength) {
+            read(channel, buffer, position, 8);
+            String id = readId(buffer);
+            long size = buffer.getInt() & 0xFFFFFFFFL;
+            long body = position + 8;
+            if ("ds64".equals(id)) {
+                if (size < 16) {
+                    throw new IOException("Invalid ds64 chunk");
+                }
+                read(channel, buffer, body, 16);
+                buffer.getLong();
+                ds64DataSize = buffer.getLong();
+            } else if ("fmt ".equals(id)) {
+                if (size < 16) {
+                    throw new IOException("Invalid fmt chunk");
+                }
+                read(channel, buffer, body, 16);
+                mFormatTag = buffer.getShort() & 0xFFFF;
+                mChannelCount = buffer.getShort() & 0xFFFF;
+                mSampleRate = buffer.getInt();
+                buffer.getInt();
+                mBlockAlign = buffer.getShort() & 0xFFFF;
+                mBitsPerSample = buffer.getShort() & 0xFFFF;
+                hasFormat = true;
+            } else if ("data".equals(id)) {
+                mDataOffset = body;
+                if (mRf64 && size == UNKNOWN_SIZE && ds64DataSize >= 0) {
+                    size = ds64DataSize;
+                }
+                if (size == 0 || body + size > fileLength) {
+                    //长度没有回写，按文件实际长度处理
+                    size = fileLength - body;
+                }
+                mDataLength = size;
+                break;
+            }
+            //块按偶数字节对齐
+            position = body + size + (size & 1);
+        }
+        if (!hasFormat) {
+            throw new IOException("Missing fmt chunk: " + mFile);
+        }
+        if (mDataOffset < 0) {
+            throw new IOException("Missing data chunk: " + mFile);
+        }
+        if (mChannelCount <= 0 || mSampleRate <= 0 || mBlockAlign <= 0
+                || mBlockAlign != mChannelCount * ((mBitsPerSample + 7) / 8)) {
+            throw new IOException("Invalid WAV format: " + mChannelCount + " channels, "
+                    + mSampleRate + " Hz, " + mBitsPerSample + " bits");
+        }
+        mDataLength = mDataLength / mBlockAlign * mBlockAlign;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of WAV header");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static String readId(ByteBuffer buffer) {
+        char[] id = new char[4];
+        for (int i = 0; i < 4; i++) {
+            id[i] = (char) (buffer.get() & 0xFF);
+        }
+        return new String(id);
+    }
+
+    /**
+     * 以内存映射的方式打开数据部分
+     */
+    public PcmFileSource openSource() throws IOException {
+        return new PcmFileSource(mFile, mDataOffset, mDataLength, mBlockAlign, true);
+    }
+
+    /**
+     * 1：PCM，3：浮点，0xFFFE：扩展格式
+     */
+    public int getFormatTag() {
+        return mFormatTag;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getBitsPerSample() {
+        return mBitsPerSample;
+    }
+
+    /**
+     * 每帧字节数
+     */
+    public int getFrameSize() {
+        return mBlockAlign;
+    }
+
+    public long getDataOffset() {
+        return mDataOffset;
+    }
+
+    public long getDataLength() {
+        return mDataLength;
+    }
+
+    public boolean isRf64() {
+        return mRf64;
+    }
+
+    public long getDurationUs() {
+        return mDataLength / mBlockAlign * 1000000L / mSampleRate;
+    }
+}
@@ -0,0 +1,193 @@
+package com.zfg.audiodemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 流式WAV写入
+ * 文件头按RF64预留空间（JUNK块占住ds64的位置），数据超过4GB时原地改写成RF64，不需要搬移数据。
+ * 每写入约200ms的数据就刷新一次缓存并回写文件头中的长度，进程崩溃时最多丢失这一段，
+ * 文件仍然是可以直接播放的WAV
+ */
+public class WavWriter implements PcmSink {
+
+    /**
+     * 文件头长度，数据从这里开始
+     */
+    public static final int HEADER_SIZE = 80;
+
+    /**
+     * 回写文件头的间隔（按音频时长计算）
+     */
+    private static final int PATCH_INTERVAL_MS = 200;
+
+    /**
+     * RIFF长度字段为32位，超过后改用RF64
+     */
+    private static final long MAX_RIFF_SIZE = 0xFFFFFFFFL;
+
+    static final int WAVE_FORMAT_PCM = 1;
+    static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    static final int DS64_CHUNK_SIZE = 28;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final FilePcmSink mDataSink;
+    private final ByteBuffer mHeader = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private int mSampleRate;
+    private int mChannelCount;
+    private final int mBitsPerSample;
+    private final int mFormatTag;
+
+    private long mDataBytes;
+    private long mPatchedBytes;
+    private long mPatchIntervalBytes;
+    private boolean mClosed;
+
+    /**
+     * @param file          输出文件，已存在时会被覆盖
+     * @param sampleRate    采样率
+     * @param channelCount  声道数
+     * @param bitsPerSample 每个采样的位数，8/16/24位整数或32位浮点
+     */
+    public WavWriter(File file, int sampleRate, int channelCount, int bitsPerSample) throws IOException {
+        if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 24 && bitsPerSample != 32) {
+            throw new IllegalArgumentException("Unsupported bits per sample " + bitsPerSample);
+        }
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mBitsPerSample = bitsPerSample;
+        mFormatTag = bitsPerSample == 32 ? WAVE_FORMAT_IEEE_FLOAT : WAVE_FORMAT_PCM;
+        updatePatchInterval();
+
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+        writeHeader();
+        mChannel.position(HEADER_SIZE);
+        mDataSink = new FilePcmSink(mChannel, FilePcmSink.DEFAULT_COALESCE_SIZE);
+    }
+
+    /**
+     * 修改格式，在下一次回写文件头时生效
+     * 解码器的输出格式要等到解码开始后才能确定，文件头里的格式字段位置固定，可以事后改写
+     */
+    public void setFormat(int sampleRate, int channelCount) {
+        if (sampleRate <= 0 || channelCount <= 0) {
+            return;
+        }
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        updatePatchInterval();
+        //下一次写入时立即回写
+        mPatchedBytes = -mPatchIntervalBytes;
+    }
+
+    private void updatePatchInterval() {
+        mPatchIntervalBytes = Math.max(1, (long) mSampleRate * getFrameSize() * PATCH_INTERVAL_MS / 1000);
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        mDataBytes += data.remaining();
+        mDataSink.write(data);
+        patchIfNeeded();
+    }
+
+    public void write(byte[] data, int offset, int length) throws IOException {
+        mDataBytes += length;
+        mDataSink.write(data, offset, length);
+        patchIfNeeded();
+    }
+
+    private void patchIfNeeded() throws IOException {
+        if (mDataBytes - mPatchedBytes >= mPatchIntervalBytes) {
+            flush();
+        }
+    }
+
+    /**
+     * 把缓存中的数据写到文件，并回写文件头
+     */
+    @Override
+    public void flush() throws IOException {
+        mDataSink.flush();
+        writeHeader();
+        mPatchedBytes = mDataBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            mDataSink.flush();
+            if ((mDataBytes & 1) != 0) {
+                //RIFF块需要按偶数字节对齐，补齐的字节不计入data长度
+                mChannel.write(ByteBuffer.allocate(1));
+            }
+            writeHeader();
+        } finally {
+            mFile.close();
+        }
+    }
+
+    public long getDataBytes() {
+        return mDataBytes;
+    }
+
+    public int getFrameSize() {
+        return mChannelCount * mBitsPerSample / 8;
+    }
+
+    /**
+     * 生成文件头并写到文件开头，不改变追加写入的位置
+     */
+    private void writeHeader() throws IOException {
+        long paddedData = mDataBytes + (mDataBytes & 1);
+        long riffSize = HEADER_SIZE - 8 + paddedData;
+        boolean rf64 = riffSize > MAX_RIFF_SIZE;
+        int frameSize = getFrameSize();
+
+        ByteBuffer header = mHeader;
+        header.clear();
+        putId(header, rf64 ? "RF64" : "RIFF");
+        header.putInt((int) (rf64 ? MAX_RIFF_SIZE : riffSize));
+        putId(header, "WAVE");
+        //非RF64时这个块是JUNK，占住ds64的位置
+        putId(header, rf64 ? "ds64" : "JUNK");
+        header.putInt(DS64_CHUNK_SIZE);
+        header.putLong(rf64 ? riffSize : 0);
+        header.putLong(rf64 ? mDataBytes : 0);
+        header.putLong(rf64 ? mDataBytes / frameSize : 0);
+        header.putInt(0);
+        putId(header, "fmt ");
+        header.putInt(16);
+        header.putShort((short) mFormatTag);
+        header.putShort((short) mChannelCount);
+        header.putInt(mSampleRate);
+        header.putInt(mSampleRate * frameSize);
+        header.putShort((short) frameSize);
+        header.putShort((short) mBitsPerSample);
+        putId(header, "data");
+        header.putInt((int) (rf64 ? MAX_RIFF_SIZE : mDataBytes));
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += mChannel.write(header, position);
+        }
+    }
+
+    private static void putId(ByteBuffer buffer, String id) {
+        for (int i = 0; i < 4; i++) {
+            buffer.put((byte) id.charAt(i));
+        }
+    }
+}
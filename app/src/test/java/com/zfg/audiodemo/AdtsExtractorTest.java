@@ -0,0 +1,96 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * ADTS读取及解码流程的本地单元测试
+ */
+public class AdtsExtractorTest {
+
+    private static File writeStream(int frames, int[] payloadSizes) throws Exception {
+        File file = File.createTempFile("extractor", ".aac");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(AdtsParserTest.createStream(frames, payloadSizes));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void readSampleData_returnsPayloadWithoutHeader() throws Exception {
+        int[] payloadSizes = new int[20];
+        File file = writeStream(20, payloadSizes);
+        AdtsExtractor extractor = new AdtsExtractor(file, null);
+        assertEquals(44100, extractor.getSampleRate());
+        assertEquals(2, extractor.getChannelConfig());
+        //AAC LC、44.1KHz、双声道
+        byte[] asc = extractor.getAudioSpecificConfig();
+        assertEquals(0x12, asc[0] & 0xFF);
+        assertEquals(0x10, asc[1] & 0xFF);
+
+        ByteBuffer buffer = ByteBuffer.allocate(2048);
+        int frames = 0;
+        do {
+            assertEquals(payloadSizes[frames], extractor.readSampleData(buffer, 0));
+            assertEquals(frames * 1024L * 1000000L / 44100, extractor.getSampleTime());
+            frames++;
+        } while (extractor.advance());
+        assertEquals(20, frames);
+        assertEquals(-1, extractor.readSampleData(buffer, 0));
+        extractor.release();
+    }
+
+    @Test
+    public void seekTo_withoutIndex_buildsIndexAndLandsOnFrame() throws Exception {
+        int[] payloadSizes = new int[100];
+        File file = writeStream(100, payloadSizes);
+        AdtsExtractor extractor = new AdtsExtractor(file, null);
+        long target = 60 * 1024L * 1000000L / 44100;
+        extractor.seekTo(target + 10);
+        assertEquals(target, extractor.getSampleTime());
+        assertEquals(payloadSizes[60], extractor.readSampleData(ByteBuffer.allocate(2048), 0));
+        assertEquals(100 * 1024L * 1000000L / 44100, extractor.getDurationUs(), 1);
+        extractor.release();
+    }
+
+    @Test
+    public void audioDecoder_passthrough_writesEveryPayload() throws Exception {
+        int[] payloadSizes = new int[40];
+        File file = writeStream(40, payloadSizes);
+        long total = 0;
+        for (int size : payloadSizes) {
+            total += size;
+        }
+        final boolean[] result = new boolean[1];
+        final int[] progress = new int[1];
+        MemoryPcmSink sink = new MemoryPcmSink();
+        AudioDecoder decoder = new AudioDecoder();
+        decoder.initDecoder(new PassthroughCodec(4, 2048, 44100, 2), new AdtsExtractor(file, null), sink,
+                new AudioDecoder.IDecodeDelegate() {
+                    @Override
+                    public void decodeProgress(long presentationTimeUs, long durationUs) {
+                        progress[0]++;
+                    }
+
+                    @Override
+                    public void decodeResult(boolean isFinish) {
+                        result[0] = isFinish;
+                    }
+                });
+        decoder.decodeAsync();
+
+        assertTrue(result[0]);
+        assertEquals(40, progress[0]);
+        assertEquals(total, sink.size());
+        assertEquals(total, decoder.getDecodedBytes());
+    }
+}
@@ -0,0 +1,88 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * 帧索引的本地单元测试
+ */
+public class AdtsFrameIndexTest {
+
+    @Test
+    public void findFrame_returnsLastFrameNotAfterTime() {
+        AdtsFrameIndex index = new AdtsFrameIndex(44100);
+        assertEquals(-1, index.findFrame(0));
+        for (int i = 0; i < 1000; i++) {
+            index.add(i * 100L, i * 1000L);
+        }
+        assertEquals(0, index.findFrame(-5));
+        assertEquals(0, index.findFrame(999));
+        assertEquals(1, index.findFrame(1000));
+        assertEquals(500, index.findFrame(500500));
+        assertEquals(999, index.findFrame(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void writerAndRead_roundTrip_dropsTruncatedRecord() throws Exception {
+        File file = File.createTempFile("index", AdtsFrameIndex.INDEX_SUFFIX);
+        try {
+            AdtsFrameIndex.Writer writer = new AdtsFrameIndex.Writer(file, 48000);
+            for (int i = 0; i < 300; i++) {
+                writer.append(i * 371L, i * 21333L);
+            }
+            writer.close();
+            //模拟写到一半时崩溃
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(raf.length() + 9);
+            raf.close();
+
+            AdtsFrameIndex index = AdtsFrameIndex.read(file);
+            assertEquals(48000, index.getSampleRate());
+            assertEquals(300, index.size());
+            assertEquals(299 * 371L, index.getOffset(299));
+            assertEquals(299 * 21333L, index.getPtsUs(299));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void build_matchesIndexWrittenDuringEncoding() throws Exception {
+        int[] payloadSizes = new int[50];
+        File aacFile = File.createTempFile("encoder", ".aac");
+        File indexFile = new File(aacFile.getAbsolutePath() + AdtsFrameIndex.INDEX_SUFFIX);
+        try {
+            AdtsFrameIndex.Writer indexWriter = new AdtsFrameIndex.Writer(indexFile, 44100);
+            byte[] stream = AdtsParserTest.createStream(50, payloadSizes, indexWriter);
+            indexWriter.close();
+            FileOutputStream out = new FileOutputStream(aacFile);
+            out.write(stream);
+            out.close();
+
+            AdtsFrameIndex written = AdtsFrameIndex.read(indexFile);
+            AdtsFrameIndex built = AdtsFrameIndex.build(aacFile);
+            assertEquals(50, written.size());
+            assertEquals(50, built.size());
+            assertEquals(44100, built.getSampleRate());
+            long offset = 0;
+            for (int i = 0; i < 50; i++) {
+                assertEquals(offset, built.getOffset(i));
+                assertEquals(built.getOffset(i), written.getOffset(i));
+                assertEquals(built.getPtsUs(i), written.getPtsUs(i));
+                offset += payloadSizes[i] + AdtsFrameWriter.ADTS_HEADER_SIZE;
+            }
+            //seek到1秒
+            int frame = built.findFrame(1000000);
+            assertTrue(built.getPtsUs(frame) <= 1000000);
+            assertTrue(built.getPtsUs(frame + 1) > 1000000);
+        } finally {
+            aacFile.delete();
+            indexFile.delete();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import static org.junit.Assert.*;
+
+/**
+ * ADTS帧写入的本地单元测试
+ */
+public class AdtsFrameWriterTest {
+
+    @Test
+    public void writeFrame_prependsHeaderAndKeepsPayload() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AdtsFrameWriter writer = new AdtsFrameWriter(Channels.newChannel(out), 16);
+
+        byte[] payload = new byte[300];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload, 10, 200);
+        int written = writer.writeFrame(buffer);
+
+        byte[] result = out.toByteArray();
+        assertEquals(207, written);
+        assertEquals(207, result.length);
+        //写入后不改变源缓存的position
+        assertEquals(10, buffer.position());
+        //同步字
+        assertEquals((byte) 0xFF, result[0]);
+        assertEquals((byte) 0xF9, result[1]);
+        //帧长度字段（13位）
+        int frameLength = ((result[3] & 0x03) << 11) | ((result[4] & 0xFF) << 3) | ((result[5] & 0xE0) >> 5);
+        assertEquals(207, frameLength);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(payload[10 + i], result[7 + i]);
+        }
+    }
+
+    @Test
+    public void writeFrame_headerMatchesConfiguredFormat() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AdtsFrameWriter writer = new AdtsFrameWriter(Channels.newChannel(out), 16, 48000, 1);
+        writer.writeFrame(ByteBuffer.wrap(new byte[100]));
+
+        AdtsParser.AdtsHeader header = new AdtsParser.AdtsHeader();
+        assertTrue(AdtsParser.parseHeader(out.toByteArray(), 0, header));
+        assertEquals(48000, header.getSampleRate());
+        assertEquals(1, header.channelConfig);
+        assertEquals(2, header.profile);
+        assertEquals(107, header.frameLength);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNonAdtsSampleRate() {
+        new AdtsFrameWriter(Channels.newChannel(new ByteArrayOutputStream()), 16, 44000, 1);
+    }
+
+    @Test
+    public void writeFrame_eightChannelsWritesChannelConfigSeven() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AdtsFrameWriter writer = new AdtsFrameWriter(Channels.newChannel(out), 16, 48000, 8);
+        writer.writeFrame(ByteBuffer.wrap(new byte[100]));
+
+        AdtsParser.AdtsHeader header = new AdtsParser.AdtsHeader();
+        assertTrue(AdtsParser.parseHeader(out.toByteArray(), 0, header));
+        //7.1声道的channel_configuration为7
+        assertEquals(7, header.channelConfig);
+        assertEquals(107, header.frameLength);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsSevenChannels() {
+        //channel_configuration为7表示8声道，7声道无法用ADTS头部表示
+        new AdtsFrameWriter(Channels.newChannel(new ByteArrayOutputStream()), 16, 48000, 7);
+    }
+
+    @Test
+    public void writeFrame_steadyStateDoesNotAllocate() throws Exception {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            //非HotSpot虚拟机无法统计线程分配量
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        FakeCodec codec = new FakeCodec();
+        CountingChannel channel = new CountingChannel();
+        AdtsFrameWriter writer = new AdtsFrameWriter(channel, 10 * 1024);
+
+        //预热，让JIT完成编译
+        drain(codec, writer, 20000);
+
+        int frames = 10000;
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        drain(codec, writer, frames);
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("allocated " + allocated + " bytes for " + frames + " frames", allocated < frames);
+        assertTrue(channel.total > 0);
+    }
+
+    private static void drain(FakeCodec codec, AdtsFrameWriter writer, int frames) throws Exception {
+        for (int i = 0; i < frames; i++) {
+            writer.writeFrame(codec.dequeueOutputBuffer());
+        }
+    }
+
+    /**
+     * 模拟编码器输出：轮流返回几块预先分配好的直接内存
+     */
+    private static class FakeCodec {
+        private final ByteBuffer[] mOutputBuffers = new ByteBuffer[4];
+        private int mIndex;
+
+        FakeCodec() {
+            for (int i = 0; i < mOutputBuffers.length; i++) {
+                mOutputBuffers[i] = ByteBuffer.allocateDirect(1024);
+            }
+        }
+
+        ByteBuffer dequeueOutputBuffer() {
+            ByteBuffer buffer = mOutputBuffers[mIndex++ & 3];
+            //AAC帧长度在一定范围内变化
+            int size = 200 + (mIndex * 37) % 600;
+            buffer.clear();
+            buffer.limit(size);
+            return buffer;
+        }
+    }
+
+    private static class CountingChannel implements WritableByteChannel {
+        long total;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            total += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * ADTS解析器的本地单元测试
+ */
+public class AdtsParserTest {
+
+    /**
+     * 用AdtsFrameWriter生成一段ADTS流
+     */
+    static byte[] createStream(int frames, int[] payloadSizes) throws Exception {
+        return createStream(frames, payloadSizes, null);
+    }
+
+    static byte[] createStream(int frames, int[] payloadSizes, AdtsFrameIndex.Writer indexWriter) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AdtsFrameWriter writer = new AdtsFrameWriter(Channels.newChannel(out), 1024);
+        writer.setIndexWriter(indexWriter);
+        Random random = new Random(frames);
+        for (int i = 0; i < frames; i++) {
+            byte[] payload = new byte[20 + random.nextInt(700)];
+            random.nextBytes(payload);
+            payloadSizes[i] = payload.length;
+            writer.writeFrame(ByteBuffer.wrap(payload));
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void feed_arbitraryChunks_yieldsEveryFrame() throws Exception {
+        int[] payloadSizes = new int[200];
+        byte[] stream = createStream(200, payloadSizes);
+        final List<long[]> frames = new ArrayList<>();
+        AdtsParser parser = new AdtsParser(new AdtsParser.IFrameListener() {
+            @Override
+            public void onFrame(AdtsParser.AdtsHeader header, byte[] data, int offset, int length,
+                                long streamOffset, long ptsUs) {
+                assertEquals(44100, header.getSampleRate());
+                assertEquals(2, header.profile);
+                frames.add(new long[]{length, streamOffset, ptsUs});
+            }
+        });
+
+        Random random = new Random(1);
+        int position = 0;
+        while (position < stream.length) {
+            int count = Math.min(stream.length - position, 1 + random.nextInt(3000));
+            parser.feed(stream, position, count);
+            position += count;
+        }
+
+        assertEquals(200, frames.size());
+        assertEquals(0, parser.getSkippedBytes());
+        assertEquals(0, parser.getPendingBytes());
+        long offset = 0;
+        for (int i = 0; i < frames.size(); i++) {
+            long[] frame = frames.get(i);
+            assertEquals(payloadSizes[i] + AdtsParser.AdtsHeader.HEADER_SIZE, frame[0]);
+            assertEquals(offset, frame[1]);
+            assertEquals(i * 1024L * 1000000L / 44100, frame[2]);
+            offset += frame[0];
+        }
+    }
+
+    @Test
+    public void feed_garbageBetweenFrames_resyncs() throws Exception {
+        int[] payloadSizes = new int[10];
+        byte[] stream = createStream(10, payloadSizes);
+        byte[] corrupted = new byte[stream.length + 5];
+        //头部插入5个垃圾字节
+        System.arraycopy(new byte[]{1, 2, 3, (byte) 0xFF, 0}, 0, corrupted, 0, 5);
+        System.arraycopy(stream, 0, corrupted, 5, stream.length);
+
+        final int[] count = new int[1];
+        AdtsParser parser = new AdtsParser(new AdtsParser.IFrameListener() {
+            @Override
+            public void onFrame(AdtsParser.AdtsHeader header, byte[] data, int offset, int length,
+                                long streamOffset, long ptsUs) {
+                if (count[0] == 0) {
+                    assertEquals(5, streamOffset);
+                }
+                count[0]++;
+            }
+        });
+        parser.feed(corrupted, 0, corrupted.length);
+        assertEquals(10, count[0]);
+        assertEquals(5, parser.getSkippedBytes());
+    }
+
+    @Test
+    public void feed_randomBytes_neverThrows() {
+        Random random = new Random(42);
+        AdtsParser parser = new AdtsParser(new AdtsParser.IFrameListener() {
+            @Override
+            public void onFrame(AdtsParser.AdtsHeader header, byte[] data, int offset, int length,
+                                long streamOffset, long ptsUs) {
+                assertTrue(length <= AdtsParser.MAX_FRAME_SIZE);
+                assertTrue(offset + length <= data.length);
+            }
+        });
+        byte[] chunk = new byte[4096];
+        for (int i = 0; i < 500; i++) {
+            random.nextBytes(chunk);
+            //提高同步字出现的概率
+            for (int j = 0; j < 8; j++) {
+                int position = random.nextInt(chunk.length - 1);
+                chunk[position] = (byte) 0xFF;
+                chunk[position + 1] = (byte) 0xF1;
+            }
+            parser.feed(chunk, 0, 1 + random.nextInt(chunk.length));
+        }
+        assertTrue(parser.getPendingBytes() < AdtsParser.MAX_FRAME_SIZE);
+    }
+
+    @Test
+    public void parseHeader_rejectsBadSampleRateAndLength() {
+        AdtsParser.AdtsHeader header = new AdtsParser.AdtsHeader();
+        byte[] data = {(byte) 0xFF, (byte) 0xF1, (byte) 0x50, (byte) 0x80, 0x02, 0x1F, (byte) 0xFC};
+        assertTrue(AdtsParser.parseHeader(data, 0, header));
+        assertEquals(16, header.frameLength);
+        assertEquals(4, header.sampleRateIndex);
+
+        //采样率索引15为保留值
+        data[2] = (byte) 0x7C;
+        assertFalse(AdtsParser.parseHeader(data, 0, header));
+
+        //帧长度不能小于帧头
+        data[2] = (byte) 0x50;
+        data[4] = 0;
+        data[5] = 0;
+        assertFalse(AdtsParser.parseHeader(data, 0, header));
+    }
+}
@@ -0,0 +1,174 @@
+package com.zfg.audiodemo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 音频任务调度的本地单元测试
+ */
+public class AudioSchedulerTest {
+
+    /**
+     * 记录每个线程设置的优先级
+     */
+    private static class RecordingPriority implements AudioScheduler.IThreadPriority {
+        final ThreadLocal<String> mApplied = new ThreadLocal<>();
+        final AtomicInteger mRealtime = new AtomicInteger();
+        final AtomicInteger mBackground = new AtomicInteger();
+
+        @Override
+        public void applyRealtime() {
+            mApplied.set("realtime");
+            mRealtime.incrementAndGet();
+        }
+
+        @Override
+        public void applyBackground() {
+            mApplied.set("background");
+            mBackground.incrementAndGet();
+        }
+    }
+
+    private RecordingPriority mPriority;
+    private MetricsRegistry mMetrics;
+    private AudioScheduler mScheduler;
+    private CountDownLatch mRelease;
+
+    @Before
+    public void setUp() {
+        mPriority = new RecordingPriority();
+        mMetrics = new MetricsRegistry();
+        //1个实时任务，1个离线线程，离线队列2个
+        mScheduler = new AudioScheduler(mPriority, 1, 1, 2, mMetrics);
+        mRelease = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mRelease.countDown();
+        mScheduler.shutdown();
+        assertTrue(mScheduler.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private Runnable blocking(final CountDownLatch started) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    mRelease.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    @Test
+    public void submitRealtime_runsOnDedicatedUrgentThread() throws Exception {
+        final String[] seen = new String[2];
+        Future<?> future = mScheduler.submitRealtime("Record", new Runnable() {
+            @Override
+            public void run() {
+                seen[0] = Thread.currentThread().getName();
+                seen[1] = mPriority.mApplied.get();
+            }
+        });
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals("Audio-Record-1", seen[0]);
+        assertEquals("realtime", seen[1]);
+        assertEquals(1, mPriority.mRealtime.get());
+        assertEquals(1, mMetrics.counter("scheduler.realtime_started").get());
+    }
+
+    @Test
+    public void submitRealtime_rejectsAboveLimit() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> first = mScheduler.submitRealtime("Record", blocking(started));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        try {
+            mScheduler.submitRealtime("Play", blocking(new CountDownLatch(1)));
+            fail("Realtime limit not enforced");
+        } catch (RejectedExecutionException e) {
+            //期望的结果
+        }
+        assertEquals(1, mMetrics.counter("scheduler.rejected").get());
+        mRelease.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        //线程结束后名额释放
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mScheduler.getRealtimeActiveCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        mScheduler.submitRealtime("Play", blocking(new CountDownLatch(1))).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void submitOffline_boundedQueueNeverBlocksRealtime() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        mScheduler.submitOffline(blocking(started));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        mScheduler.submitOffline(blocking(new CountDownLatch(1)));
+        mScheduler.submitOffline(blocking(new CountDownLatch(1)));
+        assertEquals(2, mScheduler.getOfflineQueueDepth());
+        try {
+            mScheduler.submitOffline(blocking(new CountDownLatch(1)));
+            fail("Offline queue not bounded");
+        } catch (RejectedExecutionException e) {
+            //期望的结果
+        }
+        assertEquals(1, mMetrics.counter("scheduler.rejected").get());
+        assertEquals(2, mMetrics.histogram("scheduler.offline_queue_depth").snapshot().getMax());
+
+        //离线线程全部占满时实时任务照常立即运行
+        final CountDownLatch ran = new CountDownLatch(1);
+        mScheduler.submitRealtime("Record", new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(1, mPriority.mBackground.get());
+    }
+
+    @Test
+    public void cancel_removesQueuedOfflineTask() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        mScheduler.submitOffline(blocking(started));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final AtomicBoolean ran = new AtomicBoolean();
+        Future<?> queued = mScheduler.submitOffline(new Runnable() {
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        });
+        assertEquals(1, mScheduler.getOfflineQueueDepth());
+        assertTrue(queued.cancel(false));
+        assertEquals(0, mScheduler.getOfflineQueueDepth());
+        assertEquals(1, mMetrics.counter("scheduler.cancelled").get());
+
+        mRelease.countDown();
+        mScheduler.shutdown();
+        assertTrue(mScheduler.awaitTermination(5, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+        assertEquals(1, mMetrics.counter("scheduler.offline_started").get());
+        try {
+            mScheduler.submitRealtime("Record", blocking(new CountDownLatch(1)));
+            fail("Shut down scheduler accepted a task");
+        } catch (RejectedExecutionException e) {
+            //期望的结果
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 自动增益控制的本地单元测试
+ */
+public class AutomaticGainControlTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BLOCK = 320;
+
+    private int mPhase;
+
+    private float[] tone(double amplitude) {
+        float[] data = new float[BLOCK];
+        for (int i = 0; i < BLOCK; i++) {
+            data[i] = (float) (amplitude * Math.sin(2 * Math.PI * 440 * mPhase++ / SAMPLE_RATE));
+        }
+        return data;
+    }
+
+    private static double rmsDb(float[] data) {
+        return 20 * Math.log10(DspChain.rms(data, 0, data.length) / DspChain.FULL_SCALE);
+    }
+
+    @Test
+    public void process_raisesQuietSpeechToTarget() {
+        AutomaticGainControl agc = new AutomaticGainControl(SAMPLE_RATE, 1);
+        float[] block = null;
+        //-36dBFS左右的语音，需要18dB增益，释放时间常数800ms
+        for (int i = 0; i < 250; i++) {
+            block = tone(600);
+            agc.process(block, 0, BLOCK);
+        }
+        assertEquals(AutomaticGainControl.DEFAULT_TARGET_DB, rmsDb(block), 1);
+    }
+
+    @Test
+    public void process_neverClipsLoudInput() {
+        AutomaticGainControl agc = new AutomaticGainControl(SAMPLE_RATE, 1);
+        for (int i = 0; i < 100; i++) {
+            agc.process(tone(600), 0, BLOCK);
+        }
+        float gain = agc.getGain();
+        assertTrue(gain > 4);
+        //突然很响，第一块就降低增益，不会超出满刻度
+        float[] loud = tone(30000);
+        agc.process(loud, 0, BLOCK);
+        assertTrue(DspChain.peak(loud, 0, BLOCK) <= DspChain.FULL_SCALE);
+        assertTrue(agc.getGain() < 1.1f);
+    }
+
+    @Test
+    public void process_holdsGainDuringSilence() {
+        AutomaticGainControl agc = new AutomaticGainControl(SAMPLE_RATE, 1);
+        for (int i = 0; i < 50; i++) {
+            agc.process(tone(3000), 0, BLOCK);
+        }
+        float gain = agc.getGain();
+        //低于底噪不更新增益，停顿时不会把噪声拉到目标电平
+        for (int i = 0; i < 50; i++) {
+            agc.process(tone(20), 0, BLOCK);
+        }
+        assertEquals(gain, agc.getGain(), 1e-6f);
+    }
+}
@@ -0,0 +1,233 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * 批量解码调度的本地单元测试，用假的解码器代替MediaCodec
+ */
+public class BatchDecoderTest {
+
+    /**
+     * 统计设置为后台优先级的线程
+     */
+    private static class RecordingPriority implements AudioScheduler.IThreadPriority {
+        final Set<String> mBackgroundThreads = Collections.synchronizedSet(new HashSet<String>());
+
+        @Override
+        public void applyRealtime() {
+            fail("batch decode must not use realtime priority");
+        }
+
+        @Override
+        public void applyBackground() {
+            mBackgroundThreads.add(Thread.currentThread().getName());
+        }
+    }
+
+    private final RecordingPriority mPriority = new RecordingPriority();
+
+    @Test
+    public void decode_neverRunsMoreThanParallelism() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final Set<String> decodeThreads = Collections.synchronizedSet(new HashSet<String>());
+        BatchDecoder batchDecoder = new BatchDecoder(3, new BatchDecoder.IFileDecoder() {
+            @Override
+            public BatchDecoder.FileResult decodeFile(File source, File target) {
+                decodeThreads.add(Thread.currentThread().getName());
+                int now = running.incrementAndGet();
+                int max;
+                while (now > (max = maxRunning.get()) && !maxRunning.compareAndSet(max, now)) {
+                    Thread.yield();
+                }
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                //假设每个文件是1秒的音频
+                return new BatchDecoder.FileResult(source, target, !source.getName().startsWith("bad"),
+                        88200, 1.0, 5);
+            }
+        }, mPriority);
+
+        List<File> sources = new ArrayList<>();
+        List<File> targets = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sources.add(new File((i == 7 ? "bad" : "in") + i + ".aac"));
+            targets.add(new File("out" + i + ".pcm"));
+        }
+        final AtomicInteger callbacks = new AtomicInteger();
+        BatchDecoder.BatchStats stats = batchDecoder.decode(sources, targets, new BatchDecoder.IBatchDelegate() {
+            @Override
+            public void onFileDecoded(BatchDecoder.FileResult result) {
+                callbacks.incrementAndGet();
+            }
+
+            @Override
+            public void onBatchFinished(BatchDecoder.BatchStats stats) {
+            }
+        });
+
+        assertTrue("max running " + maxRunning.get(), maxRunning.get() <= 3);
+        assertEquals(decodeThreads, mPriority.mBackgroundThreads);
+        assertEquals(20, callbacks.get());
+        assertEquals(20, stats.results.size());
+        assertEquals(19, stats.succeededCount);
+        assertEquals(1, stats.failedCount);
+        assertEquals(20.0, stats.audioSeconds, 1e-9);
+    }
+
+    @Test
+    public void decode_decoderExceptionOnlyFailsThatFile() {
+        BatchDecoder batchDecoder = new BatchDecoder(2, new BatchDecoder.IFileDecoder() {
+            @Override
+            public BatchDecoder.FileResult decodeFile(File source, File target) {
+                if (source.getName().equals("b.aac")) {
+                    throw new IllegalStateException("codec error");
+                }
+                return new BatchDecoder.FileResult(source, target, true, 0, 0, 0);
+            }
+        }, mPriority);
+        BatchDecoder.BatchStats stats = batchDecoder.decode(
+                Arrays.asList(new File("a.aac"), new File("b.aac"), new File("c.aac")),
+                Arrays.asList(new File("a.pcm"), new File("b.pcm"), new File("c.pcm")), null);
+        assertEquals(2, stats.succeededCount);
+        assertEquals(1, stats.failedCount);
+    }
+
+    @Test
+    public void decode_whenInterrupted_waitsForRunningFiles() throws Exception {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicBoolean release = new AtomicBoolean();
+        final BatchDecoder batchDecoder = new BatchDecoder(2, new BatchDecoder.IFileDecoder() {
+            @Override
+            public BatchDecoder.FileResult decodeFile(File source, File target) {
+                started.incrementAndGet();
+                //和MediaCodec一样不响应中断
+                while (!release.get()) {
+                    Thread.yield();
+                }
+                return new BatchDecoder.FileResult(source, target, true, 0, 1.0, 0);
+            }
+        }, mPriority);
+        final List<File> sources = new ArrayList<>();
+        final List<File> targets = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sources.add(new File("in" + i + ".aac"));
+            targets.add(new File("out" + i + ".pcm"));
+        }
+        final AtomicInteger decoded = new AtomicInteger();
+        final AtomicInteger decodedAfterFinish = new AtomicInteger(-1);
+        final AtomicReference<BatchDecoder.BatchStats> result = new AtomicReference<>();
+        Thread batchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(batchDecoder.decode(sources, targets, new BatchDecoder.IBatchDelegate() {
+                    @Override
+                    public void onFileDecoded(BatchDecoder.FileResult result) {
+                        decoded.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onBatchFinished(BatchDecoder.BatchStats stats) {
+                        decodedAfterFinish.set(decoded.get());
+                    }
+                }));
+            }
+        });
+        batchThread.start();
+        while (started.get() < 2) {
+            Thread.yield();
+        }
+        batchThread.interrupt();
+        Thread.sleep(50);
+        assertNull("finished before running files completed", result.get());
+        release.set(true);
+        batchThread.join(5000);
+
+        BatchDecoder.BatchStats stats = result.get();
+        assertNotNull(stats);
+        assertEquals(decoded.get(), decodedAfterFinish.get());
+        assertEquals(decoded.get(), stats.results.size());
+        assertTrue(stats.results.size() < sources.size());
+    }
+
+    @Test
+    public void decode_whenInterrupted_runningFilesStillSucceed() throws Exception {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicBoolean release = new AtomicBoolean();
+        final BatchDecoder batchDecoder = new BatchDecoder(2, new BatchDecoder.IFileDecoder() {
+            @Override
+            public BatchDecoder.FileResult decodeFile(File source, File target) {
+                started.incrementAndGet();
+                //解码线程被中断时按失败处理
+                while (!release.get()) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return new BatchDecoder.FileResult(source, target, false, 0, 0, 0);
+                    }
+                }
+                return new BatchDecoder.FileResult(source, target, true, 0, 1.0, 0);
+            }
+        }, mPriority);
+        final List<File> sources = new ArrayList<>();
+        final List<File> targets = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sources.add(new File("in" + i + ".aac"));
+            targets.add(new File("out" + i + ".pcm"));
+        }
+        final AtomicReference<BatchDecoder.BatchStats> result = new AtomicReference<>();
+        Thread batchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(batchDecoder.decode(sources, targets, null));
+            }
+        });
+        batchThread.start();
+        while (started.get() < 2) {
+            Thread.yield();
+        }
+        batchThread.interrupt();
+        Thread.sleep(50);
+        release.set(true);
+        batchThread.join(5000);
+
+        BatchDecoder.BatchStats stats = result.get();
+        assertNotNull(stats);
+        assertEquals(2, started.get());
+        assertEquals(2, stats.results.size());
+        assertEquals(2, stats.succeededCount);
+        assertEquals(0, stats.failedCount);
+    }
+
+    @Test
+    public void batchStats_computesThroughput() {
+        List<BatchDecoder.FileResult> results = new ArrayList<>();
+        results.add(new BatchDecoder.FileResult(null, null, true, 0, 30.0, 0));
+        results.add(new BatchDecoder.FileResult(null, null, true, 0, 10.0, 0));
+        BatchDecoder.BatchStats stats = new BatchDecoder.BatchStats(results, 2000);
+        assertEquals(1.0, stats.getFilesPerSecond(), 1e-9);
+        assertEquals(20.0, stats.getRealtimeFactor(), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsMismatchedLists() {
+        new BatchDecoder(1, null, mPriority).decode(Arrays.asList(new File("a.aac")), new ArrayList<File>(), null);
+    }
+}
@@ -0,0 +1,269 @@
+package com.zfg.audiodemo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 编解码器复用池的本地单元测试
+ */
+public class CodecPoolTest {
+
+    private static final byte[] CONFIG = {0x12, 0x10};
+
+    /**
+     * 记录调用次数；start后先输出配置信息，与MediaCodec的AAC编码器一致
+     */
+    private static class CountingCodec extends PassthroughCodec {
+        int mStarts;
+        int mFlushes;
+        int mStops;
+        int mReleases;
+        boolean mFailFlush;
+        private boolean mConfigReady;
+
+        static final int CONFIG_INDEX = 100;
+
+        CountingCodec() {
+            super(4, 1024, 44100, 1);
+        }
+
+        @Override
+        public synchronized void start() {
+            super.start();
+            mStarts++;
+        }
+
+        @Override
+        public synchronized int dequeueOutputBuffer(CodecBufferInfo info, long timeoutUs) {
+            if (mConfigReady) {
+                mConfigReady = false;
+                info.set(0, CONFIG.length, 0, BUFFER_FLAG_CODEC_CONFIG);
+                return CONFIG_INDEX;
+            }
+            int index = super.dequeueOutputBuffer(info, timeoutUs);
+            if (index == INFO_OUTPUT_FORMAT_CHANGED) {
+                //每次start只通知一次格式变化，之后先输出配置信息
+                mConfigReady = true;
+            }
+            return index;
+        }
+
+        @Override
+        public synchronized ByteBuffer getOutputBuffer(int index) {
+            if (index == CONFIG_INDEX) {
+                return ByteBuffer.wrap(CONFIG);
+            }
+            return super.getOutputBuffer(index);
+        }
+
+        @Override
+        public synchronized void releaseOutputBuffer(int index) {
+            if (index != CONFIG_INDEX) {
+                super.releaseOutputBuffer(index);
+            }
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (mFailFlush) {
+                throw new IllegalStateException("Codec error");
+            }
+            super.flush();
+            mFlushes++;
+        }
+
+        @Override
+        public synchronized void stop() {
+            super.stop();
+            mStops++;
+        }
+
+        @Override
+        public synchronized void release() {
+            //PassthroughCodec的release会调用stop，这里不计入
+            mStops--;
+            super.release();
+            mReleases++;
+        }
+    }
+
+    /**
+     * 记录收到的配置信息和帧数
+     */
+    private static class RecordingSink implements AacFrameSink {
+        final List<byte[]> mConfigs = new ArrayList<>();
+        int mFrames;
+
+        @Override
+        public void onCodecConfig(ByteBuffer config) {
+            byte[] bytes = new byte[config.remaining()];
+            config.get(bytes);
+            mConfigs.add(bytes);
+        }
+
+        @Override
+        public int writeFrame(ByteBuffer payload) {
+            mFrames++;
+            return payload.remaining();
+        }
+
+        @Override
+        public int writeFrame(ByteBuffer payload, long ptsUs) {
+            return writeFrame(payload);
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return 0;
+        }
+    }
+
+    private MetricsRegistry mMetrics;
+    private CodecPool mPool;
+    private List<CountingCodec> mCreated;
+    private CodecPool.ICodecFactory mFactory;
+
+    @Before
+    public void setUp() {
+        mMetrics = new MetricsRegistry();
+        mPool = new CodecPool(2, mMetrics);
+        mCreated = new ArrayList<>();
+        mFactory = new CodecPool.ICodecFactory() {
+            @Override
+            public AudioCodec createCodec() {
+                CountingCodec codec = new CountingCodec();
+                mCreated.add(codec);
+                return codec;
+            }
+        };
+    }
+
+    /**
+     * 按AudioEncoder的顺序完成一次编码会话：start、编码、EOS、stop、release
+     */
+    private RecordingSink encodeSession(AudioCodec codec, int chunks) throws IOException {
+        codec.start();
+        RecordingSink sink = new RecordingSink();
+        EncodePipeline pipeline = new EncodePipeline(codec, sink, mMetrics);
+        byte[] pcm = new byte[256];
+        for (int i = 0; i < chunks; i++) {
+            pipeline.encode(pcm, 0, pcm.length);
+        }
+        pipeline.finish(1000 * 1000);
+        assertTrue(pipeline.isEndOfStream());
+        codec.stop();
+        codec.release();
+        return sink;
+    }
+
+    @Test
+    public void acquire_reusesFlushedCodecWithoutRestart() throws Exception {
+        RecordingSink first = encodeSession(mPool.acquire("aac:44100:1", mFactory), 5);
+        assertEquals(5, first.mFrames);
+        assertEquals(1, mCreated.size());
+        CountingCodec codec = mCreated.get(0);
+        //放回池中时只flush，不stop也不release
+        assertEquals(1, codec.mFlushes);
+        assertEquals(0, codec.mStops);
+        assertEquals(0, codec.mReleases);
+        assertEquals(1, mPool.getIdleCount());
+
+        RecordingSink second = encodeSession(mPool.acquire("aac:44100:1", mFactory), 3);
+        assertEquals(3, second.mFrames);
+        assertEquals(1, mCreated.size());
+        assertEquals(1, codec.mStarts);
+        //复用时补发配置信息，MP4封装仍然能写出esds
+        assertEquals(1, second.mConfigs.size());
+        assertArrayEquals(CONFIG, second.mConfigs.get(0));
+        assertEquals(1, mMetrics.counter("codec.pool_hits").get());
+        assertEquals(1, mMetrics.counter("codec.pool_misses").get());
+    }
+
+    @Test
+    public void acquire_differentKeyCreatesNewCodec() throws Exception {
+        encodeSession(mPool.acquire("aac:44100:1", mFactory), 1);
+        AudioCodec other = mPool.acquire("aac:48000:2", mFactory);
+        assertEquals(2, mCreated.size());
+        assertEquals(1, mPool.getIdleCount());
+        encodeSession(other, 1);
+        assertEquals(2, mPool.getIdleCount());
+    }
+
+    @Test
+    public void release_evictsOldestAboveLimit() throws Exception {
+        AudioCodec a = mPool.acquire("a", mFactory);
+        AudioCodec b = mPool.acquire("b", mFactory);
+        AudioCodec c = mPool.acquire("c", mFactory);
+        encodeSession(a, 1);
+        encodeSession(b, 1);
+        encodeSession(c, 1);
+        assertEquals(2, mPool.getIdleCount());
+        assertEquals(1, mCreated.get(0).mReleases);
+        assertEquals(0, mCreated.get(2).mReleases);
+        assertEquals(1, mMetrics.counter("codec.pool_evictions").get());
+        //重复release不会放回两次
+        c.release();
+        assertEquals(2, mPool.getIdleCount());
+    }
+
+    @Test
+    public void release_discardsCodecThatFailsToFlush() throws Exception {
+        AudioCodec codec = mPool.acquire("a", mFactory);
+        mCreated.get(0).mFailFlush = true;
+        encodeSession(codec, 1);
+        assertEquals(0, mPool.getIdleCount());
+        assertEquals(1, mCreated.get(0).mReleases);
+        assertEquals(1, mMetrics.counter("codec.pool_discards").get());
+    }
+
+    @Test
+    public void unwrap_returnsUnderlyingCodecAcrossReuse() throws Exception {
+        AudioCodec codec = mPool.acquire("a", mFactory);
+        assertSame(mCreated.get(0), CodecPool.unwrap(codec));
+        codec.start();
+        codec.release();
+        //复用时仍然是同一个实际的编解码器，异步模式的回调设置在它上面
+        assertSame(mCreated.get(0), CodecPool.unwrap(mPool.acquire("a", mFactory)));
+
+        AudioCodec plain = new PassthroughCodec(4, 1024, 44100, 1);
+        assertSame(plain, CodecPool.unwrap(plain));
+    }
+
+    @Test
+    public void prewarm_startsCodecBeforeFirstUse() throws Exception {
+        mPool.prewarm("a", mFactory);
+        mPool.prewarm("a", mFactory);
+        assertEquals(1, mCreated.size());
+        assertEquals(1, mCreated.get(0).mStarts);
+        assertEquals(1, mPool.getIdleCount());
+
+        RecordingSink sink = encodeSession(mPool.acquire("a", mFactory), 2);
+        assertEquals(2, sink.mFrames);
+        assertEquals(1, mCreated.get(0).mStarts);
+        assertEquals(1, mMetrics.counter("codec.pool_hits").get());
+    }
+
+    @Test
+    public void close_releasesIdleAndLaterReturns() throws Exception {
+        AudioCodec inUse = mPool.acquire("a", mFactory);
+        encodeSession(mPool.acquire("b", mFactory), 1);
+        mPool.close();
+        assertEquals(0, mPool.getIdleCount());
+        assertEquals(1, mCreated.get(1).mReleases);
+        encodeSession(inUse, 1);
+        assertEquals(0, mPool.getIdleCount());
+        assertEquals(1, mCreated.get(0).mStops);
+        assertEquals(1, mCreated.get(0).mReleases);
+    }
+}
@@ -0,0 +1,157 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 采集处理链的本地单元测试
+ */
+public class DspChainTest {
+
+    private static final PcmFormat MONO = new PcmFormat(48000, 1, 16);
+    private static final PcmFormat STEREO = new PcmFormat(48000, 2, 16);
+
+    @Test
+    public void process_withoutStagesKeepsBytes() {
+        DspChain chain = new DspChain(STEREO, 100, new MetricsRegistry());
+        byte[] data = new byte[1001];
+        new Random(1).nextBytes(data);
+        byte[] copy = data.clone();
+        //不足一帧的字节不处理
+        assertEquals(1000, chain.process(data, 0, data.length));
+        assertArrayEquals(copy, data);
+    }
+
+    @Test
+    public void process_runsStagesInOrderOverBlocks() {
+        RecordingStage first = new RecordingStage("first", 2);
+        RecordingStage second = new RecordingStage("second", -1);
+        MetricsRegistry metrics = new MetricsRegistry();
+        DspChain chain = new DspChain(STEREO, 64, metrics, first, second);
+        short[] samples = new short[2 * 150];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) i;
+        }
+        chain.process(samples, 0, 150);
+
+        //(x + 2) - 1
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(i + 1, samples[i]);
+        }
+        //每块不超过64帧
+        assertArrayEquals(new int[]{64, 64, 22}, first.blocks());
+        assertArrayEquals(new int[]{64, 64, 22}, second.blocks());
+        assertEquals(3, metrics.histogram("dsp.first_ns").getCount());
+        assertEquals(3, metrics.histogram("dsp.second_ns").getCount());
+        assertEquals(150, metrics.counter("dsp.frames").get());
+        assertTrue(chain.getStageNanos(0) > 0);
+        assertTrue(chain.getRealtimeFactor() > 0);
+    }
+
+    @Test
+    public void process_clampsToShortRange() {
+        DspChain chain = new DspChain(MONO, 64, new MetricsRegistry(), new GainStage(1, 12));
+        short[] samples = {10000, -10000, 100, -100};
+        chain.process(samples, 0, samples.length);
+        assertEquals(32767, samples[0]);
+        assertEquals(-32768, samples[1]);
+        assertEquals(398, samples[2]);
+        assertEquals(-398, samples[3]);
+    }
+
+    @Test
+    public void process_bytesMatchesShorts() {
+        short[] samples = new short[960];
+        Random random = new Random(2);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (random.nextGaussian() * 3000);
+        }
+        byte[] data = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            data[2 * i] = (byte) samples[i];
+            data[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        createChain(MONO).process(samples, 0, samples.length);
+        createChain(MONO).process(data, 0, data.length);
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(samples[i], (short) ((data[2 * i] & 0xFF) | (data[2 * i + 1] << 8)));
+        }
+    }
+
+    @Test
+    public void process_steadyStateDoesNotAllocate() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        DspChain chain = createChain(STEREO);
+        byte[] data = new byte[4 * 960];
+        new Random(3).nextBytes(data);
+        for (int i = 0; i < 200; i++) {
+            chain.process(data, 0, data.length);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            chain.process(data, 0, data.length);
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1000);
+    }
+
+    private static DspChain createChain(PcmFormat format) {
+        int rate = format.getSampleRate();
+        int channels = format.getChannelCount();
+        return new DspChain(format, DspChain.DEFAULT_BLOCK_FRAMES, new MetricsRegistry(),
+                new HighPassFilter(rate, channels), new GainStage(channels, 3), new NoiseGate(rate, channels),
+                new AutomaticGainControl(rate, channels));
+    }
+
+    /**
+     * 给每个采样加上固定值，并记录每块的帧数
+     */
+    private static class RecordingStage implements DspStage {
+        private final String mName;
+        private final float mDelta;
+        private final int[] mBlocks = new int[16];
+        private int mBlockCount;
+
+        RecordingStage(String name, float delta) {
+            mName = name;
+            mDelta = delta;
+        }
+
+        int[] blocks() {
+            int[] blocks = new int[mBlockCount];
+            System.arraycopy(mBlocks, 0, blocks, 0, mBlockCount);
+            return blocks;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public void process(float[] samples, int offset, int frames) {
+            mBlocks[mBlockCount++] = frames;
+            for (int i = offset; i < offset + frames * 2; i++) {
+                samples[i] += mDelta;
+            }
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * PCM输出的本地单元测试
+ */
+public class FilePcmSinkTest {
+
+    @Test
+    public void write_mixedSizes_preservesOrderAndCoalesces() throws Exception {
+        File file = File.createTempFile("decoder_file", ".pcm");
+        try {
+            FilePcmSink sink = new FilePcmSink(file, 4096);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            ByteBuffer codecBuffer = ByteBuffer.allocateDirect(16 * 1024);
+            Random random = new Random(7);
+            int frames = 500;
+            for (int i = 0; i < frames; i++) {
+                //大部分是小帧，偶尔有比合并缓存还大的帧
+                int size = i % 50 == 0 ? 5000 + random.nextInt(8000) : 1 + random.nextInt(400);
+                byte[] data = new byte[size];
+                random.nextBytes(data);
+                expected.write(data);
+                codecBuffer.clear();
+                codecBuffer.put(data);
+                codecBuffer.flip();
+                sink.write(codecBuffer);
+                assertFalse(codecBuffer.hasRemaining());
+            }
+            sink.close();
+
+            assertEquals(expected.size(), sink.getBytesWritten());
+            assertTrue("writes " + sink.getWriteCount(), sink.getWriteCount() < frames / 4);
+            assertArrayEquals(expected.toByteArray(), readFile(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void writeArray_spansCoalesceBuffer() throws Exception {
+        File file = File.createTempFile("recode_file", ".pcm");
+        try {
+            FilePcmSink sink = new FilePcmSink(file, 1000);
+            byte[] data = new byte[3584];
+            new Random(9).nextBytes(data);
+            sink.write(data, 0, 100);
+            sink.write(data, 100, data.length - 100);
+            sink.close();
+            assertEquals(data.length, sink.getBytesWritten());
+            assertArrayEquals(data, readFile(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void memorySink_growsAndKeepsData() {
+        MemoryPcmSink sink = new MemoryPcmSink(4);
+        sink.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        sink.write(ByteBuffer.wrap(new byte[]{4, 5, 6, 7, 8}));
+        assertEquals(8, sink.size());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, sink.toByteArray());
+    }
+
+    private static byte[] readFile(File file) throws Exception {
+        FileInputStream in = new FileInputStream(file);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,255 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 分片MP4写入器的本地单元测试，按box结构解析写出的数据
+ */
+public class FragmentedMp4WriterTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void buildAudioSpecificConfig_matchesAdtsFields() {
+        byte[] asc = FragmentedMp4Writer.buildAudioSpecificConfig(44100, 2);
+        assertEquals(0x12, asc[0] & 0xFF);
+        assertEquals(0x10, asc[1] & 0xFF);
+        asc = FragmentedMp4Writer.buildAudioSpecificConfig(48000, 1);
+        assertEquals(0x11, asc[0] & 0xFF);
+        assertEquals(0x88, asc[1] & 0xFF);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void buildAudioSpecificConfig_rejectsUnsupportedRate() {
+        FragmentedMp4Writer.buildAudioSpecificConfig(12345, 1);
+    }
+
+    @Test
+    public void writeFrame_emitsFragmentsWhileWriting() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FragmentedMp4Writer writer = new FragmentedMp4Writer(Channels.newChannel(out), SAMPLE_RATE, 1, 100,
+                new MetricsRegistry());
+        //100ms约4.3帧，第6帧到达时写出前5帧
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, writer.writeFrame(frame(i, 100 + i)));
+        }
+        assertEquals(0, out.size());
+        assertTrue(writer.writeFrame(frame(5, 105)) > 0);
+        assertEquals(1, writer.getFragmentCount());
+        assertEquals(1, writer.getPendingFrames());
+        assertEquals(out.size(), writer.getBytesWritten());
+
+        //还没有结束，已经写出的部分就是完整的box序列
+        List<Box> boxes = parse(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals("ftyp", boxes.get(0).type);
+        assertEquals("moov", boxes.get(1).type);
+        assertEquals("moof", boxes.get(2).type);
+        assertEquals("mdat", boxes.get(3).type);
+        assertEquals(4, boxes.size());
+    }
+
+    @Test
+    public void finish_writesConsistentFragmentsAndIndex() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FragmentedMp4Writer writer = new FragmentedMp4Writer(Channels.newChannel(out), SAMPLE_RATE, 2, 100,
+                new MetricsRegistry());
+        int frames = 23;
+        long payloadBytes = 0;
+        for (int i = 0; i < frames; i++) {
+            ByteBuffer payload = frame(i, 50 + i % 7);
+            payloadBytes += payload.remaining();
+            writer.writeFrame(payload, 1000000L + i * 1024 * 1000000L / SAMPLE_RATE);
+            //写完后position不变
+            assertEquals(0, payload.position());
+        }
+        writer.finish();
+        writer.finish();
+        byte[] file = out.toByteArray();
+        assertEquals(file.length, writer.getBytesWritten());
+
+        List<Box> boxes = parse(ByteBuffer.wrap(file));
+        assertEquals("ftyp", boxes.get(0).type);
+        assertEquals("moov", boxes.get(1).type);
+        assertEquals("mfra", boxes.get(boxes.size() - 1).type);
+        //esds中的配置按采样率和声道数生成
+        int esds = indexOf(file, "esds");
+        assertTrue(esds > 0);
+        byte[] asc = FragmentedMp4Writer.buildAudioSpecificConfig(SAMPLE_RATE, 2);
+        int dsi = indexOf(file, new byte[]{0x05, 0x02, asc[0], asc[1]});
+        assertTrue(dsi > esds);
+
+        ByteBuffer buffer = ByteBuffer.wrap(file);
+        int sampleCount = 0;
+        long sampleBytes = 0;
+        long expectedTime = 0;
+        int fragments = 0;
+        List<Long> moofOffsets = new ArrayList<>();
+        List<Long> moofTimes = new ArrayList<>();
+        for (int i = 2; i < boxes.size() - 1; i += 2) {
+            Box moof = boxes.get(i);
+            Box mdat = boxes.get(i + 1);
+            assertEquals("moof", moof.type);
+            assertEquals("mdat", mdat.type);
+            fragments++;
+            //mfhd序号从1开始
+            assertEquals(fragments, buffer.getInt(moof.offset + 20));
+            int tfdt = find(buffer, moof, "tfdt");
+            long baseTime = buffer.getLong(tfdt + 12);
+            assertEquals(expectedTime, baseTime);
+            moofOffsets.add((long) moof.offset);
+            moofTimes.add(baseTime);
+
+            int trun = find(buffer, moof, "trun");
+            int count = buffer.getInt(trun + 12);
+            int dataOffset = buffer.getInt(trun + 16);
+            //数据偏移指向mdat的负载
+            assertEquals(mdat.offset + 8, moof.offset + dataOffset);
+            long fragmentBytes = 0;
+            for (int s = 0; s < count; s++) {
+                int duration = buffer.getInt(trun + 20 + s * 8);
+                int size = buffer.getInt(trun + 24 + s * 8);
+                assertTrue(Math.abs(duration - 1024) <= 1);
+                //每帧的第一个字节是帧序号
+                assertEquals((byte) (sampleCount + s), buffer.get(mdat.offset + 8 + (int) fragmentBytes));
+                fragmentBytes += size;
+                expectedTime += duration;
+            }
+            assertEquals(mdat.size - 8, fragmentBytes);
+            sampleCount += count;
+            sampleBytes += fragmentBytes;
+        }
+        assertEquals(frames, sampleCount);
+        assertEquals(payloadBytes, sampleBytes);
+        assertEquals(fragments, writer.getFragmentCount());
+        assertEquals(frames * 1024, expectedTime, frames);
+
+        //mfra中每个分片一条记录，mfro记录mfra的长度
+        Box mfra = boxes.get(boxes.size() - 1);
+        int tfra = find(buffer, mfra, "tfra");
+        assertEquals(fragments, buffer.getInt(tfra + 20));
+        for (int i = 0; i < fragments; i++) {
+            int entry = tfra + 24 + i * 19;
+            assertEquals((long) moofTimes.get(i), buffer.getLong(entry));
+            assertEquals((long) moofOffsets.get(i), buffer.getLong(entry + 8));
+        }
+        assertEquals(mfra.size, buffer.getInt(file.length - 4));
+    }
+
+    @Test
+    public void onCodecConfig_replacesGeneratedConfig() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FragmentedMp4Writer writer = new FragmentedMp4Writer(Channels.newChannel(out), SAMPLE_RATE, 1, 100,
+                new MetricsRegistry());
+        writer.onCodecConfig(ByteBuffer.wrap(new byte[]{0x12, 0x08, 0x56, (byte) 0xE5}));
+        writer.writeFrame(frame(0, 10));
+        writer.finish();
+        assertTrue(indexOf(out.toByteArray(), new byte[]{0x05, 0x04, 0x12, 0x08, 0x56, (byte) 0xE5}) > 0);
+    }
+
+    @Test
+    public void finish_withoutFramesWritesHeaderOnly() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FragmentedMp4Writer writer = new FragmentedMp4Writer(Channels.newChannel(out), SAMPLE_RATE, 1);
+        writer.finish();
+        List<Box> boxes = parse(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(3, boxes.size());
+        assertEquals("mfra", boxes.get(2).type);
+        assertEquals(0, writer.getFragmentCount());
+    }
+
+    /**
+     * 第一个字节为帧序号的假AAC帧
+     */
+    private static ByteBuffer frame(int index, int size) {
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        frame.put(0, (byte) index);
+        return frame;
+    }
+
+    private static class Box {
+        final String type;
+        final int offset;
+        final int size;
+
+        Box(String type, int offset, int size) {
+            this.type = type;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private static List<Box> parse(ByteBuffer buffer) {
+        List<Box> boxes = new ArrayList<>();
+        int offset = 0;
+        while (offset < buffer.limit()) {
+            int size = buffer.getInt(offset);
+            assertTrue(size >= 8 && offset + size <= buffer.limit());
+            boxes.add(new Box(type(buffer, offset + 4), offset, size));
+            offset += size;
+        }
+        return boxes;
+    }
+
+    /**
+     * 在容器box中递归查找子box
+     *
+     * @return 子box的起始位置
+     */
+    private static int find(ByteBuffer buffer, Box parent, String type) {
+        int offset = parent.offset + 8;
+        int end = parent.offset + parent.size;
+        while (offset < end) {
+            int size = buffer.getInt(offset);
+            String childType = type(buffer, offset + 4);
+            if (childType.equals(type)) {
+                return offset;
+            }
+            if ("traf".equals(childType)) {
+                int found = find(buffer, new Box(childType, offset, size), type);
+                if (found >= 0) {
+                    return found;
+                }
+            }
+            offset += size;
+        }
+        return -1;
+    }
+
+    private static String type(ByteBuffer buffer, int offset) {
+        byte[] type = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            type[i] = buffer.get(offset + i);
+        }
+        return new String(type, ASCII);
+    }
+
+    private static int indexOf(byte[] data, String type) {
+        return indexOf(data, type.getBytes(ASCII));
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            boolean match = true;
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,37 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 固定增益的本地单元测试
+ */
+public class GainStageTest {
+
+    @Test
+    public void process_appliesConstantGain() {
+        GainStage stage = new GainStage(2, 6.0206f);
+        float[] data = {100, -200, 300, -400};
+        stage.process(data, 0, 2);
+        assertArrayEquals(new float[]{200, -400, 600, -800}, data, 0.01f);
+    }
+
+    @Test
+    public void setGainDb_rampsWithinNextBlock() {
+        GainStage stage = new GainStage(1, 0);
+        stage.setGainDb(-120);
+        float[] data = new float[100];
+        Arrays.fill(data, 1000);
+        stage.process(data, 0, 100);
+        //逐帧递减，没有突变
+        for (int i = 1; i < data.length; i++) {
+            assertTrue(data[i] < data[i - 1]);
+            assertTrue(data[i - 1] - data[i] < 11);
+        }
+        assertEquals(0, data[99], 0.01f);
+        assertEquals(1e-6f, stage.getGain(), 1e-7f);
+    }
+}
@@ -0,0 +1,67 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 高通滤波器的本地单元测试
+ */
+public class HighPassFilterTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    private static float[] sine(double frequency, int frames, int channels, double amplitude, double dc) {
+        float[] data = new float[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            for (int c = 0; c < channels; c++) {
+                data[i * channels + c] = (float) (dc + amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE));
+            }
+        }
+        return data;
+    }
+
+    private static double rms(float[] data, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += (double) data[i] * data[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    @Test
+    public void process_removesDcAndKeepsVoiceBand() {
+        HighPassFilter filter = new HighPassFilter(SAMPLE_RATE, 1);
+        float[] data = sine(1000, SAMPLE_RATE, 1, 5000, 3000);
+        //分块处理，块之间保持状态
+        for (int offset = 0; offset < data.length; offset += 160) {
+            filter.process(data, offset, 160);
+        }
+        double mean = 0;
+        for (int i = SAMPLE_RATE / 2; i < SAMPLE_RATE; i++) {
+            mean += data[i];
+        }
+        mean /= SAMPLE_RATE / 2;
+        assertEquals(0, mean, 10);
+        assertEquals(5000 / Math.sqrt(2), rms(data, SAMPLE_RATE / 2, SAMPLE_RATE), 5000 * 0.02);
+    }
+
+    @Test
+    public void process_filtersChannelsIndependently() {
+        HighPassFilter stereo = new HighPassFilter(SAMPLE_RATE, 2);
+        HighPassFilter mono = new HighPassFilter(SAMPLE_RATE, 1);
+        float[] left = sine(50, 4000, 1, 8000, 0);
+        float[] interleaved = new float[8000];
+        for (int i = 0; i < 4000; i++) {
+            interleaved[2 * i] = left[i];
+            interleaved[2 * i + 1] = 1000;
+        }
+        stereo.process(interleaved, 0, 4000);
+        mono.process(left, 0, 4000);
+        for (int i = 0; i < 4000; i++) {
+            assertEquals(left[i], interleaved[2 * i], 1e-3f);
+        }
+        //右声道的直流衰减到接近0
+        assertEquals(0, interleaved[7999], 1);
+    }
+}
@@ -0,0 +1,62 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 录音电平表的本地单元测试
+ */
+public class LevelMeterTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    private static byte[] tone(int frames, int channels, double amplitude) {
+        byte[] data = new byte[frames * channels * 2];
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(amplitude * Math.sin(2 * Math.PI * 500 * i / SAMPLE_RATE));
+            for (int c = 0; c < channels; c++) {
+                int index = (i * channels + c) * 2;
+                data[index] = (byte) sample;
+                data[index + 1] = (byte) (sample >> 8);
+            }
+        }
+        return data;
+    }
+
+    @Test
+    public void update_measuresRmsAndPeak() {
+        LevelMeter meter = new LevelMeter(SAMPLE_RATE, 2);
+        assertEquals(LevelMeter.MIN_DB, meter.getRmsDb(), 0);
+        byte[] data = tone(800, 2, 16384);
+        meter.update(data, 0, data.length);
+        //半满刻度的正弦波：峰值-6dB，RMS再低3dB
+        assertEquals(-6.02, meter.getPeakDb(), 0.05);
+        assertEquals(-9.03, meter.getRmsDb(), 0.05);
+        assertEquals(800, meter.getFrames());
+        assertEquals(0, meter.getClippedSamples());
+    }
+
+    @Test
+    public void update_holdsPeakThenDecays() {
+        LevelMeter meter = new LevelMeter(SAMPLE_RATE, 1, 100, 20);
+        byte[] loud = tone(80, 1, 32767);
+        meter.update(loud, 0, loud.length);
+        assertTrue(meter.getClippedSamples() > 0);
+        byte[] quiet = tone(80, 1, 100);
+        //保持100ms
+        for (int i = 0; i < 10; i++) {
+            meter.update(quiet, 0, quiet.length);
+        }
+        assertEquals(0, meter.getPeakHoldDb(), 0.01);
+        assertTrue(meter.getPeakDb() < -50);
+        //之后每10ms回落0.2dB
+        for (int i = 0; i < 10; i++) {
+            meter.update(quiet, 0, quiet.length);
+        }
+        assertEquals(-1.8, meter.getPeakHoldDb(), 0.25);
+
+        meter.reset();
+        assertEquals(LevelMeter.MIN_DB, meter.getPeakHoldDb(), 0);
+    }
+}
@@ -0,0 +1,51 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.*;
+
+/**
+ * 运行指标的本地单元测试
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void counterAndHistogram_sameNameSameInstance() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        assertSame(metrics.counter("a"), metrics.counter("a"));
+        assertSame(metrics.histogram("a"), metrics.histogram("a"));
+        metrics.counter("a").add(3);
+        metrics.reset();
+        assertEquals(0, metrics.counter("a").get());
+    }
+
+    @Test
+    public void toJson_sortedAndComplete() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.counter("b.bytes").add(42);
+        metrics.counter("a.frames").increment();
+        metrics.histogram("c.wait_us").record(7);
+        assertEquals("{\"counters\":{\"a.frames\":1,\"b.bytes\":42},\"histograms\":{\"c.wait_us\":"
+                        + "{\"count\":1,\"mean\":7.0,\"p50\":7,\"p90\":7,\"p99\":7,\"p999\":7,\"max\":7}}}",
+                metrics.toJson());
+    }
+
+    @Test
+    public void encodePipeline_reportsFramesAndBytes() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        PassthroughCodec codec = new PassthroughCodec(2, 1024, 44100, 2);
+        codec.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncodePipeline pipeline = new EncodePipeline(codec,
+                new AdtsFrameWriter(Channels.newChannel(out), 1024), metrics);
+        for (int i = 0; i < 10; i++) {
+            pipeline.encode(new byte[100], 100);
+        }
+        assertEquals(10, metrics.counter("encode.frames").get());
+        assertEquals(out.size(), metrics.counter("encode.bytes").get());
+        assertEquals(10, metrics.histogram("encode.dequeue_input_us").getCount());
+    }
+}
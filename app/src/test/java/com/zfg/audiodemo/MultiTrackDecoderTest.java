@@ -0,0 +1,219 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多音轨并行解码的本地单元测试，用直通编解码器代替真实解码器
+ */
+public class MultiTrackDecoderTest {
+
+    private static final int FRAME_SIZE = 32;
+    private static final int FRAMES_PER_TRACK = 200;
+
+    private final List<String> mCreatedMimes = new ArrayList<>();
+    private final MemoryPcmSink[] mSinks = new MemoryPcmSink[4];
+
+    private final MultiTrackDecoder.IDecoderFactory mDecoderFactory = new MultiTrackDecoder.IDecoderFactory() {
+        @Override
+        public AudioCodec createDecoder(int track, String mime) throws IOException {
+            synchronized (mCreatedMimes) {
+                mCreatedMimes.add(mime);
+            }
+            if ("audio/unsupported".equals(mime)) {
+                throw new IOException("No decoder for " + mime);
+            }
+            return new PassthroughCodec(2, FRAME_SIZE, 44100, 1);
+        }
+    };
+
+    private final MultiTrackDecoder.ITrackSinkFactory mSinkFactory = new MultiTrackDecoder.ITrackSinkFactory() {
+        @Override
+        public PcmSink createSink(int track, String mime) {
+            mSinks[track] = new MemoryPcmSink();
+            return mSinks[track];
+        }
+    };
+
+    @Test
+    public void findAudioTracks_skipsNonAudio() {
+        FakeExtractor extractor = new FakeExtractor(
+                new String[]{"audio/mp4a-latm", "video/avc", null, "audio/opus"}, 1);
+        MultiTrackDecoder decoder = new MultiTrackDecoder(extractor, mDecoderFactory, mSinkFactory);
+        assertArrayEquals(new int[]{0, 3}, decoder.findAudioTracks());
+    }
+
+    @Test
+    public void decode_splitsInterleavedTracksInOnePass() {
+        FakeExtractor extractor = new FakeExtractor(
+                new String[]{"audio/mp4a-latm", "video/avc", "audio/opus", "audio/flac"}, FRAMES_PER_TRACK);
+        //队列很浅，读取线程必须等解码线程取走数据
+        MultiTrackDecoder decoder = new MultiTrackDecoder(extractor, mDecoderFactory, mSinkFactory, FRAME_SIZE, 2,
+                new MetricsRegistry());
+        assertTrue(decoder.decode());
+
+        //每条音轨按自己的MIME类型创建解码器
+        assertEquals(3, mCreatedMimes.size());
+        assertTrue(mCreatedMimes.contains("audio/opus"));
+        assertTrue(mCreatedMimes.contains("audio/flac"));
+        assertFalse(mCreatedMimes.contains("video/avc"));
+        for (int track : new int[]{0, 2, 3}) {
+            assertTrue(decoder.isTrackSucceeded(track));
+            assertEquals(FRAMES_PER_TRACK * FRAME_SIZE, decoder.getDecodedBytes(track));
+            assertArrayEquals(extractor.expected(track), mSinks[track].toByteArray());
+        }
+        assertNull(mSinks[1]);
+        //选中音轨的每一帧只读取一次
+        assertEquals(3 * FRAMES_PER_TRACK, extractor.mSamplesRead);
+        assertTrue(extractor.mReleased);
+    }
+
+    @Test
+    public void decode_continuesWhenOneTrackHasNoDecoder() {
+        FakeExtractor extractor = new FakeExtractor(
+                new String[]{"audio/mp4a-latm", "audio/unsupported"}, FRAMES_PER_TRACK);
+        MultiTrackDecoder decoder = new MultiTrackDecoder(extractor, mDecoderFactory, mSinkFactory, FRAME_SIZE, 2,
+                new MetricsRegistry());
+        assertFalse(decoder.decode());
+        assertTrue(decoder.isTrackSucceeded(0));
+        assertFalse(decoder.isTrackSucceeded(1));
+        assertArrayEquals(extractor.expected(0), mSinks[0].toByteArray());
+        assertEquals(0, decoder.getDecodedBytes(1));
+        assertTrue(extractor.mReleased);
+    }
+
+    @Test
+    public void decode_dropsTrackWithOversizedFrame() {
+        FakeExtractor extractor = new FakeExtractor(new String[]{"audio/mp4a-latm", "audio/opus"}, 50);
+        extractor.mOversizedTrack = 1;
+        MultiTrackDecoder decoder = new MultiTrackDecoder(extractor, mDecoderFactory, mSinkFactory, FRAME_SIZE, 2,
+                new MetricsRegistry());
+        //放弃的音轨不会让读取线程一直等待
+        assertFalse(decoder.decode());
+        assertTrue(decoder.isTrackSucceeded(0));
+        assertArrayEquals(extractor.expected(0), mSinks[0].toByteArray());
+    }
+
+    @Test
+    public void seekTo_startsEveryTrackFromTarget() {
+        FakeExtractor extractor = new FakeExtractor(new String[]{"audio/mp4a-latm", "audio/opus"}, 50);
+        MultiTrackDecoder decoder = new MultiTrackDecoder(extractor, mDecoderFactory, mSinkFactory, FRAME_SIZE, 2,
+                new MetricsRegistry());
+        //每帧1ms，从第20帧开始
+        decoder.seekTo(20 * 1000L);
+        assertTrue(decoder.decode());
+        for (int track : new int[]{0, 1}) {
+            byte[] expected = extractor.expected(track);
+            assertArrayEquals(Arrays.copyOfRange(expected, 20 * FRAME_SIZE, expected.length),
+                    mSinks[track].toByteArray());
+        }
+        assertEquals(2 * 30, extractor.mSamplesRead);
+    }
+
+    /**
+     * 所有音轨的帧按顺序交替排列，帧内容由音轨和帧序号决定
+     */
+    private static class FakeExtractor implements MultiTrackExtractor {
+        private final String[] mMimes;
+        private final int mFramesPerTrack;
+        private final boolean[] mSelected;
+        private int mPosition;
+        private int mOversizedTrack = -1;
+        private int mSamplesRead;
+        private boolean mReleased;
+
+        FakeExtractor(String[] mimes, int framesPerTrack) {
+            mMimes = mimes;
+            mFramesPerTrack = framesPerTrack;
+            mSelected = new boolean[mimes.length];
+        }
+
+        byte[] expected(int track) {
+            byte[] data = new byte[mFramesPerTrack * FRAME_SIZE];
+            for (int frame = 0; frame < mFramesPerTrack; frame++) {
+                fill(data, frame * FRAME_SIZE, track, frame);
+            }
+            return data;
+        }
+
+        private static void fill(byte[] data, int offset, int track, int frame) {
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                data[offset + i] = (byte) (track * 31 + frame * 7 + i);
+            }
+        }
+
+        private void skipUnselected() {
+            while (mPosition < mMimes.length * mFramesPerTrack && !mSelected[mPosition % mMimes.length]) {
+                mPosition++;
+            }
+        }
+
+        @Override
+        public int getTrackCount() {
+            return mMimes.length;
+        }
+
+        @Override
+        public String getTrackMime(int track) {
+            return mMimes[track];
+        }
+
+        @Override
+        public void selectTrack(int track) {
+            mSelected[track] = true;
+        }
+
+        @Override
+        public int getSampleTrackIndex() {
+            //未选中的音轨不会被返回
+            skipUnselected();
+            return mPosition < mMimes.length * mFramesPerTrack ? mPosition % mMimes.length : -1;
+        }
+
+        @Override
+        public int readSampleData(ByteBuffer buffer, int offset) {
+            int track = getSampleTrackIndex();
+            if (track < 0) {
+                return -1;
+            }
+            int size = track == mOversizedTrack ? FRAME_SIZE * 2 : FRAME_SIZE;
+            if (buffer.capacity() - offset < size) {
+                throw new IllegalArgumentException("Buffer too small");
+            }
+            byte[] frame = new byte[FRAME_SIZE];
+            fill(frame, 0, track, mPosition / mMimes.length);
+            buffer.position(offset);
+            buffer.put(frame);
+            mSamplesRead++;
+            return FRAME_SIZE;
+        }
+
+        @Override
+        public long getSampleTime() {
+            return getSampleTrackIndex() < 0 ? -1 : (mPosition / mMimes.length) * 1000L;
+        }
+
+        @Override
+        public boolean advance() {
+            mPosition++;
+            return getSampleTrackIndex() >= 0;
+        }
+
+        @Override
+        public void seekTo(long timeUs) {
+            mPosition = (int) (timeUs / 1000) * mMimes.length;
+        }
+
+        @Override
+        public void release() {
+            mReleased = true;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 噪声门的本地单元测试
+ */
+public class NoiseGateTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    /**
+     * 每块10ms
+     */
+    private static final int BLOCK = 160;
+
+    private static float[] noise(Random random, float amplitude) {
+        float[] data = new float[BLOCK];
+        for (int i = 0; i < BLOCK; i++) {
+            data[i] = (float) (random.nextGaussian() * amplitude);
+        }
+        return data;
+    }
+
+    @Test
+    public void process_attenuatesNoiseAfterHold() {
+        NoiseGate gate = new NoiseGate(SAMPLE_RATE, 1);
+        Random random = new Random(1);
+        //约-70dBFS的底噪
+        for (int i = 0; i < 9; i++) {
+            gate.process(noise(random, 10), 0, BLOCK);
+            assertFalse(gate.isClosed());
+        }
+        //超过100ms的保持时间后开始衰减，150ms后到达底噪增益
+        for (int i = 0; i < 20; i++) {
+            gate.process(noise(random, 10), 0, BLOCK);
+        }
+        assertTrue(gate.isClosed());
+        assertEquals(GainStage.dbToLinear(NoiseGate.DEFAULT_RANGE_DB), gate.getGain(), 1e-4f);
+    }
+
+    @Test
+    public void process_opensQuicklyForSpeech() {
+        NoiseGate gate = new NoiseGate(SAMPLE_RATE, 1);
+        Random random = new Random(2);
+        for (int i = 0; i < 30; i++) {
+            gate.process(noise(random, 10), 0, BLOCK);
+        }
+        float[] speech = noise(random, 3000);
+        float[] original = speech.clone();
+        //5ms的起始时间，一块之内完全打开
+        gate.process(speech, 0, BLOCK);
+        assertFalse(gate.isClosed());
+        assertEquals(original[BLOCK - 1], speech[BLOCK - 1], 1e-3f);
+        assertTrue(Math.abs(speech[0]) < Math.abs(original[0]));
+
+        float[] next = noise(random, 3000);
+        float[] copy = next.clone();
+        gate.process(next, 0, BLOCK);
+        assertTrue(Arrays.equals(copy, next));
+    }
+}
@@ -0,0 +1,156 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 直通编解码器及编码流程的本地单元测试
+ */
+public class PassthroughCodecTest {
+
+    @Test
+    public void dequeue_followsMediaCodecStateMachine() {
+        PassthroughCodec codec = new PassthroughCodec(2, 64, 44100, 2);
+        try {
+            codec.dequeueInputBuffer(0);
+            fail("dequeue before start should throw");
+        } catch (IllegalStateException expected) {
+        }
+        codec.start();
+
+        CodecBufferInfo info = new CodecBufferInfo();
+        assertEquals(AudioCodec.INFO_OUTPUT_FORMAT_CHANGED, codec.dequeueOutputBuffer(info, 0));
+        assertEquals(AudioCodec.INFO_TRY_AGAIN_LATER, codec.dequeueOutputBuffer(info, 0));
+
+        int first = codec.dequeueInputBuffer(0);
+        int second = codec.dequeueInputBuffer(0);
+        assertTrue(first >= 0 && second >= 0 && first != second);
+        //所有输入缓存都在客户端手里
+        assertEquals(AudioCodec.INFO_TRY_AGAIN_LATER, codec.dequeueInputBuffer(0));
+
+        codec.getInputBuffer(first).put(new byte[]{1, 2, 3});
+        codec.queueInputBuffer(first, 0, 3, 100, 0);
+        codec.queueInputBuffer(second, 0, 0, 0, AudioCodec.BUFFER_FLAG_END_OF_STREAM);
+
+        int output = codec.dequeueOutputBuffer(info, 0);
+        assertTrue(output >= 0);
+        assertEquals(3, info.size);
+        assertEquals(100, info.presentationTimeUs);
+        ByteBuffer outputBuffer = codec.getOutputBuffer(output);
+        assertEquals(3, outputBuffer.remaining());
+        assertEquals(2, outputBuffer.get(1));
+        codec.releaseOutputBuffer(output);
+
+        output = codec.dequeueOutputBuffer(info, 0);
+        assertTrue(output >= 0);
+        assertTrue((info.flags & AudioCodec.BUFFER_FLAG_END_OF_STREAM) != 0);
+        codec.releaseOutputBuffer(output);
+        codec.release();
+    }
+
+    @Test
+    public void dequeueOutput_waitsForOtherThread() throws Exception {
+        final PassthroughCodec codec = new PassthroughCodec(1, 16, 44100, 2);
+        codec.start();
+        CodecBufferInfo info = new CodecBufferInfo();
+        assertEquals(AudioCodec.INFO_OUTPUT_FORMAT_CHANGED, codec.dequeueOutputBuffer(info, 0));
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int index = codec.dequeueInputBuffer(-1);
+                codec.queueInputBuffer(index, 0, 4, 7, 0);
+            }
+        });
+        producer.start();
+        int output = codec.dequeueOutputBuffer(info, 2000000);
+        producer.join();
+        assertTrue(output >= 0);
+        assertEquals(7, info.presentationTimeUs);
+    }
+
+    @Test
+    public void encodePipeline_writesOneAdtsFramePerInput() throws Exception {
+        PassthroughCodec codec = new PassthroughCodec(4, 4096, 44100, 2);
+        codec.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncodePipeline pipeline = new EncodePipeline(codec, new AdtsFrameWriter(Channels.newChannel(out), 4096));
+
+        byte[] data = new byte[4096];
+        for (int i = 0; i < 50; i++) {
+            data[0] = (byte) i;
+            pipeline.encode(data, 100 + i * 10);
+        }
+        pipeline.drain(0);
+        assertEquals(50, pipeline.getFramesWritten());
+
+        final List<int[]> frames = new ArrayList<>();
+        AdtsParser parser = new AdtsParser(new AdtsParser.IFrameListener() {
+            @Override
+            public void onFrame(AdtsParser.AdtsHeader header, byte[] data, int offset, int length,
+                                long streamOffset, long ptsUs) {
+                frames.add(new int[]{length - header.headerLength, data[offset + header.headerLength]});
+            }
+        });
+        byte[] stream = out.toByteArray();
+        parser.feed(stream, 0, stream.length);
+        assertEquals(50, frames.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(100 + i * 10, frames.get(i)[0]);
+            assertEquals(i, frames.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void encodePipeline_finishFlushesPendingFramesAndReachesEos() throws Exception {
+        PassthroughCodec codec = new PassthroughCodec(4, 256, 44100, 2);
+        codec.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncodePipeline pipeline = new EncodePipeline(codec, new AdtsFrameWriter(Channels.newChannel(out), 256),
+                new MetricsRegistry());
+        //编码器中还有没取出的帧，相当于MediaCodec的编码延迟
+        for (int i = 0; i < 2; i++) {
+            int index = codec.dequeueInputBuffer(0);
+            codec.getInputBuffer(index).put(new byte[100]);
+            codec.queueInputBuffer(index, 0, 100, 0, 0);
+        }
+
+        assertEquals(2, pipeline.finish(1000000));
+        assertTrue(pipeline.isEndOfStream());
+        assertEquals(2, pipeline.getFramesWritten());
+        assertEquals(2 * (100 + AdtsFrameWriter.ADTS_HEADER_SIZE), out.size());
+    }
+
+    @Test
+    public void encodePipeline_finishGivesUpAtDeadline() throws Exception {
+        //输出一直取不到，模拟卡住的编码器
+        PassthroughCodec codec = new PassthroughCodec(2, 256, 44100, 2) {
+            @Override
+            public synchronized int dequeueOutputBuffer(CodecBufferInfo info, long timeoutUs) {
+                try {
+                    Thread.sleep(Math.max(1, timeoutUs / 1000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return INFO_TRY_AGAIN_LATER;
+            }
+        };
+        codec.start();
+        MetricsRegistry metrics = new MetricsRegistry();
+        EncodePipeline pipeline = new EncodePipeline(codec,
+                new AdtsFrameWriter(Channels.newChannel(new ByteArrayOutputStream()), 256), metrics);
+
+        long start = System.nanoTime();
+        assertEquals(0, pipeline.finish(100000));
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertFalse(pipeline.isEndOfStream());
+        assertTrue("elapsed " + elapsedMs + "ms", elapsedMs >= 100 && elapsedMs < 1000);
+        assertEquals(1, metrics.counter("encode.finish_timeouts").get());
+    }
+}
@@ -0,0 +1,76 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 格式转换、声道转换和格式协商的本地单元测试
+ */
+public class PcmConverterTest {
+
+    @Test
+    public void mix_monoStereo() {
+        short[] stereo = new short[6];
+        ChannelMixer.mix(new short[]{1, -2, 3}, 0, 1, stereo, 0, 2, 3);
+        assertArrayEquals(new short[]{1, 1, -2, -2, 3, 3}, stereo);
+        short[] mono = new short[3];
+        ChannelMixer.mix(new short[]{10, 20, -4, -8, 32767, 32767}, 0, 2, mono, 0, 1, 3);
+        assertArrayEquals(new short[]{15, -6, 32767}, mono);
+        float[] floatMono = new float[2];
+        ChannelMixer.mix(new float[]{0.5f, 1f, 0f, -1f}, 0, 2, floatMono, 0, 1, 2);
+        assertEquals(0.75f, floatMono[0], 0f);
+        assertEquals(-0.5f, floatMono[1], 0f);
+    }
+
+    @Test
+    public void convert_samFormatIsCopy() {
+        PcmFormat format = new PcmFormat(48000, 1, 16);
+        PcmConverter converter = new PcmConverter(format, format, 1024);
+        assertTrue(converter.isPassthrough());
+        byte[] out = new byte[converter.getMaxOutputBytes()];
+        assertEquals(4, converter.convert(new byte[]{1, 2, 3, 4}, 4, out));
+        assertEquals(3, out[2]);
+        assertEquals(0, converter.flush(out));
+    }
+
+    @Test
+    public void convert_stereoToMonoKeepsLittleEndianSamples() {
+        PcmConverter converter = new PcmConverter(new PcmFormat(44100, 2, 16), new PcmFormat(44100, 1, 16), 8);
+        byte[] out = new byte[converter.getMaxOutputBytes()];
+        //左声道1000，右声道-3000
+        byte[] in = {(byte) 0xE8, 0x03, 0x48, (byte) 0xF4, (byte) 0xE8, 0x03, 0x48, (byte) 0xF4};
+        assertEquals(4, converter.convert(in, in.length, out));
+        assertEquals(-1000, (short) ((out[0] & 0xFF) | (out[1] << 8)));
+    }
+
+    @Test
+    public void convert_resamplesWholeStream() {
+        PcmConverter converter = new PcmConverter(new PcmFormat(48000, 1, 16), new PcmFormat(16000, 1, 16), 960);
+        byte[] in = new byte[960];
+        byte[] out = new byte[converter.getMaxOutputBytes()];
+        int total = 0;
+        for (int i = 0; i < 100; i++) {
+            total += converter.convert(in, in.length, out);
+        }
+        total += converter.flush(out);
+        //48000个采样降到16000个
+        assertEquals(16000 * 2, total, 2 * PolyphaseResampler.DEFAULT_TAPS);
+    }
+
+    @Test
+    public void negotiate_prefersFirstSupportedRate() {
+        FormatNegotiator.ISampleRateSupport support = new FormatNegotiator.ISampleRateSupport() {
+            @Override
+            public boolean isSupported(int sampleRate) {
+                return sampleRate != 96000;
+            }
+        };
+        assertEquals(48000, FormatNegotiator.chooseSampleRate(new int[]{0, 96000, 48000, 44100}, support));
+        PcmFormat capture = new PcmFormat(48000, 1, 16);
+        assertEquals(48000, FormatNegotiator.negotiateEncode(capture, 0).getSampleRate());
+        assertEquals(16000, FormatNegotiator.negotiateEncode(capture, 16000).getSampleRate());
+        //ADTS不支持的采样率换成最接近的
+        assertEquals(44100, FormatNegotiator.negotiateEncode(capture.withSampleRate(44000), 0).getSampleRate());
+    }
+}
@@ -0,0 +1,107 @@
+package com.zfg.audiodemo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * PCM播放数据源的本地单元测试，映射和按块读取两种方式的结果应当一致
+ */
+public class PcmFileSourceTest {
+
+    private File mFile;
+    private byte[] mContent;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("recode_file", ".pcm");
+        mContent = new byte[10000];
+        for (int i = 0; i < mContent.length; i++) {
+            mContent[i] = (byte) (i * 7);
+        }
+        FileOutputStream out = new FileOutputStream(mFile);
+        out.write(mContent);
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void read_mappedAndStreamed_returnWholeFile() throws Exception {
+        for (boolean allowMap : new boolean[]{true, false}) {
+            PcmFileSource source = new PcmFileSource(mFile, 0, mFile.length(), 2, allowMap);
+            assertEquals(allowMap, source.isMapped());
+            assertArrayEquals(mContent, readAll(source, 333));
+            source.close();
+        }
+    }
+
+    @Test
+    public void read_region_skipsHeader() throws Exception {
+        for (boolean allowMap : new boolean[]{true, false}) {
+            PcmFileSource source = new PcmFileSource(mFile, 44, 1000, 2, allowMap);
+            byte[] data = readAll(source, 256);
+            assertEquals(1000, data.length);
+            for (int i = 0; i < data.length; i++) {
+                assertEquals(mContent[44 + i], data[i]);
+            }
+            source.close();
+        }
+    }
+
+    @Test
+    public void seek_alignsToFrame() throws Exception {
+        PcmFileSource source = PcmFileSource.open(mFile, 4);
+        source.seek(4003);
+        assertEquals(4000, source.position());
+        ByteBuffer chunk = source.read(8);
+        assertEquals(8, chunk.remaining());
+        assertEquals(mContent[4000], chunk.get(chunk.position()));
+        source.close();
+    }
+
+    @Test
+    public void setLoop_wrapsToLoopStart() throws Exception {
+        for (boolean allowMap : new boolean[]{true, false}) {
+            PcmFileSource source = new PcmFileSource(mFile, 0, mFile.length(), 2, allowMap);
+            source.setLoop(100, 200);
+            source.seek(100);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (int i = 0; i < 5; i++) {
+                ByteBuffer chunk = source.read(64);
+                byte[] data = new byte[chunk.remaining()];
+                chunk.get(data);
+                out.write(data);
+            }
+            byte[] result = out.toByteArray();
+            //64 + 36 + 64 + 36 + 64
+            assertEquals(264, result.length);
+            assertEquals(mContent[100], result[100]);
+            assertEquals(mContent[163], result[263]);
+            source.clearLoop();
+            source.close();
+        }
+    }
+
+    private static byte[] readAll(PcmFileSource source, int chunkSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer chunk;
+        while ((chunk = source.read(chunkSize)) != null) {
+            assertTrue(chunk.remaining() <= chunkSize);
+            byte[] data = new byte[chunk.remaining()];
+            chunk.get(data);
+            out.write(data);
+        }
+        return out.toByteArray();
+    }
+}
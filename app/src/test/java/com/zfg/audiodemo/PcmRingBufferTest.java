@@ -0,0 +1,176 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * 环形缓冲区的本地单元测试，用合成的PCM数据模拟采集线程
+ */
+public class PcmRingBufferTest {
+
+    @Test
+    public void capacity_roundsUpToPowerOfTwo() {
+        PcmRingBuffer ringBuffer = new PcmRingBuffer(5, 32);
+        assertEquals(8, ringBuffer.capacity());
+        assertEquals(32, ringBuffer.chunkSize());
+    }
+
+    @Test
+    public void acquireWrite_whenFull_countsOverrun() {
+        PcmRingBuffer ringBuffer = new PcmRingBuffer(4, 16);
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(ringBuffer.acquireWrite());
+            ringBuffer.commitWrite(16);
+        }
+        assertNull(ringBuffer.acquireWrite());
+        assertNull(ringBuffer.acquireWrite());
+        assertEquals(2, ringBuffer.getOverrunCount());
+        assertEquals(4, ringBuffer.size());
+
+        assertNotNull(ringBuffer.acquireRead());
+        ringBuffer.releaseRead();
+        assertNotNull(ringBuffer.acquireWrite());
+    }
+
+    @Test
+    public void acquireRead_whenEmpty_returnsNullWithoutCounting() {
+        PcmRingBuffer ringBuffer = new PcmRingBuffer(4, 16);
+        assertNull(ringBuffer.acquireRead());
+        assertNull(ringBuffer.acquireRead());
+        //取不到数据只是消费者比生产者快，不算欠载
+        assertEquals(0, ringBuffer.getOverrunCount());
+        assertEquals(0, ringBuffer.getUnderrunCount());
+
+        byte[] chunk = ringBuffer.acquireWrite();
+        chunk[0] = 42;
+        ringBuffer.commitWrite(3);
+        assertSame(chunk, ringBuffer.acquireRead());
+        assertEquals(3, ringBuffer.readLength());
+        ringBuffer.releaseRead();
+        assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test
+    public void awaitReadable_countsUnderrunOnlyWhenProducerIsLate() {
+        PcmRingBuffer ringBuffer = new PcmRingBuffer(4, 16);
+        //生产者还没有开始写入
+        ringBuffer.awaitReadable(5, TimeUnit.MILLISECONDS);
+        assertEquals(0, ringBuffer.getUnderrunCount());
+
+        ringBuffer.acquireWrite();
+        ringBuffer.commitWrite(16);
+        //有数据时直接返回
+        ringBuffer.awaitReadable(5, TimeUnit.MILLISECONDS);
+        assertEquals(0, ringBuffer.getUnderrunCount());
+        assertNotNull(ringBuffer.acquireRead());
+        ringBuffer.releaseRead();
+
+        //生产者已经开始写入，等满超时仍然没有数据
+        ringBuffer.awaitReadable(5, TimeUnit.MILLISECONDS);
+        assertEquals(1, ringBuffer.getUnderrunCount());
+
+        //生产者已经关闭
+        ringBuffer.close();
+        ringBuffer.awaitReadable(5, TimeUnit.MILLISECONDS);
+        assertEquals(1, ringBuffer.getUnderrunCount());
+    }
+
+    @Test
+    public void producerConsumer_deliversEveryChunkInOrder() throws Exception {
+        final int chunkSize = 64;
+        final int chunks = 20000;
+        final PcmRingBuffer ringBuffer = new PcmRingBuffer(8, chunkSize);
+        final AtomicReference<String> error = new AtomicReference<>();
+
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int expected = 0;
+                while (true) {
+                    byte[] data = ringBuffer.acquireRead();
+                    if (null == data) {
+                        if (ringBuffer.isClosed() && ringBuffer.isEmpty()) {
+                            break;
+                        }
+                        ringBuffer.awaitReadable(5, TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+                    int length = ringBuffer.readLength();
+                    int sequence = readInt(data);
+                    if (sequence != expected || length != 4 + sequence % (chunkSize - 4)) {
+                        error.set("chunk " + sequence + " length " + length + ", expected " + expected);
+                        return;
+                    }
+                    expected++;
+                    ringBuffer.releaseRead();
+                }
+                if (expected != chunks) {
+                    error.set("received " + expected + " chunks");
+                }
+            }
+        });
+        consumer.start();
+
+        //合成的PCM生产者：缓冲区满时等待而不是丢弃，保证可以校验顺序
+        for (int i = 0; i < chunks; i++) {
+            byte[] data;
+            while ((data = ringBuffer.acquireWrite()) == null) {
+                Thread.yield();
+            }
+            writeInt(data, i);
+            ringBuffer.commitWrite(4 + i % (chunkSize - 4));
+        }
+        ringBuffer.close();
+        consumer.join(10000);
+
+        assertFalse(consumer.isAlive());
+        assertNull(error.get(), error.get());
+    }
+
+    @Test
+    public void awaitWritable_wakesWhenConsumerReleases() throws Exception {
+        final PcmRingBuffer ringBuffer = new PcmRingBuffer(2, 8);
+        for (int i = 0; i < 2; i++) {
+            ringBuffer.acquireWrite();
+            ringBuffer.commitWrite(8);
+        }
+        assertTrue(ringBuffer.isFull());
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ringBuffer.acquireRead();
+                ringBuffer.releaseRead();
+            }
+        });
+        consumer.start();
+        long start = System.nanoTime();
+        ringBuffer.awaitWritable(10, TimeUnit.SECONDS);
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        consumer.join();
+
+        assertTrue("waited " + waitedMs + "ms", waitedMs < 5000);
+        assertFalse(ringBuffer.isFull());
+        assertNotNull(ringBuffer.acquireWrite());
+        assertEquals(0, ringBuffer.getOverrunCount());
+    }
+
+    private static void writeInt(byte[] data, int value) {
+        data[0] = (byte) (value >> 24);
+        data[1] = (byte) (value >> 16);
+        data[2] = (byte) (value >> 8);
+        data[3] = (byte) value;
+    }
+
+    private static int readInt(byte[] data) {
+        return ((data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16) | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+    }
+}
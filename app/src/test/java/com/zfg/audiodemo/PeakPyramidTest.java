@@ -0,0 +1,154 @@
+package com.zfg.audiodemo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 峰值金字塔的本地单元测试，与直接扫描PCM的结果对比
+ */
+public class PeakPyramidTest {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BUCKET_FRAMES = 16;
+    private static final int FACTOR = 4;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("recode_file", PeakPyramid.SUFFIX);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private static short[] randomPcm(int samples, long seed) {
+        Random random = new Random(seed);
+        short[] pcm = new short[samples];
+        for (int i = 0; i < samples; i++) {
+            pcm[i] = (short) (random.nextGaussian() * 4000);
+        }
+        //几个明显的尖峰，任何缩放级别都应该能看到
+        pcm[samples / 3] = Short.MAX_VALUE;
+        pcm[samples / 2] = Short.MIN_VALUE;
+        return pcm;
+    }
+
+    private static byte[] toBytes(short[] pcm) {
+        byte[] data = new byte[pcm.length * 2];
+        for (int i = 0; i < pcm.length; i++) {
+            data[2 * i] = (byte) pcm[i];
+            data[2 * i + 1] = (byte) (pcm[i] >> 8);
+        }
+        return data;
+    }
+
+    /**
+     * 按任意大小分块写入
+     */
+    private void writeAll(short[] pcm, int channels) throws Exception {
+        PeakPyramid.Writer writer = new PeakPyramid.Writer(mFile, SAMPLE_RATE, channels, BUCKET_FRAMES, FACTOR);
+        byte[] data = toBytes(pcm);
+        Random random = new Random(7);
+        int frameSize = 2 * channels;
+        int offset = 0;
+        while (offset < data.length) {
+            int length = Math.min(data.length - offset, frameSize * (1 + random.nextInt(100)));
+            writer.write(data, offset, length);
+            offset += length;
+        }
+        assertEquals(pcm.length / channels, writer.getTotalFrames());
+        writer.close();
+        writer.close();
+    }
+
+    @Test
+    public void read_matchesBruteForceAtEveryZoom() throws Exception {
+        int channels = 2;
+        int frames = 10000;
+        short[] pcm = randomPcm(frames * channels, 1);
+        writeAll(pcm, channels);
+
+        PeakPyramid pyramid = PeakPyramid.open(mFile);
+        assertEquals(SAMPLE_RATE, pyramid.getSampleRate());
+        assertEquals(frames, pyramid.getTotalFrames());
+        //625 -> 157 -> 40 -> 10 -> 3 -> 1
+        assertEquals(6, pyramid.getLevelCount());
+        assertEquals(625, pyramid.getBucketCount(0));
+        assertEquals(1, pyramid.getBucketCount(5));
+
+        int[][] views = {{0, frames, 100}, {0, frames, 7}, {1234, 5678, 50}, {3000, 3100, 20}, {0, 64, 4}};
+        for (int[] view : views) {
+            int columns = view[2];
+            short[] min = new short[columns];
+            short[] max = new short[columns];
+            int level = pyramid.read(view[0], view[1], columns, min, max);
+            long bucketFrames = pyramid.getBucketFrames(level);
+            //选中的层每个桶不超过一列
+            assertTrue(bucketFrames <= Math.max(BUCKET_FRAMES, (view[1] - view[0]) / columns));
+            double perColumn = (double) (view[1] - view[0]) / columns;
+            for (int column = 0; column < columns; column++) {
+                long from = view[0] + (long) (column * perColumn);
+                long to = view[0] + (long) ((column + 1) * perColumn);
+                //桶边界对齐到层的大小，结果覆盖这一列并且最多多出两侧的桶
+                long alignedFrom = from / bucketFrames * bucketFrames;
+                long alignedTo = Math.min(frames, (to + bucketFrames - 1) / bucketFrames * bucketFrames);
+                int expectedMin = Short.MAX_VALUE;
+                int expectedMax = Short.MIN_VALUE;
+                for (long frame = alignedFrom; frame < alignedTo; frame++) {
+                    for (int c = 0; c < channels; c++) {
+                        expectedMin = Math.min(expectedMin, pcm[(int) frame * channels + c]);
+                        expectedMax = Math.max(expectedMax, pcm[(int) frame * channels + c]);
+                    }
+                }
+                assertEquals(expectedMin, min[column]);
+                assertEquals(expectedMax, max[column]);
+            }
+        }
+        short[] min = new short[1];
+        short[] max = new short[1];
+        pyramid.read(0, frames, 1, min, max);
+        assertEquals(Short.MIN_VALUE, min[0]);
+        assertEquals(Short.MAX_VALUE, max[0]);
+        pyramid.close();
+    }
+
+    @Test
+    public void read_whileRecordingSeesFlushedBaseLevel() throws Exception {
+        PeakPyramid.Writer writer = new PeakPyramid.Writer(mFile, SAMPLE_RATE, 1, BUCKET_FRAMES, FACTOR);
+        short[] pcm = randomPcm(SAMPLE_RATE * 2, 2);
+        writer.write(toBytes(pcm), 0, pcm.length * 2);
+        //每秒回写一次文件头
+        PeakPyramid pyramid = PeakPyramid.open(mFile);
+        assertEquals(1, pyramid.getLevelCount());
+        assertEquals(SAMPLE_RATE * 2, pyramid.getTotalFrames());
+        assertEquals(SAMPLE_RATE * 2 / BUCKET_FRAMES, pyramid.getBucketCount(0));
+        short[] min = new short[10];
+        short[] max = new short[10];
+        assertEquals(0, pyramid.read(0, SAMPLE_RATE * 2, 10, min, max));
+        assertTrue(max[3] > 0);
+        pyramid.close();
+        writer.close();
+    }
+
+    @Test
+    public void read_pastEndReturnsSilence() throws Exception {
+        writeAll(randomPcm(100, 3), 1);
+        PeakPyramid pyramid = PeakPyramid.open(mFile);
+        short[] min = new short[4];
+        short[] max = new short[4];
+        pyramid.read(0, 400, 4, min, max);
+        assertTrue(max[0] > 0);
+        assertEquals(0, min[3]);
+        assertEquals(0, max[3]);
+        pyramid.close();
+    }
+}
@@ -0,0 +1,251 @@
+package com.zfg.audiodemo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 播放引擎的本地单元测试，用假的AudioOutput模拟AudioTrack的缓冲区和欠载
+ */
+public class PlaybackEngineTest {
+
+    private static final PcmFormat FORMAT = new PcmFormat(8000, 1, 16);
+    private static final int CHUNK_SIZE = 160;
+
+    private File mFile;
+    private byte[] mContent;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("decoder_file", ".pcm");
+        mContent = new byte[CHUNK_SIZE * 50 + 40];
+        for (int i = 0; i < mContent.length; i++) {
+            mContent[i] = (byte) (i * 13);
+        }
+        FileOutputStream out = new FileOutputStream(mFile);
+        out.write(mContent);
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private PlaybackEngine createEngine(FakeOutput output) throws Exception {
+        return new PlaybackEngine(PcmFileSource.open(mFile, FORMAT.getFrameSize()), FORMAT, output, CHUNK_SIZE,
+                4, new MetricsRegistry());
+    }
+
+    @Test
+    public void play_prefillsBeforePlayAndWritesWholeFile() throws Exception {
+        FakeOutput output = new FakeOutput(1000);
+        PlaybackEngine engine = createEngine(output);
+        engine.play();
+
+        assertArrayEquals(mContent, output.mData.toByteArray());
+        //双缓冲：play之前写入两块
+        assertEquals(2 * CHUNK_SIZE / 2, output.mBufferFrames);
+        assertEquals(2 * CHUNK_SIZE, output.mBytesBeforePlay);
+        assertTrue(engine.getPrefillUs() >= 0);
+        assertTrue(engine.getTimeToFirstSampleUs() >= engine.getPrefillUs());
+        assertEquals(0, engine.getUnderrunCount());
+        assertTrue(output.mReleased);
+        assertEquals(mContent.length / 2, output.getPlaybackHeadPosition());
+    }
+
+    @Test
+    public void play_mappedSource_writesMappedBufferWithoutCopy() throws Exception {
+        FakeOutput output = new FakeOutput(1000);
+        PcmFileSource source = PcmFileSource.open(mFile, FORMAT.getFrameSize());
+        assertTrue(source.isMapped());
+        PlaybackEngine engine = new PlaybackEngine(source, FORMAT, output, CHUNK_SIZE, 4, new MetricsRegistry());
+        engine.play();
+
+        assertArrayEquals(mContent, output.mData.toByteArray());
+        //所有数据都直接从映射区写入，没有经过byte[]
+        assertEquals(0, output.mArrayWrites);
+        assertTrue(output.mBufferWrites > 0);
+        assertEquals(output.mBufferWrites, output.mDirectBufferWrites);
+    }
+
+    @Test
+    public void play_unmappedSource_copiesThroughRingBuffer() throws Exception {
+        FakeOutput output = new FakeOutput(1000);
+        PcmFileSource source = new PcmFileSource(mFile, 0, mFile.length(), FORMAT.getFrameSize(), false);
+        PlaybackEngine engine = new PlaybackEngine(source, FORMAT, output, CHUNK_SIZE, 4, new MetricsRegistry());
+        engine.play();
+
+        assertArrayEquals(mContent, output.mData.toByteArray());
+        assertEquals(0, output.mBufferWrites);
+    }
+
+    @Test
+    public void play_growsBufferOnUnderrunUpToCapacity() throws Exception {
+        FakeOutput output = new FakeOutput(4 * CHUNK_SIZE / 2);
+        output.mUnderrunAtWrites = new int[]{5, 10, 15, 20, 25};
+        PlaybackEngine engine = createEngine(output);
+        engine.play();
+
+        assertEquals(5, engine.getUnderrunCount());
+        //从两块增加到容量上限四块
+        assertEquals(2, engine.getBufferGrowCount());
+        assertEquals(4 * CHUNK_SIZE / 2, engine.getBufferSizeInFrames());
+        assertArrayEquals(mContent, output.mData.toByteArray());
+    }
+
+    @Test
+    public void play_withoutBufferControl_usesFixedBuffer() throws Exception {
+        FakeOutput output = new FakeOutput(-1);
+        output.mBufferFrames = 3 * CHUNK_SIZE / 2;
+        PlaybackEngine engine = createEngine(output);
+        engine.play();
+
+        assertEquals(3 * CHUNK_SIZE, output.mBytesBeforePlay);
+        assertEquals(0, engine.getBufferGrowCount());
+        assertArrayEquals(mContent, output.mData.toByteArray());
+    }
+
+    @Test
+    public void stop_fromAnotherThread_endsPlayback() throws Exception {
+        final FakeOutput output = new FakeOutput(1000);
+        output.mWriteDelayMs = 20;
+        final PlaybackEngine engine = createEngine(output);
+        Thread stopper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                engine.stop();
+            }
+        });
+        stopper.start();
+        engine.play();
+        stopper.join();
+
+        assertTrue(output.mData.size() < mContent.length);
+        assertTrue(output.mReleased);
+    }
+
+    /**
+     * 模拟AudioTrack：play之后每次写入时认为缓冲区之前的数据已经播放
+     */
+    private static class FakeOutput implements AudioOutput {
+        final ByteArrayOutputStream mData = new ByteArrayOutputStream();
+        final int mCapacityFrames;
+        int mBufferFrames = -1;
+        int mBytesBeforePlay = -1;
+        int[] mUnderrunAtWrites = new int[0];
+        int mWriteDelayMs;
+        volatile boolean mPlaying;
+        boolean mReleased;
+        int mWrites;
+        int mUnderruns;
+        int mArrayWrites;
+        int mBufferWrites;
+        int mDirectBufferWrites;
+
+        FakeOutput(int capacityFrames) {
+            mCapacityFrames = capacityFrames;
+        }
+
+        @Override
+        public void play() {
+            mBytesBeforePlay = mData.size();
+            mPlaying = true;
+        }
+
+        @Override
+        public int write(byte[] data, int offset, int size) {
+            mArrayWrites++;
+            return onWrite(data, offset, size);
+        }
+
+        @Override
+        public int write(ByteBuffer data, int size) {
+            mBufferWrites++;
+            if (data.isDirect()) {
+                mDirectBufferWrites++;
+            }
+            byte[] copy = new byte[size];
+            data.get(copy);
+            return onWrite(copy, 0, size);
+        }
+
+        private int onWrite(byte[] data, int offset, int size) {
+            if (mPlaying && mWriteDelayMs > 0) {
+                try {
+                    Thread.sleep(mWriteDelayMs);
+                } catch (InterruptedException e) {
+                    return 0;
+                }
+            }
+            mData.write(data, offset, size);
+            mWrites++;
+            for (int write : mUnderrunAtWrites) {
+                if (write == mWrites) {
+                    mUnderruns++;
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public int getPlaybackHeadPosition() {
+            if (!mPlaying) {
+                return mReleased ? mData.size() / 2 : 0;
+            }
+            return Math.max(0, mData.size() / 2 - mBufferFrames);
+        }
+
+        @Override
+        public int getUnderrunCount() {
+            return mCapacityFrames > 0 ? mUnderruns : -1;
+        }
+
+        @Override
+        public int getBufferSizeInFrames() {
+            return mBufferFrames;
+        }
+
+        @Override
+        public int getBufferCapacityInFrames() {
+            return mCapacityFrames;
+        }
+
+        @Override
+        public int setBufferSizeInFrames(int frames) {
+            mBufferFrames = Math.min(frames, mCapacityFrames);
+            return mBufferFrames;
+        }
+
+        @Override
+        public void pause() {
+            mPlaying = false;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void stop() {
+            mPlaying = false;
+        }
+
+        @Override
+        public void release() {
+            mReleased = true;
+        }
+    }
+}
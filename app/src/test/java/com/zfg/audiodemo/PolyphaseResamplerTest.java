@@ -0,0 +1,146 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 重采样的本地单元测试
+ */
+public class PolyphaseResamplerTest {
+
+    private static short[] sine(int sampleRate, double frequency, int frames, double amplitude) {
+        short[] data = new short[frames];
+        for (int i = 0; i < frames; i++) {
+            data[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+        }
+        return data;
+    }
+
+    private static short[] resample(PolyphaseResampler resampler, short[] in, int chunkSeed) {
+        short[] out = new short[resampler.getMaxOutputFrames(in.length) * resampler.getChannels()];
+        Random random = new Random(chunkSeed);
+        int channels = resampler.getChannels();
+        int position = 0;
+        int produced = 0;
+        int frames = in.length / channels;
+        while (position < frames) {
+            int count = Math.min(frames - position, 1 + random.nextInt(3000));
+            produced += resampler.process(in, position * channels, count, out, produced * channels);
+            position += count;
+        }
+        produced += resampler.flush(out, produced * channels);
+        short[] result = new short[produced * channels];
+        System.arraycopy(out, 0, result, 0, result.length);
+        return result;
+    }
+
+    private static double rms(short[] data, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += (double) data[i] * data[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+
+    @Test
+    public void upsample_keepsLengthFrequencyAndLevel() {
+        short[] in = sine(44100, 1000, 44100, 10000);
+        short[] out = resample(new PolyphaseResampler(44100, 48000, 1), in, 1);
+
+        assertEquals(48000, out.length, PolyphaseResampler.DEFAULT_TAPS);
+        assertEquals(10000 / Math.sqrt(2), rms(out, 1000, 47000), 10000 * 0.01);
+        int crossings = 0;
+        for (int i = 1001; i < 47000; i++) {
+            if (out[i - 1] < 0 && out[i] >= 0) {
+                crossings++;
+            }
+        }
+        //46000个采样约为958个周期
+        assertEquals(46000 * 1000 / 48000, crossings, 2);
+    }
+
+    @Test
+    public void upsample_matchesIdealSine() {
+        short[] out = resample(new PolyphaseResampler(16000, 48000, 1), sine(16000, 440, 16000, 8000), 2);
+        double maxError = 0;
+        for (int i = 500; i < 47000; i++) {
+            double ideal = 8000 * Math.sin(2 * Math.PI * 440 * i / 48000.0);
+            maxError = Math.max(maxError, Math.abs(out[i] - ideal));
+        }
+        //延迟不超过半个输入采样时误差约为 8000 * 2π * 440 / 32000 ≈ 700
+        assertTrue("max error " + maxError, maxError < 800);
+    }
+
+    @Test
+    public void downsample_rejectsAliasedTone() {
+        //12KHz超过16KHz采样率的奈奎斯特频率，应该被滤掉
+        short[] out = resample(new PolyphaseResampler(48000, 16000, 1), sine(48000, 12000, 48000, 10000), 3);
+        assertEquals(16000, out.length, PolyphaseResampler.DEFAULT_TAPS);
+        assertTrue(rms(out, 500, 15500) < 10000 * 0.01);
+    }
+
+    @Test
+    public void process_chunkingDoesNotChangeOutput() {
+        short[] in = new short[2 * 20000];
+        Random random = new Random(4);
+        for (int i = 0; i < in.length; i++) {
+            in[i] = (short) random.nextInt();
+        }
+        short[] first = resample(new PolyphaseResampler(48000, 44100, 2), in, 5);
+        short[] second = resample(new PolyphaseResampler(48000, 44100, 2), in, 6);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void process_floatAndShortAgree() {
+        PolyphaseResampler floatResampler = new PolyphaseResampler(22050, 48000, 1);
+        short[] in = sine(22050, 3000, 5000, 12000);
+        float[] floatIn = new float[in.length];
+        for (int i = 0; i < in.length; i++) {
+            floatIn[i] = in[i];
+        }
+        float[] floatOut = new float[floatResampler.getMaxOutputFrames(in.length)];
+        int frames = floatResampler.process(floatIn, 0, in.length, floatOut, 0);
+        short[] shortOut = new short[frames];
+        assertEquals(frames, new PolyphaseResampler(22050, 48000, 1).process(in, 0, in.length, shortOut, 0));
+        for (int i = 0; i < frames; i++) {
+            assertEquals(floatOut[i], shortOut[i], 0.5f);
+        }
+    }
+
+    @Test
+    public void process_steadyStateDoesNotAllocate() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 48000, 2);
+        short[] in = new short[2 * 1792];
+        short[] out = new short[2 * resampler.getMaxOutputFrames(1792)];
+        for (int i = 0; i < 200; i++) {
+            resampler.process(in, 0, 1792, out, 0);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            resampler.process(in, 0, 1792, out, 0);
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsHugeRatio() {
+        new PolyphaseResampler(44100, 44101, 1);
+    }
+}
@@ -0,0 +1,38 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 速率统计的本地单元测试
+ */
+public class RateMeterTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void update_recordsOneValuePerWindow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        RateMeter meter = new RateMeter(histogram, SECOND);
+        //AAC约16KB/s，每100ms写一次
+        for (int i = 0; i <= 30; i++) {
+            meter.update(i * 1600L, i * SECOND / 10);
+        }
+        assertEquals(3, histogram.getCount());
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(16000, snapshot.getMean(), 16000 * 0.07);
+        assertEquals(16000, meter.getAverageRate());
+    }
+
+    @Test
+    public void getAverageRate_beforeAnyWindow() {
+        RateMeter meter = new RateMeter(new LatencyHistogram(), SECOND);
+        assertEquals(0, meter.getAverageRate());
+        meter.update(500, 0);
+        assertEquals(0, meter.getAverageRate());
+        meter.update(88700, SECOND / 2);
+        //只统计第一次update之后写入的数据
+        assertEquals(176400, meter.getAverageRate());
+    }
+}
@@ -0,0 +1,146 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.*;
+
+/**
+ * 采样时钟的本地单元测试
+ */
+public class SampleClockTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    /**
+     * 单声道16位
+     */
+    private static final int FRAME_SIZE = 2;
+
+    @Test
+    public void advance_doesNotAccumulateError() {
+        SampleClock clock = new SampleClock(SAMPLE_RATE, FRAME_SIZE);
+        //441帧不是整数微秒，逐块累加时长会累积截断误差
+        int chunkBytes = 441 * FRAME_SIZE;
+        long chunks = 3600L * SAMPLE_RATE / 441;
+        long lastPts = -1;
+        for (long i = 0; i < chunks; i++) {
+            long ptsUs = clock.advance(chunkBytes);
+            assertTrue(ptsUs > lastPts);
+            lastPts = ptsUs;
+        }
+        //一小时之后正好是3600秒
+        assertEquals(3600L * SAMPLE_RATE, clock.getFramePosition());
+        assertEquals(3600L * 1000000L, clock.getPtsUs());
+        assertEquals((chunks - 1) * 441 * 1000000L / SAMPLE_RATE, lastPts);
+    }
+
+    @Test
+    public void advance_ignoresPartialFrame() {
+        SampleClock clock = new SampleClock(48000, 4);
+        assertEquals(0, clock.advance(4 * 480 + 3));
+        assertEquals(480, clock.getFramePosition());
+        assertEquals(10000, clock.advance(4));
+    }
+
+    @Test
+    public void onTimestamp_anchorsOriginBeforeFirstChunk() {
+        SampleClock clock = new SampleClock(SAMPLE_RATE, FRAME_SIZE, true, new MetricsRegistry());
+        long startNanos = 5000000000L;
+        clock.onTimestamp(0, startNanos);
+        assertTrue(clock.isAnchored());
+        assertEquals(startNanos / 1000, clock.advance(SAMPLE_RATE * FRAME_SIZE));
+        assertEquals(startNanos / 1000 + 1000000L, clock.getPtsUs());
+
+        //之后的时间戳不再移动起点
+        clock.onTimestamp(SAMPLE_RATE, startNanos + 1500000000L);
+        assertEquals(startNanos / 1000 + 1000000L, clock.getPtsUs());
+        assertEquals(500000, clock.getDriftUs());
+        assertEquals(2, clock.getTimestampCount());
+    }
+
+    @Test
+    public void onTimestamp_doesNotAnchorAfterDataOrWhenDisabled() {
+        SampleClock late = new SampleClock(SAMPLE_RATE, FRAME_SIZE, true, new MetricsRegistry());
+        late.advance(FRAME_SIZE * 100);
+        late.onTimestamp(100, 7000000000L);
+        assertFalse(late.isAnchored());
+        assertEquals(100 * 1000000L / SAMPLE_RATE, late.getPtsUs());
+
+        SampleClock disabled = new SampleClock(SAMPLE_RATE, FRAME_SIZE);
+        disabled.onTimestamp(0, 7000000000L);
+        assertFalse(disabled.isAnchored());
+        assertEquals(0, disabled.advance(FRAME_SIZE));
+    }
+
+    @Test
+    public void onTimestamp_measuresDrift() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        SampleClock clock = new SampleClock(SAMPLE_RATE, FRAME_SIZE, true, metrics);
+        //系统时钟比采样时钟快100ppm，10分钟内每秒一个时间戳
+        long startNanos = 1000000000L;
+        for (int second = 0; second <= 600; second++) {
+            long frame = (long) second * SAMPLE_RATE;
+            long nanoTime = startNanos + (long) (second * 1e9 * (1 + 100e-6));
+            clock.onTimestamp(frame, nanoTime);
+        }
+        assertTrue(clock.isAnchored());
+        assertEquals(60000, clock.getDriftUs(), 1);
+        assertEquals(100, clock.getDriftPpm(), 0.1);
+        assertEquals(600, metrics.histogram("encode.clock_drift_us").getCount());
+    }
+
+    @Test
+    public void pipeline_writesClockPtsToIndex() throws Exception {
+        File indexFile = File.createTempFile("clock", AdtsFrameIndex.INDEX_SUFFIX);
+        File nextIndexFile = File.createTempFile("clock_next", AdtsFrameIndex.INDEX_SUFFIX);
+        try {
+            SampleClock clock = new SampleClock(SAMPLE_RATE, FRAME_SIZE);
+            int chunkBytes = 500 * FRAME_SIZE;
+            AdtsFrameWriter writer = encode(clock, indexFile, chunkBytes, 10);
+            AdtsFrameIndex index = AdtsFrameIndex.read(indexFile);
+            assertEquals(10, index.size());
+            for (int i = 0; i < index.size(); i++) {
+                assertEquals(i * 500 * 1000000L / SAMPLE_RATE, index.getPtsUs(i));
+            }
+            assertEquals(0, writer.getFirstPtsUs());
+
+            //共用时钟的下一个分段接着上一个分段计时，索引中仍然从0开始
+            AdtsFrameWriter nextWriter = encode(clock, nextIndexFile, chunkBytes, 3);
+            assertEquals(10 * 500 * 1000000L / SAMPLE_RATE, nextWriter.getFirstPtsUs());
+            AdtsFrameIndex nextIndex = AdtsFrameIndex.read(nextIndexFile);
+            assertEquals(3, nextIndex.size());
+            assertEquals(0, nextIndex.getPtsUs(0));
+            assertEquals(12 * 500 * 1000000L / SAMPLE_RATE - nextWriter.getFirstPtsUs(), nextIndex.getPtsUs(2));
+        } finally {
+            indexFile.delete();
+            nextIndexFile.delete();
+        }
+    }
+
+    /**
+     * 用直通编解码器把每块PCM写成一个ADTS帧，结束时送入EOS
+     */
+    private static AdtsFrameWriter encode(SampleClock clock, File indexFile, int chunkBytes, int chunks)
+            throws Exception {
+        PassthroughCodec codec = new PassthroughCodec(2, chunkBytes, SAMPLE_RATE, 1);
+        codec.start();
+        AdtsFrameWriter writer = new AdtsFrameWriter(Channels.newChannel(new ByteArrayOutputStream()), chunkBytes,
+                SAMPLE_RATE, 1);
+        AdtsFrameIndex.Writer indexWriter = new AdtsFrameIndex.Writer(indexFile, SAMPLE_RATE);
+        writer.setIndexWriter(indexWriter);
+        EncodePipeline pipeline = new EncodePipeline(codec, writer, new MetricsRegistry());
+        pipeline.setSampleClock(clock);
+        byte[] chunk = new byte[chunkBytes];
+        for (int i = 0; i < chunks; i++) {
+            pipeline.encode(chunk, 0, chunk.length);
+        }
+        pipeline.finish(100000);
+        assertTrue(pipeline.isEndOfStream());
+        indexWriter.close();
+        codec.release();
+        return writer;
+    }
+}
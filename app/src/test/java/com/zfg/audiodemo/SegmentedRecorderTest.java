@@ -0,0 +1,195 @@
+package com.zfg.audiodemo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 分段录音的本地单元测试，用直通编解码器生成ADTS分段
+ */
+public class SegmentedRecorderTest {
+
+    private static final PcmFormat FORMAT = new PcmFormat(8000, 1, 16);
+    /**
+     * 8帧AAC，即8192个采样，1.024秒
+     */
+    private static final int SEGMENT_MS = 1024;
+    private static final int SEGMENT_BYTES = 8 * 1024 * 2;
+    private static final int CHUNK_SIZE = 1000;
+
+    private File mDirectory;
+    private final AtomicInteger mCreated = new AtomicInteger();
+    private final AtomicInteger mStopped = new AtomicInteger();
+
+    private final SegmentedRecorder.IEncoderFactory mFactory = new SegmentedRecorder.IEncoderFactory() {
+        @Override
+        public PcmEncoder createEncoder(File aacFile) throws IOException {
+            mCreated.incrementAndGet();
+            return new AdtsTestEncoder(aacFile);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = Files.createTempDirectory("segments").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private SegmentedRecorder createRecorder() throws IOException {
+        return new SegmentedRecorder(mDirectory, FORMAT, SEGMENT_MS, 3, mFactory, new MetricsRegistry());
+    }
+
+    private static void record(SegmentedRecorder recorder, int bytes) {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        for (int written = 0; written < bytes; written += CHUNK_SIZE) {
+            recorder.encodeData(chunk, 0, Math.min(CHUNK_SIZE, bytes - written));
+        }
+    }
+
+    private String readManifest() throws IOException {
+        return new String(Files.readAllBytes(new File(mDirectory, SegmentedRecorder.MANIFEST_FILE).toPath()),
+                Charset.forName("UTF-8"));
+    }
+
+    @Test
+    public void record_keepsOnlyNewestSegments() throws Exception {
+        SegmentedRecorder recorder = createRecorder();
+        assertEquals(SEGMENT_BYTES, recorder.getSegmentBytes());
+        record(recorder, 7 * SEGMENT_BYTES + SEGMENT_BYTES / 2);
+        recorder.stopEncode();
+
+        List<SegmentedRecorder.Segment> segments = recorder.getSegments();
+        assertEquals(3, segments.size());
+        assertEquals(5, segments.get(0).getSequence());
+        assertEquals(7, segments.get(2).getSequence());
+        assertEquals(1024000, segments.get(0).getDurationUs());
+        assertEquals(512000, segments.get(2).getDurationUs());
+        //旧分段和预先创建的下一个分段都已删除
+        for (int sequence = 0; sequence < 10; sequence++) {
+            boolean kept = sequence >= 5 && sequence <= 7;
+            assertEquals("segment " + sequence, kept,
+                    new File(mDirectory, SegmentedRecorder.segmentName(sequence)).exists());
+        }
+        assertEquals(mCreated.get(), mStopped.get());
+        //8个分段的PCM，加上每块一个ADTS头
+        assertTrue(recorder.getBytesWritten() > 7 * SEGMENT_BYTES + SEGMENT_BYTES / 2);
+
+        String manifest = readManifest();
+        assertTrue(manifest, manifest.contains("#EXT-X-MEDIA-SEQUENCE:5\n"));
+        assertTrue(manifest, manifest.contains("#EXT-X-TARGETDURATION:2\n"));
+        assertTrue(manifest, manifest.contains("#EXTINF:1.024,\nsegment_000005.aac\n"));
+        assertTrue(manifest, manifest.contains("#EXTINF:0.512,\nsegment_000007.aac\n"));
+        assertTrue(manifest, manifest.endsWith("#EXT-X-ENDLIST\n"));
+    }
+
+    @Test
+    public void record_segmentContainsExactlyItsPcm() throws Exception {
+        SegmentedRecorder recorder = createRecorder();
+        record(recorder, SEGMENT_BYTES * 2);
+        recorder.stopEncode();
+
+        for (int sequence = 0; sequence < 2; sequence++) {
+            File file = new File(mDirectory, SegmentedRecorder.segmentName(sequence));
+            AdtsFrameIndex index = AdtsFrameIndex.build(file);
+            //每块数据一个ADTS帧，跨越分段边界的块被拆成两帧
+            long payload = file.length() - index.size() * AdtsFrameWriter.ADTS_HEADER_SIZE;
+            assertEquals(SEGMENT_BYTES, payload);
+        }
+    }
+
+    @Test
+    public void restart_continuesNumberingAndRecoversUnlistedSegment() throws Exception {
+        SegmentedRecorder recorder = createRecorder();
+        record(recorder, SEGMENT_BYTES * 2);
+        recorder.stopEncode();
+
+        //模拟异常退出：分段已经写入，但没有记进播放列表
+        AdtsTestEncoder orphan = new AdtsTestEncoder(new File(mDirectory, SegmentedRecorder.segmentName(2)));
+        orphan.encodeData(new byte[CHUNK_SIZE], 0, CHUNK_SIZE);
+        orphan.stopEncode();
+
+        recorder = createRecorder();
+        List<SegmentedRecorder.Segment> segments = recorder.getSegments();
+        assertEquals(3, segments.size());
+        assertEquals(2, segments.get(2).getSequence());
+        assertFalse(readManifest().contains("#EXT-X-ENDLIST"));
+
+        record(recorder, SEGMENT_BYTES);
+        recorder.stopEncode();
+        segments = recorder.getSegments();
+        assertEquals(3, segments.size());
+        assertEquals(1, segments.get(0).getSequence());
+        assertEquals(3, segments.get(2).getSequence());
+        assertFalse(new File(mDirectory, SegmentedRecorder.segmentName(0)).exists());
+    }
+
+    @Test
+    public void parseSequence_onlyAcceptsSegmentFiles() {
+        assertEquals(12, SegmentedRecorder.parseSequence("segment_000012.aac"));
+        assertEquals(-1, SegmentedRecorder.parseSequence("segment_000012.aac.idx"));
+        assertEquals(-1, SegmentedRecorder.parseSequence(SegmentedRecorder.MANIFEST_FILE));
+        assertEquals(-1, SegmentedRecorder.parseSequence("segment_x.aac"));
+    }
+
+    /**
+     * 用直通编解码器把每块PCM写成一个ADTS帧
+     */
+    private class AdtsTestEncoder implements PcmEncoder {
+        private final FileOutputStream mOutputStream;
+        private final AdtsFrameWriter mWriter;
+        private final EncodePipeline mPipeline;
+
+        AdtsTestEncoder(File file) throws IOException {
+            mOutputStream = new FileOutputStream(file);
+            PassthroughCodec codec = new PassthroughCodec(2, 2048, FORMAT.getSampleRate(), FORMAT.getChannelCount());
+            codec.start();
+            mWriter = new AdtsFrameWriter(mOutputStream.getChannel(), 2048, FORMAT.getSampleRate(),
+                    FORMAT.getChannelCount());
+            mPipeline = new EncodePipeline(codec, mWriter, new MetricsRegistry());
+        }
+
+        @Override
+        public void encodeData(byte[] data, int offset, int length) {
+            try {
+                mPipeline.encode(data, offset, length);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return mWriter.getBytesWritten();
+        }
+
+        @Override
+        public void stopEncode() {
+            mStopped.incrementAndGet();
+            try {
+                mOutputStream.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
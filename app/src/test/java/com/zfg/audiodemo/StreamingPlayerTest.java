@@ -0,0 +1,260 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 边解码边播放的本地单元测试，用直通编解码器代替AAC解码器，用假的AudioOutput代替AudioTrack
+ */
+public class StreamingPlayerTest {
+
+    private static final int SAMPLE_RATE = 8000;
+    /**
+     * 单声道16位，每帧160个采样，20ms
+     */
+    private static final int FRAME_SIZE = 320;
+    private static final long FRAME_DURATION_US = 20000;
+    private static final int FRAME_COUNT = 50;
+    private static final int CHUNK_SIZE = 160;
+    private static final int PREFILL_CHUNKS = 2;
+
+    private FakeOutput mOutput;
+    private final StreamingPlayer.IOutputFactory mOutputFactory = new StreamingPlayer.IOutputFactory() {
+        @Override
+        public AudioOutput createOutput(PcmFormat format, int bufferSizeInBytes) {
+            assertEquals(new PcmFormat(SAMPLE_RATE, 1, 16), format);
+            assertTrue(bufferSizeInBytes >= PREFILL_CHUNKS * CHUNK_SIZE);
+            return mOutput;
+        }
+    };
+
+    private StreamingPlayer createPlayer(FakeExtractor extractor, MetricsRegistry metrics) {
+        return new StreamingPlayer(new PassthroughCodec(2, FRAME_SIZE, SAMPLE_RATE, 1), extractor, mOutputFactory,
+                CHUNK_SIZE, 4, PREFILL_CHUNKS, metrics);
+    }
+
+    @Test
+    public void play_startsAfterPrefillAndWritesWholeStream() throws Exception {
+        mOutput = new FakeOutput();
+        FakeExtractor extractor = new FakeExtractor();
+        MetricsRegistry metrics = new MetricsRegistry();
+        StreamingPlayer player = createPlayer(extractor, metrics);
+        player.play();
+
+        assertArrayEquals(FakeExtractor.expected(0), mOutput.mData.toByteArray());
+        //攒够两块就开始播放，不等整个文件解码完
+        assertEquals(PREFILL_CHUNKS * CHUNK_SIZE, mOutput.mBytesBeforePlay);
+        assertTrue(player.getTimeToFirstAudioUs() >= 0);
+        assertEquals(1, metrics.histogram("stream.first_audio_us").getCount());
+        assertEquals(FRAME_COUNT * FRAME_SIZE, metrics.counter("stream.bytes").get());
+        assertEquals(FRAME_COUNT * FRAME_DURATION_US, player.getPositionUs());
+        assertTrue(mOutput.mReleased);
+        assertTrue(extractor.mReleased);
+    }
+
+    @Test
+    public void seekTo_discardsStaleDataAndRestartsFromTarget() throws Exception {
+        mOutput = new FakeOutput();
+        mOutput.mSeekAtWrite = 5;
+        mOutput.mSeekTargetUs = 30 * FRAME_DURATION_US;
+        FakeExtractor extractor = new FakeExtractor();
+        MetricsRegistry metrics = new MetricsRegistry();
+        StreamingPlayer player = createPlayer(extractor, metrics);
+        mOutput.mPlayer = player;
+        player.play();
+
+        //seek时暂停并清空输出
+        assertEquals(1, mOutput.mFlushes);
+        byte[] data = mOutput.mData.toByteArray();
+        byte[] before = Arrays.copyOfRange(data, 0, mOutput.mFlushedAt);
+        byte[] after = Arrays.copyOfRange(data, mOutput.mFlushedAt, data.length);
+        //seek之前输出的是文件开头的数据，之后从目标位置开始，没有旧位置的数据混入
+        assertArrayEquals(Arrays.copyOf(FakeExtractor.expected(0), before.length), before);
+        assertArrayEquals(FakeExtractor.expected(30), after);
+        assertEquals(1, metrics.histogram("stream.seek_us").getCount());
+        assertEquals(FRAME_COUNT * FRAME_DURATION_US, player.getPositionUs());
+    }
+
+    @Test
+    public void stop_fromAnotherThread_endsPlayback() throws Exception {
+        mOutput = new FakeOutput();
+        mOutput.mWriteDelayMs = 5;
+        FakeExtractor extractor = new FakeExtractor();
+        final StreamingPlayer player = createPlayer(extractor, new MetricsRegistry());
+        Thread stopper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(30);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                player.stop();
+            }
+        });
+        stopper.start();
+        player.play();
+        stopper.join();
+
+        assertTrue(mOutput.mData.size() < FRAME_COUNT * FRAME_SIZE);
+        assertTrue(mOutput.mReleased);
+        assertTrue(extractor.mReleased);
+    }
+
+    /**
+     * 每帧内容由帧序号决定，时间戳为帧序号乘以帧时长
+     */
+    private static class FakeExtractor implements AudioExtractor {
+        private int mPosition;
+        private boolean mReleased;
+
+        static byte[] expected(int fromFrame) {
+            byte[] data = new byte[(FRAME_COUNT - fromFrame) * FRAME_SIZE];
+            for (int frame = fromFrame; frame < FRAME_COUNT; frame++) {
+                for (int i = 0; i < FRAME_SIZE; i++) {
+                    data[(frame - fromFrame) * FRAME_SIZE + i] = (byte) (frame * 7 + i);
+                }
+            }
+            return data;
+        }
+
+        @Override
+        public int readSampleData(ByteBuffer buffer, int offset) {
+            if (mPosition >= FRAME_COUNT) {
+                return -1;
+            }
+            buffer.position(offset);
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                buffer.put((byte) (mPosition * 7 + i));
+            }
+            return FRAME_SIZE;
+        }
+
+        @Override
+        public long getSampleTime() {
+            return mPosition < FRAME_COUNT ? mPosition * FRAME_DURATION_US : -1;
+        }
+
+        @Override
+        public boolean advance() {
+            mPosition++;
+            return mPosition < FRAME_COUNT;
+        }
+
+        @Override
+        public void seekTo(long timeUs) {
+            mPosition = (int) (timeUs / FRAME_DURATION_US);
+        }
+
+        @Override
+        public void release() {
+            mReleased = true;
+        }
+    }
+
+    /**
+     * 模拟AudioTrack：play之后写入的数据立即播放完，flush后播放位置归零
+     */
+    private static class FakeOutput implements AudioOutput {
+        final ByteArrayOutputStream mData = new ByteArrayOutputStream();
+        int mBytesBeforePlay = -1;
+        int mWriteDelayMs;
+        int mSeekAtWrite = -1;
+        long mSeekTargetUs;
+        StreamingPlayer mPlayer;
+        volatile boolean mPlaying;
+        int mWrittenFrames;
+        int mPausedFrames;
+        int mWrites;
+        int mFlushes;
+        int mFlushedAt = -1;
+        boolean mReleased;
+
+        @Override
+        public void play() {
+            if (mBytesBeforePlay < 0) {
+                mBytesBeforePlay = mData.size();
+            }
+            mPlaying = true;
+        }
+
+        @Override
+        public int write(byte[] data, int offset, int size) {
+            if (mPlaying && mWriteDelayMs > 0) {
+                try {
+                    Thread.sleep(mWriteDelayMs);
+                } catch (InterruptedException e) {
+                    return 0;
+                }
+            }
+            mData.write(data, offset, size);
+            mWrittenFrames += size / 2;
+            if (++mWrites == mSeekAtWrite) {
+                mPlayer.seekTo(mSeekTargetUs);
+            }
+            return size;
+        }
+
+        @Override
+        public int write(ByteBuffer data, int size) {
+            byte[] copy = new byte[size];
+            data.get(copy);
+            return write(copy, 0, size);
+        }
+
+        @Override
+        public int getPlaybackHeadPosition() {
+            return mPlaying ? mWrittenFrames : mPausedFrames;
+        }
+
+        @Override
+        public int getUnderrunCount() {
+            return -1;
+        }
+
+        @Override
+        public int getBufferSizeInFrames() {
+            return -1;
+        }
+
+        @Override
+        public int getBufferCapacityInFrames() {
+            return -1;
+        }
+
+        @Override
+        public int setBufferSizeInFrames(int frames) {
+            return -1;
+        }
+
+        @Override
+        public void pause() {
+            mPausedFrames = mWrittenFrames;
+            mPlaying = false;
+        }
+
+        @Override
+        public void flush() {
+            mWrittenFrames = 0;
+            mPausedFrames = 0;
+            mFlushes++;
+            mFlushedAt = mData.size();
+        }
+
+        @Override
+        public void stop() {
+            mPausedFrames = mWrittenFrames;
+            mPlaying = false;
+        }
+
+        @Override
+        public void release() {
+            mReleased = true;
+        }
+    }
+}
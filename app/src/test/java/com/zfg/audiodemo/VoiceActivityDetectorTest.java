@@ -0,0 +1,146 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 语音活动检测的本地单元测试
+ */
+public class VoiceActivityDetectorTest {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final PcmFormat FORMAT = new PcmFormat(SAMPLE_RATE, 1, 16);
+    /**
+     * 每块20ms
+     */
+    private static final int CHUNK_FRAMES = 160;
+    private static final int CHUNK_BYTES = CHUNK_FRAMES * 2;
+
+    /**
+     * 第index块：噪声底上可能叠加一段语音（300Hz正弦），块的第一个采样写入块序号方便核对
+     */
+    private static byte[] chunk(int index, boolean speech, Random random) {
+        byte[] data = new byte[CHUNK_BYTES];
+        for (int i = 0; i < CHUNK_FRAMES; i++) {
+            double sample = random.nextGaussian() * 30;
+            if (speech) {
+                sample += 8000 * Math.sin(2 * Math.PI * 300 * (index * CHUNK_FRAMES + i) / SAMPLE_RATE);
+            }
+            short value = (short) Math.round(sample);
+            if (i == 0) {
+                value = (short) index;
+            }
+            data[2 * i] = (byte) value;
+            data[2 * i + 1] = (byte) (value >> 8);
+        }
+        return data;
+    }
+
+    private static class CollectingSink implements VoiceActivityDetector.ISpeechSink {
+        final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+
+        @Override
+        public void onSpeech(byte[] data, int offset, int length) {
+            mOut.write(data, offset, length);
+        }
+
+        /**
+         * 按顺序输出的块序号
+         */
+        int[] chunkIndexes() {
+            byte[] bytes = mOut.toByteArray();
+            int[] indexes = new int[bytes.length / CHUNK_BYTES];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = (short) ((bytes[i * CHUNK_BYTES] & 0xFF) | (bytes[i * CHUNK_BYTES + 1] << 8));
+            }
+            return indexes;
+        }
+    }
+
+    /**
+     * 50块静音、25块语音、50块静音
+     */
+    private static VoiceActivityDetector runPattern(VoiceActivityDetector vad, CollectingSink sink) throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 125; i++) {
+            boolean speech = i >= 50 && i < 75;
+            vad.process(chunk(i, speech, random), 0, CHUNK_BYTES, sink);
+        }
+        vad.finish();
+        return vad;
+    }
+
+    @Test
+    public void process_dropsSilenceAndKeepsPreRollAndHangover() throws Exception {
+        //pre-roll 100ms = 5块，hangover 200ms = 10块
+        VoiceActivityDetector vad = new VoiceActivityDetector(FORMAT, CHUNK_BYTES, 200, 100, new MetricsRegistry());
+        CollectingSink sink = new CollectingSink();
+        runPattern(vad, sink);
+
+        int[] indexes = sink.chunkIndexes();
+        assertEquals(5 + 25 + 10, indexes.length);
+        for (int i = 0; i < indexes.length; i++) {
+            assertEquals(45 + i, indexes[i]);
+        }
+        assertEquals(40 * CHUNK_FRAMES, vad.getKeptFrames());
+        assertEquals(85 * CHUNK_FRAMES, vad.getSkippedFrames());
+        assertEquals(85.0 / 125, vad.getSkippedRatio(), 1e-9);
+
+        //开头的静音到pre-roll之前，hangover之后到结尾
+        assertEquals(2, vad.getSkippedSpanCount());
+        assertEquals(0, vad.getSkippedSpanStart(0));
+        assertEquals(45 * CHUNK_FRAMES, vad.getSkippedSpanFrames(0));
+        assertEquals(85 * CHUNK_FRAMES, vad.getSkippedSpanStart(1));
+        assertEquals(40 * CHUNK_FRAMES, vad.getSkippedSpanFrames(1));
+        assertTrue(vad.getNoiseFloorDb() < -50);
+    }
+
+    @Test
+    public void process_withoutPreRollOrHangoverKeepsOnlySpeech() throws Exception {
+        VoiceActivityDetector vad = new VoiceActivityDetector(FORMAT, CHUNK_BYTES, 0, 0, new MetricsRegistry());
+        CollectingSink sink = new CollectingSink();
+        runPattern(vad, sink);
+
+        int[] indexes = sink.chunkIndexes();
+        assertEquals(25, indexes.length);
+        assertEquals(50, indexes[0]);
+        assertEquals(2, vad.getSkippedSpanCount());
+        assertEquals(50 * CHUNK_FRAMES, vad.getSkippedSpanFrames(0));
+        assertEquals(75 * CHUNK_FRAMES, vad.getSkippedSpanStart(1));
+    }
+
+    @Test
+    public void process_continuousSpeechIsUntouched() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        VoiceActivityDetector vad = new VoiceActivityDetector(FORMAT, CHUNK_BYTES, 200, 100, metrics);
+        CollectingSink sink = new CollectingSink();
+        Random random = new Random(2);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(vad.process(chunk(i, true, random), 0, CHUNK_BYTES, sink));
+        }
+        vad.finish();
+        assertEquals(20 * CHUNK_BYTES, sink.mOut.size());
+        assertEquals(0, vad.getSkippedSpanCount());
+        assertEquals(20 * CHUNK_FRAMES, metrics.counter("vad.kept_frames").get());
+        assertEquals(0, metrics.counter("vad.skipped_frames").get());
+    }
+
+    @Test
+    public void writeSkippedSpans_roundTrips() throws Exception {
+        VoiceActivityDetector vad = new VoiceActivityDetector(FORMAT, CHUNK_BYTES, 200, 100, new MetricsRegistry());
+        runPattern(vad, new CollectingSink());
+        File file = File.createTempFile("recode_file", VoiceActivityDetector.SPANS_SUFFIX);
+        try {
+            vad.writeSkippedSpans(file);
+            long[] spans = VoiceActivityDetector.readSkippedSpans(file);
+            assertArrayEquals(new long[]{0, 45 * CHUNK_FRAMES, 85 * CHUNK_FRAMES, 40 * CHUNK_FRAMES}, spans);
+        } finally {
+            file.delete();
+        }
+    }
+}
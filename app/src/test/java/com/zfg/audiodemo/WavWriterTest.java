@@ -0,0 +1,147 @@
+package com.zfg.audiodemo;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * WAV写入与解析的本地单元测试
+ */
+public class WavWriterTest {
+
+    @Test
+    public void writeAndRead_roundTripsFormatAndData() throws Exception {
+        File file = File.createTempFile("recode_file", ".wav");
+        try {
+            WavWriter writer = new WavWriter(file, 48000, 2, 16);
+            byte[] data = new byte[10000];
+            new Random(5).nextBytes(data);
+            writer.write(data, 0, 6000);
+            writer.write(ByteBuffer.wrap(data, 6000, 4000));
+            writer.close();
+            assertEquals(WavWriter.HEADER_SIZE + 10000, file.length());
+
+            WavReader reader = WavReader.open(file);
+            assertFalse(reader.isRf64());
+            assertEquals(WavWriter.WAVE_FORMAT_PCM, reader.getFormatTag());
+            assertEquals(48000, reader.getSampleRate());
+            assertEquals(2, reader.getChannelCount());
+            assertEquals(16, reader.getBitsPerSample());
+            assertEquals(4, reader.getFrameSize());
+            assertEquals(WavWriter.HEADER_SIZE, reader.getDataOffset());
+            assertEquals(10000, reader.getDataLength());
+            assertEquals(2500 * 1000000L / 48000, reader.getDurationUs());
+
+            PcmFileSource source = reader.openSource();
+            assertTrue(source.isMapped());
+            ByteBuffer chunk = source.read(20000);
+            byte[] read = new byte[chunk.remaining()];
+            chunk.get(read);
+            assertArrayEquals(data, read);
+            source.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void write_patchesHeaderWhileRecording() throws Exception {
+        File file = File.createTempFile("recode_file", ".wav");
+        try {
+            //44.1KHz单声道16位，200ms约为17640字节
+            WavWriter writer = new WavWriter(file, 44100, 1, 16);
+            byte[] chunk = new byte[3584];
+            for (int i = 0; i < 20; i++) {
+                writer.write(chunk, 0, chunk.length);
+            }
+            //不关闭，模拟进程崩溃：文件头中的长度最多落后一个回写间隔
+            WavReader reader = WavReader.open(file);
+            long written = 20 * 3584;
+            assertTrue(reader.getDataLength() <= written);
+            assertTrue(written - reader.getDataLength() < 44100 * 2 / 5);
+            assertEquals(file.length() - WavWriter.HEADER_SIZE, reader.getDataLength());
+            writer.close();
+            assertEquals(written, WavReader.open(file).getDataLength());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void setFormat_rewritesHeaderAndOddDataIsPadded() throws Exception {
+        File file = File.createTempFile("decoder_file", ".wav");
+        try {
+            WavWriter writer = new WavWriter(file, 44100, 1, 8);
+            writer.setFormat(22050, 1);
+            writer.write(new byte[]{1, 2, 3}, 0, 3);
+            writer.close();
+            assertEquals(WavWriter.HEADER_SIZE + 4, file.length());
+            WavReader reader = WavReader.open(file);
+            assertEquals(22050, reader.getSampleRate());
+            assertEquals(3, reader.getDataLength());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void open_rf64UsesDs64DataSize() throws Exception {
+        File file = File.createTempFile("rf64", ".wav");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(WavWriter.HEADER_SIZE + 100).order(ByteOrder.LITTLE_ENDIAN);
+            putId(header, "RF64");
+            header.putInt(-1);
+            putId(header, "WAVE");
+            putId(header, "ds64");
+            header.putInt(WavWriter.DS64_CHUNK_SIZE);
+            header.putLong(WavWriter.HEADER_SIZE - 8 + 100);
+            header.putLong(64);
+            header.putLong(32);
+            header.putInt(0);
+            putId(header, "fmt ");
+            header.putInt(16);
+            header.putShort((short) 1);
+            header.putShort((short) 1);
+            header.putInt(8000);
+            header.putInt(16000);
+            header.putShort((short) 2);
+            header.putShort((short) 16);
+            putId(header, "data");
+            header.putInt(-1);
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.write(header.array());
+            randomAccessFile.close();
+
+            WavReader reader = WavReader.open(file);
+            assertTrue(reader.isRf64());
+            assertEquals(64, reader.getDataLength());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void open_rejectsNonWav() throws Exception {
+        File file = File.createTempFile("not_wav", ".wav");
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.write(new byte[64]);
+            randomAccessFile.close();
+            WavReader.open(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void putId(ByteBuffer buffer, String id) {
+        for (int i = 0; i < 4; i++) {
+            buffer.put((byte) id.charAt(i));
+        }
+    }
+}
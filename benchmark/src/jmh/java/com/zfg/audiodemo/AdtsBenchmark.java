@@ -0,0 +1,106 @@
+package com.zfg.audiodemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ADTS头部构造、帧写入和解析的单帧耗时
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AdtsBenchmark {
+
+    /**
+     * 单帧AAC数据的大小，128kbps、44.1KHz时约为370字节
+     */
+    @Param({"372", "1024"})
+    public int payloadSize;
+
+    private ByteBuffer mPacket;
+    private ByteBuffer mPayload;
+    private AdtsFrameWriter mFrameWriter;
+    private AdtsParser mParser;
+    private byte[] mStream;
+
+    @Setup
+    public void setup() throws IOException {
+        mPacket = ByteBuffer.allocateDirect(AdtsFrameWriter.ADTS_HEADER_SIZE + payloadSize);
+        byte[] payload = new byte[payloadSize];
+        new Random(1).nextBytes(payload);
+        mPayload = ByteBuffer.allocateDirect(payloadSize);
+        mPayload.put(payload).flip();
+        mFrameWriter = new AdtsFrameWriter(new NullChannel(), payloadSize);
+
+        //64帧连续的ADTS流，用于测解析
+        ByteBuffer stream = ByteBuffer.allocate(64 * (AdtsFrameWriter.ADTS_HEADER_SIZE + payloadSize));
+        for (int i = 0; i < 64; i++) {
+            int start = stream.position();
+            stream.position(start + AdtsFrameWriter.ADTS_HEADER_SIZE);
+            stream.put(payload);
+            ByteBuffer header = stream.duplicate();
+            header.position(start);
+            AdtsFrameWriter.addADTStoPacket(header.slice(), AdtsFrameWriter.ADTS_HEADER_SIZE + payloadSize);
+        }
+        mStream = stream.array();
+        mParser = new AdtsParser(new AdtsParser.IFrameListener() {
+            @Override
+            public void onFrame(AdtsParser.AdtsHeader header, byte[] data, int offset, int length,
+                                long streamOffset, long ptsUs) {
+            }
+        });
+    }
+
+    @Benchmark
+    public ByteBuffer addAdtsHeader() {
+        AdtsFrameWriter.addADTStoPacket(mPacket, AdtsFrameWriter.ADTS_HEADER_SIZE + payloadSize);
+        return mPacket;
+    }
+
+    @Benchmark
+    public int writeFrame() throws IOException {
+        return mFrameWriter.writeFrame(mPayload);
+    }
+
+    /**
+     * 每次解析64帧
+     */
+    @Benchmark
+    public long parse64Frames() {
+        mParser.feed(mStream, 0, mStream.length);
+        return mParser.getFrameCount();
+    }
+
+    /**
+     * 丢弃所有数据的通道，只测拼帧的开销
+     */
+    static class NullChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int remaining = src.remaining();
+            src.position(src.limit());
+            return remaining;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
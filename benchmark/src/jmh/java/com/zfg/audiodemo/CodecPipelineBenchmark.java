@@ -0,0 +1,87 @@
+package com.zfg.audiodemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编解码流程本身的开销，编解码器用PassthroughCodec代替，只测缓存队列、ADTS封装和数据搬运
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecPipelineBenchmark {
+
+    private static final int PCM_CHUNK_SIZE = 4096;
+    private static final int DECODE_FRAMES = 1000;
+
+    private PassthroughCodec mEncoder;
+    private EncodePipeline mEncodePipeline;
+    private byte[] mPcm;
+    private File mAacFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mEncoder = new PassthroughCodec(4, PCM_CHUNK_SIZE, 44100, 2);
+        mEncoder.start();
+        mEncodePipeline = new EncodePipeline(mEncoder,
+                new AdtsFrameWriter(new AdtsBenchmark.NullChannel(), PCM_CHUNK_SIZE));
+        mPcm = new byte[PCM_CHUNK_SIZE];
+
+        //解码用的ADTS文件
+        mAacFile = File.createTempFile("pipeline", ".aac");
+        FileOutputStream out = new FileOutputStream(mAacFile);
+        try {
+            AdtsFrameWriter writer = new AdtsFrameWriter(out.getChannel(), 372);
+            ByteBuffer payload = ByteBuffer.allocate(372);
+            for (int i = 0; i < DECODE_FRAMES; i++) {
+                writer.writeFrame(payload);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mEncoder.release();
+        mAacFile.delete();
+    }
+
+    /**
+     * 送入一块PCM并取出一帧
+     */
+    @Benchmark
+    public long encodeChunk() throws IOException {
+        mEncodePipeline.encode(mPcm, PCM_CHUNK_SIZE);
+        return mEncodePipeline.getFramesWritten();
+    }
+
+    /**
+     * 从文件读取并"解码"1000帧到内存
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long decode1000Frames() throws IOException {
+        PassthroughCodec decoder = new PassthroughCodec(4, 2048, 44100, 2);
+        AdtsExtractor extractor = new AdtsExtractor(mAacFile, null);
+        DecodePipeline pipeline = new DecodePipeline(decoder, extractor, new MemoryPcmSink(DECODE_FRAMES * 372));
+        decoder.start();
+        pipeline.run();
+        decoder.release();
+        extractor.release();
+        return pipeline.getDecodedBytes();
+    }
+}
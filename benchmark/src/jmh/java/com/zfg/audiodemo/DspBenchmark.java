@@ -0,0 +1,113 @@
+package com.zfg.audiodemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单线程采集处理链的吞吐量，单位为每秒处理的帧数，除以采样率就是比实时快的倍数
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DspBenchmark {
+
+    private static final int SAMPLE_RATE = 48000;
+
+    /**
+     * 每次调用处理的帧数，约为48KHz下20ms
+     */
+    private static final int FRAMES = 960;
+
+    @Param({"1", "2"})
+    public int channels;
+
+    private HighPassFilter mHighPass;
+    private GainStage mGain;
+    private NoiseGate mNoiseGate;
+    private AutomaticGainControl mAgc;
+    private DspChain mChain;
+    private float[] mSamples;
+    private float[] mInput;
+    private byte[] mBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mHighPass = new HighPassFilter(SAMPLE_RATE, channels);
+        mGain = new GainStage(channels, 3);
+        mNoiseGate = new NoiseGate(SAMPLE_RATE, channels);
+        mAgc = new AutomaticGainControl(SAMPLE_RATE, channels);
+        mChain = new DspChain(new PcmFormat(SAMPLE_RATE, channels, 16), DspChain.DEFAULT_BLOCK_FRAMES,
+                new MetricsRegistry(), new HighPassFilter(SAMPLE_RATE, channels), new GainStage(channels, 3),
+                new NoiseGate(SAMPLE_RATE, channels), new AutomaticGainControl(SAMPLE_RATE, channels));
+        Random random = new Random(1);
+        mInput = new float[FRAMES * channels];
+        mSamples = new float[FRAMES * channels];
+        mBytes = new byte[FRAMES * channels * 2];
+        for (int i = 0; i < mInput.length; i++) {
+            short sample = (short) (random.nextGaussian() * 3000);
+            mInput[i] = sample;
+            mBytes[2 * i] = (byte) sample;
+            mBytes[2 * i + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    /**
+     * 每次从同一份输入开始，避免增益累积后数据退化成常数
+     */
+    private float[] input() {
+        System.arraycopy(mInput, 0, mSamples, 0, mSamples.length);
+        return mSamples;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public float[] highPass() {
+        float[] samples = input();
+        mHighPass.process(samples, 0, FRAMES);
+        return samples;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public float[] gain() {
+        float[] samples = input();
+        mGain.process(samples, 0, FRAMES);
+        return samples;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public float[] noiseGate() {
+        float[] samples = input();
+        mNoiseGate.process(samples, 0, FRAMES);
+        return samples;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public float[] agc() {
+        float[] samples = input();
+        mAgc.process(samples, 0, FRAMES);
+        return samples;
+    }
+
+    /**
+     * 完整的处理链，包括16位PCM与float之间的转换和每个环节的计时
+     */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int chain() {
+        return mChain.process(mBytes, 0, mBytes.length);
+    }
+}
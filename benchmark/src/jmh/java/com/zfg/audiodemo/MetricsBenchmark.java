@@ -0,0 +1,48 @@
+package com.zfg.audiodemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 运行指标的记录开销，热路径上每块数据会记录几次
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+
+    private final MetricsRegistry mMetrics = new MetricsRegistry();
+    private final LatencyHistogram mHistogram = mMetrics.histogram("bench.latency_us");
+    private final MetricsRegistry.Counter mCounter = mMetrics.counter("bench.bytes");
+
+    @Benchmark
+    public void counterAdd() {
+        mCounter.add(4096);
+    }
+
+    @Benchmark
+    public void histogramRecord() {
+        mHistogram.record(System.nanoTime() & 0xFFFF);
+    }
+
+    /**
+     * 采集线程和编码线程同时记录
+     */
+    @Benchmark
+    @Threads(2)
+    public void histogramRecordContended() {
+        mHistogram.record(System.nanoTime() & 0xFFFF);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return mMetrics.toJson();
+    }
+}
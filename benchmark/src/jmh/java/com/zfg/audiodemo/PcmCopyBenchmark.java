@@ -0,0 +1,90 @@
+package com.zfg.audiodemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PCM块拷贝的开销：byte[]拷贝、拷贝到直接内存，以及内存映射和按块读取两种播放数据源
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PcmCopyBenchmark {
+
+    /**
+     * 每块PCM的大小，与录音时AudioRecord的缓存大小同一量级
+     */
+    @Param({"3584", "16384"})
+    public int chunkSize;
+
+    private byte[] mSource;
+    private byte[] mTarget;
+    private ByteBuffer mDirectTarget;
+    private File mFile;
+    private PcmFileSource mMappedSource;
+    private PcmFileSource mChannelSource;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mSource = new byte[chunkSize];
+        mTarget = new byte[chunkSize];
+        mDirectTarget = ByteBuffer.allocateDirect(chunkSize);
+        mFile = File.createTempFile("pcm_copy", ".pcm");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            //4MB，足够多块循环读取
+            byte[] data = new byte[4 * 1024 * 1024];
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        mMappedSource = new PcmFileSource(mFile, 0, mFile.length(), 2, true);
+        mChannelSource = new PcmFileSource(mFile, 0, mFile.length(), 2, false);
+        mMappedSource.setLoop(0, mFile.length());
+        mChannelSource.setLoop(0, mFile.length());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mMappedSource.close();
+        mChannelSource.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public byte[] arrayCopy() {
+        System.arraycopy(mSource, 0, mTarget, 0, chunkSize);
+        return mTarget;
+    }
+
+    @Benchmark
+    public ByteBuffer copyToDirect() {
+        mDirectTarget.clear();
+        mDirectTarget.put(mSource, 0, chunkSize);
+        return mDirectTarget;
+    }
+
+    @Benchmark
+    public ByteBuffer readMapped() throws IOException {
+        return mMappedSource.read(chunkSize);
+    }
+
+    @Benchmark
+    public ByteBuffer readChannel() throws IOException {
+        return mChannelSource.read(chunkSize);
+    }
+}
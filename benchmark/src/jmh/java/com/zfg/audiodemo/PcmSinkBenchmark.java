@@ -0,0 +1,87 @@
+package com.zfg.audiodemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PCM写文件的开销：FilePcmSink直接写ByteBuffer，对比原来先拷贝到byte[]再写FileOutputStream，以及录音写WAV
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PcmSinkBenchmark {
+
+    /**
+     * 解码器单个输出缓存的大小，AAC每帧1024个采样、双声道16位
+     */
+    @Param({"4096"})
+    public int bufferSize;
+
+    private ByteBuffer mOutputBuffer;
+    private byte[] mCopyBuffer;
+    private File mFile;
+    private File mStreamFile;
+    private FilePcmSink mFilePcmSink;
+    private FileOutputStream mFileOutputStream;
+    private File mWavFile;
+    private WavWriter mWavWriter;
+    private byte[] mRecordChunk;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        mOutputBuffer = ByteBuffer.allocateDirect(bufferSize);
+        mCopyBuffer = new byte[bufferSize];
+        mFile = File.createTempFile("pcm_sink", ".pcm");
+        mFilePcmSink = new FilePcmSink(mFile);
+        mStreamFile = File.createTempFile("pcm_stream", ".pcm");
+        mFileOutputStream = new FileOutputStream(mStreamFile);
+        mWavFile = File.createTempFile("pcm_wav", ".wav");
+        mWavWriter = new WavWriter(mWavFile, 44100, 1, 16);
+        mRecordChunk = new byte[bufferSize];
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        mFilePcmSink.close();
+        mFileOutputStream.close();
+        mWavWriter.close();
+        mFile.delete();
+        mStreamFile.delete();
+        mWavFile.delete();
+    }
+
+    @Benchmark
+    public void filePcmSink() throws IOException {
+        mOutputBuffer.clear();
+        mFilePcmSink.write(mOutputBuffer);
+    }
+
+    /**
+     * 录音写WAV，包含定期回写文件头的开销
+     */
+    @Benchmark
+    public void wavWriterRecord() throws IOException {
+        mWavWriter.write(mRecordChunk, 0, bufferSize);
+    }
+
+    @Benchmark
+    public void copyAndStreamWrite() throws IOException {
+        mOutputBuffer.clear();
+        mOutputBuffer.get(mCopyBuffer);
+        mFileOutputStream.write(mCopyBuffer);
+    }
+}
@@ -0,0 +1,81 @@
+package com.zfg.audiodemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单线程重采样和声道转换的吞吐量，单位为每秒处理的输入帧数（每声道采样数）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResamplerBenchmark {
+
+    /**
+     * 每次调用处理的输入帧数，约为48KHz下20ms
+     */
+    private static final int FRAMES = 960;
+
+    /**
+     * 输入采样率-输出采样率-声道数
+     */
+    @Param({"44100-48000-1", "48000-16000-1", "48000-44100-2"})
+    public String conversion;
+
+    private PolyphaseResampler mResampler;
+    private short[] mShortInput;
+    private short[] mShortOutput;
+    private float[] mFloatInput;
+    private float[] mFloatOutput;
+    private short[] mStereo;
+    private short[] mMono;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] parts = conversion.split("-");
+        int channels = Integer.parseInt(parts[2]);
+        mResampler = new PolyphaseResampler(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), channels);
+        mShortInput = new short[FRAMES * channels];
+        mFloatInput = new float[FRAMES * channels];
+        Random random = new Random(1);
+        for (int i = 0; i < mShortInput.length; i++) {
+            mShortInput[i] = (short) random.nextInt();
+            mFloatInput[i] = mShortInput[i];
+        }
+        int maxOutput = mResampler.getMaxOutputFrames(FRAMES) * channels;
+        mShortOutput = new short[maxOutput];
+        mFloatOutput = new float[maxOutput];
+        mStereo = new short[FRAMES * 2];
+        mMono = new short[FRAMES];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int resampleShort() {
+        return mResampler.process(mShortInput, 0, FRAMES, mShortOutput, 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int resampleFloat() {
+        return mResampler.process(mFloatInput, 0, FRAMES, mFloatOutput, 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public short[] downmixStereo() {
+        ChannelMixer.mix(mStereo, 0, 2, mMono, 0, 1, FRAMES);
+        return mMono;
+    }
+}
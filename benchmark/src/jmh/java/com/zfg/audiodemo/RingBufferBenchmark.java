@@ -0,0 +1,69 @@
+package com.zfg.audiodemo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 录音线程和编码线程之间通过PcmRingBuffer交接PCM块的开销
+ * 生产者和消费者各一个线程，与MainActivity中的用法一致
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RingBufferBenchmark {
+
+    /**
+     * 与MainActivity中的RING_CHUNK_COUNT一致
+     */
+    private static final int CHUNK_COUNT = 16;
+    private static final int CHUNK_SIZE = 3584;
+
+    private PcmRingBuffer mRingBuffer;
+    private byte[] mSource;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        mRingBuffer = new PcmRingBuffer(CHUNK_COUNT, CHUNK_SIZE);
+        mSource = new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * 写入一块，满了就算一次溢出直接返回，与录音线程的丢弃策略一致
+     */
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean produce() {
+        byte[] chunk = mRingBuffer.acquireWrite();
+        if (null == chunk) {
+            return false;
+        }
+        System.arraycopy(mSource, 0, chunk, 0, CHUNK_SIZE);
+        mRingBuffer.commitWrite(CHUNK_SIZE);
+        return true;
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public int consume() {
+        byte[] chunk = mRingBuffer.acquireRead();
+        if (null == chunk) {
+            return 0;
+        }
+        int length = mRingBuffer.readLength();
+        int sum = chunk[0] + chunk[length - 1];
+        mRingBuffer.releaseRead();
+        return sum;
+    }
+}